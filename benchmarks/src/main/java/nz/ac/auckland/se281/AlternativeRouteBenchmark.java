@@ -0,0 +1,61 @@
+package nz.ac.auckland.se281;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times finding the shortest few routes between random pairs of countries, ranked by borders or
+ * by tax.
+ *
+ * <p>A count of 1 is a single route search, so the other counts show what each extra route costs.
+ * The pairs are the same on every run and are cycled through in order.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = "-Xmx12g")
+public class AlternativeRouteBenchmark {
+  private static final int QUERIES = 256;
+
+  @Param({"GRID", "SCALE_FREE", "CLUSTERED"})
+  private SyntheticMaps.Topology topology;
+
+  @Param({"10000", "1000000"})
+  private int size;
+
+  @Param({"BREADTH_FIRST", "CHEAPEST"})
+  private RouteMode mode;
+
+  @Param({"1", "10", "50"})
+  private int count;
+
+  private MapQueries queries;
+  private int[] pairs;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    queries = new MapQueries(SyntheticMaps.generate(topology, size), new Metrics());
+    pairs = SyntheticMaps.queries(size, QUERIES);
+  }
+
+  @Benchmark
+  public List<Route> alternativeRoutes() {
+    int pair = next;
+    next = (next + 2) % pairs.length;
+    return queries.alternativeRoutes(mode, pairs[pair], pairs[pair + 1], count);
+  }
+}
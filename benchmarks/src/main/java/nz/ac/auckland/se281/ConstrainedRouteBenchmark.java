@@ -0,0 +1,85 @@
+package nz.ac.auckland.se281;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times constrained route queries between random pairs of countries, to compare with the plain
+ * searches in {@link RouteBenchmark}.
+ *
+ * <p>{@code NONE} searches with constraints that allow everything, {@code AVOID} skips one country
+ * in a hundred, and {@code BUDGET} caps the measure the route is not ranked by halfway between
+ * the unconstrained route's and the best possible, so that the cap is met but usually binds.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = "-Xmx12g")
+public class ConstrainedRouteBenchmark {
+  private static final int QUERIES = 256;
+
+  @Param({"GRID", "SCALE_FREE", "CLUSTERED"})
+  private SyntheticMaps.Topology topology;
+
+  @Param({"10000", "1000000"})
+  private int size;
+
+  @Param({"BREADTH_FIRST", "CHEAPEST"})
+  private RouteMode mode;
+
+  @Param({"NONE", "AVOID", "BUDGET"})
+  private String constraint;
+
+  private MapQueries queries;
+  private int[] pairs;
+  private RouteConstraints[] constraints;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    queries = new MapQueries(SyntheticMaps.generate(topology, size), new Metrics());
+    pairs = SyntheticMaps.queries(size, QUERIES);
+    constraints = new RouteConstraints[QUERIES];
+    RouteConstraints avoided = queries.constraints();
+    if (constraint.equals("AVOID")) {
+      Random random = new Random(SyntheticMaps.SEED ^ size);
+      for (int i = 0; i < size / 100; i++) {
+        avoided.avoidCountry(random.nextInt(size));
+      }
+    }
+    for (int i = 0; i < QUERIES; i++) {
+      constraints[i] =
+          constraint.equals("BUDGET") ? budget(pairs[2 * i], pairs[2 * i + 1]) : avoided;
+    }
+  }
+
+  private RouteConstraints budget(int start, int destination) {
+    Route byBorders = queries.route(RouteMode.BREADTH_FIRST, start, destination);
+    Route byTax = queries.route(RouteMode.CHEAPEST, start, destination);
+    if (mode == RouteMode.CHEAPEST) {
+      int borders = (byBorders.getCountries().size() + byTax.getCountries().size()) / 2 - 1;
+      return queries.constraints().maxBorders(borders);
+    }
+    return queries.constraints().maxTax((byBorders.getTax() + byTax.getTax()) / 2);
+  }
+
+  @Benchmark
+  public Route route() {
+    int query = next;
+    next = (next + 1) % QUERIES;
+    return queries.route(mode, pairs[2 * query], pairs[2 * query + 1], constraints[query]);
+  }
+}
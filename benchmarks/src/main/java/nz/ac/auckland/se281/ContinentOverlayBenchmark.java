@@ -0,0 +1,85 @@
+package nz.ac.auckland.se281;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times fewest-borders routes between countries on different continents through the continent
+ * overlay, next to a plain breadth-first search for the same pairs, and building the overlay.
+ *
+ * <p>Only continent-clustered maps are used, since the overlay is not built for the others. The
+ * pairs are the same on every run and are cycled through in order.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = "-Xmx12g")
+public class ContinentOverlayBenchmark {
+  private static final int QUERIES = 1024;
+
+  @Param({"10000", "1000000", "10000000"})
+  private int size;
+
+  private CountryGraph graph;
+  private ContinentOverlay overlay;
+  private SearchContext context;
+  private int[] pairs;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    graph = SyntheticMaps.generate(SyntheticMaps.Topology.CLUSTERED, size);
+    overlay = new ContinentOverlay(graph);
+    context = new SearchContext(graph.size(), graph.continentCount());
+    // Pairs on the same continent are searched without the overlay, so they are left out.
+    int[] candidates = SyntheticMaps.queries(size, QUERIES * 2);
+    pairs = new int[QUERIES * 2];
+    int count = 0;
+    for (int i = 0; i < candidates.length && count < pairs.length; i += 2) {
+      if (graph.continentIds[candidates[i]] != graph.continentIds[candidates[i + 1]]) {
+        pairs[count++] = candidates[i];
+        pairs[count++] = candidates[i + 1];
+      }
+    }
+    pairs = Arrays.copyOf(pairs, count);
+  }
+
+  private int nextPair() {
+    int pair = next;
+    next = (next + 2) % pairs.length;
+    context.reset();
+    return pair;
+  }
+
+  @Benchmark
+  public int[] overlay() {
+    int pair = nextPair();
+    return overlay.findPath(context, pairs[pair], pairs[pair + 1]);
+  }
+
+  @Benchmark
+  public int[] breadthFirst() {
+    int pair = nextPair();
+    return BreadthFirstSearch.findPath(graph, context, pairs[pair], pairs[pair + 1]);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public ContinentOverlay build() {
+    return new ContinentOverlay(graph);
+  }
+}
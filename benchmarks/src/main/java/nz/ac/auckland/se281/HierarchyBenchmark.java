@@ -0,0 +1,100 @@
+package nz.ac.auckland.se281;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times routes found with a contraction hierarchy, next to a plain search for the same pairs, and
+ * what the hierarchy costs up front: building it and reading it back from its file.
+ *
+ * <p>The plain search is breadth-first for routes by borders and Dijkstra's algorithm for routes
+ * by tax. Only grid maps are used: the random borders of the scale-free and continent-clustered
+ * maps leave a dense core that takes too long to contract at these sizes. The hierarchy is built
+ * and written to a temporary file once per trial.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = "-Xmx12g")
+public class HierarchyBenchmark {
+  private static final int QUERIES = 1024;
+
+  @Param({"10000", "100000"})
+  private int size;
+
+  @Param({"BORDERS", "TAX"})
+  private ContractionHierarchy.Weight weight;
+
+  private CountryGraph graph;
+  private ContractionHierarchy hierarchy;
+  private SearchContext context;
+  private int[] pairs;
+  private int next;
+  private Path file;
+
+  @Setup
+  public void setUp() throws IOException {
+    graph = SyntheticMaps.generate(SyntheticMaps.Topology.GRID, size);
+    hierarchy = new HierarchyBuilder(graph, weight).build();
+    context = new SearchContext(graph.size(), graph.continentCount());
+    pairs = SyntheticMaps.queries(size, QUERIES);
+    file = Files.createTempFile("map", ".hierarchy");
+    hierarchy.write(file);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  private int nextPair() {
+    int pair = next;
+    next = (next + 2) % pairs.length;
+    context.reset();
+    return pair;
+  }
+
+  @Benchmark
+  public int[] hierarchy() {
+    int pair = nextPair();
+    return hierarchy.findPath(context, pairs[pair], pairs[pair + 1]);
+  }
+
+  @Benchmark
+  public int[] search() {
+    int pair = nextPair();
+    return weight == ContractionHierarchy.Weight.TAX
+        ? WeightedSearch.findPath(graph, context, pairs[pair], pairs[pair + 1], TaxHeuristic.NONE)
+        : BreadthFirstSearch.findPath(graph, context, pairs[pair], pairs[pair + 1]);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public ContractionHierarchy build() {
+    return new HierarchyBuilder(graph, weight).build();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public ContractionHierarchy read() {
+    return ContractionHierarchy.read(file, graph, weight);
+  }
+}
@@ -0,0 +1,97 @@
+package nz.ac.auckland.se281;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times the cheapest A* search with the landmark heuristic next to the destination's tax alone and
+ * to Dijkstra's algorithm, the tax bounds on their own, and what picking the landmarks costs up
+ * front.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = "-Xmx12g")
+public class LandmarkBenchmark {
+  private static final int QUERIES = 1024;
+
+  @Param({"GRID", "SCALE_FREE", "CLUSTERED"})
+  private SyntheticMaps.Topology topology;
+
+  @Param({"10000", "100000", "1000000"})
+  private int size;
+
+  @Param({"16"})
+  private int landmarkCount;
+
+  private CountryGraph graph;
+  private LandmarkOracle landmarks;
+  private TaxHeuristic landmarkHeuristic;
+  private TaxHeuristic destinationTax;
+  private SearchContext context;
+  private int[] pairs;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    graph = SyntheticMaps.generate(topology, size);
+    landmarks = new LandmarkOracle(graph, landmarkCount);
+    landmarkHeuristic = landmarks.taxHeuristic();
+    destinationTax = TaxHeuristic.destinationTax(graph);
+    context = new SearchContext(graph.size(), graph.continentCount());
+    pairs = SyntheticMaps.queries(size, QUERIES);
+  }
+
+  private int nextPair() {
+    int pair = next;
+    next = (next + 2) % pairs.length;
+    context.reset();
+    return pair;
+  }
+
+  @Benchmark
+  public int[] landmarks() {
+    int pair = nextPair();
+    return WeightedSearch.findPath(graph, context, pairs[pair], pairs[pair + 1], landmarkHeuristic);
+  }
+
+  @Benchmark
+  public int[] destinationTax() {
+    int pair = nextPair();
+    return WeightedSearch.findPath(graph, context, pairs[pair], pairs[pair + 1], destinationTax);
+  }
+
+  @Benchmark
+  public int[] dijkstra() {
+    int pair = nextPair();
+    return WeightedSearch.findPath(
+        graph, context, pairs[pair], pairs[pair + 1], TaxHeuristic.NONE);
+  }
+
+  @Benchmark
+  public long bounds() {
+    int pair = nextPair();
+    int lower = landmarks.lowerBound(ContractionHierarchy.Weight.TAX, pairs[pair], pairs[pair + 1]);
+    int upper = landmarks.upperBound(ContractionHierarchy.Weight.TAX, pairs[pair], pairs[pair + 1]);
+    return (long) lower << 32 | upper;
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public LandmarkOracle build() {
+    return new LandmarkOracle(graph, landmarkCount);
+  }
+}
@@ -0,0 +1,79 @@
+package nz.ac.auckland.se281;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times turning typed country names into countries through the name index, against capitalising
+ * the name and then looking it up, which is how it used to be done.
+ *
+ * <p>Half of the names are typed in lower case, the rest exactly as on the map. Every eighth name
+ * has extra spaces around and between its words, and every sixteenth name is misspelt so the
+ * failed lookup path is measured as well.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = "-Xmx12g")
+public class LookupBenchmark {
+  private static final int INPUTS = 4096;
+
+  @Param({"100", "10000", "1000000", "10000000"})
+  private int size;
+
+  private MapQueries queries;
+  private String[] inputs;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    queries =
+        new MapQueries(SyntheticMaps.generate(SyntheticMaps.Topology.GRID, size), new Metrics());
+    int[] countries = SyntheticMaps.queries(size, INPUTS / 2);
+    inputs = new String[INPUTS];
+    for (int i = 0; i < INPUTS; i++) {
+      String name = queries.countryName(countries[i]);
+      if (i % 16 == 15) {
+        name = name.replace("Country", "Cuontry");
+      }
+      if (i % 8 == 3) {
+        name = "  " + name.replace(" ", "   ") + " ";
+      }
+      inputs[i] = i % 2 == 0 ? name : name.toLowerCase(Locale.ROOT);
+    }
+  }
+
+  private String nextInput() {
+    String input = inputs[next];
+    next = (next + 1) % INPUTS;
+    return input;
+  }
+
+  @Benchmark
+  public int lookupCountry() {
+    return queries.lookupCountry(nextInput());
+  }
+
+  @Benchmark
+  public int capitalizeAndLookUp() {
+    return queries.graph().idOf(Utils.capitalizeFirstLetterOfEachWord(nextInput()));
+  }
+
+  @Benchmark
+  public String capitalizeFirstLetterOfEachWord() {
+    return Utils.capitalizeFirstLetterOfEachWord(nextInput());
+  }
+}
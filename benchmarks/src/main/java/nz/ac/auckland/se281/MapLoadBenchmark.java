@@ -0,0 +1,113 @@
+package nz.ac.auckland.se281;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times loading a whole map from its countries and adjacencies files.
+ *
+ * <p>The files are written to a temporary directory once per trial. The line based loader the
+ * assignment started with is measured next to the memory-mapped loader, on the calling thread and
+ * on pools of growing size, and next to reading the binary snapshot of the same map. Each pool is
+ * first checked to load the same graph as the calling thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 2, jvmArgsAppend = "-Xmx12g")
+public class MapLoadBenchmark {
+  @Param({"GRID", "SCALE_FREE", "CLUSTERED"})
+  private SyntheticMaps.Topology topology;
+
+  @Param({"100", "10000", "1000000", "10000000"})
+  private int size;
+
+  private Path directory;
+  private Path countries;
+  private Path adjacencies;
+  private Path snapshot;
+  private long[] sources;
+
+  /** A pool of worker threads for the parallel load. */
+  @State(Scope.Benchmark)
+  public static class Pool {
+    @Param({"1", "2", "4", "8"})
+    private int threads;
+
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setUp(MapLoadBenchmark map) throws IOException {
+      pool = new ForkJoinPool(threads);
+      CountryGraph expected = MappedMapLoader.load(map.countries, map.adjacencies);
+      CountryGraph actual = MappedMapLoader.load(map.countries, map.adjacencies, pool);
+      if (!Arrays.equals(expected.neighbours, actual.neighbours)
+          || !Arrays.equals(expected.names, actual.names)) {
+        throw new IllegalStateException("Parallel load differs with " + threads + " threads");
+      }
+    }
+
+    @TearDown
+    public void tearDown() {
+      pool.shutdown();
+    }
+  }
+
+  @Setup
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("map-load");
+    countries = directory.resolve("countries.csv");
+    adjacencies = directory.resolve("adjacencies.csv");
+    snapshot = directory.resolve("map.snapshot");
+    CountryGraph graph = SyntheticMaps.generate(topology, size);
+    SyntheticMaps.writeCsv(graph, countries, adjacencies);
+    sources = MapSnapshot.sourceStamp(countries, adjacencies);
+    MapSnapshot.write(graph, snapshot, sources);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(countries);
+    Files.deleteIfExists(adjacencies);
+    Files.deleteIfExists(snapshot);
+    Files.deleteIfExists(directory);
+  }
+
+  @Benchmark
+  public CountryGraph readLines() throws IOException {
+    return CountryGraph.fromCsv(Files.readAllLines(countries), Files.readAllLines(adjacencies));
+  }
+
+  @Benchmark
+  public CountryGraph mappedSequential() throws IOException {
+    return MappedMapLoader.load(countries, adjacencies);
+  }
+
+  @Benchmark
+  public CountryGraph mappedParallel(Pool pool) throws IOException {
+    return MappedMapLoader.load(countries, adjacencies, pool.pool);
+  }
+
+  @Benchmark
+  public CountryGraph snapshot() {
+    return MapSnapshot.read(snapshot, sources);
+  }
+}
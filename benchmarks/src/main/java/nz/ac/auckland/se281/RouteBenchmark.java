@@ -0,0 +1,144 @@
+package nz.ac.auckland.se281;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times single route queries between random pairs of countries, for every route mode.
+ *
+ * <p>The route cache and route table are off, so each query runs a full search. The pairs are the
+ * same on every run and are cycled through in order.
+ *
+ * <p>{@code search} runs the same searches without the queries around them and counts the
+ * countries each one visits, so the modes can be compared by work as well as by time. Before
+ * timing, the set up checks on the first few pairs that both breadth-first modes find the same
+ * route and that Dijkstra and A* find routes with the same tax.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = "-Xmx12g")
+public class RouteBenchmark {
+  private static final int QUERIES = 1024;
+  private static final int CHECKED_PAIRS = 16;
+
+  @Param({"GRID", "SCALE_FREE", "CLUSTERED"})
+  private SyntheticMaps.Topology topology;
+
+  @Param({"100", "10000", "1000000", "10000000"})
+  private int size;
+
+  @Param({"BREADTH_FIRST", "BIDIRECTIONAL", "CHEAPEST", "CHEAPEST_A_STAR"})
+  private RouteMode mode;
+
+  private CountryGraph graph;
+  private MapQueries queries;
+  private SearchContext context;
+  private TaxHeuristic destinationTax;
+  private int[] pairs;
+  private int next;
+
+  /** The countries visited by {@code search}, summed over an iteration. */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Visits {
+    public long searches;
+    public long visited;
+
+    @Setup(Level.Iteration)
+    public void clear() {
+      searches = 0;
+      visited = 0;
+    }
+  }
+
+  @Setup
+  public void setUp() {
+    graph = SyntheticMaps.generate(topology, size);
+    queries = new MapQueries(graph, new Metrics());
+    context = new SearchContext(graph.size(), graph.continentCount());
+    destinationTax = TaxHeuristic.destinationTax(graph);
+    pairs = SyntheticMaps.queries(size, QUERIES);
+    check();
+  }
+
+  @Benchmark
+  public Route route() {
+    int pair = next;
+    next = (next + 2) % pairs.length;
+    return queries.route(mode, pairs[pair], pairs[pair + 1]);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  public int[] search(Visits visits) {
+    int pair = next;
+    next = (next + 2) % pairs.length;
+    int[] path = findPath(mode, pairs[pair], pairs[pair + 1]);
+    visits.searches++;
+    visits.visited += context.visitedCount();
+    return path;
+  }
+
+  private int[] findPath(RouteMode mode, int start, int destination) {
+    context.reset();
+    switch (mode) {
+      case BREADTH_FIRST:
+        return BreadthFirstSearch.findPath(graph, context, start, destination);
+      case BIDIRECTIONAL:
+        return BidirectionalSearch.findPath(graph, context, start, destination);
+      case CHEAPEST:
+        return WeightedSearch.findPath(graph, context, start, destination, TaxHeuristic.NONE);
+      case CHEAPEST_A_STAR:
+        return WeightedSearch.findPath(graph, context, start, destination, destinationTax);
+      default:
+        throw new IllegalArgumentException("Unknown route mode: " + mode);
+    }
+  }
+
+  /** Checks that the mode finds the same routes as the plain search of its kind. */
+  private void check() {
+    for (int pair = 0; pair < 2 * CHECKED_PAIRS && pair < pairs.length; pair += 2) {
+      int start = pairs[pair];
+      int destination = pairs[pair + 1];
+      int[] path = findPath(mode, start, destination);
+      switch (mode) {
+        case BIDIRECTIONAL:
+          if (!Arrays.equals(path, findPath(RouteMode.BREADTH_FIRST, start, destination))) {
+            throw new IllegalStateException("Routes differ from " + start + " to " + destination);
+          }
+          break;
+        case CHEAPEST_A_STAR:
+          if (tax(path) != tax(findPath(RouteMode.CHEAPEST, start, destination))) {
+            throw new IllegalStateException("Taxes differ from " + start + " to " + destination);
+          }
+          break;
+        default:
+          break;
+      }
+    }
+  }
+
+  private int tax(int[] path) {
+    int total = 0;
+    for (int i = 1; i < path.length; i++) {
+      total += graph.taxes[path[i]];
+    }
+    return total;
+  }
+}
@@ -0,0 +1,94 @@
+package nz.ac.auckland.se281;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times "did you mean" suggestions for misspelt country names, and building the suggester.
+ *
+ * <p>The names are generated place names rather than the synthetic maps' {@code "Country <n>"},
+ * so that they differ in their spelling the way real names do. Each input is a name typed in lower
+ * case with one letter replaced, left out, doubled or swapped with the next.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = "-Xmx12g")
+public class SuggestBenchmark {
+  private static final int INPUTS = 4096;
+  private static final int SUGGESTIONS = 3;
+
+  @Param({"100", "10000", "100000", "1000000"})
+  private int size;
+
+  private String[] names;
+  private NameSuggester suggester;
+  private String[] inputs;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    names = SyntheticMaps.placeNames(size);
+    suggester = new NameSuggester(names);
+    int[] countries = SyntheticMaps.queries(size, INPUTS / 2);
+    Random random = new Random(size);
+    inputs = new String[INPUTS];
+    for (int i = 0; i < INPUTS; i++) {
+      inputs[i] = misspell(names[countries[i]].toLowerCase(Locale.ROOT), random);
+    }
+  }
+
+  private static String misspell(String name, Random random) {
+    StringBuilder typed = new StringBuilder(name);
+    int at = random.nextInt(name.length() - 1);
+    switch (random.nextInt(4)) {
+      case 0:
+        typed.setCharAt(at, (char) ('a' + random.nextInt(26)));
+        break;
+      case 1:
+        typed.deleteCharAt(at);
+        break;
+      case 2:
+        typed.insert(at, name.charAt(at));
+        break;
+      default:
+        typed.setCharAt(at, name.charAt(at + 1));
+        typed.setCharAt(at + 1, name.charAt(at));
+        break;
+    }
+    return typed.toString();
+  }
+
+  private String nextInput() {
+    String input = inputs[next];
+    next = (next + 1) % INPUTS;
+    return input;
+  }
+
+  @Benchmark
+  public List<String> suggest() {
+    return suggester.suggest(nextInput(), SUGGESTIONS);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public NameSuggester build() {
+    return new NameSuggester(names);
+  }
+}
@@ -0,0 +1,247 @@
+package nz.ac.auckland.se281;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generates synthetic maps for the benchmarks.
+ *
+ * <p>Every map is built from a fixed seed, so the same topology and size always give the same
+ * countries, borders and taxes. Countries are named {@code "Country <n>"} and all borders go both
+ * ways, like on the real map.
+ */
+final class SyntheticMaps {
+
+  /** The shapes of map the benchmarks run on. */
+  enum Topology {
+    /** A square grid where every country borders up to four others. */
+    GRID,
+    /** A Barabasi-Albert graph, with a few very well connected hub countries. */
+    SCALE_FREE,
+    /** Dense continents joined to each other by only a few borders. */
+    CLUSTERED
+  }
+
+  static final long SEED = 281;
+
+  private static final int MAX_TAX = 10;
+
+  // Pieces that place names are made of, so that their trigrams are spread like real names'.
+  private static final String[] ONSETS = {
+    "b", "br", "ch", "d", "dr", "f", "g", "gr", "h", "j", "k", "kh", "l", "m", "n", "p", "qu", "r",
+    "s", "sh", "st", "t", "th", "tr", "v", "w", "y", "z"
+  };
+  private static final String[] VOWELS = {"a", "e", "i", "o", "u", "ai", "ea", "ia", "ou"};
+  private static final String[] CODAS = {"", "", "", "n", "r", "s", "l", "nd", "st", "m", "k"};
+
+  private SyntheticMaps() {}
+
+  /**
+   * Generates a map.
+   *
+   * @param topology the shape of the map
+   * @param size the number of countries
+   * @return the map
+   */
+  static CountryGraph generate(Topology topology, int size) {
+    Random random = new Random(SEED ^ size);
+    GraphBuilder builder = new GraphBuilder();
+    switch (topology) {
+      case GRID:
+        grid(builder, size, random);
+        break;
+      case SCALE_FREE:
+        scaleFree(builder, size, random);
+        break;
+      case CLUSTERED:
+        clustered(builder, size, random);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown topology " + topology);
+    }
+    return builder.build();
+  }
+
+  private static void grid(GraphBuilder builder, int size, Random random) {
+    int width = (int) Math.ceil(Math.sqrt(size));
+    addCountries(builder, size, 7, random);
+    for (int i = 0; i < size; i++) {
+      // Only link right and down, the reverse border is added at the same time.
+      if ((i + 1) % width != 0 && i + 1 < size) {
+        addBorder(builder, i, i + 1);
+      }
+      if (i + width < size) {
+        addBorder(builder, i, i + width);
+      }
+    }
+  }
+
+  private static void scaleFree(GraphBuilder builder, int size, Random random) {
+    int links = 2;
+    addCountries(builder, size, 7, random);
+
+    // Each border appears twice in this list, once per end, so picking a random entry picks a
+    // country with probability proportional to its degree.
+    int[] ends = new int[2 * links * size];
+    int endCount = 0;
+    for (int i = 1; i < size; i++) {
+      int first = -1;
+      for (int link = 0; link < Math.min(links, i); link++) {
+        int neighbour;
+        do {
+          neighbour = endCount == 0 ? 0 : ends[random.nextInt(endCount)];
+        } while (neighbour == first);
+        first = neighbour;
+        addBorder(builder, i, neighbour);
+        ends[endCount++] = i;
+        ends[endCount++] = neighbour;
+      }
+    }
+  }
+
+  private static void clustered(GraphBuilder builder, int size, Random random) {
+    int continents = Math.max(2, (int) Math.sqrt(size) / 10);
+    int continentSize = (size + continents - 1) / continents;
+    for (int i = 0; i < size; i++) {
+      builder.addCountry("Country " + i, "Continent " + (i / continentSize), tax(random));
+    }
+
+    for (int i = 0; i < size; i++) {
+      int first = (i / continentSize) * continentSize;
+      int last = Math.min(size, first + continentSize) - 1;
+      // A ring inside the continent, plus a chord to a random country of the same continent.
+      if (i < last) {
+        addBorder(builder, i, i + 1);
+      } else if (last > first + 1) {
+        addBorder(builder, i, first);
+      }
+      int chord = first + random.nextInt(last - first + 1);
+      boolean ring = Math.abs(chord - i) <= 1 || Math.abs(chord - i) == last - first;
+      if (!ring) {
+        addBorder(builder, i, chord);
+      }
+    }
+
+    // Chain the continents together with a couple of borders between neighbouring continents.
+    for (int start = continentSize; start < size; start += continentSize) {
+      int previous = start - continentSize;
+      for (int link = 0; link < 2; link++) {
+        addBorder(
+            builder,
+            previous + random.nextInt(continentSize),
+            start + random.nextInt(Math.min(continentSize, size - start)));
+      }
+    }
+  }
+
+  private static void addCountries(GraphBuilder builder, int size, int continents, Random random) {
+    for (int i = 0; i < size; i++) {
+      builder.addCountry("Country " + i, "Continent " + (i % continents), tax(random));
+    }
+  }
+
+  private static int tax(Random random) {
+    return 1 + random.nextInt(MAX_TAX);
+  }
+
+  private static void addBorder(GraphBuilder builder, int from, int to) {
+    builder.addBorder(from, to);
+    builder.addBorder(to, from);
+  }
+
+  /**
+   * Writes a map in the formats the loader expects.
+   *
+   * @param graph the map to write
+   * @param countries the countries file to write
+   * @param adjacencies the adjacencies file to write
+   * @throws IOException if a file cannot be written
+   */
+  static void writeCsv(CountryGraph graph, Path countries, Path adjacencies) throws IOException {
+    try (BufferedWriter writer = Files.newBufferedWriter(countries)) {
+      for (int i = 0; i < graph.size(); i++) {
+        writer.write(graph.names[i]);
+        writer.write(',');
+        writer.write(graph.continentNames[graph.continentIds[i]]);
+        writer.write(',');
+        writer.write(Integer.toString(graph.taxes[i]));
+        writer.newLine();
+      }
+    }
+    try (BufferedWriter writer = Files.newBufferedWriter(adjacencies)) {
+      for (int i = 0; i < graph.size(); i++) {
+        writer.write(graph.names[i]);
+        for (int j = graph.offsets[i]; j < graph.offsets[i + 1]; j++) {
+          writer.write(',');
+          writer.write(graph.names[graph.neighbours[j]]);
+        }
+        writer.newLine();
+      }
+    }
+  }
+
+  /**
+   * Generates distinct, pronounceable place names such as "Trousten" or "Vai Meskor".
+   *
+   * <p>The benchmarks' maps name their countries {@code "Country <n>"}, which share almost all
+   * their letters and so are no test of searching names by spelling.
+   *
+   * @param count the number of names
+   * @return the names
+   */
+  static String[] placeNames(int count) {
+    Random random = new Random(SEED ^ count);
+    Set<String> seen = new HashSet<>();
+    String[] names = new String[count];
+    int i = 0;
+    while (i < count) {
+      String name = placeWord(random);
+      if (random.nextInt(3) == 0) {
+        name += " " + placeWord(random);
+      }
+      if (seen.add(name)) {
+        names[i++] = name;
+      }
+    }
+    return names;
+  }
+
+  private static String placeWord(Random random) {
+    StringBuilder word = new StringBuilder();
+    int syllables = 1 + random.nextInt(3);
+    for (int i = 0; i < syllables; i++) {
+      word.append(ONSETS[random.nextInt(ONSETS.length)]);
+      word.append(VOWELS[random.nextInt(VOWELS.length)]);
+      word.append(CODAS[random.nextInt(CODAS.length)]);
+    }
+    word.setCharAt(0, Character.toUpperCase(word.charAt(0)));
+    return word.toString();
+  }
+
+  /**
+   * Picks random pairs of different countries to route between.
+   *
+   * @param size the number of countries on the map
+   * @param count the number of pairs
+   * @return the pairs, as start and destination IDs one after the other
+   */
+  static int[] queries(int size, int count) {
+    Random random = new Random(SEED);
+    int[] queries = new int[2 * count];
+    for (int i = 0; i < count; i++) {
+      int start = random.nextInt(size);
+      int destination;
+      do {
+        destination = random.nextInt(size);
+      } while (destination == start && size > 1);
+      queries[2 * i] = start;
+      queries[2 * i + 1] = destination;
+    }
+    return queries;
+  }
+}
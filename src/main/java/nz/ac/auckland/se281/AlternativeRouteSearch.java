@@ -0,0 +1,441 @@
+package nz.ac.auckland.se281;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The shortest few loopless routes between two countries, ranked by borders crossed or by total
+ * tax, found with Yen's algorithm.
+ *
+ * <p>Each route after the first leaves an earlier one at some country, the spur, and takes the
+ * cheapest way on from there that avoids the countries before the spur and the borders the
+ * earlier routes with the same beginning took out of it. Only the spurs from where a route left
+ * its own parent on are tried (Lawler's refinement), since the ones before it were tried for the
+ * parent.
+ *
+ * <p>One route needs a search per spur, so the searches are kept small:
+ *
+ * <ul>
+ *   <li>One backward search from the destination gives the exact cost to it from every country
+ *       near the routes, which every spur search uses as its A* heuristic. Blocking countries and
+ *       borders only makes routes dearer, so it stays a lower bound.
+ *   <li>The backward search also leaves the cheapest way to the destination from each of those
+ *       countries. A spur search stops at the first country whose way on is still open, since
+ *       its cost is then exactly the lower bound and nothing else can be cheaper. Usually that
+ *       is one of the spur's neighbours.
+ *   <li>Only the best routes still needed are kept as candidates. Once there are enough of them, a
+ *       spur whose cost so far plus lower bound is not below the last of them is skipped without
+ *       searching, and a spur search drops every country that cannot beat it.
+ *   <li>All the searches share the caller's scratch space and start afresh with a reset, and the
+ *       countries before the spur are blocked with marks that the next reset clears.
+ * </ul>
+ *
+ * <p>Routes of the same cost are ranked in the order they were found, so the first route is
+ * always the one passed in, e.g. the one the route command prints.
+ */
+class AlternativeRouteSearch {
+  private final CountryGraph graph;
+  private final SearchContext context;
+  private final boolean byTax;
+  private final int destination;
+  private final int count;
+
+  // The routes found so far, cheapest first.
+  private final List<int[]> paths = new ArrayList<>();
+  // The best routes not taken yet, cheapest first and at most as many as are still needed.
+  private final List<Candidate> candidates = new ArrayList<>();
+
+  // Lower bounds on the cost to the destination: exact below the radius for countries visited by
+  // the backward search in its generation, and the radius for every other country.
+  private int boundGeneration;
+  private int radius;
+
+  private AlternativeRouteSearch(
+      CountryGraph graph, SearchContext context, boolean byTax, int destination, int count) {
+    this.graph = graph;
+    this.context = context;
+    this.byTax = byTax;
+    this.destination = destination;
+    this.count = count;
+  }
+
+  /**
+   * Finds the shortest loopless routes between two countries.
+   *
+   * @param graph the graph to search
+   * @param context reset scratch space big enough for the graph
+   * @param shortest the IDs of the countries on a shortest route, which is the first route
+   *     returned, or an empty array if there is no route
+   * @param count the most routes to find
+   * @param byTax whether routes cost their total tax rather than their number of borders
+   * @return the IDs of the countries on each route, in order of cost
+   */
+  static List<int[]> findPaths(
+      CountryGraph graph, SearchContext context, int[] shortest, int count, boolean byTax) {
+    if (shortest.length == 0 || count <= 0) {
+      return new ArrayList<>();
+    }
+    AlternativeRouteSearch search =
+        new AlternativeRouteSearch(graph, context, byTax, shortest[shortest.length - 1], count);
+    search.run(shortest);
+    return search.paths;
+  }
+
+  private void run(int[] shortest) {
+    paths.add(shortest);
+    if (count == 1 || shortest.length == 1) {
+      return;
+    }
+    context.ensureAlternatives();
+    if (byTax) {
+      searchBackwardByTax(cost(shortest, shortest.length - 1));
+    } else {
+      searchBackwardByBorders(shortest.length - 1);
+    }
+    boundGeneration = context.generation();
+
+    int[] path = shortest;
+    int deviation = 0;
+    while (paths.size() < count) {
+      searchSpurs(path, deviation);
+      if (candidates.isEmpty()) {
+        break;
+      }
+      Candidate next = candidates.remove(0);
+      paths.add(next.path);
+      path = next.path;
+      deviation = next.deviation;
+    }
+  }
+
+  /**
+   * Finds the number of borders to the destination from the countries around it, with a
+   * breadth-first search over the borders in reverse.
+   *
+   * <p>The search goes as far from the destination as the start is, which covers the countries
+   * the alternative routes mostly go through.
+   *
+   * @param shortestCost the number of borders on a shortest route from the start
+   */
+  private void searchBackwardByBorders(int shortestCost) {
+    int[] reverseOffsets = graph.reverseOffsets;
+    int[] reverseNeighbours = graph.reverseNeighbours;
+    int[] remaining = context.backDistance;
+    int[] towards = context.backParent;
+    int[] queue = context.backQueue;
+    int head = 0;
+    int tail = 0;
+
+    queue[tail++] = destination;
+    context.visitBackward(destination);
+    remaining[destination] = 0;
+    while (head < tail && remaining[queue[head]] <= shortestCost) {
+      int country = queue[head++];
+      for (int i = reverseOffsets[country]; i < reverseOffsets[country + 1]; i++) {
+        int previous = reverseNeighbours[i];
+        if (context.visitBackward(previous)) {
+          remaining[previous] = remaining[country] + 1;
+          towards[previous] = country;
+          queue[tail++] = previous;
+        }
+      }
+    }
+    // Nothing left to expand means the countries not reached cannot reach the destination.
+    radius = head == tail ? Integer.MAX_VALUE : remaining[queue[head]];
+  }
+
+  /**
+   * Finds the tax to the destination from the countries around it, with Dijkstra's algorithm
+   * over the borders in reverse.
+   *
+   * <p>The search settles every country that costs no more than the start, which covers the
+   * countries the alternative routes mostly go through.
+   *
+   * @param shortestCost the tax of a cheapest route from the start
+   */
+  private void searchBackwardByTax(int shortestCost) {
+    int[] reverseOffsets = graph.reverseOffsets;
+    int[] reverseNeighbours = graph.reverseNeighbours;
+    int[] taxes = graph.taxes;
+    int[] remaining = context.backDistance;
+    int[] towards = context.backParent;
+    IndexedMinHeap heap = context.heap;
+
+    context.visitBackward(destination);
+    remaining[destination] = 0;
+    heap.pushOrDecrease(destination, 0);
+    while (!heap.isEmpty() && heap.peekKey() <= shortestCost) {
+      int country = heap.poll();
+      int through = remaining[country] + taxes[country];
+      for (int i = reverseOffsets[country]; i < reverseOffsets[country + 1]; i++) {
+        int previous = reverseNeighbours[i];
+        if (context.visitBackward(previous) || through < remaining[previous]) {
+          remaining[previous] = through;
+          towards[previous] = country;
+          heap.pushOrDecrease(previous, through);
+        }
+      }
+    }
+    // Nothing left to settle means the countries not reached cannot reach the destination.
+    radius = heap.isEmpty() ? Integer.MAX_VALUE : heap.peekKey();
+    heap.clear();
+  }
+
+  /**
+   * Tries every spur of a route from where it left its parent, adding the routes found to the
+   * candidates.
+   *
+   * @param path the IDs of the countries on the route
+   * @param deviation the index of the country where the route left its parent
+   */
+  private void searchSpurs(int[] path, int deviation) {
+    // How far each route found so far runs alongside this one, which tells whose borders to block.
+    int[] shared = new int[paths.size()];
+    for (int p = 0; p < shared.length; p++) {
+      int[] other = paths.get(p);
+      int length = Math.min(other.length, path.length);
+      int i = 0;
+      while (i < length && other[i] == path[i]) {
+        i++;
+      }
+      shared[p] = i;
+    }
+
+    int[] blocked = new int[paths.size()];
+    int rootCost = cost(path, deviation);
+    for (int spur = deviation; spur < path.length - 1; spur++) {
+      if (spur > deviation) {
+        rootCost += weight(path[spur]);
+      }
+      int needed = count - paths.size();
+      int limit = candidates.size() < needed ? Integer.MAX_VALUE : candidates.get(needed - 1).cost;
+      int bound = remaining(path[spur]);
+      if (bound == Integer.MAX_VALUE || (long) rootCost + bound >= limit) {
+        continue;
+      }
+
+      int blockedCount = 0;
+      for (int p = 0; p < shared.length; p++) {
+        if (shared[p] > spur) {
+          blocked[blockedCount++] = paths.get(p)[spur + 1];
+        }
+      }
+      int[] spurPath = searchSpur(path, spur, rootCost, blocked, blockedCount, limit);
+      if (spurPath.length > 0) {
+        int[] candidate = Arrays.copyOf(path, spur + spurPath.length);
+        System.arraycopy(spurPath, 0, candidate, spur, spurPath.length);
+        offer(candidate, cost(candidate, candidate.length - 1), spur);
+      }
+    }
+  }
+
+  /**
+   * Finds the cheapest way on from a spur with A*, avoiding the countries before it and the
+   * blocked borders out of it.
+   *
+   * @param path the route being branched off
+   * @param spur the index of the spur country on the route
+   * @param rootCost the cost of the route up to the spur
+   * @param blocked the countries the spur may not cross into
+   * @param blockedCount the number of blocked countries
+   * @param limit the cost a route must be below to be kept
+   * @return the IDs of the countries from the spur to the destination, or an empty array if no
+   *     route below the limit was found
+   */
+  private int[] searchSpur(
+      int[] path, int spur, int rootCost, int[] blocked, int blockedCount, int limit) {
+    context.reset();
+    if (context.generation() < boundGeneration) {
+      // The stamps wrapped around and the bounds were wiped; carry on without them.
+      radius = 0;
+    }
+    for (int i = 0; i < spur; i++) {
+      context.mark(path[i]);
+    }
+
+    int[] offsets = graph.offsets;
+    int[] neighbours = graph.neighbours;
+    int[] cost = context.distance;
+    int[] parent = context.parent;
+    IndexedMinHeap heap = context.heap;
+    int spurCountry = path[spur];
+
+    context.visit(spurCountry);
+    cost[spurCountry] = rootCost;
+    parent[spurCountry] = spurCountry;
+    heap.pushOrDecrease(spurCountry, rootCost + remaining(spurCountry));
+
+    while (!heap.isEmpty()) {
+      int country = heap.poll();
+      if (country == destination) {
+        heap.clear();
+        return BreadthFirstSearch.buildPath(parent, spurCountry, destination);
+      }
+      if (finishesAlongBounds(country, spurCountry, blocked, blockedCount)) {
+        // Nothing left in the heap can beat the cost this route is known to have.
+        heap.clear();
+        return finishAlongBounds(country, spurCountry);
+      }
+
+      for (int i = offsets[country]; i < offsets[country + 1]; i++) {
+        int next = neighbours[i];
+        if (context.isMarked(next)
+            || (country == spurCountry && contains(blocked, blockedCount, next))) {
+          continue;
+        }
+        int bound = remaining(next);
+        int nextCost = cost[country] + weight(next);
+        if (bound == Integer.MAX_VALUE || (long) nextCost + bound >= limit) {
+          continue;
+        }
+        if (context.visit(next) || nextCost < cost[next]) {
+          cost[next] = nextCost;
+          parent[next] = country;
+          heap.pushOrDecrease(next, nextCost + bound);
+        }
+      }
+      context.noteQueued(heap.size());
+    }
+    return BreadthFirstSearch.NO_PATH;
+  }
+
+  /**
+   * Checks whether the cheapest way on from a country that the backward search found can finish
+   * the route the spur search reached it by, which is then a cheapest way on from the spur.
+   *
+   * <p>It can if the cost it was found with is exact and it neither goes back through the route
+   * so far, nor through the countries before the spur, nor over a blocked border.
+   *
+   * @param country the ID of the country just taken off the heap
+   * @param spurCountry the ID of the spur country
+   * @param blocked the countries the spur may not cross into
+   * @param blockedCount the number of blocked countries
+   * @return true if the route can be finished that way
+   */
+  private boolean finishesAlongBounds(
+      int country, int spurCountry, int[] blocked, int blockedCount) {
+    int[] towards = context.backParent;
+    if (!context.wasVisitedBackward(country, boundGeneration)
+        || (radius != Integer.MAX_VALUE && context.backDistance[country] >= radius)
+        || (country == spurCountry && contains(blocked, blockedCount, towards[country]))) {
+      return false;
+    }
+
+    int[] parent = context.parent;
+    for (int on = country; on != spurCountry; on = parent[on]) {
+      context.mark(on);
+    }
+    context.mark(spurCountry);
+    boolean clear = true;
+    for (int on = towards[country]; on != destination; on = towards[on]) {
+      if (context.isMarked(on)) {
+        clear = false;
+        break;
+      }
+    }
+    for (int on = country; on != spurCountry; on = parent[on]) {
+      context.unmark(on);
+    }
+    context.unmark(spurCountry);
+    return clear;
+  }
+
+  /**
+   * Builds the way on from a spur through a country, followed back to the spur and then on to the
+   * destination the way the backward search found.
+   *
+   * @param country the ID of the country the two parts meet at
+   * @param spurCountry the ID of the spur country
+   * @return the IDs of the countries from the spur to the destination
+   */
+  private int[] finishAlongBounds(int country, int spurCountry) {
+    int[] towards = context.backParent;
+    int[] start = BreadthFirstSearch.buildPath(context.parent, spurCountry, country);
+    int length = start.length;
+    for (int on = country; on != destination; on = towards[on]) {
+      length++;
+    }
+    int[] way = Arrays.copyOf(start, length);
+    for (int i = start.length, on = country; i < length; i++) {
+      on = towards[on];
+      way[i] = on;
+    }
+    return way;
+  }
+
+  /**
+   * Adds a route to the candidates unless it is already there, keeping only as many as are still
+   * needed.
+   *
+   * @param path the IDs of the countries on the route
+   * @param cost the cost of the route
+   * @param deviation the index of the country where the route leaves the one it was found from
+   */
+  private void offer(int[] path, int cost, int deviation) {
+    int at = candidates.size();
+    while (at > 0 && candidates.get(at - 1).cost > cost) {
+      at--;
+    }
+    for (int i = at - 1; i >= 0 && candidates.get(i).cost == cost; i--) {
+      if (Arrays.equals(candidates.get(i).path, path)) {
+        return;
+      }
+    }
+    candidates.add(at, new Candidate(path, cost, deviation));
+    int needed = count - paths.size();
+    while (candidates.size() > needed) {
+      candidates.remove(candidates.size() - 1);
+    }
+  }
+
+  /**
+   * Returns a lower bound on the cost from a country to the destination.
+   *
+   * @param country the ID of the country
+   * @return the bound, or {@link Integer#MAX_VALUE} if the destination cannot be reached
+   */
+  private int remaining(int country) {
+    if (context.wasVisitedBackward(country, boundGeneration)) {
+      return Math.min(context.backDistance[country], radius);
+    }
+    return radius;
+  }
+
+  /** The cost of crossing into a country. */
+  private int weight(int country) {
+    return byTax ? graph.taxes[country] : 1;
+  }
+
+  /** The cost of a route up to and including the country at an index. */
+  private int cost(int[] path, int end) {
+    int total = 0;
+    for (int i = 1; i <= end; i++) {
+      total += weight(path[i]);
+    }
+    return total;
+  }
+
+  private static boolean contains(int[] countries, int length, int country) {
+    for (int i = 0; i < length; i++) {
+      if (countries[i] == country) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** A route that may be taken next. */
+  private static final class Candidate {
+    final int[] path;
+    final int cost;
+    // Where the route leaves the one it was found from; its spurs are tried from here on.
+    final int deviation;
+
+    Candidate(int[] path, int cost, int deviation) {
+      this.path = path;
+      this.cost = cost;
+      this.deviation = deviation;
+    }
+  }
+}
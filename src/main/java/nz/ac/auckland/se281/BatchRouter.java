@@ -0,0 +1,127 @@
+package nz.ac.auckland.se281;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.stream.IntStream;
+
+/**
+ * Answers many route queries at once, reading "source,destination" lines and writing the same
+ * messages the route command prints.
+ *
+ * <p>Lines are read in blocks. The routes of a block are found in parallel on the common
+ * fork-join pool, then written out in input order before the next block is read, so memory stays
+ * bounded however long the input is. Messages are assembled directly from the {@link MessageCli}
+ * templates instead of going through {@link MessageCli#getMessage}, which runs a regular
+ * expression per argument.
+ */
+class BatchRouter {
+  private static final int BLOCK_SIZE = 1 << 14;
+  private static final String NEW_LINE = System.lineSeparator();
+
+  private final MapQueries queries;
+  private final RouteMode mode;
+
+  /**
+   * Creates a batch router over a loaded map.
+   *
+   * @param queries the map to answer queries on
+   * @param mode the search to find routes with
+   */
+  BatchRouter(MapQueries queries, RouteMode mode) {
+    this.queries = queries;
+    this.mode = mode;
+  }
+
+  /**
+   * Answers every query in the input.
+   *
+   * @param in lines of "source,destination"; blank lines are skipped
+   * @param out where to write the answers, which should be buffered
+   * @return the number of queries answered
+   * @throws IOException if reading or writing fails
+   */
+  long run(BufferedReader in, Writer out) throws IOException {
+    String[] queries = new String[BLOCK_SIZE];
+    String[] answers = new String[BLOCK_SIZE];
+    long answered = 0;
+
+    while (true) {
+      int count = 0;
+      String line;
+      while (count < BLOCK_SIZE && (line = in.readLine()) != null) {
+        if (!line.isBlank()) {
+          queries[count++] = line;
+        }
+      }
+      if (count == 0) {
+        break;
+      }
+
+      IntStream.range(0, count).parallel().forEach(i -> answers[i] = answer(queries[i]));
+      for (int i = 0; i < count; i++) {
+        out.write(answers[i]);
+      }
+      answered += count;
+    }
+    out.flush();
+    return answered;
+  }
+
+  /**
+   * Answers one query with the lines the route command would print.
+   *
+   * @param query a "source,destination" line
+   * @return the answer, ending with a line separator
+   */
+  String answer(String query) {
+    int comma = query.indexOf(',');
+    if (comma < 0) {
+      return MessageCli.WRONG_ARGUMENT_COUNT.getMessage("2", "s", Main.Command.ROUTE.toString())
+          + NEW_LINE;
+    }
+
+    String sourceName = query.substring(0, comma);
+    String destinationName = query.substring(comma + 1);
+    int source = queries.lookupCountry(sourceName);
+    if (source < 0) {
+      return format(MessageCli.INVALID_COUNTRY, Utils.capitalizeFirstLetterOfEachWord(sourceName));
+    }
+    int destination = queries.lookupCountry(destinationName);
+    if (destination < 0) {
+      return format(
+          MessageCli.INVALID_COUNTRY, Utils.capitalizeFirstLetterOfEachWord(destinationName));
+    }
+    if (source == destination) {
+      return MessageCli.NO_CROSSBORDER_TRAVEL + NEW_LINE;
+    }
+
+    Route route = queries.route(mode, source, destination);
+    if (route.isEmpty()) {
+      return "No path found from "
+          + queries.countryName(source)
+          + " to "
+          + queries.countryName(destination)
+          + NEW_LINE;
+    }
+    return format(MessageCli.ROUTE_INFO, "[" + String.join(", ", route.getCountries()) + "]")
+        + format(MessageCli.CONTINENT_INFO, "[" + String.join(", ", route.getContinents()) + "]")
+        + format(MessageCli.TAX_INFO, Integer.toString(route.getTax()));
+  }
+
+  /**
+   * Fills in a single-argument message template.
+   *
+   * @param message the template
+   * @param argument the value for its placeholder
+   * @return the message, ending with a line separator
+   */
+  private static String format(MessageCli message, String argument) {
+    String template = message.toString();
+    int placeholder = template.indexOf("%s");
+    return template.substring(0, placeholder)
+        + argument
+        + template.substring(placeholder + 2)
+        + NEW_LINE;
+  }
+}
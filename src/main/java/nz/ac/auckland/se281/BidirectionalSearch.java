@@ -0,0 +1,182 @@
+package nz.ac.auckland.se281;
+
+/**
+ * Hop-count shortest path search that expands from both ends and meets in the middle.
+ *
+ * <p>The search runs in two phases. First it grows one breadth-first layer at a time from
+ * whichever end has the smaller frontier, until the two searches meet and the length of the
+ * shortest path is known. Then it marks the countries that lie on some shortest path, using the
+ * distances already found, and replays the forward breadth-first search over only those countries.
+ * The replay visits them in the same order as {@link BreadthFirstSearch} would, so both searches
+ * return the same path when there is a tie.
+ */
+class BidirectionalSearch {
+
+  private BidirectionalSearch() {}
+
+  /**
+   * Finds the shortest path between two countries.
+   *
+   * @param graph the graph to search
+   * @param context reset scratch space big enough for the graph
+   * @param start the ID of the start country
+   * @param destination the ID of the destination country
+   * @return the IDs of the countries on the path, or an empty array if there is no path
+   */
+  static int[] findPath(CountryGraph graph, SearchContext context, int start, int destination) {
+    if (start == destination) {
+      return new int[] {start};
+    }
+    context.ensureBidirectional();
+
+    int[] offsets = graph.offsets;
+    int[] neighbours = graph.neighbours;
+    int[] reverseOffsets = graph.reverseOffsets;
+    int[] reverseNeighbours = graph.reverseNeighbours;
+
+    int[] queue = context.queue;
+    int[] backQueue = context.backQueue;
+    int[] distance = context.distance;
+    int[] backDistance = context.backDistance;
+
+    int head = 0;
+    int tail = 0;
+    int backHead = 0;
+    int backTail = 0;
+    int depth = 0;
+    int backDepth = 0;
+
+    queue[tail++] = start;
+    context.visit(start);
+    distance[start] = 0;
+    backQueue[backTail++] = destination;
+    context.visitBackward(destination);
+    backDistance[destination] = 0;
+
+    // Phase 1: grow whole layers until the searches meet. Finishing the layer in which they first
+    // meet guarantees that the best meeting point found gives the true shortest length.
+    int length = Integer.MAX_VALUE;
+    while (length == Integer.MAX_VALUE) {
+      if (head == tail || backHead == backTail) {
+        return BreadthFirstSearch.NO_PATH;
+      }
+      context.noteQueued(tail - head + backTail - backHead);
+
+      if (tail - head <= backTail - backHead) {
+        int layerEnd = tail;
+        depth++;
+        while (head < layerEnd) {
+          int country = queue[head++];
+          for (int i = offsets[country]; i < offsets[country + 1]; i++) {
+            int neighbour = neighbours[i];
+            if (context.visit(neighbour)) {
+              distance[neighbour] = depth;
+              queue[tail++] = neighbour;
+              if (context.isVisitedBackward(neighbour)) {
+                length = Math.min(length, depth + backDistance[neighbour]);
+              }
+            }
+          }
+        }
+      } else {
+        int layerEnd = backTail;
+        backDepth++;
+        while (backHead < layerEnd) {
+          int country = backQueue[backHead++];
+          for (int i = reverseOffsets[country]; i < reverseOffsets[country + 1]; i++) {
+            int neighbour = reverseNeighbours[i];
+            if (context.visitBackward(neighbour)) {
+              backDistance[neighbour] = backDepth;
+              backQueue[backTail++] = neighbour;
+              if (context.isVisited(neighbour)) {
+                length = Math.min(length, distance[neighbour] + backDepth);
+              }
+            }
+          }
+        }
+      }
+    }
+
+    // Phase 2: mark every country on a shortest path. Forward distances are complete up to
+    // 'depth' and backward distances up to 'backDepth', so start from a pivot layer where both
+    // are known and spread out from it in each direction. The backward queue is reused to hold
+    // the marked countries, one layer after another.
+    int pivot = Math.min(depth, length);
+    int[] marked = backQueue;
+    int markedCount = 0;
+    for (int i = 0; i < tail; i++) {
+      int country = queue[i];
+      if (distance[country] == pivot
+          && context.isVisitedBackward(country)
+          && backDistance[country] == length - pivot
+          && context.mark(country)) {
+        marked[markedCount++] = country;
+      }
+    }
+    int pivotEnd = markedCount;
+
+    // Towards the start: predecessors one layer closer to the start.
+    int layerStart = 0;
+    int layerEnd = pivotEnd;
+    for (int layer = pivot - 1; layer >= 0; layer--) {
+      for (int j = layerStart; j < layerEnd; j++) {
+        int country = marked[j];
+        for (int i = reverseOffsets[country]; i < reverseOffsets[country + 1]; i++) {
+          int previous = reverseNeighbours[i];
+          if (context.isVisited(previous)
+              && distance[previous] == layer
+              && context.mark(previous)) {
+            marked[markedCount++] = previous;
+          }
+        }
+      }
+      layerStart = layerEnd;
+      layerEnd = markedCount;
+    }
+
+    // Towards the destination: successors one layer closer to the destination.
+    layerStart = 0;
+    layerEnd = pivotEnd;
+    for (int layer = pivot; layer < length; layer++) {
+      int remaining = length - layer - 1;
+      int nextLayerStart = markedCount;
+      for (int j = layerStart; j < layerEnd; j++) {
+        int country = marked[j];
+        for (int i = offsets[country]; i < offsets[country + 1]; i++) {
+          int next = neighbours[i];
+          if (context.isVisitedBackward(next)
+              && backDistance[next] == remaining
+              && context.mark(next)) {
+            marked[markedCount++] = next;
+          }
+        }
+      }
+      // The first layer added here comes after the countries added by the pass towards the start.
+      layerStart = nextLayerStart;
+      layerEnd = markedCount;
+    }
+
+    // Phase 3: replay the forward breadth-first search over the marked countries only. Each one
+    // is unmarked as it is queued, so the mark doubles as the visited flag.
+    int[] parent = context.parent;
+    head = 0;
+    tail = 0;
+    queue[tail++] = start;
+    context.unmark(start);
+    parent[start] = start;
+    while (head < tail) {
+      int country = queue[head++];
+      if (country == destination) {
+        return BreadthFirstSearch.buildPath(parent, start, destination);
+      }
+      for (int i = offsets[country]; i < offsets[country + 1]; i++) {
+        int next = neighbours[i];
+        if (context.unmark(next)) {
+          queue[tail++] = next;
+          parent[next] = country;
+        }
+      }
+    }
+    return BreadthFirstSearch.NO_PATH;
+  }
+}
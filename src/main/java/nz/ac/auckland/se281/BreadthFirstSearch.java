@@ -0,0 +1,82 @@
+package nz.ac.auckland.se281;
+
+/**
+ * Hop-count shortest path search over a {@link CountryGraph}.
+ *
+ * <p>Neighbours are visited in the order they appear in the adjacencies file, so when several
+ * paths have the same length the one discovered first wins. Every other search that has to print
+ * the same route as this one follows the same rule.
+ */
+class BreadthFirstSearch {
+  // Shared result for searches that do not reach the destination.
+  static final int[] NO_PATH = new int[0];
+
+  private BreadthFirstSearch() {}
+
+  /**
+   * Finds the shortest path between two countries.
+   *
+   * @param graph the graph to search
+   * @param context reset scratch space big enough for the graph
+   * @param start the ID of the start country
+   * @param destination the ID of the destination country
+   * @return the IDs of the countries on the path, or an empty array if there is no path
+   */
+  static int[] findPath(CountryGraph graph, SearchContext context, int start, int destination) {
+    int[] offsets = graph.offsets;
+    int[] neighbours = graph.neighbours;
+
+    int[] queue = context.queue;
+    // parent[id] is the ID of the country we reached 'id' from, valid once 'id' is visited.
+    int[] parent = context.parent;
+    int head = 0;
+    int tail = 0;
+
+    queue[tail++] = start;
+    context.visit(start);
+    parent[start] = start;
+
+    while (head < tail) {
+      int currentCountry = queue[head++];
+      if (currentCountry == destination) {
+        return buildPath(parent, start, destination);
+      }
+
+      for (int i = offsets[currentCountry]; i < offsets[currentCountry + 1]; i++) {
+        int neighbour = neighbours[i];
+        if (context.visit(neighbour)) {
+          queue[tail++] = neighbour;
+          parent[neighbour] = currentCountry;
+        }
+      }
+      context.noteQueued(tail - head);
+    }
+    return NO_PATH;
+  }
+
+  /**
+   * Follows the parent links back from the destination to build the path.
+   *
+   * <p>The path is measured first so that it can be filled in from the back into an array of the
+   * right size.
+   *
+   * @param parent the parent of every visited country
+   * @param start the ID of the start country
+   * @param destination the ID of the destination country
+   * @return the IDs of the countries on the path, from start to destination
+   */
+  static int[] buildPath(int[] parent, int start, int destination) {
+    int length = 1;
+    for (int country = destination; country != start; country = parent[country]) {
+      length++;
+    }
+
+    int[] path = new int[length];
+    int country = destination;
+    for (int i = length - 1; i >= 0; i--) {
+      path[i] = country;
+      country = parent[country];
+    }
+    return path;
+  }
+}
@@ -0,0 +1,92 @@
+package nz.ac.auckland.se281;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Open-addressing hash table from UTF-8 encoded names to IDs.
+ *
+ * <p>Lookups take a range of a byte buffer, so a name read from a file can be resolved without
+ * first decoding it into a String.
+ */
+class ByteNameTable {
+  private byte[][] keys = new byte[16][];
+  private int[] values = new int[16];
+  private int size;
+
+  /**
+   * Looks up the ID of the name stored in {@code buffer[start, end)}.
+   *
+   * @param buffer the buffer holding the name
+   * @param start the index of the first byte of the name
+   * @param end the index after the last byte of the name
+   * @return the ID, or -1 if the name is not in the table
+   */
+  int get(ByteBuffer buffer, int start, int end) {
+    int mask = keys.length - 1;
+    for (int slot = hash(buffer, start, end) & mask; ; slot = (slot + 1) & mask) {
+      byte[] key = keys[slot];
+      if (key == null) {
+        return -1;
+      }
+      if (matches(key, buffer, start, end)) {
+        return values[slot];
+      }
+    }
+  }
+
+  /**
+   * Adds a name that is not in the table yet.
+   *
+   * @param name the UTF-8 bytes of the name, which the table keeps
+   * @param id the ID of the name
+   */
+  void put(byte[] name, int id) {
+    if ((size + 1) * 2 > keys.length) {
+      grow();
+    }
+    insert(name, id);
+    size++;
+  }
+
+  private void insert(byte[] name, int id) {
+    int mask = keys.length - 1;
+    int slot = hash(ByteBuffer.wrap(name), 0, name.length) & mask;
+    while (keys[slot] != null) {
+      slot = (slot + 1) & mask;
+    }
+    keys[slot] = name;
+    values[slot] = id;
+  }
+
+  private void grow() {
+    byte[][] oldKeys = keys;
+    int[] oldValues = values;
+    keys = new byte[oldKeys.length * 2][];
+    values = new int[oldKeys.length * 2];
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != null) {
+        insert(oldKeys[i], oldValues[i]);
+      }
+    }
+  }
+
+  private static boolean matches(byte[] key, ByteBuffer buffer, int start, int end) {
+    if (key.length != end - start) {
+      return false;
+    }
+    for (int i = 0; i < key.length; i++) {
+      if (key[i] != buffer.get(start + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int hash(ByteBuffer buffer, int start, int end) {
+    int hash = 0x811C9DC5;
+    for (int i = start; i < end; i++) {
+      hash = (hash ^ buffer.get(i)) * 0x01000193;
+    }
+    return hash ^ (hash >>> 16);
+  }
+}
@@ -0,0 +1,286 @@
+package nz.ac.auckland.se281;
+
+/**
+ * Route searches that skip avoided countries and continents and stay within a border or tax
+ * budget, without copying the graph.
+ *
+ * <p>Each country is tested against the avoided countries bitset of the {@link RouteConstraints} as
+ * it is reached, so a search that only avoids countries, or whose budget is in what it minimises,
+ * costs about the same as a plain breadth-first search or Dijkstra. A budget in the other measure,
+ * e.g. the fewest borders for at most so much tax, can make a country worth reaching again by a
+ * longer route that is cheaper. Those searches go out one border at a time and keep a label for
+ * every route into a country that is cheaper than all the shorter ones, so a country is only
+ * entered again when that saves tax.
+ */
+class ConstrainedSearch {
+
+  private ConstrainedSearch() {}
+
+  /**
+   * Finds the route with the fewest borders between two countries that meets the constraints.
+   *
+   * <p>Without a tax budget this is a breadth-first search that does not enter avoided countries,
+   * and the routes are the same as {@link BreadthFirstSearch} finds on the map with them taken
+   * out.
+   *
+   * @param graph the graph to search
+   * @param context reset scratch space big enough for the graph
+   * @param start the ID of the start country, which the constraints allow
+   * @param destination the ID of the destination country, which the constraints allow
+   * @param constraints what the route must avoid and stay within
+   * @return the IDs of the countries on the route, or an empty array if there is no such route
+   */
+  static int[] fewestBorders(
+      CountryGraph graph,
+      SearchContext context,
+      int start,
+      int destination,
+      RouteConstraints constraints) {
+    if (constraints.maxTax() != Integer.MAX_VALUE) {
+      return searchByBorders(graph, context, start, destination, constraints, false);
+    }
+
+    int[] offsets = graph.offsets;
+    int[] neighbours = graph.neighbours;
+    int[] queue = context.queue;
+    int[] parent = context.parent;
+    int maxBorders = constraints.maxBorders();
+    long[] avoided = constraints.avoidedCountries();
+    int head = 0;
+    int tail = 0;
+    // The countries 'borders' borders away are queued before layerEnd.
+    int layerEnd = 1;
+    int borders = 0;
+
+    queue[tail++] = start;
+    context.visit(start);
+    parent[start] = start;
+
+    while (head < tail) {
+      int country = queue[head++];
+      if (country == destination) {
+        return BreadthFirstSearch.buildPath(parent, start, destination);
+      }
+      if (borders == maxBorders) {
+        // The rest of this layer may still hold the destination, but nothing past it is in budget.
+        continue;
+      }
+
+      for (int i = offsets[country]; i < offsets[country + 1]; i++) {
+        int next = neighbours[i];
+        // An avoided country is marked visited too, so that it is only tested once.
+        if (context.visit(next) && allows(avoided, next)) {
+          queue[tail++] = next;
+          parent[next] = country;
+        }
+      }
+      if (head == layerEnd) {
+        borders++;
+        layerEnd = tail;
+      }
+      context.noteQueued(tail - head);
+    }
+    return BreadthFirstSearch.NO_PATH;
+  }
+
+  /**
+   * Finds the route with the lowest total tax between two countries that meets the constraints.
+   *
+   * @param graph the graph to search
+   * @param context reset scratch space big enough for the graph
+   * @param start the ID of the start country, which the constraints allow
+   * @param destination the ID of the destination country, which the constraints allow
+   * @param constraints what the route must avoid and stay within
+   * @param heuristic lower bound on the remaining tax on the whole map, such as {@link
+   *     TaxHeuristic#destinationTax}, which rules out routes that cannot stay within the tax
+   *     budget and, if it differs between countries, also directs the search
+   * @return the IDs of the countries on the route, or an empty array if there is no such route
+   */
+  static int[] cheapest(
+      CountryGraph graph,
+      SearchContext context,
+      int start,
+      int destination,
+      RouteConstraints constraints,
+      TaxHeuristic heuristic) {
+    if (constraints.maxBorders() != Integer.MAX_VALUE) {
+      return searchByBorders(graph, context, start, destination, constraints, true);
+    }
+
+    context.ensureHeap();
+    int[] offsets = graph.offsets;
+    int[] neighbours = graph.neighbours;
+    int[] taxes = graph.taxes;
+    int[] cost = context.distance;
+    int[] parent = context.parent;
+    IndexedMinHeap heap = context.heap;
+    // Avoiding countries only makes routes dearer, so a bound on the whole map still holds.
+    long maxTax = constraints.maxTax();
+    long[] avoided = constraints.avoidedCountries();
+
+    context.visit(start);
+    cost[start] = 0;
+    parent[start] = start;
+    heap.pushOrDecrease(start, heuristic.estimate(start, destination));
+
+    while (!heap.isEmpty()) {
+      int country = heap.poll();
+      if (country == destination) {
+        heap.clear();
+        return BreadthFirstSearch.buildPath(parent, start, destination);
+      }
+
+      for (int i = offsets[country]; i < offsets[country + 1]; i++) {
+        int next = neighbours[i];
+        int nextCost = cost[country] + taxes[next];
+        int estimate = nextCost + heuristic.estimate(next, destination);
+        if (estimate > maxTax || !allows(avoided, next)) {
+          continue;
+        }
+        if (context.visit(next) || nextCost < cost[next]) {
+          cost[next] = nextCost;
+          parent[next] = country;
+          heap.pushOrDecrease(next, estimate);
+        }
+      }
+      context.noteQueued(heap.size());
+    }
+    return BreadthFirstSearch.NO_PATH;
+  }
+
+  /**
+   * Searches outwards one border at a time, keeping a label for each route into a country that
+   * is cheaper than every route into it found with fewer or as many borders.
+   *
+   * @param graph the graph to search
+   * @param context reset scratch space big enough for the graph
+   * @param start the ID of the start country
+   * @param destination the ID of the destination country
+   * @param constraints what the route must avoid and stay within
+   * @param byTax whether to find the cheapest route rather than the one with the fewest borders
+   * @return the IDs of the countries on the route, or an empty array if there is no such route
+   */
+  private static int[] searchByBorders(
+      CountryGraph graph,
+      SearchContext context,
+      int start,
+      int destination,
+      RouteConstraints constraints,
+      boolean byTax) {
+    context.ensureLabels();
+    int[] offsets = graph.offsets;
+    int[] neighbours = graph.neighbours;
+    int[] taxes = graph.taxes;
+    // best[id] is the lowest tax of any label of 'id', and latest[id] its newest label.
+    int[] best = context.distance;
+    int[] latest = context.parent;
+    long maxTax = constraints.maxTax();
+    int maxBorders = constraints.maxBorders();
+    long[] avoided = constraints.avoidedCountries();
+    int destinationTax = taxes[destination];
+
+    context.labelCountry[0] = start;
+    context.labelParent[0] = -1;
+    context.labelTax[0] = 0;
+    context.visit(start);
+    best[start] = 0;
+    latest[start] = 0;
+    int labels = 1;
+    int head = 0;
+    // The labels of the routes with 'borders' borders end at layerEnd.
+    int layerEnd = 1;
+    int borders = 0;
+    int found = -1;
+
+    while (head < labels && borders < maxBorders) {
+      int label = head++;
+      int country = context.labelCountry[label];
+      int tax = context.labelTax[label];
+      // Taxes only add up, so a route that already costs as much as one found goes no further.
+      if (found < 0 || tax < best[destination]) {
+        for (int i = offsets[country]; i < offsets[country + 1]; i++) {
+          int next = neighbours[i];
+          int nextTax = tax + taxes[next];
+          long estimate = next == destination ? nextTax : (long) nextTax + destinationTax;
+          if (estimate > maxTax
+              || (found >= 0 && nextTax >= best[destination])
+              || !allows(avoided, next)) {
+            continue;
+          }
+
+          int nextLabel;
+          if (context.visit(next)) {
+            nextLabel = labels;
+          } else if (nextTax < best[next]) {
+            // A label made in this layer is not expanded yet and can just be made cheaper.
+            nextLabel = latest[next] >= layerEnd ? latest[next] : labels;
+          } else {
+            continue;
+          }
+          if (nextLabel == labels) {
+            if (labels == context.labelCountry.length) {
+              context.growLabels();
+            }
+            labels++;
+          }
+          context.labelCountry[nextLabel] = next;
+          context.labelParent[nextLabel] = label;
+          context.labelTax[nextLabel] = nextTax;
+          best[next] = nextTax;
+          latest[next] = nextLabel;
+
+          if (next == destination) {
+            if (!byTax) {
+              return buildPath(context, nextLabel, borders + 1);
+            }
+            found = nextLabel;
+          }
+        }
+      }
+      if (head == layerEnd) {
+        borders++;
+        layerEnd = labels;
+      }
+      context.noteQueued(labels - head);
+    }
+    if (found < 0) {
+      return BreadthFirstSearch.NO_PATH;
+    }
+    return buildPath(context, found, borders(context, found));
+  }
+
+  /**
+   * Checks whether a country is not avoided.
+   *
+   * <p>The searches read the bitset into a local once, rather than through the constraints for
+   * every country, which keeps the inner loops as tight as the unconstrained ones.
+   */
+  private static boolean allows(long[] avoided, int country) {
+    return (avoided[country >>> 6] & (1L << country)) == 0;
+  }
+
+  /** Counts the borders on the route to a label. */
+  private static int borders(SearchContext context, int label) {
+    int borders = 0;
+    for (int at = context.labelParent[label]; at >= 0; at = context.labelParent[at]) {
+      borders++;
+    }
+    return borders;
+  }
+
+  /**
+   * Follows the labels back to the start to build the route.
+   *
+   * @param context the context holding the labels
+   * @param label the label of the destination
+   * @param borders the number of borders on the route
+   * @return the IDs of the countries on the route, from start to destination
+   */
+  private static int[] buildPath(SearchContext context, int label, int borders) {
+    int[] path = new int[borders + 1];
+    for (int i = borders, at = label; i >= 0; i--, at = context.labelParent[at]) {
+      path[i] = context.labelCountry[at];
+    }
+    return path;
+  }
+}
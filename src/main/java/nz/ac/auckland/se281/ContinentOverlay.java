@@ -0,0 +1,647 @@
+package nz.ac.auckland.se281;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Two-level index for fewest-borders routes between continents.
+ *
+ * <p>The border countries of a continent are the ones with a border to or from another continent.
+ * The index stores, for every continent, the number of borders between each pair of its border
+ * countries on routes that stay inside the continent. Together with the borders between
+ * continents this makes an overlay graph over the border countries only, which is small on maps
+ * where continents are joined by a few borders. A route between two continents is found by
+ * searching inside the start and destination continents to reach their border countries, then
+ * searching the overlay for the length of the shortest route.
+ *
+ * <p>To return exactly the route {@link BreadthFirstSearch} would, ties included, the query then
+ * works out which countries lie on some shortest route, like {@link BidirectionalSearch} does,
+ * and replays the breadth-first search over only those. A shortest route crosses each continent
+ * from a border country on a shortest route to another, or starts or ends inside it, by a
+ * shortest route inside the continent. So only the pairs whose distances add up to the shortest
+ * length are searched again, each from both ends until they meet, and the rest of every
+ * continent is never expanded beyond its entry in the overlay.
+ *
+ * <p>An index is never changed once built. It is only built when the tables and the work to fill
+ * them are small next to the map itself, see {@link #fits}.
+ */
+class ContinentOverlay {
+  // Marks a pair of border countries with no route between them inside their continent.
+  private static final int UNREACHABLE = Integer.MAX_VALUE;
+  // Most table cells, over all continents, the index may hold.
+  private static final long MAX_CELLS = 1L << 24;
+  // Most borders the build may follow, per country and border of the map.
+  private static final long MAX_WORK_PER_ELEMENT = 64;
+
+  private final CountryGraph graph;
+  // The border countries, by continent and then by ID: those of continent c are at
+  // borderCountries[borderStart[c]] up to borderStart[c + 1].
+  private final int[] borderCountries;
+  private final int[] borderStart;
+  // slot[id] is the position of 'id' among its continent's border countries, or -1 if it is not
+  // one.
+  private final int[] slot;
+  // distances[c][i * n + j] is the number of borders from the i-th to the j-th border country of
+  // continent c, staying inside c, where n is the number of its border countries.
+  private final int[][] distances;
+
+  /**
+   * Checks whether an index for the given graph is small enough to build.
+   *
+   * @param graph the graph to index
+   * @return true if the index can be built
+   */
+  static boolean fits(CountryGraph graph) {
+    // The cells add up to at least the square of the border countries over the continents, so
+    // maps with far too many border countries are turned down before they are all found.
+    long limit = (long) Math.sqrt((double) MAX_CELLS * graph.continentCount());
+    boolean[] isBorder = findBorderCountries(graph, limit);
+    if (isBorder == null) {
+      return false;
+    }
+    int[] counts = borderCounts(graph, isBorder);
+    int[] sizes = new int[graph.continentCount()];
+    for (int id = 0; id < graph.size(); id++) {
+      sizes[graph.continentIds[id]]++;
+    }
+    long cells = 0;
+    long work = 0;
+    for (int continent = 0; continent < counts.length; continent++) {
+      cells += (long) counts[continent] * counts[continent];
+      work += (long) counts[continent] * sizes[continent];
+    }
+    long elements = (long) graph.size() + graph.borderCount();
+    return cells <= MAX_CELLS && work <= MAX_WORK_PER_ELEMENT * elements;
+  }
+
+  /**
+   * Builds the index by running one breadth-first search inside its continent from every border
+   * country, in parallel.
+   *
+   * @param graph the graph to index, which must pass {@link #fits}
+   */
+  ContinentOverlay(CountryGraph graph) {
+    this.graph = graph;
+    boolean[] isBorder = findBorderCountries(graph, Long.MAX_VALUE);
+    int[] counts = borderCounts(graph, isBorder);
+
+    borderStart = new int[counts.length + 1];
+    for (int continent = 0; continent < counts.length; continent++) {
+      borderStart[continent + 1] = borderStart[continent] + counts[continent];
+    }
+    borderCountries = new int[borderStart[counts.length]];
+    slot = new int[graph.size()];
+    Arrays.fill(slot, -1);
+    int[] filled = new int[counts.length];
+    for (int id = 0; id < graph.size(); id++) {
+      if (isBorder[id]) {
+        int continent = graph.continentIds[id];
+        slot[id] = filled[continent]++;
+        borderCountries[borderStart[continent] + slot[id]] = id;
+      }
+    }
+
+    distances = new int[counts.length][];
+    for (int continent = 0; continent < counts.length; continent++) {
+      distances[continent] = new int[counts[continent] * counts[continent]];
+    }
+    ThreadLocal<SearchContext> contexts =
+        ThreadLocal.withInitial(() -> new SearchContext(graph.size(), graph.continentCount()));
+    IntStream.range(0, borderCountries.length)
+        .parallel()
+        .forEach(i -> fillRow(contexts.get(), borderCountries[i]));
+  }
+
+  private ContinentOverlay(CountryGraph graph, ContinentOverlay tables) {
+    this.graph = graph;
+    this.borderCountries = tables.borderCountries;
+    this.borderStart = tables.borderStart;
+    this.slot = tables.slot;
+    this.distances = tables.distances;
+  }
+
+  /**
+   * Returns the index for an edited version of the map, if the edits cannot have changed the
+   * tables.
+   *
+   * @param edited the edited map
+   * @param update what the edits changed
+   * @return an index sharing these tables, or null if the index has to be built again
+   */
+  ContinentOverlay forUpdate(CountryGraph edited, MapUpdate.Result update) {
+    if (!update.renumbered
+        && update.addedBorders.length == 0
+        && update.removedBorders.length == 0
+        && edited.size() == graph.size()) {
+      // Only taxes changed, and the index does not depend on them.
+      return new ContinentOverlay(edited, this);
+    }
+    return null;
+  }
+
+  /**
+   * Returns the number of border countries, i.e. the size of the overlay graph.
+   *
+   * @return the number of border countries
+   */
+  int borderCountryCount() {
+    return borderCountries.length;
+  }
+
+  /**
+   * Finds the countries with a border to or from another continent.
+   *
+   * @param graph the graph to index
+   * @param limit the most border countries to look for
+   * @return whether each country is a border country, or null if there are more than the limit
+   */
+  private static boolean[] findBorderCountries(CountryGraph graph, long limit) {
+    boolean[] isBorder = new boolean[graph.size()];
+    int[] continentIds = graph.continentIds;
+    long found = 0;
+    for (int id = 0; id < graph.size(); id++) {
+      for (int i = graph.offsets[id]; i < graph.offsets[id + 1]; i++) {
+        int neighbour = graph.neighbours[i];
+        if (continentIds[neighbour] != continentIds[id]) {
+          found += (isBorder[id] ? 0 : 1) + (isBorder[neighbour] ? 0 : 1);
+          isBorder[id] = true;
+          isBorder[neighbour] = true;
+        }
+      }
+      if (found > limit) {
+        return null;
+      }
+    }
+    return isBorder;
+  }
+
+  private static int[] borderCounts(CountryGraph graph, boolean[] isBorder) {
+    int[] counts = new int[graph.continentCount()];
+    for (int id = 0; id < graph.size(); id++) {
+      if (isBorder[id]) {
+        counts[graph.continentIds[id]]++;
+      }
+    }
+    return counts;
+  }
+
+  /**
+   * Fills one row of a continent's table with a breadth-first search from a border country that
+   * stays inside the continent.
+   *
+   * @param context scratch space for this thread
+   * @param source the ID of the border country
+   */
+  private void fillRow(SearchContext context, int source) {
+    int[] offsets = graph.offsets;
+    int[] neighbours = graph.neighbours;
+    int[] continentIds = graph.continentIds;
+    int continent = continentIds[source];
+    int count = borderStart[continent + 1] - borderStart[continent];
+    int[] table = distances[continent];
+    int rowStart = slot[source] * count;
+    Arrays.fill(table, rowStart, rowStart + count, UNREACHABLE);
+
+    context.reset();
+    int[] queue = context.queue;
+    int head = 0;
+    int tail = 0;
+    int layerEnd = 1;
+    int depth = 0;
+    queue[tail++] = source;
+    context.visit(source);
+    // Stop once every border country of the continent has been reached.
+    int remaining = count;
+    while (head < tail) {
+      int country = queue[head++];
+      if (slot[country] >= 0) {
+        table[rowStart + slot[country]] = depth;
+        if (--remaining == 0) {
+          return;
+        }
+      }
+      for (int i = offsets[country]; i < offsets[country + 1]; i++) {
+        int next = neighbours[i];
+        if (continentIds[next] == continent && context.visit(next)) {
+          queue[tail++] = next;
+        }
+      }
+      if (head == layerEnd) {
+        depth++;
+        layerEnd = tail;
+      }
+    }
+  }
+
+  /**
+   * Finds the route with the fewest borders between two countries.
+   *
+   * @param context reset scratch space big enough for the graph
+   * @param start the ID of the start country
+   * @param destination the ID of the destination country
+   * @return the IDs of the countries on the route, the same as {@link BreadthFirstSearch} finds,
+   *     or an empty array if there is no route
+   */
+  int[] findPath(SearchContext context, int start, int destination) {
+    if (start == destination) {
+      return new int[] {start};
+    }
+    context.ensureOverlay(borderCountries.length + 2);
+
+    // Phase 1: the number of borders on the shortest route, and the border countries on one.
+    int inside = searchContinent(context, start, destination, false);
+    searchContinent(context, destination, start, true);
+    int length = searchOverlayForward(context, start, inside);
+    if (length == UNREACHABLE) {
+      return BreadthFirstSearch.NO_PATH;
+    }
+    int onRoute = searchOverlayBackward(context, destination, length);
+
+    // Phase 2: mark every country on a shortest route. The part of such a route inside one
+    // continent is a shortest route inside it between two of the countries found in phase 1, or
+    // the start or destination, so each pair that adds up to the shortest length is searched.
+    int[] countries = context.overlayCountry;
+    int[] fromStart = context.overlayForward;
+    int[] toDestination = context.overlayBackward;
+    int startEntry = onRoute;
+    countries[onRoute] = start;
+    fromStart[onRoute] = 0;
+    toDestination[onRoute++] = length;
+    countries[onRoute] = destination;
+    fromStart[onRoute] = length;
+    toDestination[onRoute++] = 0;
+
+    long[] order = context.overlayOrder;
+    for (int i = 0; i < onRoute; i++) {
+      order[i] = ((long) graph.continentIds[countries[i]] << 32) | i;
+    }
+    Arrays.sort(order, 0, onRoute);
+    for (int first = 0; first < onRoute; ) {
+      int continent = (int) (order[first] >>> 32);
+      int last = first;
+      while (last < onRoute && (int) (order[last] >>> 32) == continent) {
+        last++;
+      }
+      for (int i = first; i < last; i++) {
+        int from = (int) order[i];
+        for (int j = first; j < last; j++) {
+          int to = (int) order[j];
+          int borders;
+          if (countries[from] == countries[to]) {
+            borders = 0;
+          } else if (from == startEntry + 1 || to == startEntry) {
+            // Nothing comes after the destination or before the start.
+            continue;
+          } else if (from == startEntry) {
+            borders = to == startEntry + 1 ? inside : context.overlayStart[slot[countries[to]]];
+          } else if (to == startEntry + 1) {
+            borders = context.overlayDestination[slot[countries[from]]];
+          } else {
+            int count = borderStart[continent + 1] - borderStart[continent];
+            borders = distances[continent][slot[countries[from]] * count + slot[countries[to]]];
+          }
+          if (borders != UNREACHABLE
+              && fromStart[from] + borders + toDestination[to] == length) {
+            markBetween(context, continent, countries[from], countries[to], borders);
+          }
+        }
+      }
+      first = last;
+    }
+
+    // Phase 3: replay the breadth-first search over the marked countries only, as the
+    // bidirectional search does. Each one is unmarked as it is queued.
+    int[] offsets = graph.offsets;
+    int[] neighbours = graph.neighbours;
+    int[] queue = context.queue;
+    int[] parent = context.parent;
+    int head = 0;
+    int tail = 0;
+    queue[tail++] = start;
+    context.unmark(start);
+    parent[start] = start;
+    while (head < tail) {
+      int country = queue[head++];
+      if (country == destination) {
+        return BreadthFirstSearch.buildPath(parent, start, destination);
+      }
+      for (int i = offsets[country]; i < offsets[country + 1]; i++) {
+        int next = neighbours[i];
+        if (context.unmark(next)) {
+          queue[tail++] = next;
+          parent[next] = country;
+        }
+      }
+    }
+    return BreadthFirstSearch.NO_PATH;
+  }
+
+  /**
+   * Runs a breadth-first search from the start or destination inside its continent, forwards into
+   * the distances from the start or backwards into the distances to the destination, until every
+   * border country of the continent is reached. Their distances are also kept in the context's
+   * overlayStart or overlayDestination array, by slot, since the overlay search changes the
+   * distances.
+   *
+   * @param context the context to search with
+   * @param source the ID of the start or destination
+   * @param other the ID of the other end of the route
+   * @param backward whether to search backwards from the destination
+   * @return the distance between the two ends inside the continent, or UNREACHABLE
+   */
+  private int searchContinent(SearchContext context, int source, int other, boolean backward) {
+    int[] offsets = backward ? graph.reverseOffsets : graph.offsets;
+    int[] neighbours = backward ? graph.reverseNeighbours : graph.neighbours;
+    int[] continentIds = graph.continentIds;
+    int[] queue = backward ? context.backQueue : context.queue;
+    int[] distance = backward ? context.backDistance : context.distance;
+    int[] inside = backward ? context.overlayDestination : context.overlayStart;
+    int continent = continentIds[source];
+    int first = borderStart[continent];
+    Arrays.fill(inside, 0, borderStart[continent + 1] - first, UNREACHABLE);
+    // Stop once every border country, and the other end if it is on this continent, is reached.
+    int remaining = borderStart[continent + 1] - first + (continentIds[other] == continent ? 1 : 0);
+    int head = 0;
+    int tail = 0;
+
+    queue[tail++] = source;
+    visit(context, source, backward);
+    distance[source] = 0;
+    remaining -= reached(source, other, 0, inside);
+    while (head < tail && remaining > 0) {
+      int country = queue[head++];
+      for (int i = offsets[country]; i < offsets[country + 1]; i++) {
+        int next = neighbours[i];
+        if (continentIds[next] == continent && visit(context, next, backward)) {
+          distance[next] = distance[country] + 1;
+          queue[tail++] = next;
+          remaining -= reached(next, other, distance[next], inside);
+        }
+      }
+      context.noteQueued(tail - head);
+    }
+    boolean found = backward ? context.isVisitedBackward(other) : context.isVisited(other);
+    return continentIds[other] == continent && found ? distance[other] : UNREACHABLE;
+  }
+
+  /**
+   * Records the distance of a country reached by {@link #searchContinent}.
+   *
+   * @return how many of the countries the search is looking for this is, 0 to 2
+   */
+  private int reached(int country, int other, int borders, int[] inside) {
+    int found = country == other ? 1 : 0;
+    if (slot[country] >= 0) {
+      inside[slot[country]] = borders;
+      found++;
+    }
+    return found;
+  }
+
+  private static boolean visit(SearchContext context, int country, boolean backward) {
+    return backward ? context.visitBackward(country) : context.visit(country);
+  }
+
+  /**
+   * Runs Dijkstra's algorithm over the overlay from the border countries of the start's
+   * continent, with their distances from the start, until every border country within the
+   * shortest length is settled.
+   *
+   * @param context the context, holding the searches of the start and destination continents
+   * @param start the ID of the start country
+   * @param length the length of the shortest route inside one continent, or UNREACHABLE
+   * @return the length of the shortest route, or UNREACHABLE if there is none
+   */
+  private int searchOverlayForward(SearchContext context, int start, int length) {
+    int[] distance = context.distance;
+    int[] backDistance = context.backDistance;
+    IndexedMinHeap heap = context.heap;
+    int continent = graph.continentIds[start];
+    for (int i = borderStart[continent]; i < borderStart[continent + 1]; i++) {
+      int country = borderCountries[i];
+      if (context.isVisited(country)) {
+        heap.pushOrDecrease(country, distance[country]);
+      }
+    }
+
+    while (!heap.isEmpty() && heap.peekKey() <= length) {
+      int country = heap.poll();
+      int borders = distance[country];
+      // The destination's continent was searched backwards, so this may finish a route.
+      if (context.isVisitedBackward(country)) {
+        length = Math.min(length, borders + backDistance[country]);
+      }
+
+      int from = graph.continentIds[country];
+      int count = borderStart[from + 1] - borderStart[from];
+      int[] table = distances[from];
+      int rowStart = slot[country] * count;
+      for (int j = 0; j < count; j++) {
+        int inside = table[rowStart + j];
+        if (inside != UNREACHABLE) {
+          relax(context, borderCountries[borderStart[from] + j], borders + inside, false);
+        }
+      }
+      for (int i = graph.offsets[country]; i < graph.offsets[country + 1]; i++) {
+        int next = graph.neighbours[i];
+        if (graph.continentIds[next] != from) {
+          relax(context, next, borders + 1, false);
+        }
+      }
+      context.noteQueued(heap.size());
+    }
+    heap.clear();
+    return length;
+  }
+
+  /**
+   * Runs Dijkstra's algorithm backwards over the overlay from the border countries of the
+   * destination's continent, keeping to border countries that can be on a shortest route, and
+   * collects the ones that are.
+   *
+   * @param context the context, holding the forward overlay search
+   * @param destination the ID of the destination country
+   * @param length the length of the shortest route
+   * @return the number of border countries on a shortest route, stored with their distances from
+   *     the start and to the destination in the context's overlay arrays
+   */
+  private int searchOverlayBackward(SearchContext context, int destination, int length) {
+    int[] distance = context.distance;
+    int[] backDistance = context.backDistance;
+    IndexedMinHeap heap = context.heap;
+    int continent = graph.continentIds[destination];
+    for (int i = borderStart[continent]; i < borderStart[continent + 1]; i++) {
+      int country = borderCountries[i];
+      if (context.isVisitedBackward(country)
+          && isOnRoute(context, country, length - backDistance[country])) {
+        heap.pushOrDecrease(country, backDistance[country]);
+      }
+    }
+
+    int onRoute = 0;
+    while (!heap.isEmpty()) {
+      int country = heap.poll();
+      int borders = backDistance[country];
+      // Both distances are at least the true ones, and add up to no more than the shortest
+      // length, so both are exact and the country is on a shortest route.
+      context.overlayCountry[onRoute] = country;
+      context.overlayForward[onRoute] = distance[country];
+      context.overlayBackward[onRoute++] = borders;
+
+      int to = graph.continentIds[country];
+      int count = borderStart[to + 1] - borderStart[to];
+      int[] table = distances[to];
+      int column = slot[country];
+      for (int j = 0; j < count; j++) {
+        int inside = table[j * count + column];
+        int previous = borderCountries[borderStart[to] + j];
+        if (inside != UNREACHABLE && isOnRoute(context, previous, length - borders - inside)) {
+          relax(context, previous, borders + inside, true);
+        }
+      }
+      for (int i = graph.reverseOffsets[country]; i < graph.reverseOffsets[country + 1]; i++) {
+        int previous = graph.reverseNeighbours[i];
+        if (graph.continentIds[previous] != to
+            && isOnRoute(context, previous, length - borders - 1)) {
+          relax(context, previous, borders + 1, true);
+        }
+      }
+      context.noteQueued(heap.size());
+    }
+    return onRoute;
+  }
+
+  /** Checks whether a country was reached from the start within the given number of borders. */
+  private static boolean isOnRoute(SearchContext context, int country, int borders) {
+    return context.isVisited(country) && context.distance[country] <= borders;
+  }
+
+  /** Lowers the distance of a border country in the overlay search, queueing it if it drops. */
+  private static void relax(SearchContext context, int country, int borders, boolean backward) {
+    int[] distance = backward ? context.backDistance : context.distance;
+    if (visit(context, country, backward) || borders < distance[country]) {
+      distance[country] = borders;
+      context.heap.pushOrDecrease(country, borders);
+    }
+  }
+
+  /**
+   * Marks every country on a shortest route between two countries of a continent that stays
+   * inside it.
+   *
+   * <p>Like {@link BidirectionalSearch}, this grows layers from both ends, the smaller first,
+   * until they meet, then follows the layers back from the countries where they meet to both ends,
+   * taking only the countries whose distance fits. Each country taken has its distance cleared, so
+   * it is only taken once.
+   *
+   * @param context the context to search with and mark in
+   * @param continent the ID of the continent
+   * @param from the ID of the country where routes enter the continent
+   * @param to the ID of the country where routes leave it
+   * @param length the number of borders between the two inside the continent
+   */
+  private void markBetween(SearchContext context, int continent, int from, int to, int length) {
+    if (length == 0) {
+      context.mark(from);
+      return;
+    }
+    context.restart();
+    int[] continentIds = graph.continentIds;
+    int[] queue = context.queue;
+    int[] backQueue = context.backQueue;
+    int[] distance = context.distance;
+    int[] backDistance = context.backDistance;
+    int head = 0;
+    int tail = 0;
+    int backHead = 0;
+    int backTail = 0;
+    int depth = 0;
+    int backDepth = 0;
+
+    queue[tail++] = from;
+    context.visit(from);
+    distance[from] = 0;
+    backQueue[backTail++] = to;
+    context.visitBackward(to);
+    backDistance[to] = 0;
+    while (depth + backDepth < length) {
+      if (tail - head <= backTail - backHead) {
+        depth++;
+        for (int layerEnd = tail; head < layerEnd; ) {
+          int country = queue[head++];
+          for (int i = graph.offsets[country]; i < graph.offsets[country + 1]; i++) {
+            int next = graph.neighbours[i];
+            if (continentIds[next] == continent && context.visit(next)) {
+              distance[next] = depth;
+              queue[tail++] = next;
+            }
+          }
+        }
+        context.noteQueued(tail - head);
+      } else {
+        backDepth++;
+        for (int layerEnd = backTail; backHead < layerEnd; ) {
+          int country = backQueue[backHead++];
+          for (int i = graph.reverseOffsets[country]; i < graph.reverseOffsets[country + 1]; i++) {
+            int previous = graph.reverseNeighbours[i];
+            if (continentIds[previous] == continent && context.visitBackward(previous)) {
+              backDistance[previous] = backDepth;
+              backQueue[backTail++] = previous;
+            }
+          }
+        }
+        context.noteQueued(backTail - backHead);
+      }
+    }
+
+    // The countries where the layers meet, then those before and after them, go into backQueue,
+    // which the backward layers no longer need.
+    int[] onRoute = backQueue;
+    int count = 0;
+    for (int i = head; i < tail; i++) {
+      int country = queue[i];
+      if (context.isVisitedBackward(country) && backDistance[country] == backDepth) {
+        onRoute[count++] = country;
+      }
+    }
+    int meeting = count;
+    // Back from the meeting countries to 'from', one layer at a time.
+    for (int layer = depth - 1, layerStart = 0, layerEnd = meeting; layer >= 0; layer--) {
+      for (int j = layerStart; j < layerEnd; j++) {
+        int country = onRoute[j];
+        for (int i = graph.reverseOffsets[country]; i < graph.reverseOffsets[country + 1]; i++) {
+          int previous = graph.reverseNeighbours[i];
+          if (continentIds[previous] == continent
+              && context.isVisited(previous)
+              && distance[previous] == layer) {
+            distance[previous] = -1;
+            onRoute[count++] = previous;
+          }
+        }
+      }
+      layerStart = layerEnd;
+      layerEnd = count;
+    }
+    // And on from them to 'to'.
+    for (int left = backDepth - 1, layerStart = 0, layerEnd = meeting; left >= 0; left--) {
+      int nextStart = count;
+      for (int j = layerStart; j < layerEnd; j++) {
+        int country = onRoute[j];
+        for (int i = graph.offsets[country]; i < graph.offsets[country + 1]; i++) {
+          int next = graph.neighbours[i];
+          if (continentIds[next] == continent
+              && context.isVisitedBackward(next)
+              && backDistance[next] == left) {
+            backDistance[next] = -1;
+            onRoute[count++] = next;
+          }
+        }
+      }
+      layerStart = nextStart;
+      layerEnd = count;
+    }
+    for (int j = 0; j < count; j++) {
+      context.mark(onRoute[j]);
+    }
+  }
+}
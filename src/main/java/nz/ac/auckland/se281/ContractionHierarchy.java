@@ -0,0 +1,704 @@
+package nz.ac.auckland.se281;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Contraction hierarchy over a {@link CountryGraph}, for routes with the fewest borders or the
+ * lowest tax that only search a few hundred countries, even on maps where a plain search goes
+ * through hundreds of thousands.
+ *
+ * <p>{@link HierarchyBuilder} ranks the countries and contracts them from the lowest rank up. A
+ * country is contracted by adding a shortcut between each pair of its remaining neighbours whose
+ * shortest route goes through it, so that the remaining graph keeps every distance. Each border
+ * and shortcut is then stored with the lower-ranked of its two countries: upwards, as an edge out
+ * of it, or downwards, as an edge into it. Every shortest route has a version that only climbs in
+ * rank and then only descends, so a query searches upwards from the start and, backwards,
+ * upwards from the destination, and the two searches only ever meet at the top. Each shortcut
+ * remembers the country it was made for, which the query uses to unpack it back into borders.
+ *
+ * <p>Contraction may stop early and leave a core of the highest-ranked countries uncontracted,
+ * when what is left is so dense that contracting it would take long and add many shortcuts. Every
+ * shortest route then climbs into the core, crosses it and descends, and the query searches the
+ * core like a plain graph, from both ends.
+ *
+ * <p>A hierarchy finds a shortest route, but not always the same one as a plain search when
+ * there are ties: with {@link Weight#BORDERS} it is one of the routes with the fewest borders,
+ * not necessarily the one {@link BreadthFirstSearch} picks.
+ *
+ * <p>A hierarchy is never changed once built. It is kept as its ranks and shortcuts, the borders
+ * come from the map, and saved in that form by {@link #write}. Layout, big-endian:
+ *
+ * <pre>
+ * long magic, int version, int weight
+ * int country count, int border count, long checksum of the map's borders and, for tax, taxes
+ * int shortcut count, int core size
+ * int[] rank of each country, shortcut from, shortcut to, shortcut via
+ * long CRC32C of everything before it
+ * </pre>
+ */
+class ContractionHierarchy {
+  private static final long MAGIC = 0x533238314348210AL; // "S281CH!\n"
+  private static final int VERSION = 2;
+  private static final int HEADER_BYTES = 8 + 4 + 4 + 4 + 4 + 8 + 4 + 4;
+  private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+  /** What a route costs, which decides the shortest routes a hierarchy finds. */
+  enum Weight {
+    /** Every border costs 1, for the route with the fewest borders. */
+    BORDERS,
+    /** A border costs the tax of the country it leads into, for the cheapest route. */
+    TAX
+  }
+
+  private final CountryGraph graph;
+  private final Weight weight;
+  // rank[id] is the position of 'id' in the order the countries were contracted. The core, the
+  // countries left uncontracted, is ranked above the rest from coreStart on.
+  private final int[] rank;
+  private final int coreStart;
+  // The shortcuts, as the countries they join and the country each one goes round.
+  private final int[] shortcutFrom;
+  private final int[] shortcutTo;
+  private final int[] shortcutVia;
+  // Edges out of each country to higher-ranked ones: those of 'id' are at upOffsets[id] up to
+  // upOffsets[id + 1], sorted by the country they lead to. upVia is -1 for a border.
+  private final int[] upOffsets;
+  private final int[] upNodes;
+  private final int[] upWeights;
+  private final int[] upVia;
+  // Edges into each country from higher-ranked ones, the same way, by the country they leave.
+  private final int[] downOffsets;
+  private final int[] downNodes;
+  private final int[] downWeights;
+  private final int[] downVia;
+  // Every edge between two countries of the core, out of and into each of them, whatever their
+  // ranks, since the query searches the core like a plain graph. Empty for the other countries.
+  private final int[] coreOutOffsets;
+  private final int[] coreOutNodes;
+  private final int[] coreOutWeights;
+  private final int[] coreInOffsets;
+  private final int[] coreInNodes;
+  private final int[] coreInWeights;
+
+  /**
+   * Puts a hierarchy together from its ranks and shortcuts.
+   *
+   * @param graph the map the hierarchy was built for
+   * @param weight what the routes cost
+   * @param rank the rank of each country
+   * @param coreSize the number of countries left uncontracted, which have the highest ranks
+   * @param shortcutFrom the country each shortcut leaves
+   * @param shortcutTo the country each shortcut leads to
+   * @param shortcutVia the country each shortcut goes round, ranked below both ends
+   */
+  ContractionHierarchy(
+      CountryGraph graph,
+      Weight weight,
+      int[] rank,
+      int coreSize,
+      int[] shortcutFrom,
+      int[] shortcutTo,
+      int[] shortcutVia) {
+    this.graph = graph;
+    this.weight = weight;
+    this.rank = rank;
+    this.coreStart = graph.size() - coreSize;
+    this.shortcutFrom = shortcutFrom;
+    this.shortcutTo = shortcutTo;
+    this.shortcutVia = shortcutVia;
+
+    int size = graph.size();
+    // Count every edge against the lower-ranked of its countries, then place and sort them.
+    int[] upCounts = new int[size + 1];
+    int[] downCounts = new int[size + 1];
+    forEachEdge(
+        (from, to, via) -> {
+          if (rank[from] < rank[to]) {
+            upCounts[from + 1]++;
+          } else {
+            downCounts[to + 1]++;
+          }
+        });
+    for (int i = 0; i < size; i++) {
+      upCounts[i + 1] += upCounts[i];
+      downCounts[i + 1] += downCounts[i];
+    }
+    long[] up = new long[upCounts[size]];
+    long[] down = new long[downCounts[size]];
+    int[] upFill = Arrays.copyOf(upCounts, size);
+    int[] downFill = Arrays.copyOf(downCounts, size);
+    forEachEdge(
+        (from, to, via) -> {
+          if (rank[from] < rank[to]) {
+            up[upFill[from]++] = pack(to, via);
+          } else {
+            down[downFill[to]++] = pack(from, via);
+          }
+        });
+    IntStream.range(0, size)
+        .parallel()
+        .forEach(
+            id -> {
+              Arrays.sort(up, upCounts[id], upCounts[id + 1]);
+              Arrays.sort(down, downCounts[id], downCounts[id + 1]);
+            });
+
+    upOffsets = new int[size + 1];
+    upNodes = new int[up.length];
+    upVia = new int[up.length];
+    int upCount = unpack(up, upCounts, upOffsets, upNodes, upVia);
+    downOffsets = new int[size + 1];
+    downNodes = new int[down.length];
+    downVia = new int[down.length];
+    int downCount = unpack(down, downCounts, downOffsets, downNodes, downVia);
+    upWeights = new int[upCount];
+    downWeights = new int[downCount];
+    fillWeights();
+
+    // An edge between two core countries is one of the upward edges of the lower-ranked one, or
+    // one of the downward edges into it.
+    coreOutOffsets = new int[size + 1];
+    coreInOffsets = new int[size + 1];
+    forEachCoreEdge(
+        (from, to, edgeWeight) -> {
+          coreOutOffsets[from + 1]++;
+          coreInOffsets[to + 1]++;
+        });
+    for (int i = 0; i < size; i++) {
+      coreOutOffsets[i + 1] += coreOutOffsets[i];
+      coreInOffsets[i + 1] += coreInOffsets[i];
+    }
+    coreOutNodes = new int[coreOutOffsets[size]];
+    coreOutWeights = new int[coreOutOffsets[size]];
+    coreInNodes = new int[coreInOffsets[size]];
+    coreInWeights = new int[coreInOffsets[size]];
+    int[] outFill = Arrays.copyOf(coreOutOffsets, size);
+    int[] inFill = Arrays.copyOf(coreInOffsets, size);
+    forEachCoreEdge(
+        (from, to, edgeWeight) -> {
+          coreOutNodes[outFill[from]] = to;
+          coreOutWeights[outFill[from]++] = edgeWeight;
+          coreInNodes[inFill[to]] = from;
+          coreInWeights[inFill[to]++] = edgeWeight;
+        });
+  }
+
+  /** Passes every edge between two core countries, with its weight instead of the via country. */
+  private void forEachCoreEdge(EdgeConsumer consumer) {
+    for (int id = 0; id < graph.size(); id++) {
+      if (rank[id] < coreStart) {
+        continue;
+      }
+      for (int e = upOffsets[id]; e < upOffsets[id + 1]; e++) {
+        consumer.accept(id, upNodes[e], upWeights[e]);
+      }
+      for (int e = downOffsets[id]; e < downOffsets[id + 1]; e++) {
+        consumer.accept(downNodes[e], id, downWeights[e]);
+      }
+    }
+  }
+
+  /** Receives a border or shortcut, and the country it goes round or what it weighs. */
+  @FunctionalInterface
+  private interface EdgeConsumer {
+    void accept(int from, int to, int value);
+  }
+
+  /** Passes every border of the map, except one back into the same country, and every shortcut. */
+  private void forEachEdge(EdgeConsumer consumer) {
+    int[] offsets = graph.offsets;
+    int[] neighbours = graph.neighbours;
+    for (int from = 0; from < graph.size(); from++) {
+      for (int i = offsets[from]; i < offsets[from + 1]; i++) {
+        if (neighbours[i] != from) {
+          consumer.accept(from, neighbours[i], -1);
+        }
+      }
+    }
+    for (int i = 0; i < shortcutFrom.length; i++) {
+      consumer.accept(shortcutFrom[i], shortcutTo[i], shortcutVia[i]);
+    }
+  }
+
+  private static long pack(int node, int via) {
+    return ((long) node << 32) | (via & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Unpacks the sorted edges of every country, dropping a border the map gives twice. A shortcut
+   * never joins two countries that already have an edge, so only borders can repeat.
+   *
+   * @return the number of edges kept
+   */
+  private static int unpack(long[] packed, int[] counts, int[] offsets, int[] nodes, int[] via) {
+    int kept = 0;
+    for (int id = 0; id + 1 < counts.length; id++) {
+      offsets[id] = kept;
+      for (int i = counts[id]; i < counts[id + 1]; i++) {
+        int node = (int) (packed[i] >>> 32);
+        if (kept > offsets[id] && nodes[kept - 1] == node) {
+          continue;
+        }
+        nodes[kept] = node;
+        via[kept++] = (int) packed[i];
+      }
+    }
+    offsets[counts.length - 1] = kept;
+    return kept;
+  }
+
+  /**
+   * Works out the weight of every edge. A shortcut weighs as much as the two edges it stands for,
+   * which belong to the country it goes round, so countries are taken in rank order.
+   */
+  private void fillWeights() {
+    int size = graph.size();
+    int[] order = new int[size];
+    for (int id = 0; id < size; id++) {
+      order[rank[id]] = id;
+    }
+    for (int id : order) {
+      for (int e = upOffsets[id]; e < upOffsets[id + 1]; e++) {
+        upWeights[e] = edgeWeight(id, upNodes[e], upVia[e]);
+      }
+      for (int e = downOffsets[id]; e < downOffsets[id + 1]; e++) {
+        downWeights[e] = edgeWeight(downNodes[e], id, downVia[e]);
+      }
+    }
+  }
+
+  private int edgeWeight(int from, int to, int via) {
+    if (via < 0) {
+      return weight == Weight.TAX ? graph.taxes[to] : 1;
+    }
+    return weightOf(findEdge(from, via)) + weightOf(findEdge(via, to));
+  }
+
+  /**
+   * Finds the edge between two countries.
+   *
+   * @return the edge, as its index among the upward edges, or the complement of its index among
+   *     the downward ones, or -1 if there is none
+   */
+  private int findEdge(int from, int to) {
+    if (rank[from] < rank[to]) {
+      int at = Arrays.binarySearch(upNodes, upOffsets[from], upOffsets[from + 1], to);
+      return at < 0 ? -1 : at;
+    }
+    int at = Arrays.binarySearch(downNodes, downOffsets[to], downOffsets[to + 1], from);
+    return at < 0 ? -1 : ~at;
+  }
+
+  private int weightOf(int edge) {
+    return edge >= 0 ? upWeights[edge] : downWeights[~edge];
+  }
+
+  private int viaOf(int edge) {
+    return edge >= 0 ? upVia[edge] : downVia[~edge];
+  }
+
+  Weight weight() {
+    return weight;
+  }
+
+  /**
+   * Returns the number of shortcuts, e.g. to compare hierarchies of different maps.
+   *
+   * @return the number of shortcuts
+   */
+  int shortcutCount() {
+    return shortcutFrom.length;
+  }
+
+  /**
+   * Returns the number of countries left uncontracted, which queries search like a plain graph.
+   *
+   * @return the size of the core
+   */
+  int coreSize() {
+    return graph.size() - coreStart;
+  }
+
+  /**
+   * Checks whether this hierarchy still finds shortest routes on an edited map, so that it can be
+   * kept rather than built again: a hierarchy by borders survives edits that only change taxes,
+   * and one by tax edits that change no taxes or borders.
+   *
+   * @param edited the edited map
+   * @param update what the edit changed
+   * @return the hierarchy for the edited map, or null if it has to be built again
+   */
+  ContractionHierarchy forUpdate(CountryGraph edited, MapUpdate.Result update) {
+    if (update.renumbered
+        || (weight == Weight.TAX && update.taxChanged.length > 0)
+        || update.addedBorders.length > 0
+        || update.removedBorders.length > 0
+        || edited.size() != graph.size()) {
+      return null;
+    }
+    return new ContractionHierarchy(
+        edited, weight, rank, coreSize(), shortcutFrom, shortcutTo, shortcutVia);
+  }
+
+  /**
+   * Finds a shortest route between two countries, by searching upwards from both ends at once.
+   *
+   * <p>A country is not searched on from if a higher-ranked country the search has reached leads
+   * down into it more cheaply, since no shortest route climbs through it then. In the core both
+   * halves follow every edge, like a plain search from both ends.
+   *
+   * @param context reset scratch space big enough for the graph
+   * @param start the ID of the start country
+   * @param destination the ID of the destination country
+   * @return the IDs of the countries on the route, or an empty array if there is no route
+   */
+  int[] findPath(SearchContext context, int start, int destination) {
+    if (start == destination) {
+      return new int[] {start};
+    }
+    context.ensureHierarchy();
+    int[] distance = context.distance;
+    int[] backDistance = context.backDistance;
+    int[] parent = context.parent;
+    int[] backParent = context.backParent;
+    IndexedMinHeap heap = context.heap;
+    IndexedMinHeap backHeap = context.backHeap;
+    int best = UNREACHABLE;
+    int meeting = -1;
+
+    context.visit(start);
+    distance[start] = 0;
+    parent[start] = start;
+    heap.pushOrDecrease(start, 0);
+    context.visitBackward(destination);
+    backDistance[destination] = 0;
+    backParent[destination] = destination;
+    backHeap.pushOrDecrease(destination, 0);
+
+    while (true) {
+      int forwardKey = heap.isEmpty() ? UNREACHABLE : heap.peekKey();
+      int backwardKey = backHeap.isEmpty() ? UNREACHABLE : backHeap.peekKey();
+      // Every route still to be found costs at least the smaller key.
+      if (Math.min(forwardKey, backwardKey) >= best) {
+        break;
+      }
+      if (forwardKey <= backwardKey) {
+        int country = heap.poll();
+        int borders = distance[country];
+        if (context.isVisitedBackward(country) && borders + backDistance[country] < best) {
+          best = borders + backDistance[country];
+          meeting = country;
+        }
+        boolean core = rank[country] >= coreStart;
+        if (core || !isStalled(context, country, borders, false)) {
+          int[] offsets = core ? coreOutOffsets : upOffsets;
+          int[] nodes = core ? coreOutNodes : upNodes;
+          int[] weights = core ? coreOutWeights : upWeights;
+          for (int e = offsets[country]; e < offsets[country + 1]; e++) {
+            int next = nodes[e];
+            int nextDistance = borders + weights[e];
+            if (context.visit(next) || nextDistance < distance[next]) {
+              distance[next] = nextDistance;
+              parent[next] = country;
+              heap.pushOrDecrease(next, nextDistance);
+            }
+          }
+        }
+      } else {
+        int country = backHeap.poll();
+        int borders = backDistance[country];
+        if (context.isVisited(country) && borders + distance[country] < best) {
+          best = borders + distance[country];
+          meeting = country;
+        }
+        boolean core = rank[country] >= coreStart;
+        if (core || !isStalled(context, country, borders, true)) {
+          int[] offsets = core ? coreInOffsets : downOffsets;
+          int[] nodes = core ? coreInNodes : downNodes;
+          int[] weights = core ? coreInWeights : downWeights;
+          for (int e = offsets[country]; e < offsets[country + 1]; e++) {
+            int previous = nodes[e];
+            int previousDistance = borders + weights[e];
+            if (context.visitBackward(previous) || previousDistance < backDistance[previous]) {
+              backDistance[previous] = previousDistance;
+              backParent[previous] = country;
+              backHeap.pushOrDecrease(previous, previousDistance);
+            }
+          }
+        }
+      }
+      context.noteQueued(heap.size() + backHeap.size());
+    }
+    heap.clear();
+    backHeap.clear();
+    return meeting < 0 ? BreadthFirstSearch.NO_PATH : unpackPath(context, start, meeting);
+  }
+
+  /**
+   * Checks whether a country reached by one half of the query can be reached more cheaply
+   * through a higher-ranked country, going the other way along one of its edges.
+   */
+  private boolean isStalled(SearchContext context, int country, int borders, boolean backward) {
+    if (backward) {
+      for (int e = upOffsets[country]; e < upOffsets[country + 1]; e++) {
+        int next = upNodes[e];
+        if (context.isVisitedBackward(next)
+            && context.backDistance[next] + upWeights[e] < borders) {
+          return true;
+        }
+      }
+    } else {
+      for (int e = downOffsets[country]; e < downOffsets[country + 1]; e++) {
+        int previous = downNodes[e];
+        if (context.isVisited(previous) && context.distance[previous] + downWeights[e] < borders) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Turns the edges the query found into the countries of the route, replacing each shortcut by
+   * the two edges it stands for until only borders are left.
+   *
+   * <p>The countries still to reach are kept on a stack, the next one on top, and the route so far
+   * is written into the context's queue. Countries with no tax can make a cheapest route come out
+   * with a loop of no cost, which is cut out when the route comes back to a country on it.
+   *
+   * @param context the context holding the query
+   * @param start the ID of the start country
+   * @param meeting the country where the two halves of the query met
+   * @return the IDs of the countries on the route
+   */
+  private int[] unpackPath(SearchContext context, int start, int meeting) {
+    int[] path = context.queue;
+    int[] stack = context.backQueue;
+    int top = 0;
+    // The half from the meeting country to the destination goes on the stack first, reversed,
+    // so that the destination is at the bottom.
+    int length = 0;
+    for (int country = meeting; context.backParent[country] != country; ) {
+      country = context.backParent[country];
+      path[length++] = country;
+    }
+    for (int i = length - 1; i >= 0; i--) {
+      stack[top++] = path[i];
+    }
+    for (int country = meeting; country != start; country = context.parent[country]) {
+      if (top == stack.length) {
+        stack = Arrays.copyOf(stack, top * 2);
+      }
+      stack[top++] = country;
+    }
+
+    // distance[id] is where a marked country is on the route.
+    int[] position = context.distance;
+    length = 0;
+    context.mark(start);
+    position[start] = length;
+    path[length++] = start;
+    while (top > 0) {
+      int to = stack[top - 1];
+      int via = viaOf(findEdge(path[length - 1], to));
+      if (via >= 0) {
+        if (top == stack.length) {
+          stack = Arrays.copyOf(stack, top * 2);
+        }
+        stack[top++] = via;
+        continue;
+      }
+      top--;
+      if (!context.mark(to) && position[to] < length && path[position[to]] == to) {
+        length = position[to] + 1;
+      } else {
+        position[to] = length;
+        path[length++] = to;
+      }
+    }
+    return Arrays.copyOf(path, length);
+  }
+
+  /**
+   * Reads the hierarchy of a map from its file, or builds it if the file is missing or was written
+   * for another map.
+   *
+   * <p>After a build the file is rewritten. Failing to write it is not an error, the next startup
+   * will simply build the hierarchy again.
+   *
+   * @param graph the map
+   * @param weight what the routes cost
+   * @param file where the hierarchy is kept
+   * @param metrics where to record how long reading, building and writing took
+   * @return the hierarchy
+   */
+  static ContractionHierarchy load(CountryGraph graph, Weight weight, Path file, Metrics metrics) {
+    long startNanos = System.nanoTime();
+    ContractionHierarchy hierarchy = read(file, graph, weight);
+    metrics.histogram("load.hierarchy_read_ns").recordSince(startNanos);
+    if (hierarchy != null) {
+      return hierarchy;
+    }
+
+    hierarchy = build(graph, weight, metrics);
+    startNanos = System.nanoTime();
+    try {
+      hierarchy.write(file);
+    } catch (IOException e) {
+      // The file is only a cache, so carry on without it.
+    }
+    metrics.histogram("load.hierarchy_write_ns").recordSince(startNanos);
+    return hierarchy;
+  }
+
+  /**
+   * Builds the hierarchy of a map.
+   *
+   * @param graph the map
+   * @param weight what the routes cost
+   * @param metrics where to record how long the build took
+   * @return the hierarchy
+   */
+  static ContractionHierarchy build(CountryGraph graph, Weight weight, Metrics metrics) {
+    long startNanos = System.nanoTime();
+    ContractionHierarchy hierarchy = new HierarchyBuilder(graph, weight).build();
+    metrics.histogram("load.hierarchy_build_ns").recordSince(startNanos);
+    return hierarchy;
+  }
+
+  /**
+   * Writes the hierarchy to a file, replacing any existing file atomically.
+   *
+   * @param file where to write the hierarchy
+   * @throws IOException if the file cannot be written
+   */
+  void write(Path file) throws IOException {
+    Path directory = file.toAbsolutePath().getParent();
+    Files.createDirectories(directory);
+    Path temporary = Files.createTempFile(directory, "map", ".hierarchy.tmp");
+
+    try {
+      CRC32C checksum = new CRC32C();
+      try (OutputStream stream = Files.newOutputStream(temporary);
+          DataOutputStream out =
+              new DataOutputStream(
+                  new BufferedOutputStream(new CheckedOutputStream(stream, checksum), 1 << 16))) {
+        out.writeLong(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(weight.ordinal());
+        out.writeInt(graph.size());
+        out.writeInt(graph.borderCount());
+        out.writeLong(checksum(graph, weight));
+        out.writeInt(shortcutFrom.length);
+        out.writeInt(coreSize());
+        MapSnapshot.writeInts(out, rank);
+        MapSnapshot.writeInts(out, shortcutFrom);
+        MapSnapshot.writeInts(out, shortcutTo);
+        MapSnapshot.writeInts(out, shortcutVia);
+
+        out.flush();
+        out.writeLong(checksum.getValue());
+      }
+      Files.move(
+          temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  /**
+   * Reads a hierarchy written by {@link #write}, if it was built for the same map.
+   *
+   * @param file the file to read
+   * @param graph the map as it is now
+   * @param weight what the routes should cost
+   * @return the hierarchy, or null if the file is missing, corrupt, of another version or for
+   *     another map or weight
+   */
+  static ContractionHierarchy read(Path file, CountryGraph graph, Weight weight) {
+    ByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size < HEADER_BYTES + 8 || size > Integer.MAX_VALUE) {
+        return null;
+      }
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    } catch (IOException e) {
+      return null;
+    }
+
+    if (buffer.getLong() != MAGIC
+        || buffer.getInt() != VERSION
+        || buffer.getInt() != weight.ordinal()
+        || buffer.getInt() != graph.size()
+        || buffer.getInt() != graph.borderCount()
+        || buffer.getLong() != checksum(graph, weight)) {
+      return null;
+    }
+
+    int checksumPosition = buffer.limit() - 8;
+    CRC32C checksum = new CRC32C();
+    checksum.update(buffer.duplicate().position(0).limit(checksumPosition));
+    if (buffer.getLong(checksumPosition) != checksum.getValue()) {
+      return null;
+    }
+
+    try {
+      int shortcuts = buffer.getInt();
+      int coreSize = buffer.getInt();
+      if (coreSize < 0 || coreSize > graph.size()) {
+        return null;
+      }
+      int[] rank = MapSnapshot.readInts(buffer, graph.size());
+      int[] from = MapSnapshot.readInts(buffer, shortcuts);
+      int[] to = MapSnapshot.readInts(buffer, shortcuts);
+      int[] via = MapSnapshot.readInts(buffer, shortcuts);
+      if (buffer.position() != checksumPosition) {
+        return null;
+      }
+      return new ContractionHierarchy(graph, weight, rank, coreSize, from, to, via);
+    } catch (RuntimeException e) {
+      // The checksum matched but the contents do not add up, so treat it as corrupt.
+      return null;
+    }
+  }
+
+  /**
+   * Sums up what a hierarchy depends on in a map: its borders and, for the cheapest routes, its
+   * taxes.
+   */
+  private static long checksum(CountryGraph graph, Weight weight) {
+    CRC32C checksum = new CRC32C();
+    update(checksum, graph.offsets);
+    update(checksum, graph.neighbours);
+    if (weight == Weight.TAX) {
+      update(checksum, graph.taxes);
+    }
+    return checksum.getValue();
+  }
+
+  private static void update(CRC32C checksum, int[] values) {
+    ByteBuffer block = ByteBuffer.allocate(1 << 16);
+    for (int i = 0; i < values.length; ) {
+      int count = Math.min(values.length - i, block.capacity() / 4);
+      block.clear();
+      block.asIntBuffer().put(values, i, count);
+      block.limit(count * 4);
+      checksum.update(block);
+      i += count;
+    }
+  }
+}
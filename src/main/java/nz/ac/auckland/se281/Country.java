@@ -2,10 +2,10 @@ package nz.ac.auckland.se281;
 
 /** Represents a single country with its name, continent, and tax information. */
 /** Represents a country with its name, continent, and tax information. */
-class Country {
-  String name;
-  String continent;
-  int tax;
+public final class Country {
+  private final String name;
+  private final String continent;
+  private final int tax;
 
   /**
    * Constructor for the Country class.
@@ -0,0 +1,168 @@
+package nz.ac.auckland.se281;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Immutable, integer-indexed representation of the map.
+ *
+ * <p>Every country is identified by a dense ID from 0 to {@code size() - 1}. The borders are kept
+ * in compressed sparse row (CSR) form: the neighbours of country {@code id} are {@code
+ * neighbours[offsets[id]]} to {@code neighbours[offsets[id + 1] - 1]}. The reverse arrays hold the
+ * same borders keyed on the country they lead into. Names are only needed when turning results
+ * back into output.
+ */
+class CountryGraph {
+  final String[] names;
+  final int[] continentIds;
+  final String[] continentNames;
+  final int[] taxes;
+  final int[] offsets;
+  final int[] neighbours;
+  final int[] reverseOffsets;
+  final int[] reverseNeighbours;
+
+  private final HashMap<String, Integer> ids;
+
+  CountryGraph(
+      String[] names,
+      int[] continentIds,
+      String[] continentNames,
+      int[] taxes,
+      int[] offsets,
+      int[] neighbours,
+      int[] reverseOffsets,
+      int[] reverseNeighbours,
+      HashMap<String, Integer> ids) {
+    this.names = names;
+    this.continentIds = continentIds;
+    this.continentNames = continentNames;
+    this.taxes = taxes;
+    this.offsets = offsets;
+    this.neighbours = neighbours;
+    this.reverseOffsets = reverseOffsets;
+    this.reverseNeighbours = reverseNeighbours;
+    this.ids = ids;
+  }
+
+  /**
+   * Returns an edited copy of this graph, sharing the name index with it.
+   *
+   * <p>Countries may only be appended, so that every existing ID still names the same country.
+   * The arrays passed in may be this graph's own wherever the edit left them alone.
+   *
+   * @return the edited graph
+   */
+  CountryGraph edited(
+      String[] names,
+      int[] continentIds,
+      String[] continentNames,
+      int[] taxes,
+      int[] offsets,
+      int[] neighbours,
+      int[] reverseOffsets,
+      int[] reverseNeighbours) {
+    HashMap<String, Integer> editedIds = ids;
+    if (names.length > this.names.length) {
+      editedIds = new HashMap<>(ids);
+      for (int id = this.names.length; id < names.length; id++) {
+        editedIds.put(names[id], id);
+      }
+    }
+    return new CountryGraph(
+        names,
+        continentIds,
+        continentNames,
+        taxes,
+        offsets,
+        neighbours,
+        reverseOffsets,
+        reverseNeighbours,
+        editedIds);
+  }
+
+  /**
+   * Builds a graph from the lines of the countries and adjacencies files.
+   *
+   * <p>Each line of the countries data is in the format "Country,Continent,Tax". Each line of the
+   * adjacencies data is a country followed by the names of its neighbours.
+   *
+   * @param countriesData the lines of the countries file
+   * @param adjacenciesData the lines of the adjacencies file
+   * @return the graph
+   * @throws MapFormatException if a line is malformed or refers to an unknown country
+   */
+  static CountryGraph fromCsv(List<String> countriesData, List<String> adjacenciesData) {
+    GraphBuilder builder = new GraphBuilder();
+
+    for (String line : countriesData) {
+      String[] details = line.split(",");
+      if (details.length != 3) {
+        throw new MapFormatException("Malformed country line: " + line);
+      }
+      try {
+        builder.addCountry(details[0], details[1], Integer.parseInt(details[2]));
+      } catch (NumberFormatException e) {
+        throw new MapFormatException("Malformed tax in line: " + line);
+      }
+    }
+
+    for (String line : adjacenciesData) {
+      String[] details = line.split(",");
+      int country = builder.idOf(details[0]);
+      for (int i = 1; i < details.length; i++) {
+        builder.addBorder(country, builder.idOf(details[i]));
+      }
+    }
+
+    return builder.build();
+  }
+
+  /**
+   * Returns the number of countries in the map.
+   *
+   * @return the number of countries
+   */
+  int size() {
+    return names.length;
+  }
+
+  /**
+   * Returns the number of distinct continents in the map.
+   *
+   * @return the number of continents
+   */
+  int continentCount() {
+    return continentNames.length;
+  }
+
+  /**
+   * Returns the number of directed borders in the map.
+   *
+   * @return the number of borders
+   */
+  int borderCount() {
+    return neighbours.length;
+  }
+
+  /**
+   * Looks up the ID of a country by its exact name.
+   *
+   * @param name the name of the country
+   * @return the ID of the country, or -1 if there is no such country
+   */
+  int idOf(String name) {
+    Integer id = ids.get(name);
+    return id == null ? -1 : id;
+  }
+
+  /**
+   * Creates a Country object describing the country with the given ID.
+   *
+   * @param id the ID of the country
+   * @return the country
+   */
+  Country country(int id) {
+    return new Country(names[id], continentNames[continentIds[id]], taxes[id]);
+  }
+}
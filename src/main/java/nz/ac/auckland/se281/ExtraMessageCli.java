@@ -0,0 +1,54 @@
+package nz.ac.auckland.se281;
+
+import java.util.regex.Matcher;
+
+/**
+ * Messages printed by the commands added on top of those in {@link MessageCli}, which is left as
+ * it was given. They live here rather than inline, so that tests can match them.
+ *
+ * <p>Unlike {@link MessageCli#getMessage}, arguments are written out as they are: user input such
+ * as "$1" is not read as a regular expression replacement.
+ */
+public enum ExtraMessageCli {
+  CHEAPEST_ROUTE_INFO("The cheapest route is: %s"),
+  INSERT_DESTINATIONS("Enter the destination countries, separated by commas:"),
+  SUGGESTED_COUNTRIES("Did you mean: %s?"),
+  INSERT_ROUTE_COUNT("Enter the number of routes (1 to %s):"),
+  INVALID_ROUTE_COUNT("ERROR! This is not a number of routes: %s, try again!"),
+  ALTERNATIVE_ROUTE_INFO("Route %s: %s"),
+  INSERT_AVOIDED("Enter the countries or continents to avoid, separated by commas:"),
+  INSERT_MAX_BORDERS("Enter the most borders to cross (blank for no limit):"),
+  INSERT_MAX_TAX("Enter the most tax to pay (blank for no limit):"),
+  INVALID_LIMIT("ERROR! This is not a limit: %s, try again!");
+
+  private final String msg;
+
+  private ExtraMessageCli(final String msg) {
+    this.msg = msg;
+  }
+
+  /**
+   * Generates a formatted message using the provided arguments.
+   *
+   * @param args The arguments to replace placeholders in the message.
+   * @return The formatted message.
+   */
+  public String getMessage(final String... args) {
+    String tmpMessage = msg;
+
+    for (final String arg : args) {
+      tmpMessage = tmpMessage.replaceFirst("%s", Matcher.quoteReplacement(arg));
+    }
+
+    return tmpMessage;
+  }
+
+  public void printMessage(final String... args) {
+    System.out.println(getMessage(args));
+  }
+
+  @Override
+  public String toString() {
+    return msg;
+  }
+}
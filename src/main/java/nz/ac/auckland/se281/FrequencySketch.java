@@ -0,0 +1,83 @@
+package nz.ac.auckland.se281;
+
+/**
+ * Approximate access counter for cache keys, used by the TinyLFU admission policy.
+ *
+ * <p>This is a count-min sketch: each key increments one small counter in each of four rows and
+ * its frequency is the smallest of the four. Counters stop at 15, and once enough increments have
+ * been recorded every counter is halved, so old popularity fades away.
+ */
+class FrequencySketch {
+  private static final int MAX_COUNT = 15;
+
+  private final int[] table;
+  private final int mask;
+  private final int sampleSize;
+  private int increments;
+
+  /**
+   * Creates a sketch sized for a cache of the given capacity.
+   *
+   * @param capacity the number of entries the cache holds
+   */
+  FrequencySketch(int capacity) {
+    int size = Integer.highestOneBit(Math.max(16, capacity * 4 - 1)) << 1;
+    table = new int[size];
+    mask = size - 1;
+    sampleSize = Math.max(10, capacity * 10);
+  }
+
+  /**
+   * Records one access to a key.
+   *
+   * @param key the key that was accessed
+   */
+  void increment(long key) {
+    long hash = spread(key);
+    boolean added = false;
+    for (int row = 0; row < 4; row++) {
+      int index = index(hash, row);
+      if (table[index] < MAX_COUNT) {
+        table[index]++;
+        added = true;
+      }
+    }
+    if (added && ++increments >= sampleSize) {
+      reset();
+    }
+  }
+
+  /**
+   * Estimates how often a key has been accessed recently.
+   *
+   * @param key the key to look up
+   * @return the estimated number of accesses
+   */
+  int frequency(long key) {
+    long hash = spread(key);
+    int frequency = MAX_COUNT;
+    for (int row = 0; row < 4; row++) {
+      frequency = Math.min(frequency, table[index(hash, row)]);
+    }
+    return frequency;
+  }
+
+  private void reset() {
+    for (int i = 0; i < table.length; i++) {
+      table[i] >>>= 1;
+    }
+    increments /= 2;
+  }
+
+  private int index(long hash, int row) {
+    long rowHash = (hash + row) * 0x9E3779B97F4A7C15L;
+    return (int) (rowHash >>> 32) & mask;
+  }
+
+  private static long spread(long key) {
+    key ^= key >>> 33;
+    key *= 0xFF51AFD7ED558CCDL;
+    key ^= key >>> 33;
+    return key;
+  }
+}
@@ -0,0 +1,186 @@
+package nz.ac.auckland.se281;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Collects countries and borders one at a time and turns them into an immutable {@link
+ * CountryGraph}.
+ *
+ * <p>Country and continent names are interned to dense integer IDs in the order they are first
+ * seen, so the IDs line up with the order of the countries file. Borders keep the order they were
+ * added in, which is what the BFS relies on for tie-breaking.
+ */
+class GraphBuilder {
+  private final HashMap<String, Integer> countryIds = new HashMap<>();
+  private final List<String> names = new ArrayList<>();
+  private final HashMap<String, Integer> continentIds = new HashMap<>();
+  private final List<String> continentNames = new ArrayList<>();
+
+  private int[] countryContinents = new int[16];
+  private int[] taxes = new int[16];
+
+  // Borders are stored as two parallel arrays of (from, to) pairs until build() sorts them.
+  private int[] edgeFrom = new int[64];
+  private int[] edgeTo = new int[64];
+  private int edgeCount;
+
+  /**
+   * Adds a country to the map.
+   *
+   * @param name the name of the country
+   * @param continent the continent where the country is located
+   * @param tax the tax paid when crossing into the country
+   * @return the ID assigned to the country
+   * @throws MapFormatException if a country with the same name was already added, or the tax is
+   *     negative
+   */
+  int addCountry(String name, String continent, int tax) {
+    return addCountry(name, addContinent(continent), tax);
+  }
+
+  /**
+   * Adds a country on a continent that has already been added.
+   *
+   * @param name the name of the country
+   * @param continentId the ID of the continent from {@link #addContinent}
+   * @param tax the tax paid when crossing into the country
+   * @return the ID assigned to the country
+   * @throws MapFormatException if a country with the same name was already added, or the tax is
+   *     negative
+   */
+  int addCountry(String name, int continentId, int tax) {
+    if (tax < 0) {
+      throw new MapFormatException("Negative tax for country: " + name);
+    }
+    int id = names.size();
+    if (countryIds.putIfAbsent(name, id) != null) {
+      throw new MapFormatException("Duplicate country: " + name);
+    }
+    names.add(name);
+
+    if (id == taxes.length) {
+      taxes = Arrays.copyOf(taxes, id * 2);
+      countryContinents = Arrays.copyOf(countryContinents, id * 2);
+    }
+    countryContinents[id] = continentId;
+    taxes[id] = tax;
+    return id;
+  }
+
+  /**
+   * Returns the ID of a continent, adding it if it is new.
+   *
+   * @param continent the name of the continent
+   * @return the ID of the continent
+   */
+  int addContinent(String continent) {
+    Integer continentId = continentIds.get(continent);
+    if (continentId == null) {
+      continentId = continentNames.size();
+      continentIds.put(continent, continentId);
+      continentNames.add(continent);
+    }
+    return continentId;
+  }
+
+  /**
+   * Adds a directed border from one country to another.
+   *
+   * @param from the ID of the country the border leaves
+   * @param to the ID of the neighbouring country
+   */
+  void addBorder(int from, int to) {
+    if (edgeCount == edgeFrom.length) {
+      edgeFrom = Arrays.copyOf(edgeFrom, edgeCount * 2);
+      edgeTo = Arrays.copyOf(edgeTo, edgeCount * 2);
+    }
+    edgeFrom[edgeCount] = from;
+    edgeTo[edgeCount] = to;
+    edgeCount++;
+  }
+
+  /**
+   * Adds many directed borders at once, in order.
+   *
+   * @param from the IDs of the countries the borders leave
+   * @param to the IDs of the neighbouring countries
+   * @param count the number of borders to take from the arrays
+   */
+  void addBorders(int[] from, int[] to, int count) {
+    if (edgeCount + count > edgeFrom.length) {
+      int capacity = Math.max(edgeFrom.length * 2, edgeCount + count);
+      edgeFrom = Arrays.copyOf(edgeFrom, capacity);
+      edgeTo = Arrays.copyOf(edgeTo, capacity);
+    }
+    System.arraycopy(from, 0, edgeFrom, edgeCount, count);
+    System.arraycopy(to, 0, edgeTo, edgeCount, count);
+    edgeCount += count;
+  }
+
+  /**
+   * Returns the ID of a country that has already been added.
+   *
+   * @param name the name of the country
+   * @return the ID of the country
+   * @throws MapFormatException if no country with that name was added
+   */
+  int idOf(String name) {
+    Integer id = countryIds.get(name);
+    if (id == null) {
+      throw new MapFormatException("Unknown country: " + name);
+    }
+    return id;
+  }
+
+  /**
+   * Builds the compressed sparse row graph from everything added so far.
+   *
+   * @return the finished graph
+   */
+  CountryGraph build() {
+    int size = names.size();
+
+    // Counting sort of the borders by source country. It is stable, so each country's neighbours
+    // stay in the order they appeared in the adjacencies file.
+    int[] offsets = new int[size + 1];
+    for (int i = 0; i < edgeCount; i++) {
+      offsets[edgeFrom[i] + 1]++;
+    }
+    for (int i = 0; i < size; i++) {
+      offsets[i + 1] += offsets[i];
+    }
+    int[] neighbours = new int[edgeCount];
+    int[] next = Arrays.copyOf(offsets, size);
+    for (int i = 0; i < edgeCount; i++) {
+      neighbours[next[edgeFrom[i]]++] = edgeTo[i];
+    }
+
+    // The same again keyed on the destination, so searches can also walk borders backwards.
+    int[] reverseOffsets = new int[size + 1];
+    for (int i = 0; i < edgeCount; i++) {
+      reverseOffsets[edgeTo[i] + 1]++;
+    }
+    for (int i = 0; i < size; i++) {
+      reverseOffsets[i + 1] += reverseOffsets[i];
+    }
+    int[] reverseNeighbours = new int[edgeCount];
+    next = Arrays.copyOf(reverseOffsets, size);
+    for (int i = 0; i < edgeCount; i++) {
+      reverseNeighbours[next[edgeTo[i]]++] = edgeFrom[i];
+    }
+
+    return new CountryGraph(
+        names.toArray(new String[0]),
+        Arrays.copyOf(countryContinents, size),
+        continentNames.toArray(new String[0]),
+        Arrays.copyOf(taxes, size),
+        offsets,
+        neighbours,
+        reverseOffsets,
+        reverseNeighbours,
+        new HashMap<>(countryIds));
+  }
+}
@@ -0,0 +1,493 @@
+package nz.ac.auckland.se281;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Builds a {@link ContractionHierarchy} by contracting the countries of a map, the least important
+ * first.
+ *
+ * <p>A country's priority is its level, one more than the highest level of its neighbours
+ * contracted so far, which spreads the contraction evenly over the map, plus four times the
+ * number of shortcuts contracting it would add over the number of edges it would take away, and
+ * the same for the borders they stand for. A shortcut between two neighbours is left out when a
+ * witness search finds a route between them that is no longer and does not go through the
+ * country. The witness searches give up after a few steps, fewer when only working out a
+ * priority, which only ever adds a shortcut that was not needed.
+ *
+ * <p>Countries are contracted in rounds, in parallel. Each round takes every remaining country
+ * whose priority is lower than that of all the remaining countries up to two edges away, so no two
+ * of them are neighbours or share one. The shortcuts they need are found in parallel and added
+ * afterwards, and then the priorities of their neighbours are worked out again, also in parallel.
+ * A witness search may go through another country of the same round, but then a route of the same
+ * cost only counts if it crosses no more borders than the shortcut would stand for: otherwise two
+ * countries could each be the other's witness for the same pair, and neither would add the
+ * shortcut. Since countries of a round share no neighbours, such a route always crosses more
+ * borders than the one it replaces, which rules that out even when some countries have no tax.
+ *
+ * <p>Maps where most countries border far away ones, like the random chords of the synthetic
+ * continent maps, are left with a dense core that is slow to contract and needs many shortcuts:
+ * each round takes only a country or two, and the build time grows much faster than the map.
+ * Contraction therefore stops once the countries left have more than {@link #CORE_DEGREE} edges
+ * each on average, and they are left as the core of the hierarchy, which queries search like a
+ * plain graph. On a random map of 3,500 countries that cuts the build from over ten minutes to
+ * under a second, and queries still settle only a few thousand countries. Hierarchies pay off
+ * most on maps that are more like road networks, such as grids, which never reach the cutoff.
+ */
+class HierarchyBuilder {
+  // Average number of edges out of the countries left past which contraction stops.
+  private static final int CORE_DEGREE = 8;
+  // Most countries a witness search settles before it gives up and keeps the shortcut.
+  private static final int WITNESS_LIMIT = 64;
+  // The same, for the searches that only work out a priority.
+  private static final int PRIORITY_LIMIT = 16;
+  // Priorities are fixed-point, in 1/PRIORITY_SCALE.
+  private static final int PRIORITY_SCALE = 1000;
+
+  private final CountryGraph graph;
+  private final ContractionHierarchy.Weight weight;
+  // The core cutoff, CORE_DEGREE unless a test picks another.
+  private final int coreDegree;
+  // The edges between the countries not contracted yet, out of and into each of them. Once a
+  // country is contracted its lists are no longer changed, and hold its edges in the hierarchy.
+  private final Edges[] out;
+  private final Edges[] in;
+  private final int[] priority;
+  private final int[] level;
+  // rank[id] is the round-by-round order 'id' was contracted in, or -1 while it is not.
+  private final int[] rank;
+  // Whether each country is being contracted in this round.
+  private final boolean[] contracting;
+  // Scratch space for the witness searches, one per thread.
+  private final ThreadLocal<Witness> witnesses;
+
+  /**
+   * Prepares to build a hierarchy.
+   *
+   * @param graph the map to build it for
+   * @param weight what the routes cost
+   */
+  HierarchyBuilder(CountryGraph graph, ContractionHierarchy.Weight weight) {
+    this(graph, weight, CORE_DEGREE);
+  }
+
+  /**
+   * Prepares to build a hierarchy with a given core cutoff.
+   *
+   * @param graph the map to build it for
+   * @param weight what the routes cost
+   * @param coreDegree the average number of edges out of the countries left past which
+   *     contraction stops; 0 leaves them all in the core unless there are no borders, and {@link
+   *     Integer#MAX_VALUE} contracts them all
+   */
+  HierarchyBuilder(CountryGraph graph, ContractionHierarchy.Weight weight, int coreDegree) {
+    this.graph = graph;
+    this.weight = weight;
+    this.coreDegree = coreDegree;
+    int size = graph.size();
+    out = new Edges[size];
+    in = new Edges[size];
+    for (int id = 0; id < size; id++) {
+      out[id] = new Edges(graph.offsets[id + 1] - graph.offsets[id]);
+      in[id] = new Edges(graph.reverseOffsets[id + 1] - graph.reverseOffsets[id]);
+    }
+    for (int from = 0; from < size; from++) {
+      for (int i = graph.offsets[from]; i < graph.offsets[from + 1]; i++) {
+        int to = graph.neighbours[i];
+        if (to != from) {
+          int cost = weight == ContractionHierarchy.Weight.TAX ? graph.taxes[to] : 1;
+          out[from].put(to, cost, 1, -1);
+          in[to].put(from, cost, 1, -1);
+        }
+      }
+    }
+    priority = new int[size];
+    level = new int[size];
+    rank = new int[size];
+    Arrays.fill(rank, -1);
+    contracting = new boolean[size];
+    witnesses = ThreadLocal.withInitial(() -> new Witness(size));
+  }
+
+  /**
+   * Contracts every country and collects the shortcuts.
+   *
+   * @return the hierarchy
+   */
+  ContractionHierarchy build() {
+    int size = graph.size();
+    IntStream.range(0, size).parallel().forEach(id -> priority[id] = findPriority(id));
+
+    int[] remaining = IntStream.range(0, size).toArray();
+    int remainingCount = size;
+    int contracted = 0;
+    int[] dirty = new int[size];
+    boolean[] isDirty = new boolean[size];
+    while (remainingCount > 0 && !isCore(remaining, remainingCount)) {
+      int[] round =
+          Arrays.stream(remaining, 0, remainingCount)
+              .parallel()
+              .filter(this::isLocalMinimum)
+              .toArray();
+      for (int country : round) {
+        contracting[country] = true;
+      }
+      int[][] shortcuts =
+          Arrays.stream(round)
+              .parallel()
+              .mapToObj(
+                  country -> {
+                    Witness witness = witnesses.get();
+                    int found = witness.findShortcuts(country, WITNESS_LIMIT);
+                    return Arrays.copyOf(witness.found, found);
+                  })
+              .toArray(int[][]::new);
+
+      int dirtyCount = 0;
+      for (int i = 0; i < round.length; i++) {
+        int country = round[i];
+        rank[country] = contracted++;
+        contracting[country] = false;
+        int[] found = shortcuts[i];
+        for (int j = 0; j < found.length; j += 4) {
+          out[found[j]].put(found[j + 1], found[j + 2], found[j + 3], country);
+          in[found[j + 1]].put(found[j], found[j + 2], found[j + 3], country);
+        }
+        Edges edges = out[country];
+        for (int j = 0; j < edges.size; j++) {
+          int next = edges.nodes[j];
+          in[next].remove(country);
+          level[next] = Math.max(level[next], level[country] + 1);
+          if (!isDirty[next]) {
+            isDirty[next] = true;
+            dirty[dirtyCount++] = next;
+          }
+        }
+        edges = in[country];
+        for (int j = 0; j < edges.size; j++) {
+          int previous = edges.nodes[j];
+          out[previous].remove(country);
+          level[previous] = Math.max(level[previous], level[country] + 1);
+          if (!isDirty[previous]) {
+            isDirty[previous] = true;
+            dirty[dirtyCount++] = previous;
+          }
+        }
+      }
+      Arrays.stream(dirty, 0, dirtyCount)
+          .parallel()
+          .forEach(
+              id -> {
+                priority[id] = findPriority(id);
+                isDirty[id] = false;
+              });
+
+      int kept = 0;
+      for (int i = 0; i < remainingCount; i++) {
+        if (rank[remaining[i]] < 0) {
+          remaining[kept++] = remaining[i];
+        }
+      }
+      remainingCount = kept;
+    }
+    // The countries left are the core, ranked above the rest.
+    for (int i = 0; i < remainingCount; i++) {
+      rank[remaining[i]] = contracted++;
+    }
+    return collect(remainingCount);
+  }
+
+  /**
+   * Checks whether the countries left are so dense that they should be left uncontracted: past
+   * a few edges each, contracting one adds more shortcuts than it takes edges away, and the
+   * rounds shrink to a country or two.
+   */
+  private boolean isCore(int[] remaining, int count) {
+    long edges = 0;
+    for (int i = 0; i < count; i++) {
+      edges += out[remaining[i]].size;
+    }
+    return edges > (long) coreDegree * count;
+  }
+
+  /** Puts the hierarchy together from the ranks and the shortcuts left in the frozen lists. */
+  private ContractionHierarchy collect(int coreSize) {
+    int count = 0;
+    for (int id = 0; id < graph.size(); id++) {
+      count += out[id].shortcutCount() + in[id].shortcutCount();
+    }
+    int[] from = new int[count];
+    int[] to = new int[count];
+    int[] via = new int[count];
+    int next = 0;
+    for (int id = 0; id < graph.size(); id++) {
+      Edges edges = out[id];
+      for (int j = 0; j < edges.size; j++) {
+        if (edges.via[j] >= 0) {
+          from[next] = id;
+          to[next] = edges.nodes[j];
+          via[next++] = edges.via[j];
+        }
+      }
+      edges = in[id];
+      for (int j = 0; j < edges.size; j++) {
+        if (edges.via[j] >= 0) {
+          from[next] = edges.nodes[j];
+          to[next] = id;
+          via[next++] = edges.via[j];
+        }
+      }
+    }
+    return new ContractionHierarchy(graph, weight, rank, coreSize, from, to, via);
+  }
+
+  private int findPriority(int country) {
+    Witness witness = witnesses.get();
+    int found = witness.findShortcuts(country, PRIORITY_LIMIT);
+    int hops = 0;
+    for (int j = 3; j < found; j += 4) {
+      hops += witness.found[j];
+    }
+    int removed = out[country].size + in[country].size;
+    int removedHops = out[country].hopCount() + in[country].hopCount();
+    return level[country] * PRIORITY_SCALE
+        + 4 * PRIORITY_SCALE * (found / 4) / Math.max(1, removed)
+        + 4 * PRIORITY_SCALE * hops / Math.max(1, removedHops);
+  }
+
+  /** Checks whether a country comes before all remaining countries up to two edges away. */
+  private boolean isLocalMinimum(int country) {
+    return comesFirstAround(country, country, 2);
+  }
+
+  /** Checks whether a country comes before all remaining countries within some edges of another. */
+  private boolean comesFirstAround(int country, int around, int depth) {
+    for (int j = 0; j < out[around].size; j++) {
+      int next = out[around].nodes[j];
+      if (next != country
+          && (comesBefore(next, country)
+              || (depth > 1 && !comesFirstAround(country, next, depth - 1)))) {
+        return false;
+      }
+    }
+    for (int j = 0; j < in[around].size; j++) {
+      int previous = in[around].nodes[j];
+      if (previous != country
+          && (comesBefore(previous, country)
+              || (depth > 1 && !comesFirstAround(country, previous, depth - 1)))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Orders countries by priority, and equal priorities by a hash so that ties are spread out. */
+  private boolean comesBefore(int country, int other) {
+    if (priority[country] != priority[other]) {
+      return priority[country] < priority[other];
+    }
+    int hash = Integer.reverse(country * 0x9E3779B9);
+    int otherHash = Integer.reverse(other * 0x9E3779B9);
+    return hash != otherHash ? hash < otherHash : country < other;
+  }
+
+  /** Growable edge list of one country, in parallel arrays. */
+  private static final class Edges {
+    int[] nodes;
+    int[] weights;
+    // The number of borders an edge stands for.
+    int[] hops;
+    // The country a shortcut goes round, or -1 for a border.
+    int[] via;
+    int size;
+
+    Edges(int capacity) {
+      nodes = new int[capacity];
+      weights = new int[capacity];
+      hops = new int[capacity];
+      via = new int[capacity];
+    }
+
+    /** Adds an edge, or makes the edge to the same country cheaper if this one is. */
+    void put(int node, int weight, int hopCount, int through) {
+      for (int i = 0; i < size; i++) {
+        if (nodes[i] == node) {
+          if (weight < weights[i]) {
+            weights[i] = weight;
+            hops[i] = hopCount;
+            via[i] = through;
+          }
+          return;
+        }
+      }
+      if (size == nodes.length) {
+        int capacity = Math.max(4, size * 2);
+        nodes = Arrays.copyOf(nodes, capacity);
+        weights = Arrays.copyOf(weights, capacity);
+        hops = Arrays.copyOf(hops, capacity);
+        via = Arrays.copyOf(via, capacity);
+      }
+      nodes[size] = node;
+      weights[size] = weight;
+      hops[size] = hopCount;
+      via[size++] = through;
+    }
+
+    void remove(int node) {
+      for (int i = 0; i < size; i++) {
+        if (nodes[i] == node) {
+          size--;
+          nodes[i] = nodes[size];
+          weights[i] = weights[size];
+          hops[i] = hops[size];
+          via[i] = via[size];
+          return;
+        }
+      }
+    }
+
+    int hopCount() {
+      int count = 0;
+      for (int i = 0; i < size; i++) {
+        count += hops[i];
+      }
+      return count;
+    }
+
+    int shortcutCount() {
+      int count = 0;
+      for (int i = 0; i < size; i++) {
+        if (via[i] >= 0) {
+          count++;
+        }
+      }
+      return count;
+    }
+  }
+
+  /** One thread's scratch space for witness searches. */
+  private final class Witness {
+    private final SearchContext context;
+    // The shortcuts found last, as from, to, weight and borders one after the other.
+    private int[] found = new int[64];
+
+    // Whether the shortest route found to each country goes through one being contracted.
+    private final boolean[] throughRound;
+
+    Witness(int size) {
+      context = new SearchContext(size, 1);
+      context.ensureBidirectional();
+      context.ensureHeap();
+      throughRound = new boolean[size];
+    }
+
+    /** Checks whether the route the search found to a country makes a shortcut unneeded. */
+    private boolean isWitness(int country, int through, int throughHops) {
+      int distance = context.distance[country];
+      return distance < through
+          || (distance == through
+              && (!throughRound[country] || context.backDistance[country] <= throughHops));
+    }
+
+    /**
+     * Finds the shortcuts contracting a country needs: for each pair of a neighbour it is entered
+     * from and one it leads to, unless a witness search finds a route between them that costs no
+     * more and goes round it.
+     *
+     * @param country the ID of the country
+     * @return the number of values written to {@link #found}, four for each shortcut
+     */
+    int findShortcuts(int country, int limit) {
+      Edges into = in[country];
+      Edges outOf = out[country];
+      int count = 0;
+      for (int i = 0; i < into.size; i++) {
+        int from = into.nodes[i];
+        int bound = 0;
+        int targets = 0;
+        context.reset();
+        for (int j = 0; j < outOf.size; j++) {
+          if (outOf.nodes[j] != from) {
+            bound = Math.max(bound, into.weights[i] + outOf.weights[j]);
+            context.mark(outOf.nodes[j]);
+            targets++;
+          }
+        }
+        search(from, country, bound, targets, limit);
+        for (int j = 0; j < outOf.size; j++) {
+          int to = outOf.nodes[j];
+          int through = into.weights[i] + outOf.weights[j];
+          int throughHops = into.hops[i] + outOf.hops[j];
+          if (to == from || (context.isVisited(to) && isWitness(to, through, throughHops))) {
+            continue;
+          }
+          if (count + 4 > found.length) {
+            found = Arrays.copyOf(found, found.length * 2);
+          }
+          found[count++] = from;
+          found[count++] = to;
+          found[count++] = through;
+          found[count++] = throughHops;
+        }
+      }
+      return count;
+    }
+
+    /**
+     * Checks whether a route that costs the same as the one found to a country is better: one that
+     * goes round the countries of the round comes first, then one with fewer borders.
+     */
+    private boolean isBetterTie(int country, boolean nextThroughRound, int nextHops) {
+      if (throughRound[country] != nextThroughRound) {
+        return !nextThroughRound;
+      }
+      return nextHops < context.backDistance[country];
+    }
+
+    /**
+     * Runs Dijkstra's algorithm from a country over the remaining graph, going round the country
+     * being contracted, until every marked target is settled, the bound or the witness limit. Of
+     * two routes that cost the same, one that does not go through a country of the round is
+     * preferred.
+     */
+    private void search(int source, int skipped, int bound, int targets, int limit) {
+      context.restart();
+      int[] distance = context.distance;
+      int[] hops = context.backDistance;
+      IndexedMinHeap heap = context.heap;
+      context.visit(source);
+      distance[source] = 0;
+      hops[source] = 0;
+      throughRound[source] = false;
+      heap.pushOrDecrease(source, 0);
+      for (int settled = 0;
+          !heap.isEmpty() && heap.peekKey() <= bound && settled < limit;
+          settled++) {
+        int country = heap.poll();
+        if (context.unmark(country) && --targets == 0) {
+          break;
+        }
+        Edges edges = out[country];
+        for (int j = 0; j < edges.size; j++) {
+          int next = edges.nodes[j];
+          int nextDistance = distance[country] + edges.weights[j];
+          if (next == skipped || nextDistance > bound) {
+            continue;
+          }
+          int nextHops = hops[country] + edges.hops[j];
+          boolean nextThroughRound = throughRound[country] || contracting[next];
+          if (context.visit(next)
+              || nextDistance < distance[next]
+              || (nextDistance == distance[next]
+                  && isBetterTie(next, nextThroughRound, nextHops))) {
+            distance[next] = nextDistance;
+            hops[next] = nextHops;
+            throughRound[next] = nextThroughRound;
+            heap.pushOrDecrease(next, nextDistance);
+          }
+        }
+      }
+      heap.clear();
+    }
+  }
+}
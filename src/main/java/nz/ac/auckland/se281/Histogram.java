@@ -0,0 +1,110 @@
+package nz.ac.auckland.se281;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe histogram of non-negative values with a fixed relative precision, in the style of
+ * HdrHistogram.
+ *
+ * <p>Values below 32 get a bucket each. Above that, every power of two is split into 32 equal
+ * buckets, so a recorded value is known to within about 3% whatever its size. That takes 1920
+ * buckets to cover every long, and recording a value is a couple of shifts and one atomic
+ * increment, with no allocation.
+ */
+class Histogram {
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Records one value.
+   *
+   * @param value the value, where negative values are counted as 0
+   */
+  void record(long value) {
+    value = Math.max(0, value);
+    counts.incrementAndGet(bucket(value));
+    count.increment();
+    sum.add(value);
+    if (value > max.get()) {
+      max.accumulateAndGet(value, Math::max);
+    }
+  }
+
+  /**
+   * Records the time since a start time from {@link System#nanoTime()}.
+   *
+   * @param startNanos when the timed work started
+   */
+  void recordSince(long startNanos) {
+    record(System.nanoTime() - startNanos);
+  }
+
+  long count() {
+    return count.sum();
+  }
+
+  long max() {
+    return max.get();
+  }
+
+  double mean() {
+    long n = count.sum();
+    return n == 0 ? 0 : (double) sum.sum() / n;
+  }
+
+  /**
+   * Returns the value at a percentile, rounded up to the top of its bucket.
+   *
+   * @param percentile the percentile, from 0 to 100
+   * @return the smallest bucket bound that at least that share of the values are at or below, or
+   *     0 if nothing has been recorded
+   */
+  long percentile(double percentile) {
+    long total = count.sum();
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return Math.min(highestValueIn(i), max.get());
+      }
+    }
+    return max.get();
+  }
+
+  /**
+   * Returns the bucket a value falls in.
+   *
+   * @param value a non-negative value
+   * @return the index of its bucket
+   */
+  private static int bucket(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    // Keep the top SUB_BUCKET_BITS + 1 bits of the value; the shift says which power of two it is.
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    int mantissa = (int) (value >>> shift);
+    return (shift + 1) * SUB_BUCKETS + mantissa - SUB_BUCKETS;
+  }
+
+  private static long highestValueIn(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = bucket / SUB_BUCKETS - 1;
+    long mantissa = bucket % SUB_BUCKETS + SUB_BUCKETS;
+    return ((mantissa + 1) << shift) - 1;
+  }
+}
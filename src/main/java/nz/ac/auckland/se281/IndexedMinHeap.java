@@ -0,0 +1,151 @@
+package nz.ac.auckland.se281;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of country IDs keyed on an int priority, with decrease-key.
+ *
+ * <p>Everything is stored in int arrays sized for the whole graph, so pushing and popping never
+ * boxes or allocates. The heap remembers where each country sits so that its key can be lowered
+ * in place instead of pushing a duplicate entry.
+ */
+class IndexedMinHeap {
+  private final int[] heap;
+  private final int[] keys;
+  private final int[] positions;
+  private int size;
+
+  /**
+   * Creates an empty heap that can hold every country of a graph.
+   *
+   * @param capacity the number of countries in the graph
+   */
+  IndexedMinHeap(int capacity) {
+    heap = new int[capacity];
+    keys = new int[capacity];
+    positions = new int[capacity];
+    Arrays.fill(positions, -1);
+  }
+
+  /**
+   * Checks whether the heap is empty.
+   *
+   * @return true if the heap is empty
+   */
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Returns the number of countries in the heap.
+   *
+   * @return the number of countries
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Checks whether a country is currently in the heap.
+   *
+   * @param country the ID of the country
+   * @return true if the country is in the heap
+   */
+  boolean contains(int country) {
+    return positions[country] >= 0;
+  }
+
+  /**
+   * Adds a country to the heap, or lowers its key if it is already there.
+   *
+   * <p>A key that is not lower than the current one is ignored.
+   *
+   * @param country the ID of the country
+   * @param key the priority of the country
+   */
+  void pushOrDecrease(int country, int key) {
+    int position = positions[country];
+    if (position < 0) {
+      position = size++;
+      heap[position] = country;
+      positions[country] = position;
+    } else if (key >= keys[country]) {
+      return;
+    }
+    keys[country] = key;
+    siftUp(position);
+  }
+
+  /**
+   * Returns the key of the country at the top of the heap.
+   *
+   * @return the smallest key
+   */
+  int peekKey() {
+    return keys[heap[0]];
+  }
+
+  /**
+   * Removes the country with the smallest key.
+   *
+   * @return the ID of the removed country
+   */
+  int poll() {
+    int top = heap[0];
+    positions[top] = -1;
+    size--;
+    if (size > 0) {
+      int last = heap[size];
+      heap[0] = last;
+      positions[last] = 0;
+      siftDown(0);
+    }
+    return top;
+  }
+
+  /** Removes every country, touching only the entries still in the heap. */
+  void clear() {
+    for (int i = 0; i < size; i++) {
+      positions[heap[i]] = -1;
+    }
+    size = 0;
+  }
+
+  private void siftUp(int position) {
+    int country = heap[position];
+    int key = keys[country];
+    while (position > 0) {
+      int parentPosition = (position - 1) >>> 1;
+      int parent = heap[parentPosition];
+      if (keys[parent] <= key) {
+        break;
+      }
+      heap[position] = parent;
+      positions[parent] = position;
+      position = parentPosition;
+    }
+    heap[position] = country;
+    positions[country] = position;
+  }
+
+  private void siftDown(int position) {
+    int country = heap[position];
+    int key = keys[country];
+    int half = size >>> 1;
+    while (position < half) {
+      int child = 2 * position + 1;
+      int right = child + 1;
+      if (right < size && keys[heap[right]] < keys[heap[child]]) {
+        child = right;
+      }
+      if (keys[heap[child]] >= key) {
+        break;
+      }
+      heap[position] = heap[child];
+      positions[heap[child]] = position;
+      position = child;
+    }
+    heap[position] = country;
+    positions[country] = position;
+  }
+}
@@ -0,0 +1,381 @@
+package nz.ac.auckland.se281;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Bounds on the number of borders or the tax between any two countries, from their precomputed
+ * distances to and from a few landmark countries (ALT: A*, landmarks and the triangle inequality).
+ *
+ * <p>For a landmark L, a route from u to v cannot be shorter than d(L, v) - d(L, u), since going
+ * from L to u and then to v is at least as long as the shortest route from L to v, nor shorter than
+ * d(u, L) - d(v, L) for the same reason. The lower bound is the largest of these over all
+ * landmarks, and the upper bound the shortest route through one of them, d(u, L) + d(L, v). Both
+ * take O(k) for k landmarks, and the upper bound is the exact distance whenever a shortest route
+ * goes through a landmark. The lower bound by tax is also an A* heuristic, much tighter than the
+ * destination's tax alone on large maps.
+ *
+ * <p>Landmarks are picked one at a time, each as far as possible, in borders, from those picked so
+ * far, which puts them around the edges of the map where they bound the most routes. A country
+ * that none of them reaches is as far as possible, so every part of a map that falls apart gets
+ * one. Picking needs a breadth-first search from each landmark in turn, which fills in the
+ * borders from it; the borders to each landmark and the tax both ways are then worked out with
+ * one search per landmark and direction, in parallel.
+ *
+ * <p>The distances are kept in one {@code int[]} per measure and direction, k per country next to
+ * each other, so that the O(k) bounds read them from one place.
+ *
+ * <p>An oracle is never changed once built. Raising taxes can only make routes dearer, so the
+ * lower bounds by tax of the old map still hold on the new one, and {@link #forUpdate} keeps the
+ * distances for edits that do nothing else; only the upper bounds by tax are lost.
+ */
+class LandmarkOracle {
+  // Most landmarks an oracle can have; past a few dozen each one adds little.
+  static final int MAX_LANDMARKS = 64;
+  private static final int UNREACHABLE = Integer.MAX_VALUE;
+  // Distance tables per oracle: from and to the landmarks, by borders and by tax.
+  private static final int TABLES = 4;
+
+  private final int landmarkCount;
+  private final int[] landmarks;
+  private final int[] taxes;
+  // Whether taxes have gone up since the distances by tax were worked out, so that they are
+  // still lower bounds but no longer exact.
+  private final boolean taxesRaised;
+  // fromLandmarks[weight][id * k + i] is the distance from landmark i to 'id', and
+  // toLandmarks[weight][id * k + i] the distance from 'id' to landmark i, for k landmarks and
+  // weight a ContractionHierarchy.Weight ordinal. UNREACHABLE if there is no route.
+  private final int[][] fromLandmarks;
+  private final int[][] toLandmarks;
+
+  /**
+   * Checks whether an oracle for the given graph fits in a memory budget.
+   *
+   * @param graph the graph to precompute
+   * @param landmarkCount the number of landmarks
+   * @param budgetBytes the number of bytes the distances may use
+   * @return true if the oracle can be built
+   */
+  static boolean fits(CountryGraph graph, int landmarkCount, long budgetBytes) {
+    long cells = (long) graph.size() * landmarkCount;
+    return cells <= Integer.MAX_VALUE && cells * TABLES * Integer.BYTES <= budgetBytes;
+  }
+
+  /**
+   * Picks landmarks on a map and works out their distances, unless that takes more than a quarter
+   * of the heap.
+   *
+   * @param graph the map
+   * @param landmarkCount the number of landmarks, from 1 to {@link #MAX_LANDMARKS}
+   * @param metrics where to record the time taken
+   * @return the landmarks, or null if the map is too big for them
+   * @throws IllegalArgumentException if the number of landmarks is out of range
+   */
+  static LandmarkOracle build(CountryGraph graph, int landmarkCount, Metrics metrics) {
+    checkCount(landmarkCount);
+    if (!fits(graph, landmarkCount, Runtime.getRuntime().maxMemory() / 4)) {
+      return null;
+    }
+    long startNanos = System.nanoTime();
+    LandmarkOracle landmarks = new LandmarkOracle(graph, landmarkCount);
+    metrics.histogram("load.landmarks_ns").recordSince(startNanos);
+    return landmarks;
+  }
+
+  private static void checkCount(int landmarkCount) {
+    if (landmarkCount < 1 || landmarkCount > MAX_LANDMARKS) {
+      throw new IllegalArgumentException(
+          "The number of landmarks must be from 1 to " + MAX_LANDMARKS + ": " + landmarkCount);
+    }
+  }
+
+  /**
+   * Picks the landmarks and works out the distances between them and every country.
+   *
+   * @param graph the graph to precompute, which must pass {@link #fits}
+   * @param landmarkCount the number of landmarks, from 1 to {@link #MAX_LANDMARKS}; fewer are
+   *     used if the map has fewer countries
+   * @throws IllegalArgumentException if the number of landmarks is out of range
+   */
+  LandmarkOracle(CountryGraph graph, int landmarkCount) {
+    checkCount(landmarkCount);
+    this.landmarkCount = landmarkCount;
+    int size = graph.size();
+    int count = Math.min(landmarkCount, size);
+    landmarks = new int[count];
+    taxes = graph.taxes;
+    taxesRaised = false;
+    int weights = ContractionHierarchy.Weight.values().length;
+    fromLandmarks = new int[weights][size * count];
+    toLandmarks = new int[weights][size * count];
+    for (int weight = 0; weight < weights; weight++) {
+      Arrays.fill(fromLandmarks[weight], UNREACHABLE);
+      Arrays.fill(toLandmarks[weight], UNREACHABLE);
+    }
+    if (count == 0) {
+      return;
+    }
+
+    int borders = ContractionHierarchy.Weight.BORDERS.ordinal();
+    int tax = ContractionHierarchy.Weight.TAX.ordinal();
+    SearchContext context = new SearchContext(size, graph.continentCount());
+    // nearest[id] is the number of borders to 'id' from the closest landmark so far. The first
+    // landmark is the country furthest from country 0, which is itself not a landmark.
+    int[] nearest = new int[size];
+    Arrays.fill(nearest, UNREACHABLE);
+    breadthFirst(graph, context, 0, false, nearest, 0, 1);
+    for (int i = 0; i < count; i++) {
+      landmarks[i] = furthest(nearest);
+      if (i == 0) {
+        Arrays.fill(nearest, UNREACHABLE);
+      }
+      breadthFirst(graph, context, landmarks[i], false, fromLandmarks[borders], i, count);
+      for (int id = 0; id < size; id++) {
+        nearest[id] = Math.min(nearest[id], fromLandmarks[borders][id * count + i]);
+      }
+    }
+
+    ThreadLocal<SearchContext> contexts =
+        ThreadLocal.withInitial(() -> new SearchContext(size, graph.continentCount()));
+    IntStream.range(0, 3 * count)
+        .parallel()
+        .forEach(
+            task -> {
+              int i = task % count;
+              switch (task / count) {
+                case 0:
+                  breadthFirst(
+                      graph, contexts.get(), landmarks[i], true, toLandmarks[borders], i, count);
+                  break;
+                case 1:
+                  cheapest(
+                      graph, contexts.get(), landmarks[i], false, fromLandmarks[tax], i, count);
+                  break;
+                default:
+                  cheapest(graph, contexts.get(), landmarks[i], true, toLandmarks[tax], i, count);
+                  break;
+              }
+            });
+  }
+
+  /** Shares the distances of another oracle on an edited map with the same borders. */
+  private LandmarkOracle(CountryGraph edited, LandmarkOracle distances, boolean taxesRaised) {
+    this.landmarkCount = distances.landmarkCount;
+    this.landmarks = distances.landmarks;
+    this.taxes = edited.taxes;
+    this.taxesRaised = taxesRaised;
+    this.fromLandmarks = distances.fromLandmarks;
+    this.toLandmarks = distances.toLandmarks;
+  }
+
+  /**
+   * Returns the oracle for an edited version of the map, if the edits left every bound it gives a
+   * valid one: no borders changed and no tax went down.
+   *
+   * @param edited the edited map
+   * @param update what the edits changed
+   * @return an oracle sharing these distances, or null if the landmarks have to be picked again
+   */
+  LandmarkOracle forUpdate(CountryGraph edited, MapUpdate.Result update) {
+    if (update.renumbered
+        || update.taxLowered
+        || update.addedBorders.length > 0
+        || update.removedBorders.length > 0
+        || edited.size() != taxes.length) {
+      return null;
+    }
+    return new LandmarkOracle(edited, this, taxesRaised || update.taxChanged.length > 0);
+  }
+
+  /**
+   * Returns the number of landmarks asked for, which a map with fewer countries does not have.
+   *
+   * @return the number of landmarks
+   */
+  int landmarkCount() {
+    return landmarkCount;
+  }
+
+  /**
+   * Returns the landmarks, in the order they were picked.
+   *
+   * @return the IDs of the landmark countries
+   */
+  int[] landmarks() {
+    return landmarks.clone();
+  }
+
+  /**
+   * Returns a lower bound on the distance between two countries. It does not tell whether there
+   * is a route at all.
+   *
+   * @param weight what the route costs
+   * @param from the ID of the start country
+   * @param to the ID of the destination country
+   * @return the bound, at least 0
+   */
+  int lowerBound(ContractionHierarchy.Weight weight, int from, int to) {
+    int[] fromLandmark = fromLandmarks[weight.ordinal()];
+    int[] toLandmark = toLandmarks[weight.ordinal()];
+    int count = landmarks.length;
+    int start = from * count;
+    int end = to * count;
+    int bound = 0;
+    for (int i = 0; i < count; i++) {
+      // Distances are never negative, so the differences cannot overflow.
+      int toStart = fromLandmark[start + i];
+      int toEnd = fromLandmark[end + i];
+      if (toStart != UNREACHABLE && toEnd != UNREACHABLE) {
+        bound = Math.max(bound, toEnd - toStart);
+      }
+      int fromStart = toLandmark[start + i];
+      int fromEnd = toLandmark[end + i];
+      if (fromStart != UNREACHABLE && fromEnd != UNREACHABLE) {
+        bound = Math.max(bound, fromStart - fromEnd);
+      }
+    }
+    return bound;
+  }
+
+  /**
+   * Returns an upper bound on the distance between two countries: the shortest route between them
+   * through a landmark.
+   *
+   * @param weight what the route costs
+   * @param from the ID of the start country
+   * @param to the ID of the destination country
+   * @return the bound, or {@link Integer#MAX_VALUE} if no landmark is on a route between them, or
+   *     if the weight is tax and taxes have gone up since the landmarks were picked
+   */
+  int upperBound(ContractionHierarchy.Weight weight, int from, int to) {
+    if (from == to) {
+      return 0;
+    }
+    if (taxesRaised && weight == ContractionHierarchy.Weight.TAX) {
+      return UNREACHABLE;
+    }
+    int[] fromLandmark = fromLandmarks[weight.ordinal()];
+    int[] toLandmark = toLandmarks[weight.ordinal()];
+    int count = landmarks.length;
+    long bound = UNREACHABLE;
+    for (int i = 0; i < count; i++) {
+      int there = toLandmark[from * count + i];
+      int back = fromLandmark[to * count + i];
+      if (there != UNREACHABLE && back != UNREACHABLE) {
+        bound = Math.min(bound, (long) there + back);
+      }
+    }
+    return (int) bound;
+  }
+
+  /**
+   * Returns the A* heuristic for the cheapest route: the lower bound by tax, or the destination's
+   * tax if that is more.
+   *
+   * @return the heuristic
+   */
+  TaxHeuristic taxHeuristic() {
+    return (country, destination) ->
+        country == destination
+            ? 0
+            : Math.max(
+                taxes[destination],
+                lowerBound(ContractionHierarchy.Weight.TAX, country, destination));
+  }
+
+  /** Returns the country with the largest distance, the lowest ID on ties. */
+  private static int furthest(int[] distances) {
+    int furthest = 0;
+    for (int id = 1; id < distances.length; id++) {
+      if (distances[id] > distances[furthest]) {
+        furthest = id;
+      }
+    }
+    return furthest;
+  }
+
+  /**
+   * Counts the borders between a landmark and every country with a breadth-first search.
+   *
+   * @param graph the graph to search
+   * @param context scratch space for this thread
+   * @param source the ID of the landmark
+   * @param backward whether to count the borders to the landmark rather than from it
+   * @param table where to write the distances, at {@code id * stride + column}, which must be
+   *     UNREACHABLE for every country beforehand
+   * @param column the position of the landmark
+   * @param stride the number of landmarks
+   */
+  private static void breadthFirst(
+      CountryGraph graph,
+      SearchContext context,
+      int source,
+      boolean backward,
+      int[] table,
+      int column,
+      int stride) {
+    int[] offsets = backward ? graph.reverseOffsets : graph.offsets;
+    int[] neighbours = backward ? graph.reverseNeighbours : graph.neighbours;
+    int[] queue = context.queue;
+    int head = 0;
+    int tail = 0;
+    queue[tail++] = source;
+    table[source * stride + column] = 0;
+
+    while (head < tail) {
+      int country = queue[head++];
+      int next = table[country * stride + column] + 1;
+      for (int i = offsets[country]; i < offsets[country + 1]; i++) {
+        int neighbour = neighbours[i];
+        if (table[neighbour * stride + column] == UNREACHABLE) {
+          table[neighbour * stride + column] = next;
+          queue[tail++] = neighbour;
+        }
+      }
+    }
+  }
+
+  /**
+   * Works out the lowest tax between a landmark and every country with Dijkstra's algorithm. A
+   * border costs the tax of the country it leads into, whichever way the search goes.
+   *
+   * @param graph the graph to search
+   * @param context scratch space for this thread
+   * @param source the ID of the landmark
+   * @param backward whether to find the tax to the landmark rather than from it
+   * @param table where to write the taxes, at {@code id * stride + column}, which must be
+   *     UNREACHABLE for every country beforehand
+   * @param column the position of the landmark
+   * @param stride the number of landmarks
+   */
+  private static void cheapest(
+      CountryGraph graph,
+      SearchContext context,
+      int source,
+      boolean backward,
+      int[] table,
+      int column,
+      int stride) {
+    context.ensureHeap();
+    int[] offsets = backward ? graph.reverseOffsets : graph.offsets;
+    int[] neighbours = backward ? graph.reverseNeighbours : graph.neighbours;
+    int[] taxes = graph.taxes;
+    IndexedMinHeap heap = context.heap;
+    table[source * stride + column] = 0;
+    heap.pushOrDecrease(source, 0);
+
+    while (!heap.isEmpty()) {
+      int country = heap.poll();
+      int cost = table[country * stride + column];
+      for (int i = offsets[country]; i < offsets[country + 1]; i++) {
+        int next = neighbours[i];
+        // Forwards the border leads into 'next', backwards into 'country'.
+        int nextCost = cost + (backward ? taxes[country] : taxes[next]);
+        if (nextCost < table[next * stride + column]) {
+          table[next * stride + column] = nextCost;
+          heap.pushOrDecrease(next, nextCost);
+        }
+      }
+    }
+  }
+}
@@ -1,5 +1,17 @@
 package nz.ac.auckland.se281;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
@@ -12,6 +24,12 @@ public class Main {
   public enum Command {
     INFO_COUNTRY(0, "Get info of country"),
     ROUTE(0, "Get shortest path"),
+    ROUTE_CHEAPEST(0, "Get path with the lowest taxes"),
+    ROUTE_FROM(0, "Get shortest paths from one country to many"),
+    ROUTE_ALTERNATIVES(0, "Get the shortest few paths, fewest borders first"),
+    ROUTE_CHEAPEST_ALTERNATIVES(0, "Get the shortest few paths, lowest taxes first"),
+    ROUTE_AVOIDING(0, "Get shortest path avoiding some countries or continents, within a budget"),
+    STATS(0, "Show load times, search statistics and cache counters"),
     HELP(0, "Print usage"),
     EXIT(0, "Exit the application");
 
@@ -78,8 +96,125 @@ public class Main {
 
   private static final String COMMAND_PREFIX = "281-map> ";
 
-  public static void main(final String[] args) {
-    new Main(new MapEngine()).start();
+  private static final int SERVER_PORT = 2810;
+
+  public static void main(final String[] args) throws IOException {
+    // "--batch [file]" answers "source,destination" lines from the file, or from standard input.
+    if (args.length > 0 && args[0].equals("--batch")) {
+      runBatch(args.length > 1 ? args[1] : null);
+      return;
+    }
+    // "--serve [port]" answers queries over TCP on the loopback address until the JVM is stopped.
+    if (args.length > 0 && args[0].equals("--serve")) {
+      serve(args.length > 1 ? Integer.parseInt(args[1]) : SERVER_PORT);
+      return;
+    }
+
+    final MapEngine engine = createEngine();
+    // "-Dmap.watch=true" reloads the map whenever its files change, between commands.
+    if (Boolean.getBoolean("map.watch")) {
+      new MapWatcher(engine);
+    }
+    new Main(engine).start();
+  }
+
+  /**
+   * Creates the engine with the precomputed route table, with contraction hierarchies if
+   * "-Dmap.hierarchies=true" asks for them, and with landmarks if "-Dmap.landmarks=16" or another
+   * count asks for them. Both answer routes on large maps much faster, but may print a different
+   * route where several are equally short or cheap.
+   *
+   * @return the engine
+   */
+  private static MapEngine createEngine() {
+    final MapEngine engine = new MapEngine(true);
+    if (Boolean.getBoolean("map.hierarchies")) {
+      engine.useContractionHierarchies();
+    }
+    int landmarks = Integer.getInteger("map.landmarks", 0);
+    if (landmarks > 0) {
+      engine.useLandmarks(landmarks);
+    }
+    return engine;
+  }
+
+  /**
+   * Answers route queries in bulk, writing the same messages as the route command.
+   *
+   * @param fileName the file of "source,destination" lines, or null to read standard input
+   * @throws IOException if reading or writing fails
+   */
+  private static void runBatch(final String fileName) throws IOException {
+    final Reader input =
+        fileName == null
+            ? new InputStreamReader(System.in, StandardCharsets.UTF_8)
+            : Files.newBufferedReader(Paths.get(fileName), StandardCharsets.UTF_8);
+
+    final Writer out =
+        new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 20);
+
+    final MapEngine engine = createEngine();
+    try (BufferedReader in = new BufferedReader(input, 1 << 16)) {
+      new BatchRouter(engine.queries(), engine.getRouteMode()).run(in, out);
+    }
+    writeMetrics(engine);
+  }
+
+  /**
+   * Serves queries with {@link QueryServer} on a loopback port, until the process is stopped.
+   *
+   * <p>The map is reloaded whenever its files change, so a long-running server picks up a
+   * regenerated map without a restart.
+   *
+   * @param port the port to listen on
+   * @throws IOException if the server socket cannot be opened
+   */
+  private static void serve(final int port) throws IOException {
+    final MapEngine engine = createEngine();
+    final QueryServer server =
+        new QueryServer(
+            engine,
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+            Runtime.getRuntime().availableProcessors());
+    final MapWatcher watcher = new MapWatcher(engine);
+    Runtime.getRuntime()
+        .addShutdownHook(
+            new Thread(
+                () -> {
+                  try {
+                    watcher.close();
+                    server.close();
+                  } catch (final IOException e) {
+                    e.printStackTrace();
+                  }
+                  writeMetrics(engine);
+                }));
+    System.out.println("Serving map queries on port " + server.getPort());
+
+    try {
+      Thread.currentThread().join(); // the server threads do the work from here on
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Writes the engine's metrics as JSON to the file named by the {@code map.metrics} system
+   * property, if it is set.
+   *
+   * @param engine the engine whose metrics to write
+   */
+  private static void writeMetrics(final MapEngine engine) {
+    final String fileName = System.getProperty("map.metrics");
+    if (fileName == null) {
+      return;
+    }
+
+    try {
+      engine.writeMetrics(Paths.get(fileName));
+    } catch (final IOException e) {
+      System.err.println("Could not write metrics to " + fileName + ": " + e.getMessage());
+    }
   }
 
   /**
@@ -208,6 +343,10 @@ public class Main {
       return true;
     }
 
+    // The time the command spends waiting for the user to type is left out.
+    final long startNanos = System.nanoTime();
+    final long startInputWaitNanos = game.inputWaitNanos();
+
     switch (command) {
       case INFO_COUNTRY:
         game.showInfoCountry();
@@ -215,14 +354,38 @@ public class Main {
       case ROUTE:
         game.showRoute();
         break;
+      case ROUTE_CHEAPEST:
+        game.showCheapestRoute();
+        break;
+      case ROUTE_FROM:
+        game.showRoutesFrom();
+        break;
+      case ROUTE_ALTERNATIVES:
+        game.showAlternativeRoutes();
+        break;
+      case ROUTE_CHEAPEST_ALTERNATIVES:
+        game.showCheapestAlternativeRoutes();
+        break;
+      case ROUTE_AVOIDING:
+        game.showRouteAvoiding();
+        break;
+      case STATS:
+        game.showStats();
+        break;
       case HELP:
         System.out.println(help());
         break;
       case EXIT:
+        writeMetrics(game);
         MessageCli.END.printMessage();
         return false;
     }
 
+    final long inputWaitNanos = game.inputWaitNanos() - startInputWaitNanos;
+    game.getMetrics()
+        .histogram("command." + command.name().toLowerCase() + "_ns")
+        .record(System.nanoTime() - startNanos - inputWaitNanos);
+
     // Signal that another command is expected.
     return true;
   }
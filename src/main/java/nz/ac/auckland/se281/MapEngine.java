@@ -1,78 +1,224 @@
 package nz.ac.auckland.se281;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
-import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.ToLongFunction;
+import java.util.function.UnaryOperator;
+import java.util.regex.Matcher;
 
 /** This class is the main entry point. */
 public class MapEngine {
-  // Maps a country name to its Country object (contains name, continent, and tax).
-  private HashMap<String, Country> countries = new HashMap<>();
+  // Largest all-pairs route table we are willing to build, whatever the heap size.
+  private static final long ROUTE_TABLE_MAX_BYTES = 256L * 1024 * 1024;
+  // Most countries suggested for a name that was not found.
+  private static final int SUGGESTIONS = 3;
+  // Most routes the alternative route commands will list.
+  private static final int MAX_ALTERNATIVES = 50;
 
-  // Graph representation using an adjacency list.
-  // Maps a country name to a set of names representing its direct neighbors.
-  private HashMap<String, List<String>> graph = new HashMap<>();
+  // Load timings, search statistics and cache counters, shown by the stats command.
+  private final Metrics metrics = new Metrics();
+
+  // The loaded map and everything that answers queries on it. It is immutable and replaced as a
+  // whole, and the volatile write publishes it safely to threads querying it concurrently.
+  private volatile MapQueries queries;
+
+  // The search used by the route command.
+  private volatile RouteMode routeMode = RouteMode.BREADTH_FIRST;
+
+  // The number of landmarks asked for, or 0 for none. Guarded by this, like the fields below.
+  private int landmarkCount;
+
+  // The map as last read from the files, or null if it was not. Only its contraction hierarchies
+  // are saved, since edits are lost on restart and a synthetic map has no files.
+  private CountryGraph fileGraph;
+
+  // Builds the landmarks and contraction hierarchies an update or reload dropped, one build at a
+  // time, so that edits do not wait for it. Created when first needed. A rebuild is pending from
+  // when it is asked for until it starts, so that a burst of edits only asks once.
+  private ExecutorService indexBuilder;
+  private boolean rebuildPending;
+
+  // Time the interactive commands have spent waiting for the user to type, so that it can be left
+  // out of their timings. Only the command line thread reads input.
+  private long inputWaitNanos;
 
   /** */
   public MapEngine() {
     // add other code here if you want
+    registerMetrics();
 
     loadMap(); // keep this method invocation
   }
 
+  /**
+   * Creates a MapEngine that can precompute the route between every pair of countries.
+   *
+   * <p>With precomputation on, every route command is answered by walking the precomputed table
+   * instead of searching. The table is only built if it fits in the memory budget; on larger
+   * maps the engine quietly falls back to searching on demand.
+   *
+   * @param precomputeRoutes whether to build the all-pairs route table
+   */
+  public MapEngine(boolean precomputeRoutes) {
+    this();
+    if (precomputeRoutes && RouteTable.fits(queries.graph(), routeTableBudget())) {
+      long startNanos = System.nanoTime();
+      queries = queries.withRouteTable(new RouteTable(queries.graph()));
+      metrics.histogram("load.route_table_ns").recordSince(startNanos);
+    }
+  }
+
+  /**
+   * Returns the memory the all-pairs route table may use: a quarter of the heap, capped.
+   *
+   * @return the budget in bytes
+   */
+  private static long routeTableBudget() {
+    return Math.min(ROUTE_TABLE_MAX_BYTES, Runtime.getRuntime().maxMemory() / 4);
+  }
+
+  /**
+   * Creates a MapEngine over a graph that has already been built, e.g. a synthetic map.
+   *
+   * @param graph the graph to query
+   */
+  MapEngine(CountryGraph graph) {
+    registerMetrics();
+    this.queries = new MapQueries(graph, metrics);
+  }
+
+  /** Creates the gauges that read the map and the route cache. */
+  private void registerMetrics() {
+    metrics.gauge("map.countries", () -> queries.graph().size());
+    metrics.gauge("map.borders", () -> queries.graph().borderCount());
+    metrics.gauge("cache.hits", () -> cacheStat(RouteCache::getHits));
+    metrics.gauge("cache.misses", () -> cacheStat(RouteCache::getMisses));
+    metrics.gauge("cache.evictions", () -> cacheStat(RouteCache::getEvictions));
+    metrics.gauge("cache.invalidated", () -> cacheStat(RouteCache::getInvalidated));
+    metrics.gauge("cache.size", () -> cacheStat(RouteCache::size));
+  }
+
+  private long cacheStat(ToLongFunction<RouteCache> stat) {
+    RouteCache cache = queries.getRouteCache();
+    return cache == null ? 0 : stat.applyAsLong(cache);
+  }
+
   /** invoked one time only when constracting the MapEngine class. */
   /**
    * Loads the map data from files.
    *
-   * <p>This method reads country and adjacency data from files, then populates the 'countries' and
-   * 'graph' HashMaps with this data. Each line of the countries data should be in the format
-   * "Country,Continent,Tax".
+   * <p>This method memory-maps the country and adjacency files and interns them into the compact
+   * 'graph', or reads the graph from a binary snapshot of the same files. Each line of the
+   * countries data should be in the format "Country,Continent,Tax".
    */
   private void loadMap() {
-    // This method is responsible for loading the map data
-    // Read the list of countries from a file
-    List<String> countriesData = Utils.readCountries();
-    // Read the list of adjacencies (neighboring countries) from a file
-    List<String> adjacenciesData = Utils.readAdjacencies();
-
-    // Loop through each line of the countries data
-    for (String line : countriesData) {
-      // Split the line into an array of strings
-      // Each line is in the format "Country,Continent,Tax"
-      String[] details = line.split(",");
-      String name = details[0]; // Extract the country name
-      String continent = details[1]; // Extract the continent name
-      int tax = Integer.parseInt(details[2]); // Extract the tax value
-
-      // Create a new Country object and add it to the countries HashMap
-      // The country's name is the key, and the Country object is the value
-      countries.put(name, new Country(name, continent, tax));
-      // Initialize an empty HashSet for the country in the graph HashMap
-      // The country's name is the key, and the HashSet will store the names of its neighbors
-      graph.put(name, new ArrayList<>());
+    // Read the integer-indexed graph from its binary snapshot if the files have not changed since
+    // it was written. Otherwise scan the countries and adjacencies (neighboring countries) files
+    // straight from memory, in parallel chunks on large files, and write a fresh snapshot.
+    long startNanos = System.nanoTime();
+    CountryGraph graph = null;
+    Map<String, String> aliases = null;
+    try {
+      graph = readMap();
+      aliases = readAliases();
+    } catch (IOException e) {
+      e.printStackTrace();
+      System.exit(-1); // exit the program, as Utils does when a file cannot be read
     }
+    queries = new MapQueries(graph, metrics).withAliases(aliases);
+    fileGraph = graph;
+    metrics.histogram("load.total_ns").recordSince(startNanos);
+  }
 
-    // Loop through each line of the adjacencies data
-    for (String line : adjacenciesData) {
-      // Split the line into an array of strings
-      // The first element is a country's name, and the remaining elements are its neighbors
-      String[] details = line.split(",");
-      String country = details[0]; // Extract the country name
+  /**
+   * Reads the map from its files, or from their snapshot if they have not changed.
+   *
+   * @return the graph
+   * @throws IOException if a file cannot be read
+   * @throws MapFormatException if a file is malformed
+   */
+  private CountryGraph readMap() throws IOException {
+    return MapSnapshot.load(
+        Utils.countriesFile(),
+        Utils.adjacenciesFile(),
+        Utils.snapshotFile(),
+        ForkJoinPool.commonPool(),
+        metrics);
+  }
 
-      // Retrieve the country's adjacency set from the graph HashMap
-      List<String> neighbors = graph.get(country); // Get the neighbors list for the country
+  /**
+   * Reads the other names countries may be entered by, if there is an aliases file.
+   *
+   * <p>Each line of the file should be in the format "Alias,Country", e.g. "Nz,New Zealand".
+   * Blank lines are skipped.
+   *
+   * @return the country each alias stands for, which is empty if there is no file
+   * @throws IOException if the file cannot be read
+   * @throws MapFormatException if a line is malformed
+   */
+  private static Map<String, String> readAliases() throws IOException {
+    Path file = Utils.aliasesFile();
+    Map<String, String> aliases = new LinkedHashMap<>();
+    if (!Files.exists(file)) {
+      return aliases;
+    }
+    for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+      if (line.isBlank()) {
+        continue;
+      }
+      String[] parts = line.split(",");
+      if (parts.length != 2 || parts[0].isBlank() || parts[1].isBlank()) {
+        throw new MapFormatException("Malformed alias in " + file + ": " + line);
+      }
+      aliases.put(parts[0], parts[1]);
+    }
+    return aliases;
+  }
 
-      // Loop through the remaining elements in the array (the names of the neighbors)
-      for (int i = 1; i < details.length; i++) {
-        // Add each neighbor to the neighbors list
-        neighbors.add(details[i]);
+  /**
+   * Reads the map files and aliases again and swaps the new map in, e.g. after they were
+   * regenerated.
+   *
+   * <p>The files are parsed while queries go on being answered from the current map, which is
+   * then replaced in one step, like an update. Edits made with {@link #update} are lost, since the
+   * files are the new truth. Contraction hierarchies in use are read from their files if these
+   * were saved for the new map, and built in the background otherwise, like landmarks, with
+   * routes searched for meanwhile. If a file cannot be read or is malformed, the current map is
+   * kept.
+   *
+   * @throws IOException if a file cannot be read
+   * @throws MapFormatException if a file is malformed or has no countries
+   */
+  public void reload() throws IOException {
+    long startNanos = System.nanoTime();
+    CountryGraph graph = readMap();
+    if (graph.size() == 0) {
+      throw new MapFormatException("No countries in " + Utils.countriesFile());
+    }
+    Map<String, String> aliases = readAliases();
+    ContractionHierarchy[] hierarchies =
+        queries.hierarchies() == null ? null : readHierarchies(graph);
+    synchronized (this) {
+      queries = queries.withGraph(graph, aliases, routeTableBudget());
+      if (hierarchies != null && queries.hierarchies() != null) {
+        queries = queries.withHierarchies(hierarchies);
       }
+      fileGraph = graph;
+      rebuildIndexes();
     }
+    metrics.histogram("reload.total_ns").recordSince(startNanos);
+    metrics.counter("reload.count").increment();
   }
 
   /**
@@ -80,21 +226,22 @@ public class MapEngine {
    * country name and displays information about the country.
    *
    * <p>This method continuously prompts the user to enter a country name until a valid country is
-   * entered. It then retrieves the corresponding Country object from the 'countries' HashMap and
-   * displays the country's name, continent, and tax using the MessageCli.COUNTRY_INFO message. If
-   * the country does not exist in the 'countries' HashMap, it displays an error message using the
-   * MessageCli.INVALID_COUNTRY message. If an exception occurs during the process, it prints an
-   * error message using the MessageCli.COMMAND_NOT_FOUND message.
+   * entered. It then retrieves the corresponding Country object from the 'graph' and displays the
+   * country's name, continent, and tax using the MessageCli.COUNTRY_INFO message. If the country
+   * does not exist in the 'graph', it displays an error message using the
+   * MessageCli.INVALID_COUNTRY message and suggests the closest country names. If an exception
+   * occurs during the process, it prints an error message using the MessageCli.COMMAND_NOT_FOUND
+   * message.
    */
   public void showInfoCountry() {
+    MapQueries queries = this.queries;
     while (true) {
       System.out.print(MessageCli.INSERT_COUNTRY.getMessage());
-      String countryName = Utils.scanner.nextLine();
+      String countryName = readInput();
 
       try {
-        countryName = Utils.capitalizeFirstLetterOfEachWord(countryName);
         Country country =
-            getCountry(countryName); // Use a method that might throw CountryNotFoundException
+            queries.info(countryName); // Use a method that might throw CountryNotFoundException
 
         // If the country exists, display its information using MessageCli
         MessageCli.COUNTRY_INFO.printMessage(
@@ -102,7 +249,7 @@ public class MapEngine {
         break; // Exit the loop after successful operation
 
       } catch (CountryNotFoundException e) {
-        System.out.println(MessageCli.INVALID_COUNTRY.getMessage(countryName));
+        printInvalidCountry(queries, countryName);
       } catch (Exception e) {
         System.out.println("You somehow created an exceptional exception: " + e.getMessage());
       }
@@ -110,152 +257,557 @@ public class MapEngine {
   }
 
   /**
-   * Retrieves a Country object from the 'countries' HashMap.
+   * this method is invoked when the user run the command route.
    *
-   * <p>This method attempts to retrieve a Country object with the given country name from the
-   * 'countries' HashMap. If a country with the given name does not exist in the HashMap, it throws
-   * a CountryNotFoundException.
+   * @throws CountryNotFoundException
+   */
+  public void showRoute() {
+    showRoute(routeMode, MessageCli.ROUTE_INFO::getMessage);
+  }
+
+  /** this method is invoked when the user run the command route-cheapest. */
+  public void showCheapestRoute() {
+    showRoute(RouteMode.CHEAPEST_A_STAR, ExtraMessageCli.CHEAPEST_ROUTE_INFO::getMessage);
+  }
+
+  /**
+   * Prompts for a start and destination country and displays the route between them.
    *
-   * @param countryName the name of the country to retrieve
-   * @return the Country object corresponding to the given country name
-   * @throws CountryNotFoundException if a country with the given name does not exist in the
-   *     'countries' HashMap
+   * @param mode the search used to find the route
+   * @param routeMessage fills in the message used to display the route
    */
-  private Country getCountry(String countryName) {
-    Country country = countries.get(countryName);
-    if (country == null) {
-      throw new CountryNotFoundException(MessageCli.INVALID_COUNTRY.getMessage(countryName));
+  private void showRoute(RouteMode mode, UnaryOperator<String> routeMessage) {
+    MapQueries queries = this.queries;
+    int sourceCountry = promptForCountry(queries, "Enter the start country:");
+    int destinationCountry = promptForCountry(queries, "Enter the destination country:");
+
+    if (sourceCountry == destinationCountry) {
+      System.out.println("No cross-border travel is required!");
+      return;
     }
-    return country;
+
+    printRoute(
+        queries,
+        queries.route(mode, sourceCountry, destinationCountry),
+        sourceCountry,
+        destinationCountry,
+        routeMessage);
   }
 
   /**
-   * this method is invoked when the user run the command route.
+   * this method is invoked when the user run the command route-from. Prompts for one start country
+   * and a comma separated list of destinations, then displays the route to each destination.
    *
-   * @throws CountryNotFoundException
+   * <p>All the routes come from a single search from the start country. Destinations that are not
+   * valid countries are reported and skipped.
    */
-  public void showRoute() {
-    String sourceCountry = promptForCountry("Enter the start country:");
-    String destinationCountry = promptForCountry("Enter the destination country:");
+  public void showRoutesFrom() {
+    MapQueries queries = this.queries;
+    int sourceCountry = promptForCountry(queries, "Enter the start country:");
+    System.out.print(ExtraMessageCli.INSERT_DESTINATIONS.getMessage());
+    String[] destinations = readInput().split(",");
+
+    ShortestPathTree tree = queries.routesFrom(routeMode, sourceCountry);
+    for (String destination : destinations) {
+      int destinationCountry = queries.lookupCountry(destination);
+      if (destinationCountry < 0) {
+        printInvalidCountry(queries, destination);
+      } else if (destinationCountry == sourceCountry) {
+        System.out.println("No cross-border travel is required!");
+      } else {
+        printRoute(
+            queries,
+            queries.route(tree, destinationCountry),
+            sourceCountry,
+            destinationCountry,
+            MessageCli.ROUTE_INFO::getMessage);
+      }
+    }
+  }
 
-    if (sourceCountry.equals(destinationCountry)) {
+  /** this method is invoked when the user run the command route-alternatives. */
+  public void showAlternativeRoutes() {
+    showAlternativeRoutes(routeMode);
+  }
+
+  /** this method is invoked when the user run the command route-cheapest-alternatives. */
+  public void showCheapestAlternativeRoutes() {
+    showAlternativeRoutes(RouteMode.CHEAPEST_A_STAR);
+  }
+
+  /**
+   * Prompts for a start and destination country and how many routes to show, then displays the
+   * shortest routes between them, each with its continents and tax.
+   *
+   * @param mode the search used to find the first route, which also decides how routes are ranked
+   */
+  private void showAlternativeRoutes(RouteMode mode) {
+    MapQueries queries = this.queries;
+    int sourceCountry = promptForCountry(queries, "Enter the start country:");
+    int destinationCountry = promptForCountry(queries, "Enter the destination country:");
+    int count = promptForRouteCount();
+
+    if (sourceCountry == destinationCountry) {
       System.out.println("No cross-border travel is required!");
       return;
     }
 
-    List<String> shortestPath = findShortestPath(sourceCountry, destinationCountry);
-    if (shortestPath.isEmpty()) {
-      System.out.println("No path found from " + sourceCountry + " to " + destinationCountry);
+    List<Route> routes =
+        queries.alternativeRoutes(mode, sourceCountry, destinationCountry, count);
+    if (routes.isEmpty()) {
+      printRoute(
+          queries,
+          Route.NONE,
+          sourceCountry,
+          destinationCountry,
+          MessageCli.ROUTE_INFO::getMessage);
+      return;
+    }
+    for (int i = 0; i < routes.size(); i++) {
+      Route route = routes.get(i);
+      ExtraMessageCli.ALTERNATIVE_ROUTE_INFO.printMessage(
+          Integer.toString(i + 1), "[" + String.join(", ", route.getCountries()) + "]");
+      MessageCli.CONTINENT_INFO.printMessage("[" + String.join(", ", route.getContinents()) + "]");
+      MessageCli.TAX_INFO.printMessage(Integer.toString(route.getTax()));
+    }
+  }
+
+  /**
+   * this method is invoked when the user run the command route-avoiding. Prompts for a start and
+   * destination country, a comma separated list of countries and continents to avoid and the most
+   * borders and tax the route may cost, then displays the shortest route that meets them.
+   *
+   * <p>Names that are neither a country nor a continent are reported and skipped.
+   */
+  public void showRouteAvoiding() {
+    MapQueries queries = this.queries;
+    int sourceCountry = promptForCountry(queries, "Enter the start country:");
+    int destinationCountry = promptForCountry(queries, "Enter the destination country:");
+    RouteConstraints constraints = queries.constraints();
+    System.out.print(ExtraMessageCli.INSERT_AVOIDED.getMessage());
+    for (String name : readInput().split(",")) {
+      if (name.isBlank()) {
+        continue;
+      }
+      try {
+        constraints.avoid(name);
+      } catch (CountryNotFoundException e) {
+        printInvalidCountry(queries, name);
+      }
+    }
+    constraints.maxBorders(promptForLimit(ExtraMessageCli.INSERT_MAX_BORDERS));
+    constraints.maxTax(promptForLimit(ExtraMessageCli.INSERT_MAX_TAX));
+
+    if (sourceCountry == destinationCountry) {
+      System.out.println("No cross-border travel is required!");
       return;
     }
 
-    List<String> continents = extractContinents(shortestPath);
-    int taxes = calculateTaxes(shortestPath);
+    printRoute(
+        queries,
+        queries.route(routeMode, sourceCountry, destinationCountry, constraints),
+        sourceCountry,
+        destinationCountry,
+        MessageCli.ROUTE_INFO::getMessage);
+  }
+
+  /**
+   * Displays a route, or that there is none.
+   *
+   * @param queries the map the route was found on
+   * @param route the route to display
+   * @param sourceCountry the ID of the start country
+   * @param destinationCountry the ID of the destination country
+   * @param routeMessage fills in the message used to display the route
+   */
+  private void printRoute(
+      MapQueries queries,
+      Route route,
+      int sourceCountry,
+      int destinationCountry,
+      UnaryOperator<String> routeMessage) {
+    if (route.isEmpty()) {
+      System.out.println(
+          "No path found from "
+              + queries.countryName(sourceCountry)
+              + " to "
+              + queries.countryName(destinationCountry));
+      return;
+    }
 
     // why does the enum version of this tottaly fail all test cases?
     // we mannually added brackets to the string to make it work
-    MessageCli.ROUTE_INFO.printMessage("[" + String.join(", ", shortestPath) + "]");
+    System.out.println(routeMessage.apply("[" + String.join(", ", route.getCountries()) + "]"));
 
     // Display the list of continents using the MessageCli.CONTINENT_INFO message
     // also add brackets to make it work
-    MessageCli.CONTINENT_INFO.printMessage("[" + String.join(", ", continents) + "]");
+    MessageCli.CONTINENT_INFO.printMessage("[" + String.join(", ", route.getContinents()) + "]");
 
     // Display the amount of taxes using the MessageCli.TAX_INFO message
     // also add brackets to make it work
-    MessageCli.TAX_INFO.printMessage(Integer.toString(taxes));
+    MessageCli.TAX_INFO.printMessage(Integer.toString(route.getTax()));
   }
 
   /**
-   * Prompts the user to enter a country name.
+   * Returns the total time the interactive commands have spent waiting for the user to type.
    *
-   * @param message the message to display to the user
-   * @return the name of the country entered by the user
+   * @return the time in nanoseconds
    */
-  private String promptForCountry(String message) {
-    System.out.print(message);
-    String countryName = Utils.scanner.nextLine();
-    countryName = Utils.capitalizeFirstLetterOfEachWord(countryName);
-    try {
-      Country country = getCountry(countryName);
-      return country.getName();
-    } catch (CountryNotFoundException e) {
-      System.out.println(e.getMessage());
-      return promptForCountry(message); // Recurse until a valid country is entered
+  long inputWaitNanos() {
+    return inputWaitNanos;
+  }
+
+  /** Reads a line the user typed, adding the time spent waiting for it to the input wait. */
+  private String readInput() {
+    long startNanos = System.nanoTime();
+    String line = Utils.scanner.nextLine();
+    inputWaitNanos += System.nanoTime() - startNanos;
+    return line;
+  }
+
+  /** this method is invoked when the user run the command stats. */
+  public void showStats() {
+    System.out.print(metrics.format());
+  }
+
+  /**
+   * Writes every metric to a file as a JSON object, replacing the file.
+   *
+   * @param file the file to write
+   * @throws IOException if the file cannot be written
+   */
+  public void writeMetrics(Path file) throws IOException {
+    Files.writeString(file, metrics.toJson() + System.lineSeparator(), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Returns the metrics registry, so that callers can record their own timings in it.
+   *
+   * @return the metrics
+   */
+  Metrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Returns the query API over the currently loaded map.
+   *
+   * <p>The result is immutable and safe to share between threads. Hold on to it for the length of
+   * one request, so that every part of the request is answered from the same map.
+   *
+   * @return the queries
+   */
+  public MapQueries queries() {
+    return queries;
+  }
+
+  /**
+   * Turns on caching of routes, replacing any previous cache.
+   *
+   * @param capacity the maximum number of routes to keep
+   * @param policy how to choose which route to drop when the cache is full
+   */
+  public synchronized void useRouteCache(int capacity, RouteCache.Policy policy) {
+    queries = queries.withRouteCache(new RouteCache(capacity, policy));
+  }
+
+  /**
+   * Turns on contraction hierarchies for the route commands, for both the fewest borders and the
+   * lowest tax. Each one is read from its file if it was saved for the same map, and built
+   * otherwise, which can take a while on a large map, and saved if the map is the one in the
+   * files. Routes are then found by searching far fewer countries, but where several routes are
+   * equally short or cheap, the one printed may differ from the one a search would print.
+   * Hierarchies survive updates that only change taxes they do not depend on; other updates and
+   * reloads have them built again in the background.
+   */
+  public synchronized void useContractionHierarchies() {
+    CountryGraph graph = queries.graph();
+    ContractionHierarchy.Weight[] weights = ContractionHierarchy.Weight.values();
+    ContractionHierarchy[] hierarchies = new ContractionHierarchy[weights.length];
+    for (ContractionHierarchy.Weight weight : weights) {
+      hierarchies[weight.ordinal()] = loadHierarchy(graph, weight, graph == fileGraph);
     }
+    queries = queries.withHierarchies(hierarchies);
   }
 
   /**
-   * This method finds the shortest path between two countries using BFS.
+   * Reads the contraction hierarchies saved for a map from their files.
    *
-   * @param start
-   * @param destination
-   * @return
+   * @param graph the map
+   * @return the hierarchies indexed by {@link ContractionHierarchy.Weight} ordinal, with null
+   *     where a file is missing or was saved for another map
    */
-  private List<String> findShortestPath(String start, String destination) {
-    Map<String, String> parentCountry = new HashMap<>();
-    Queue<String> queue = new LinkedList<>();
-    List<String> shortestPath = new ArrayList<>();
+  private ContractionHierarchy[] readHierarchies(CountryGraph graph) {
+    ContractionHierarchy.Weight[] weights = ContractionHierarchy.Weight.values();
+    ContractionHierarchy[] hierarchies = new ContractionHierarchy[weights.length];
+    for (ContractionHierarchy.Weight weight : weights) {
+      long startNanos = System.nanoTime();
+      hierarchies[weight.ordinal()] =
+          ContractionHierarchy.read(hierarchyFile(weight), graph, weight);
+      metrics.histogram("load.hierarchy_read_ns").recordSince(startNanos);
+    }
+    return hierarchies;
+  }
 
-    queue.add(start);
-    parentCountry.put(start, null);
+  /**
+   * Reads a contraction hierarchy from its file or builds it.
+   *
+   * @param graph the map
+   * @param weight what the routes cost
+   * @param saved whether the map is the one in the files, whose hierarchy is read and saved
+   * @return the hierarchy
+   */
+  private ContractionHierarchy loadHierarchy(
+      CountryGraph graph, ContractionHierarchy.Weight weight, boolean saved) {
+    return saved
+        ? ContractionHierarchy.load(graph, weight, hierarchyFile(weight), metrics)
+        : ContractionHierarchy.build(graph, weight, metrics);
+  }
+
+  private static Path hierarchyFile(ContractionHierarchy.Weight weight) {
+    return Utils.hierarchyFile(weight.name().toLowerCase());
+  }
+
+  /**
+   * Picks landmarks on the map and works out the borders and tax between them and every country,
+   * unless that takes more than a quarter of the heap. Their distances bound the distance between
+   * any two countries, and make the cheapest A* search and the cheapest constrained routes search
+   * far fewer countries; where several routes are equally cheap, the one printed may differ.
+   * Landmarks survive updates that only raise taxes; other updates and reloads have them picked
+   * again in the background.
+   *
+   * @param count the number of landmarks, from 1 to 64; more give tighter bounds but take more
+   *     memory and time to pick
+   * @throws IllegalArgumentException if the number of landmarks is out of range
+   */
+  public synchronized void useLandmarks(int count) {
+    queries = queries.withLandmarks(LandmarkOracle.build(queries.graph(), count, metrics));
+    landmarkCount = count;
+  }
+
+  /**
+   * Edits the loaded map without reloading it.
+   *
+   * <p>The edits are applied to a copy of the map, which then replaces it in one step, so queries
+   * running meanwhile are answered from the old map and never wait. Only the precomputed routes
+   * the edits affect are thrown away, and cached routes are only checked when they are next asked
+   * for, so an edit takes the same time however many routes are cached. Landmarks and contraction
+   * hierarchies the edits make invalid are built again on a background thread, and routes are
+   * searched for without them meanwhile. Updates are applied one at a time; for many edits,
+   * applying them in one batch is much faster than one by one.
+   *
+   * @param update the edits to apply, in order
+   * @throws CountryNotFoundException if an edit names a country that does not exist
+   * @throws MapFormatException if an edit is not valid, in which case the map is not changed
+   */
+  public synchronized void update(MapUpdate update) {
+    long startNanos = System.nanoTime();
+    queries = queries.withUpdate(update, routeTableBudget());
+    metrics.histogram("update.apply_ns").recordSince(startNanos);
+    metrics.counter("update.edits").add(update.size());
+    rebuildIndexes();
+  }
 
-    while (!queue.isEmpty()) {
-      String currentCountry = queue.poll();
-      if (currentCountry.equals(destination)) {
-        String country = destination;
-        while (country != null) {
-          shortestPath.add(0, country);
-          country = parentCountry.get(country);
+  /**
+   * Asks for the landmarks and contraction hierarchies the current map lacks to be built on a
+   * background thread, unless that has been asked for already. Must be called holding the lock.
+   */
+  private void rebuildIndexes() {
+    boolean lacksLandmarks = landmarkCount > 0 && queries.landmarks() == null;
+    if (rebuildPending || !lacksLandmarks && !lacksHierarchy(queries)) {
+      return;
+    }
+    if (indexBuilder == null) {
+      indexBuilder =
+          Executors.newSingleThreadExecutor(
+              task -> {
+                Thread thread = new Thread(task, "map-indexes");
+                thread.setDaemon(true);
+                return thread;
+              });
+    }
+    rebuildPending = true;
+    indexBuilder.execute(this::buildIndexes);
+  }
+
+  private static boolean lacksHierarchy(MapQueries queries) {
+    ContractionHierarchy[] hierarchies = queries.hierarchies();
+    return hierarchies != null && Arrays.asList(hierarchies).contains(null);
+  }
+
+  /**
+   * Builds the landmarks and contraction hierarchies the current map lacks and swaps them in,
+   * unless the map changed since.
+   */
+  private void buildIndexes() {
+    MapQueries current;
+    int count;
+    boolean saved;
+    synchronized (this) {
+      rebuildPending = false;
+      current = queries;
+      count = landmarkCount;
+      saved = current.graph() == fileGraph;
+    }
+    CountryGraph graph = current.graph();
+    LandmarkOracle landmarks = current.landmarks();
+    if (count > 0 && landmarks == null) {
+      landmarks = LandmarkOracle.build(graph, count, metrics);
+    }
+    ContractionHierarchy[] hierarchies = current.hierarchies();
+    if (lacksHierarchy(current)) {
+      hierarchies = hierarchies.clone();
+      for (ContractionHierarchy.Weight weight : ContractionHierarchy.Weight.values()) {
+        if (hierarchies[weight.ordinal()] == null) {
+          hierarchies[weight.ordinal()] = loadHierarchy(graph, weight, saved);
         }
-        return shortestPath;
       }
+    }
+    synchronized (this) {
+      // Otherwise the edit or setting that changed them has asked for another rebuild.
+      if (queries.graph() != graph) {
+        return;
+      }
+      if (landmarkCount == count) {
+        queries = queries.withLandmarks(landmarks);
+      }
+      if (lacksHierarchy(queries)) {
+        queries = queries.withHierarchies(hierarchies);
+      }
+    }
+  }
 
-      for (String neighbor : graph.getOrDefault(currentCountry, new ArrayList<>())) {
-        if (!parentCountry.containsKey(neighbor)) {
-          queue.add(neighbor);
-          parentCountry.put(neighbor, currentCountry);
-        }
+  /**
+   * Waits until the background rebuilds asked for so far are done, e.g. to query the map with
+   * every index in place.
+   *
+   * @throws InterruptedException if the thread is interrupted while waiting
+   */
+  void awaitIndexes() throws InterruptedException {
+    Future<?> done;
+    synchronized (this) {
+      if (indexBuilder == null) {
+        return;
       }
+      // The builder runs one task at a time, in order.
+      done = indexBuilder.submit(() -> {});
+    }
+    try {
+      done.get();
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
     }
-    return shortestPath;
   }
 
   /**
-   * This method extracts the continents from the path.
+   * Returns the route cache, so that its hit, miss and eviction counters can be polled.
+   *
+   * @return the route cache, or null if caching is off
+   */
+  public RouteCache getRouteCache() {
+    return queries.getRouteCache();
+  }
+
+  /**
+   * Sets the search used to find routes.
+   *
+   * @param routeMode the search to use
+   */
+  public void setRouteMode(RouteMode routeMode) {
+    this.routeMode = routeMode;
+  }
+
+  /**
+   * Returns the search used to find routes.
+   *
+   * @return the search used by the route command
+   */
+  public RouteMode getRouteMode() {
+    return routeMode;
+  }
+
+  /**
+   * Prompts the user to enter a country name.
    *
-   * @param path a list of countries
-   * @return a list of continents
+   * @param queries the map to look the country up in
+   * @param message the message to display to the user
+   * @return the ID of the country entered by the user
    */
-  private List<String> extractContinents(List<String> path) {
-    if (path == null || path.isEmpty()) return new ArrayList<>();
-    List<String> continents = new ArrayList<>();
-    Set<String> seenContinents = new HashSet<>();
+  private int promptForCountry(MapQueries queries, String message) {
+    // Ask again until a valid country is entered.
+    while (true) {
+      System.out.print(message);
+      String countryName = readInput();
+      int country = queries.lookupCountry(countryName);
+      if (country >= 0) {
+        return country;
+      }
+      printInvalidCountry(queries, countryName);
+    }
+  }
 
-    for (String countryName : path) {
-      Country country = countries.get(countryName);
-      if (!seenContinents.contains(country.getContinent())) {
-        continents.add(country.getContinent());
-        seenContinents.add(country.getContinent());
+  /**
+   * Prompts the user for how many routes to show.
+   *
+   * @return a number from 1 to {@link #MAX_ALTERNATIVES}
+   */
+  private int promptForRouteCount() {
+    // Ask again until a number in range is entered.
+    while (true) {
+      System.out.print(
+          ExtraMessageCli.INSERT_ROUTE_COUNT.getMessage(Integer.toString(MAX_ALTERNATIVES)));
+      String input = readInput().trim();
+      try {
+        int count = Integer.parseInt(input);
+        if (count >= 1 && count <= MAX_ALTERNATIVES) {
+          return count;
+        }
+      } catch (NumberFormatException e) {
+        // Not a number; ask again.
       }
+      ExtraMessageCli.INVALID_ROUTE_COUNT.printMessage(input);
     }
+  }
 
-    return continents;
+  /**
+   * Prompts the user for an upper limit, which may be left blank.
+   *
+   * @param message the message to display to the user
+   * @return the limit, or {@link Integer#MAX_VALUE} if none was entered
+   */
+  private int promptForLimit(ExtraMessageCli message) {
+    // Ask again until a number that is not negative, or nothing, is entered.
+    while (true) {
+      System.out.print(message.getMessage());
+      String input = readInput().trim();
+      if (input.isEmpty()) {
+        return Integer.MAX_VALUE;
+      }
+      try {
+        int limit = Integer.parseInt(input);
+        if (limit >= 0) {
+          return limit;
+        }
+      } catch (NumberFormatException e) {
+        // Not a number; ask again.
+      }
+      ExtraMessageCli.INVALID_LIMIT.printMessage(input);
+    }
   }
 
   /**
-   * This method calculates the total taxes of the path.
+   * Tells the user a country was not found, and which countries they might have meant.
    *
-   * @param path a list of countries
-   * @return the total taxes
+   * @param queries the map the country was looked up in
+   * @param input the name as typed
    */
-  private int calculateTaxes(List<String> path) {
-    int totalTaxes = 0;
-    for (int i = 1;
-        i < path.size();
-        i++) { // Start from the second country to exclude the tax of the starting country
-      Country country = countries.get(path.get(i));
-      totalTaxes += country.getTax();
+  private void printInvalidCountry(MapQueries queries, String input) {
+    // The name as typed must not be read as a regular expression replacement.
+    MessageCli.INVALID_COUNTRY.printMessage(
+        Matcher.quoteReplacement(Utils.capitalizeFirstLetterOfEachWord(input)));
+    List<String> suggestions = queries.suggestCountries(input, SUGGESTIONS);
+    if (!suggestions.isEmpty()) {
+      ExtraMessageCli.SUGGESTED_COUNTRIES.printMessage(String.join(", ", suggestions));
     }
-    return totalTaxes;
   }
 }
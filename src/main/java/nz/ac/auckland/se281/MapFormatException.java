@@ -0,0 +1,7 @@
+package nz.ac.auckland.se281;
+
+public class MapFormatException extends RuntimeException {
+  public MapFormatException(String message) {
+    super(message);
+  }
+}
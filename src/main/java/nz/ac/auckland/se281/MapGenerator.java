@@ -0,0 +1,319 @@
+package nz.ac.auckland.se281;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates large synthetic maps in the same formats as {@code countries.csv} and {@code
+ * adjacencies.csv}.
+ *
+ * <p>Run it with {@code java -cp target/classes nz.ac.auckland.se281.MapGenerator [options]}:
+ *
+ * <pre>
+ *   --countries=N     number of countries (default 10000)
+ *   --degree=D        average number of neighbours per country (default 4)
+ *   --continents=K    number of continents (default 7)
+ *   --islands=I       number of separate, unreachable parts of the map (default 1)
+ *   --tax=T           uniform, skewed or constant (default uniform)
+ *   --max-tax=M       highest tax a country can have (default 10)
+ *   --seed=S          seed for the random choices (default 281)
+ *   --out=DIR         directory to write countries.csv and adjacencies.csv to (default .)
+ * </pre>
+ *
+ * <p>Countries are named {@code "Country <n>"} and continents {@code "Continent <n>"}. Every
+ * island is connected, and most borders stay inside a continent, so continents look like the
+ * clusters on the real map. Borders always go both ways. The same options and seed always produce
+ * the same files, and the generated map can be loaded with {@code -Dmap.countries=...
+ * -Dmap.adjacencies=...}.
+ */
+public class MapGenerator {
+
+  /** How taxes are spread over the countries. */
+  enum TaxDistribution {
+    /** Every tax from 1 to the maximum is equally likely. */
+    UNIFORM,
+    /** Most countries have a low tax, a few have a high one. */
+    SKEWED,
+    /** Every country has the maximum tax, so the cheapest route is also the shortest. */
+    CONSTANT
+  }
+
+  // The share of extra borders that stay inside the continent of the country they leave.
+  private static final double LOCAL_BORDERS = 0.9;
+
+  private final int countries;
+  private final int degree;
+  private final int continents;
+  private final int islands;
+  private final TaxDistribution taxDistribution;
+  private final int maxTax;
+  private final long seed;
+
+  /**
+   * Creates a generator for maps with the given shape.
+   *
+   * @param countries the number of countries
+   * @param degree the average number of neighbours per country
+   * @param continents the number of continents
+   * @param islands the number of separate parts of the map
+   * @param taxDistribution how taxes are spread over the countries
+   * @param maxTax the highest tax a country can have
+   * @param seed the seed for the random choices
+   * @throws IllegalArgumentException if a count is out of range
+   */
+  MapGenerator(
+      int countries,
+      int degree,
+      int continents,
+      int islands,
+      TaxDistribution taxDistribution,
+      int maxTax,
+      long seed) {
+    if (countries < 1 || degree < 0 || maxTax < 1) {
+      throw new IllegalArgumentException("Countries and max tax must be positive");
+    }
+    if (continents < 1 || continents > countries || islands < 1 || islands > countries) {
+      throw new IllegalArgumentException(
+          "Continents and islands must be between 1 and the number of countries");
+    }
+    this.countries = countries;
+    this.degree = degree;
+    this.continents = continents;
+    this.islands = islands;
+    this.taxDistribution = taxDistribution;
+    this.maxTax = maxTax;
+    this.seed = seed;
+  }
+
+  public static void main(String[] args) throws IOException {
+    int countries = 10_000;
+    int degree = 4;
+    int continents = 7;
+    int islands = 1;
+    TaxDistribution taxDistribution = TaxDistribution.UNIFORM;
+    int maxTax = 10;
+    long seed = 281;
+    Path directory = Paths.get(".");
+
+    for (String arg : args) {
+      int equals = arg.indexOf('=');
+      if (!arg.startsWith("--") || equals < 0) {
+        throw new IllegalArgumentException("Expected --option=value but got " + arg);
+      }
+      String value = arg.substring(equals + 1);
+      switch (arg.substring(2, equals)) {
+        case "countries":
+          countries = Integer.parseInt(value);
+          break;
+        case "degree":
+          degree = Integer.parseInt(value);
+          break;
+        case "continents":
+          continents = Integer.parseInt(value);
+          break;
+        case "islands":
+          islands = Integer.parseInt(value);
+          break;
+        case "tax":
+          taxDistribution = TaxDistribution.valueOf(value.toUpperCase(Locale.ROOT));
+          break;
+        case "max-tax":
+          maxTax = Integer.parseInt(value);
+          break;
+        case "seed":
+          seed = Long.parseLong(value);
+          break;
+        case "out":
+          directory = Paths.get(value);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown option " + arg);
+      }
+    }
+
+    Files.createDirectories(directory);
+    long borders =
+        new MapGenerator(countries, degree, continents, islands, taxDistribution, maxTax, seed)
+            .write(directory.resolve("countries.csv"), directory.resolve("adjacencies.csv"));
+    System.out.printf(
+        "Wrote %d countries, %d borders, %d continents and %d islands to %s%n",
+        countries, borders, continents, islands, directory.toAbsolutePath().normalize());
+  }
+
+  /**
+   * Generates the map and writes it out.
+   *
+   * @param countriesFile the countries file to write
+   * @param adjacenciesFile the adjacencies file to write
+   * @return the number of borders between pairs of countries
+   * @throws IOException if a file cannot be written
+   */
+  long write(Path countriesFile, Path adjacenciesFile) throws IOException {
+    Random random = new Random(seed);
+
+    try (BufferedWriter writer = Files.newBufferedWriter(countriesFile, StandardCharsets.UTF_8)) {
+      for (int i = 0; i < countries; i++) {
+        writer.write("Country ");
+        writer.write(Integer.toString(i));
+        writer.write(",Continent ");
+        writer.write(Integer.toString(part(i, continents)));
+        writer.write(',');
+        writer.write(Integer.toString(tax(random)));
+        writer.newLine();
+      }
+    }
+
+    int[] offsets = new int[countries + 1];
+    int[] neighbours = generateBorders(random, offsets);
+    try (BufferedWriter writer = Files.newBufferedWriter(adjacenciesFile, StandardCharsets.UTF_8)) {
+      for (int i = 0; i < countries; i++) {
+        writer.write("Country ");
+        writer.write(Integer.toString(i));
+        for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+          writer.write(",Country ");
+          writer.write(Integer.toString(neighbours[j]));
+        }
+        writer.newLine();
+      }
+    }
+    return offsets[countries] / 2;
+  }
+
+  /**
+   * Draws the tax of one country.
+   *
+   * @param random the source of randomness
+   * @return the tax
+   */
+  private int tax(Random random) {
+    switch (taxDistribution) {
+      case SKEWED:
+        // Cubing a uniform number piles most of the taxes up near 1.
+        double r = random.nextDouble();
+        return 1 + (int) (r * r * r * maxTax);
+      case CONSTANT:
+        return maxTax;
+      case UNIFORM:
+      default:
+        return 1 + random.nextInt(maxTax);
+    }
+  }
+
+  /**
+   * Generates the borders as adjacency lists.
+   *
+   * <p>Each island first gets a random spanning tree, where every country borders an earlier one
+   * from its own continent when there is one, so islands are connected. Random borders are then
+   * added, mostly inside continents, until the average degree is reached. Duplicate borders are
+   * dropped at the end.
+   *
+   * @param random the source of randomness
+   * @param offsets filled with where each country's neighbours start in the returned array
+   * @return the neighbours of every country, sorted by ID
+   */
+  private int[] generateBorders(Random random, int[] offsets) {
+    long wanted = Math.max((long) countries * degree / 2, countries - islands);
+    if (wanted > Integer.MAX_VALUE / 2) {
+      throw new IllegalArgumentException("Too many borders: " + wanted);
+    }
+    int[] from = new int[(int) wanted];
+    int[] to = new int[(int) wanted];
+    int count = 0;
+
+    for (int i = 0; i < countries; i++) {
+      int islandStart = start(part(i, islands), islands);
+      int low = Math.max(islandStart, start(part(i, continents), continents));
+      if (low == i) {
+        // First country of its continent on this island, so join it to the previous continent.
+        low = islandStart;
+      }
+      if (low < i) {
+        from[count] = i;
+        to[count] = low + random.nextInt(i - low);
+        count++;
+      }
+    }
+
+    // With one country per island there is nothing left to join.
+    while (count < wanted && islands < countries) {
+      int country = random.nextInt(countries);
+      int island = part(country, islands);
+      int low = start(island, islands);
+      int high = start(island + 1, islands);
+      if (random.nextDouble() < LOCAL_BORDERS) {
+        int continent = part(country, continents);
+        low = Math.max(low, start(continent, continents));
+        high = Math.min(high, start(continent + 1, continents));
+      }
+      if (high - low < 2) {
+        continue;
+      }
+      int neighbour = low + random.nextInt(high - low - 1);
+      from[count] = country;
+      to[count] = neighbour < country ? neighbour : neighbour + 1;
+      count++;
+    }
+
+    // Count both directions of every border, then fill the adjacency lists.
+    for (int i = 0; i < count; i++) {
+      offsets[from[i] + 1]++;
+      offsets[to[i] + 1]++;
+    }
+    for (int i = 0; i < countries; i++) {
+      offsets[i + 1] += offsets[i];
+    }
+    int[] next = Arrays.copyOf(offsets, countries);
+    int[] neighbours = new int[2 * count];
+    for (int i = 0; i < count; i++) {
+      neighbours[next[from[i]]++] = to[i];
+      neighbours[next[to[i]]++] = from[i];
+    }
+
+    // Sort each list and squeeze out duplicates. A duplicate border is duplicated on both ends, so
+    // the lists stay symmetric.
+    int write = 0;
+    int read = 0;
+    for (int i = 0; i < countries; i++) {
+      int end = offsets[i + 1];
+      Arrays.sort(neighbours, read, end);
+      offsets[i] = write;
+      for (int j = read; j < end; j++) {
+        if (j == read || neighbours[j] != neighbours[j - 1]) {
+          neighbours[write++] = neighbours[j];
+        }
+      }
+      read = end;
+    }
+    offsets[countries] = write;
+    return neighbours;
+  }
+
+  /**
+   * Returns which of a number of equal, consecutive parts a country falls in.
+   *
+   * @param country the ID of the country
+   * @param parts the number of parts
+   * @return the part, from 0 to parts - 1
+   */
+  private int part(int country, int parts) {
+    return (int) ((long) country * parts / countries);
+  }
+
+  /**
+   * Returns the first country of a part.
+   *
+   * @param part the part, from 0 to parts, where parts gives the end of the map
+   * @param parts the number of parts
+   * @return the ID of the first country in the part
+   */
+  private int start(int part, int parts) {
+    return (int) (((long) part * countries + parts - 1) / parts);
+  }
+}
@@ -0,0 +1,834 @@
+package nz.ac.auckland.se281;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+
+/**
+ * Read-only queries over one loaded map: country info, routes and continents.
+ *
+ * <p>A MapQueries never changes after it is built. The graph, the route table and the heuristic
+ * are final and never written again, so once a reference to a MapQueries has been published,
+ * e.g. through a volatile field, any number of threads can query it at the same time without
+ * locking. Each thread searches with its own scratch space. The only shared mutable state is the
+ * optional route cache, which does its own locking per segment, and the metrics, which are
+ * lock-free.
+ *
+ * <p>Nothing here reads from the console or prints; that is left to clients such as {@link
+ * MapEngine}. Settings that change how queries are answered return a new MapQueries.
+ */
+public final class MapQueries {
+  private final CountryGraph graph;
+
+  // Resolves names as typed, including aliases, to country IDs.
+  private final NameIndex names;
+
+  // Precomputed fewest-borders routes between all pairs, or null to search on demand.
+  private final RouteTable routeTable;
+
+  // Continent-level index for fewest-borders routes between continents, or null if the map has
+  // too many border countries for it to pay.
+  private final ContinentOverlay overlay;
+
+  // Contraction hierarchies indexed by ContractionHierarchy.Weight ordinal: by borders for the
+  // breadth-first modes, by tax for the cheapest ones. Null when they are not in use, and an entry
+  // is null while the hierarchy for an edited or reloaded map is being built.
+  private final ContractionHierarchy[] hierarchies;
+
+  // Distances to and from a few landmark countries, for distance bounds and the A* heuristic, or
+  // null when they are not in use.
+  private final LandmarkOracle landmarks;
+
+  // Recently asked-for routes, or null when caching is off. Edits of the map keep the cache, and
+  // the version decides whether a route cached before an edit still holds.
+  private final RouteCache routeCache;
+  private final MapVersion version;
+
+  // Lower bound on the remaining tax, used by the A* and constrained cheapest searches: from the
+  // landmarks if there are any, otherwise the destination's tax.
+  private final TaxHeuristic goalHeuristic;
+
+  private final List<String> continents;
+
+  // Scratch space for searches, one per thread so that queries do not allocate. Copies made by
+  // the with... methods share it, since a context works for any graph it is big enough for.
+  private final ThreadLocal<SearchContext> searchContexts;
+
+  // Per route mode, indexed by ordinal: search time, countries visited and queue high-water mark.
+  // They are looked up once here so that a search does not go through the registry's map.
+  private final Metrics metrics;
+  private final Histogram[] searchTimes;
+  private final Histogram[] searchVisited;
+  private final Histogram[] searchQueuePeaks;
+  // The same for constrained routes, alternative routes and name suggestions.
+  private final Histogram constrainedTimes;
+  private final Histogram constrainedVisited;
+  private final Histogram alternativesTimes;
+  private final Histogram suggestTimes;
+
+  /**
+   * Creates queries over a graph, without a route table or cache. The continent overlay is built
+   * here if the map suits it.
+   *
+   * @param graph the graph to query
+   * @param metrics where to record search statistics
+   */
+  MapQueries(CountryGraph graph, Metrics metrics) {
+    this(
+        graph,
+        new NameIndex(graph.names, Map.of()),
+        null,
+        buildOverlay(graph, metrics),
+        null,
+        null,
+        null,
+        new MapVersion(graph),
+        metrics,
+        new ThreadLocal<>());
+  }
+
+  private MapQueries(
+      CountryGraph graph,
+      NameIndex names,
+      RouteTable routeTable,
+      ContinentOverlay overlay,
+      ContractionHierarchy[] hierarchies,
+      LandmarkOracle landmarks,
+      RouteCache routeCache,
+      MapVersion version,
+      Metrics metrics,
+      ThreadLocal<SearchContext> searchContexts) {
+    this.graph = graph;
+    this.names = names;
+    this.routeTable = routeTable;
+    this.overlay = overlay;
+    this.hierarchies = hierarchies;
+    this.landmarks = landmarks;
+    this.routeCache = routeCache;
+    this.version = version;
+    this.goalHeuristic =
+        landmarks == null ? TaxHeuristic.destinationTax(graph) : landmarks.taxHeuristic();
+    this.continents = Collections.unmodifiableList(Arrays.asList(graph.continentNames));
+    this.metrics = metrics;
+    this.searchContexts = searchContexts;
+
+    int modes = RouteMode.values().length;
+    searchTimes = new Histogram[modes];
+    searchVisited = new Histogram[modes];
+    searchQueuePeaks = new Histogram[modes];
+    for (RouteMode mode : RouteMode.values()) {
+      String prefix = "search." + mode.name().toLowerCase();
+      searchTimes[mode.ordinal()] = metrics.histogram(prefix + ".time_ns");
+      searchVisited[mode.ordinal()] = metrics.histogram(prefix + ".visited");
+      searchQueuePeaks[mode.ordinal()] = metrics.histogram(prefix + ".queue_peak");
+    }
+    constrainedTimes = metrics.histogram("search.constrained.time_ns");
+    constrainedVisited = metrics.histogram("search.constrained.visited");
+    alternativesTimes = metrics.histogram("search.alternatives.time_ns");
+    suggestTimes = metrics.histogram("suggest.time_ns");
+  }
+
+  /**
+   * Returns a copy of these queries that also accepts other names for countries.
+   *
+   * @param aliases the country each alias stands for, with names capitalised or not; aliases of
+   *     countries that are not on the map are ignored
+   * @return the new queries
+   */
+  MapQueries withAliases(Map<String, String> aliases) {
+    return new MapQueries(
+        graph,
+        new NameIndex(graph.names, aliases),
+        routeTable,
+        overlay,
+        hierarchies,
+        landmarks,
+        routeCache,
+        version,
+        metrics,
+        searchContexts);
+  }
+
+  /**
+   * Returns a copy of these queries that reads fewest-borders routes from a precomputed table.
+   *
+   * @param routeTable the table, built from the same graph, or null to search on demand
+   * @return the new queries
+   */
+  MapQueries withRouteTable(RouteTable routeTable) {
+    return new MapQueries(
+        graph,
+        names,
+        routeTable,
+        overlay,
+        hierarchies,
+        landmarks,
+        routeCache,
+        version,
+        metrics,
+        searchContexts);
+  }
+
+  /**
+   * Returns a copy of these queries that finds routes with contraction hierarchies, unless the
+   * route table has them. A route found this way is as short or as cheap as a search would find,
+   * but of several such routes it may be a different one.
+   *
+   * @param hierarchies the hierarchies built from the same graph, indexed by {@link
+   *     ContractionHierarchy.Weight} ordinal, or null to search without them
+   * @return the new queries
+   */
+  MapQueries withHierarchies(ContractionHierarchy[] hierarchies) {
+    return new MapQueries(
+        graph,
+        names,
+        routeTable,
+        overlay,
+        hierarchies,
+        landmarks,
+        routeCache,
+        version,
+        metrics,
+        searchContexts);
+  }
+
+  /**
+   * Returns a copy of these queries that bounds distances with landmarks and uses them as the A*
+   * heuristic of the cheapest searches. A route found this way is as cheap as before, but of
+   * several such routes it may be a different one.
+   *
+   * @param landmarks the landmarks, picked on the same graph, or null to go without
+   * @return the new queries
+   */
+  MapQueries withLandmarks(LandmarkOracle landmarks) {
+    return new MapQueries(
+        graph,
+        names,
+        routeTable,
+        overlay,
+        hierarchies,
+        landmarks,
+        routeCache,
+        version,
+        metrics,
+        searchContexts);
+  }
+
+  /**
+   * Returns a copy of these queries that caches routes.
+   *
+   * @param routeCache the cache, which must be empty or hold routes of the same graph, or null to
+   *     turn caching off
+   * @return the new queries
+   */
+  MapQueries withRouteCache(RouteCache routeCache) {
+    return new MapQueries(
+        graph,
+        names,
+        routeTable,
+        overlay,
+        hierarchies,
+        landmarks,
+        routeCache,
+        version,
+        metrics,
+        searchContexts);
+  }
+
+  /**
+   * Returns queries over an edited copy of this map, keeping as much precomputed work as the edits
+   * allow.
+   *
+   * <p>The route table keeps every row the edits cannot change and searches the rest again. The
+   * cache is shared with the new queries, and each cached route is checked against the edits when
+   * it is next asked for. Removing a country renumbers the map, so then the table is rebuilt and
+   * the cache emptied. The table is dropped if the edited map is too big for it. The continent
+   * overlay is kept if only taxes changed and built again otherwise. The hierarchy by borders is
+   * kept if only taxes changed, and the one by tax if nothing changed that it depends on; a
+   * hierarchy that is not kept is dropped, and routes are searched for meanwhile. Landmarks are
+   * kept if no borders changed and no tax went down, since their bounds still hold, and dropped
+   * otherwise. The engine builds what was dropped again off the update path. These queries are
+   * not changed and can go on answering from the old map.
+   *
+   * @param update the edits to apply
+   * @param routeTableBudget the number of bytes the route table may use
+   * @return the new queries
+   * @throws CountryNotFoundException if an edit names a country that does not exist
+   * @throws MapFormatException if an edit is not valid
+   */
+  MapQueries withUpdate(MapUpdate update, long routeTableBudget) {
+    MapUpdate.Result result = update.applyTo(graph);
+    CountryGraph edited = result.graph;
+
+    RouteTable editedTable = null;
+    if (routeTable != null && RouteTable.fits(edited, routeTableBudget)) {
+      editedTable =
+          result.renumbered
+              ? new RouteTable(edited)
+              : routeTable.update(edited, result.addedBorders, result.removedBorders);
+      metrics.counter("update.route_table_rows").add(routeTable.rowsDifferentFrom(editedTable));
+    }
+    ContinentOverlay editedOverlay = overlay == null ? null : overlay.forUpdate(edited, result);
+    if (editedOverlay == null) {
+      editedOverlay = buildOverlay(edited, metrics);
+    }
+    ContractionHierarchy[] editedHierarchies = null;
+    if (hierarchies != null) {
+      editedHierarchies = new ContractionHierarchy[hierarchies.length];
+      for (int i = 0; i < hierarchies.length; i++) {
+        if (hierarchies[i] != null) {
+          editedHierarchies[i] = hierarchies[i].forUpdate(edited, result);
+        }
+      }
+    }
+    if (routeCache != null && result.renumbered) {
+      // Nothing in it can be used again; free the space now rather than as routes are replaced.
+      routeCache.clear();
+    }
+    return new MapQueries(
+        edited,
+        names.forNames(edited.names),
+        editedTable,
+        editedOverlay,
+        editedHierarchies,
+        landmarks == null ? null : landmarks.forUpdate(edited, result),
+        routeCache,
+        version.next(result),
+        metrics,
+        searchContexts);
+  }
+
+  /**
+   * Returns queries over a different map, e.g. the same files read again, with the same settings.
+   *
+   * <p>A route table is built for the new map if these queries have one and the new map fits the
+   * budget, and the continent overlay if the new map suits it. Contraction hierarchies and
+   * landmarks are dropped, for the engine to read or build again off the reload path, and routes
+   * are searched for meanwhile. The cache is kept but emptied, since none of its routes apply to
+   * the new map.
+   *
+   * @param replacement the new map
+   * @param aliases the country each alias stands for on the new map
+   * @param routeTableBudget the number of bytes the route table may use
+   * @return the new queries
+   */
+  MapQueries withGraph(
+      CountryGraph replacement, Map<String, String> aliases, long routeTableBudget) {
+    RouteTable replacementTable = null;
+    if (routeTable != null && RouteTable.fits(replacement, routeTableBudget)) {
+      replacementTable = new RouteTable(replacement);
+    }
+    if (routeCache != null) {
+      routeCache.clear();
+    }
+    return new MapQueries(
+        replacement,
+        new NameIndex(replacement.names, aliases),
+        replacementTable,
+        buildOverlay(replacement, metrics),
+        hierarchies == null ? null : new ContractionHierarchy[hierarchies.length],
+        null,
+        routeCache,
+        version.replaced(replacement),
+        metrics,
+        searchContexts);
+  }
+
+  /**
+   * Returns the information about a country.
+   *
+   * @param countryName the name of the country, in any capitalisation
+   * @return the country
+   * @throws CountryNotFoundException if there is no such country
+   */
+  public Country info(String countryName) {
+    return graph.country(requireCountry(countryName));
+  }
+
+  /**
+   * Finds the route between two countries.
+   *
+   * @param mode the search to use
+   * @param startName the name of the start country, in any capitalisation
+   * @param destinationName the name of the destination country, in any capitalisation
+   * @return the route, which is empty if the destination cannot be reached and has just the start
+   *     country if the two are the same
+   * @throws CountryNotFoundException if either country does not exist
+   */
+  public Route route(RouteMode mode, String startName, String destinationName) {
+    return route(mode, requireCountry(startName), requireCountry(destinationName));
+  }
+
+  /**
+   * Finds the route between two countries that avoids some countries or continents and stays
+   * within a budget.
+   *
+   * @param mode the search to use; the breadth-first modes find the route with the fewest borders
+   *     and the cheapest modes the one with the lowest total tax
+   * @param startName the name of the start country, in any capitalisation
+   * @param destinationName the name of the destination country, in any capitalisation
+   * @param constraints what the route must avoid and stay within, made by {@link #constraints}
+   * @return the route, which is empty if no route meets the constraints
+   * @throws CountryNotFoundException if either country does not exist
+   */
+  public Route route(
+      RouteMode mode, String startName, String destinationName, RouteConstraints constraints) {
+    return route(mode, requireCountry(startName), requireCountry(destinationName), constraints);
+  }
+
+  /**
+   * Returns constraints for routes on this map that allow every route, to be narrowed down.
+   *
+   * @return the constraints
+   */
+  public RouteConstraints constraints() {
+    return new RouteConstraints(graph, names);
+  }
+
+  /**
+   * Finds the shortest few loopless routes between two countries.
+   *
+   * @param mode the search that finds the first route; the breadth-first modes rank routes by the
+   *     number of borders and the cheapest modes by total tax
+   * @param startName the name of the start country, in any capitalisation
+   * @param destinationName the name of the destination country, in any capitalisation
+   * @param count the most routes to return
+   * @return the routes, shortest or cheapest first, which is empty if the destination cannot be
+   *     reached
+   * @throws CountryNotFoundException if either country does not exist
+   */
+  public List<Route> alternativeRoutes(
+      RouteMode mode, String startName, String destinationName, int count) {
+    return alternativeRoutes(
+        mode, requireCountry(startName), requireCountry(destinationName), count);
+  }
+
+  /**
+   * Suggests the countries that a name which was not found might have meant.
+   *
+   * @param input the name as typed
+   * @param limit the most names to suggest
+   * @return the closest country names, closest first, which may be empty
+   */
+  public List<String> suggestCountries(CharSequence input, int limit) {
+    long startNanos = System.nanoTime();
+    List<String> suggestions = names.suggester().suggest(input, limit);
+    suggestTimes.recordSince(startNanos);
+    return suggestions;
+  }
+
+  /**
+   * Returns the names of all continents on the map.
+   *
+   * @return the continents, in the order they first appear in the countries file
+   */
+  public List<String> continents() {
+    return continents;
+  }
+
+  /**
+   * Returns the number of countries on the map.
+   *
+   * @return the number of countries
+   */
+  public int countryCount() {
+    return graph.size();
+  }
+
+  /**
+   * Returns the route cache, so that its hit, miss and eviction counters can be polled.
+   *
+   * @return the route cache, or null if caching is off
+   */
+  public RouteCache getRouteCache() {
+    return routeCache;
+  }
+
+  CountryGraph graph() {
+    return graph;
+  }
+
+  /**
+   * Returns the contraction hierarchies, for the engine to build those that are missing.
+   *
+   * @return the hierarchies indexed by {@link ContractionHierarchy.Weight} ordinal, with null for
+   *     one that is being built again, or null if they are not in use
+   */
+  ContractionHierarchy[] hierarchies() {
+    return hierarchies;
+  }
+
+  /**
+   * Returns the landmarks, for bounds on the distance between two countries without finding a
+   * route.
+   *
+   * @return the landmarks, or null if they are not in use
+   */
+  LandmarkOracle landmarks() {
+    return landmarks;
+  }
+
+  /**
+   * Looks up a country from user input, read the same way as at the prompt: spacing and the case
+   * of the first letter of each word do not matter, and aliases are accepted.
+   *
+   * @param input the name as typed
+   * @return the ID of the country, or -1 if there is no such country
+   */
+  int lookupCountry(CharSequence input) {
+    return names.find(input);
+  }
+
+  /**
+   * Looks up a country from user input, failing if it does not exist.
+   *
+   * @param input the name as typed
+   * @return the ID of the country
+   * @throws CountryNotFoundException if there is no such country
+   */
+  int requireCountry(String input) {
+    int id = names.find(input);
+    if (id < 0) {
+      // Only a failed lookup builds the capitalised name, for the message.
+      throw new CountryNotFoundException(
+          MessageCli.INVALID_COUNTRY.getMessage(
+              Matcher.quoteReplacement(Utils.capitalizeFirstLetterOfEachWord(input))));
+    }
+    return id;
+  }
+
+  /**
+   * Returns the name of a country.
+   *
+   * @param country the ID of the country
+   * @return the name of the country
+   */
+  String countryName(int country) {
+    return graph.names[country];
+  }
+
+  /**
+   * Finds the route between two countries, with its continents and tax.
+   *
+   * <p>If caching is on, the route is taken from the cache when possible and added to it
+   * otherwise.
+   *
+   * @param mode the search to use
+   * @param start the ID of the start country
+   * @param destination the ID of the destination country
+   * @return the route, which is empty if the destination cannot be reached
+   */
+  Route route(RouteMode mode, int start, int destination) {
+    if (start == destination) {
+      return toRoute(new int[] {start}, 0);
+    }
+
+    long key = RouteCache.key(start, destination, mode);
+    if (routeCache != null) {
+      Route cached = routeCache.get(key, version.number(), version);
+      if (cached != null) {
+        return cached;
+      }
+    }
+
+    int[] shortestPath = findShortestPath(mode, start, destination);
+    Route route = Route.NONE;
+    if (shortestPath.length > 0) {
+      route = toRoute(shortestPath, calculateTaxes(shortestPath));
+    }
+
+    if (routeCache != null) {
+      routeCache.put(key, route, version.number());
+    }
+    return route;
+  }
+
+  /**
+   * Finds the route between two countries that meets some constraints, searching the map with
+   * the avoided countries skipped rather than a copy without them.
+   *
+   * <p>Constrained routes are never cached or read from the route table.
+   *
+   * @param mode the search to use, which decides whether borders or tax are minimised
+   * @param start the ID of the start country
+   * @param destination the ID of the destination country
+   * @param constraints what the route must avoid and stay within
+   * @return the route, which is empty if no route meets the constraints, including when the start
+   *     or destination is avoided
+   * @throws IllegalArgumentException if the constraints were made for another map
+   */
+  Route route(RouteMode mode, int start, int destination, RouteConstraints constraints) {
+    constraints.checkMap(graph);
+    if (!constraints.allows(start) || !constraints.allows(destination)) {
+      return Route.NONE;
+    }
+    if (start == destination) {
+      return toRoute(new int[] {start}, 0);
+    }
+
+    SearchContext context = searchContext();
+    long startNanos = System.nanoTime();
+    int[] path =
+        mode == RouteMode.CHEAPEST || mode == RouteMode.CHEAPEST_A_STAR
+            ? ConstrainedSearch.cheapest(
+                graph, context, start, destination, constraints, goalHeuristic)
+            : ConstrainedSearch.fewestBorders(graph, context, start, destination, constraints);
+    constrainedTimes.recordSince(startNanos);
+    constrainedVisited.record(context.visitedCount());
+    return path.length == 0 ? Route.NONE : toRoute(path, calculateTaxes(path));
+  }
+
+  /**
+   * Finds the shortest few loopless routes between two countries.
+   *
+   * <p>The first route is the one {@link #route(RouteMode, int, int)} finds, though it is always
+   * searched for rather than taken from the cache.
+   *
+   * @param mode the search that finds the first route, which also decides how routes are ranked
+   * @param start the ID of the start country
+   * @param destination the ID of the destination country
+   * @param count the most routes to return
+   * @return the routes, shortest or cheapest first
+   */
+  List<Route> alternativeRoutes(RouteMode mode, int start, int destination, int count) {
+    if (start == destination) {
+      return List.of(toRoute(new int[] {start}, 0));
+    }
+
+    int[] shortest = findShortestPath(mode, start, destination);
+    long startNanos = System.nanoTime();
+    boolean byTax = mode == RouteMode.CHEAPEST || mode == RouteMode.CHEAPEST_A_STAR;
+    List<int[]> paths =
+        AlternativeRouteSearch.findPaths(graph, searchContext(), shortest, count, byTax);
+    alternativesTimes.recordSince(startNanos);
+
+    List<Route> routes = new ArrayList<>(paths.size());
+    for (int[] path : paths) {
+      routes.add(toRoute(path, calculateTaxes(path)));
+    }
+    return routes;
+  }
+
+  /**
+   * Finds the routes from one country to every other country with a single search.
+   *
+   * @param mode the search to use; the breadth-first modes give fewest-borders routes and the
+   *     cheapest modes give lowest-tax routes
+   * @param source the ID of the start country
+   * @return the tree of routes, which can be queried for any number of destinations
+   */
+  ShortestPathTree routesFrom(RouteMode mode, int source) {
+    SearchContext context = searchContext();
+    if (mode == RouteMode.CHEAPEST || mode == RouteMode.CHEAPEST_A_STAR) {
+      return ShortestPathTree.cheapest(graph, context, source);
+    }
+    return ShortestPathTree.breadthFirst(graph, context, source);
+  }
+
+  /**
+   * Reads one route out of a tree of routes.
+   *
+   * @param tree the routes from the start country
+   * @param destination the ID of the destination country
+   * @return the route, which is empty if the destination cannot be reached
+   */
+  Route route(ShortestPathTree tree, int destination) {
+    int[] path = tree.path(destination);
+    return path.length == 0 ? Route.NONE : toRoute(path, tree.tax(destination));
+  }
+
+  /**
+   * This method finds the shortest path between two countries.
+   *
+   * <p>The breadth-first modes find the path with the fewest borders and break ties by the order
+   * of the adjacencies file, whether the search runs from the start only, from both ends or over
+   * the continent overlay. The cheapest modes find the path with the lowest total tax. With
+   * contraction hierarchies in use, ties may be broken differently.
+   *
+   * @param mode the search to use
+   * @param start the ID of the start country
+   * @param destination the ID of the destination country
+   * @return the IDs of the countries on the path, or an empty array if there is no path
+   */
+  private int[] findShortestPath(RouteMode mode, int start, int destination) {
+    if (usesRouteTable(mode)) {
+      return routeTable.path(start, destination);
+    }
+
+    SearchContext context = searchContext();
+    long startNanos = System.nanoTime();
+    int[] path;
+    ContractionHierarchy hierarchy = hierarchyFor(mode);
+    if (hierarchy != null) {
+      path = hierarchy.findPath(context, start, destination);
+    } else if (usesOverlay(mode, start, destination)) {
+      path = overlay.findPath(context, start, destination);
+    } else {
+      switch (mode) {
+        case BIDIRECTIONAL:
+          path = BidirectionalSearch.findPath(graph, context, start, destination);
+          break;
+        case CHEAPEST:
+          path = WeightedSearch.findPath(graph, context, start, destination, TaxHeuristic.NONE);
+          break;
+        case CHEAPEST_A_STAR:
+          path = WeightedSearch.findPath(graph, context, start, destination, goalHeuristic);
+          break;
+        case BREADTH_FIRST:
+        default:
+          path = BreadthFirstSearch.findPath(graph, context, start, destination);
+          break;
+      }
+    }
+
+    // Record how much work the search did, now that the context still holds its counts.
+    searchTimes[mode.ordinal()].recordSince(startNanos);
+    searchVisited[mode.ordinal()].record(context.visitedCount());
+    searchQueuePeaks[mode.ordinal()].record(context.queuePeak());
+    return path;
+  }
+
+  /**
+   * Checks whether a route is found with the continent overlay instead of a search of the whole
+   * map. The overlay only pays when the route leaves the start's continent, and it finds the same
+   * routes as the breadth-first modes.
+   *
+   * @param mode the search that was asked for
+   * @param start the ID of the start country
+   * @param destination the ID of the destination country
+   * @return true if the overlay exists and can answer for that mode
+   */
+  private boolean usesOverlay(RouteMode mode, int start, int destination) {
+    return overlay != null
+        && (mode == RouteMode.BREADTH_FIRST || mode == RouteMode.BIDIRECTIONAL)
+        && graph.continentIds[start] != graph.continentIds[destination];
+  }
+
+  /**
+   * Returns the contraction hierarchy that finds the routes of a mode.
+   *
+   * @param mode the search that was asked for
+   * @return the hierarchy by borders for the breadth-first modes, by tax for the cheapest ones, or
+   *     null if hierarchies are not in use or that one is being built again
+   */
+  private ContractionHierarchy hierarchyFor(RouteMode mode) {
+    if (hierarchies == null) {
+      return null;
+    }
+    switch (mode) {
+      case CHEAPEST:
+      case CHEAPEST_A_STAR:
+        return hierarchies[ContractionHierarchy.Weight.TAX.ordinal()];
+      case BREADTH_FIRST:
+      case BIDIRECTIONAL:
+      default:
+        return hierarchies[ContractionHierarchy.Weight.BORDERS.ordinal()];
+    }
+  }
+
+  /**
+   * Checks whether a route can be read from the precomputed table instead of searched for.
+   *
+   * @param mode the search that was asked for
+   * @return true if the table exists and holds routes for that mode
+   */
+  private boolean usesRouteTable(RouteMode mode) {
+    return routeTable != null
+        && (mode == RouteMode.BREADTH_FIRST || mode == RouteMode.BIDIRECTIONAL);
+  }
+
+  /**
+   * Builds the continent overlay for a map, if the map suits it.
+   *
+   * @param graph the map
+   * @param metrics where to record the build time
+   * @return the overlay, or null if the map has too many border countries for it
+   */
+  private static ContinentOverlay buildOverlay(CountryGraph graph, Metrics metrics) {
+    if (!ContinentOverlay.fits(graph)) {
+      return null;
+    }
+    long startNanos = System.nanoTime();
+    ContinentOverlay overlay = new ContinentOverlay(graph);
+    metrics.histogram("load.overlay_ns").recordSince(startNanos);
+    return overlay;
+  }
+
+  /**
+   * Returns this thread's search scratch space, reset and ready for a new search.
+   *
+   * @return the search context
+   */
+  private SearchContext searchContext() {
+    SearchContext context = searchContexts.get();
+    if (context == null || !context.fits(graph)) {
+      context = new SearchContext(graph.size(), graph.continentCount());
+      searchContexts.set(context);
+    }
+    context.reset();
+    return context;
+  }
+
+  /**
+   * Builds the result for a path.
+   *
+   * @param path the IDs of the countries on the path
+   * @param taxes the total tax of the path
+   * @return the route
+   */
+  private Route toRoute(int[] path, int taxes) {
+    return new Route(toNames(path), extractContinents(path), taxes);
+  }
+
+  /**
+   * This method extracts the continents from the path.
+   *
+   * @param path the IDs of the countries on the path
+   * @return a list of continents, in the order they are first visited
+   */
+  private List<String> extractContinents(int[] path) {
+    List<String> continents = new ArrayList<>();
+    SearchContext context = searchContext();
+
+    for (int country : path) {
+      int continent = graph.continentIds[country];
+      if (context.seeContinent(continent)) {
+        continents.add(graph.continentNames[continent]);
+      }
+    }
+
+    return continents;
+  }
+
+  /**
+   * This method calculates the total taxes of the path.
+   *
+   * @param path the IDs of the countries on the path
+   * @return the total taxes
+   */
+  private int calculateTaxes(int[] path) {
+    int totalTaxes = 0;
+    // Start from the second country to exclude the tax of the starting country
+    for (int i = 1; i < path.length; i++) {
+      totalTaxes += graph.taxes[path[i]];
+    }
+    return totalTaxes;
+  }
+
+  /**
+   * Translates a path of country IDs back into country names for output.
+   *
+   * @param path the IDs of the countries on the path
+   * @return the names of the countries on the path
+   */
+  private List<String> toNames(int[] path) {
+    List<String> names = new ArrayList<>(path.length);
+    for (int country : path) {
+      names.add(graph.names[country]);
+    }
+    return names;
+  }
+}
@@ -0,0 +1,288 @@
+package nz.ac.auckland.se281;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Versioned binary snapshot of a {@link CountryGraph}, so that startup does not have to parse the
+ * CSV files again.
+ *
+ * <p>The snapshot is written once from the CSV files and read back through a memory mapping. It
+ * records the size and a CRC32C checksum of both CSV files it was built from; if either file has
+ * changed since, or the version or checksum does not match, the snapshot is ignored and the map
+ * is loaded from the CSV files and the snapshot rewritten. Checksumming the files reads them
+ * through, but that is far quicker than parsing them, and unlike a modification time it cannot
+ * miss an edit that keeps the size.
+ *
+ * <p>Layout, big-endian:
+ *
+ * <pre>
+ * long magic, int version
+ * long countries size, long countries CRC32C, long adjacencies size, long adjacencies CRC32C
+ * int country count, int continent count, int border count
+ * continent names then country names, each as int length + UTF-8 bytes
+ * zero padding to a multiple of 4 bytes
+ * int[] continent IDs, taxes, offsets, neighbours, reverse offsets, reverse neighbours
+ * long CRC32C of everything before it
+ * </pre>
+ */
+class MapSnapshot {
+  private static final long MAGIC = 0x533238314D415021L; // "S281MAP!"
+  private static final int VERSION = 2;
+  // Checksums of the CSV files are taken over mappings of at most this many bytes.
+  private static final long CHECKSUM_CHUNK = 1 << 30;
+  private static final int HEADER_BYTES = 8 + 4 + 4 * 8 + 3 * 4;
+
+  private MapSnapshot() {}
+
+  /**
+   * Loads a map from its snapshot, or from the CSV files if the snapshot is missing or stale.
+   *
+   * <p>After a load from the CSV files the snapshot is rewritten. Failing to write it is not an
+   * error, the next startup will simply parse the CSV files again.
+   *
+   * @param countriesFile lines in the format "Country,Continent,Tax"
+   * @param adjacenciesFile lines of a country followed by the names of its neighbours
+   * @param snapshotFile where the snapshot is kept
+   * @param pool the pool to parse the CSV files on, or null to parse on the calling thread
+   * @param metrics where to record how long reading, parsing and writing took
+   * @return the graph
+   * @throws IOException if a CSV file cannot be read
+   * @throws MapFormatException if a CSV file is malformed
+   */
+  static CountryGraph load(
+      Path countriesFile,
+      Path adjacenciesFile,
+      Path snapshotFile,
+      ForkJoinPool pool,
+      Metrics metrics)
+      throws IOException {
+    long startNanos = System.nanoTime();
+    long[] sources = sourceStamp(countriesFile, adjacenciesFile);
+    CountryGraph graph = read(snapshotFile, sources);
+    metrics.histogram("load.snapshot_read_ns").recordSince(startNanos);
+    if (graph != null) {
+      return graph;
+    }
+
+    startNanos = System.nanoTime();
+    graph = MappedMapLoader.load(countriesFile, adjacenciesFile, pool);
+    metrics.histogram("load.parse_ns").recordSince(startNanos);
+    startNanos = System.nanoTime();
+    try {
+      write(graph, snapshotFile, sources);
+    } catch (IOException e) {
+      // The snapshot is only a cache, so carry on without it.
+    }
+    metrics.histogram("load.snapshot_write_ns").recordSince(startNanos);
+    return graph;
+  }
+
+  /**
+   * Describes the CSV files a snapshot is built from.
+   *
+   * @return the size and CRC32C checksum of each file
+   * @throws IOException if a file cannot be read
+   */
+  static long[] sourceStamp(Path countriesFile, Path adjacenciesFile) throws IOException {
+    return new long[] {
+      Files.size(countriesFile),
+      checksum(countriesFile),
+      Files.size(adjacenciesFile),
+      checksum(adjacenciesFile)
+    };
+  }
+
+  /** Computes the CRC32C checksum of a whole file through memory mappings. */
+  private static long checksum(Path file) throws IOException {
+    CRC32C checksum = new CRC32C();
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      for (long position = 0; position < size; position += CHECKSUM_CHUNK) {
+        long length = Math.min(CHECKSUM_CHUNK, size - position);
+        checksum.update(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+      }
+    }
+    return checksum.getValue();
+  }
+
+  /**
+   * Writes a snapshot of a graph, replacing any existing snapshot atomically.
+   *
+   * @param graph the graph to write
+   * @param snapshotFile where to write the snapshot
+   * @param sources the stamp of the CSV files the graph was built from
+   * @throws IOException if the snapshot cannot be written
+   */
+  static void write(CountryGraph graph, Path snapshotFile, long[] sources) throws IOException {
+    Path directory = snapshotFile.toAbsolutePath().getParent();
+    Files.createDirectories(directory);
+    Path temporary = Files.createTempFile(directory, "map", ".snapshot.tmp");
+
+    try {
+      CRC32C checksum = new CRC32C();
+      try (OutputStream file = Files.newOutputStream(temporary);
+          DataOutputStream out =
+              new DataOutputStream(
+                  new BufferedOutputStream(new CheckedOutputStream(file, checksum), 1 << 16))) {
+        out.writeLong(MAGIC);
+        out.writeInt(VERSION);
+        for (long source : sources) {
+          out.writeLong(source);
+        }
+        out.writeInt(graph.size());
+        out.writeInt(graph.continentCount());
+        out.writeInt(graph.borderCount());
+
+        for (String continent : graph.continentNames) {
+          writeString(out, continent);
+        }
+        for (String name : graph.names) {
+          writeString(out, name);
+        }
+        while (out.size() % 4 != 0) {
+          out.writeByte(0);
+        }
+
+        writeInts(out, graph.continentIds);
+        writeInts(out, graph.taxes);
+        writeInts(out, graph.offsets);
+        writeInts(out, graph.neighbours);
+        writeInts(out, graph.reverseOffsets);
+        writeInts(out, graph.reverseNeighbours);
+
+        out.flush();
+        out.writeLong(checksum.getValue());
+      }
+      Files.move(
+          temporary,
+          snapshotFile,
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  /**
+   * Reads a snapshot, if it is valid and up to date.
+   *
+   * @param snapshotFile the snapshot to read
+   * @param sources the stamp of the CSV files as they are now
+   * @return the graph, or null if the snapshot is missing, stale, corrupt or of another version
+   */
+  static CountryGraph read(Path snapshotFile, long[] sources) {
+    ByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size < HEADER_BYTES + 8 || size > Integer.MAX_VALUE) {
+        return null;
+      }
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    } catch (IOException e) {
+      return null;
+    }
+
+    if (buffer.getLong() != MAGIC || buffer.getInt() != VERSION) {
+      return null;
+    }
+    for (long source : sources) {
+      if (buffer.getLong() != source) {
+        return null;
+      }
+    }
+
+    int checksumPosition = buffer.limit() - 8;
+    CRC32C checksum = new CRC32C();
+    checksum.update(buffer.duplicate().position(0).limit(checksumPosition));
+    if (buffer.getLong(checksumPosition) != checksum.getValue()) {
+      return null;
+    }
+
+    try {
+      int countryCount = buffer.getInt();
+      int continentCount = buffer.getInt();
+      int borderCount = buffer.getInt();
+
+      String[] continentNames = new String[continentCount];
+      for (int i = 0; i < continentCount; i++) {
+        continentNames[i] = readString(buffer);
+      }
+      String[] names = new String[countryCount];
+      HashMap<String, Integer> ids = new HashMap<>(countryCount * 2);
+      for (int i = 0; i < countryCount; i++) {
+        names[i] = readString(buffer);
+        ids.put(names[i], i);
+      }
+      buffer.position((buffer.position() + 3) & ~3);
+
+      int[] continentIds = readInts(buffer, countryCount);
+      int[] taxes = readInts(buffer, countryCount);
+      int[] offsets = readInts(buffer, countryCount + 1);
+      int[] neighbours = readInts(buffer, borderCount);
+      int[] reverseOffsets = readInts(buffer, countryCount + 1);
+      int[] reverseNeighbours = readInts(buffer, borderCount);
+      if (buffer.position() != checksumPosition) {
+        return null;
+      }
+
+      return new CountryGraph(
+          names,
+          continentIds,
+          continentNames,
+          taxes,
+          offsets,
+          neighbours,
+          reverseOffsets,
+          reverseNeighbours,
+          ids);
+    } catch (RuntimeException e) {
+      // The checksum matched but the contents do not add up, so treat it as corrupt.
+      return null;
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  static void writeInts(DataOutputStream out, int[] values) throws IOException {
+    ByteBuffer block = ByteBuffer.allocate(1 << 16);
+    for (int i = 0; i < values.length; ) {
+      int count = Math.min(values.length - i, block.capacity() / 4);
+      block.clear();
+      block.asIntBuffer().put(values, i, count);
+      out.write(block.array(), 0, count * 4);
+      i += count;
+    }
+  }
+
+  static int[] readInts(ByteBuffer buffer, int count) {
+    int[] values = new int[count];
+    buffer.asIntBuffer().get(values);
+    buffer.position(buffer.position() + count * 4);
+    return values;
+  }
+}
@@ -0,0 +1,586 @@
+package nz.ac.auckland.se281;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+
+/**
+ * A batch of edits to a loaded map: countries added or removed, taxes changed, and borders added
+ * or removed.
+ *
+ * <p>Edits are collected with the chainable methods below and applied together, in order, by
+ * {@link MapEngine#update}. Country names are capitalised like at the prompt. Borders are shared,
+ * so adding or removing one changes both directions, and adding a border that already exists or
+ * removing one that does not changes nothing.
+ *
+ * <p>Applying a batch never changes the current graph. The edited graph is a copy that shares
+ * every array the edits leave alone: a batch that only changes taxes copies just the taxes, and
+ * one that changes borders keeps the names, taxes and name index. Only removing a country
+ * renumbers the countries after it, which rebuilds the whole graph.
+ */
+public final class MapUpdate {
+  private enum Kind {
+    ADD_COUNTRY,
+    REMOVE_COUNTRY,
+    SET_TAX,
+    ADD_BORDER,
+    REMOVE_BORDER
+  }
+
+  /** One edit. The other name is the continent of a new country, or the far end of a border. */
+  private static final class Edit {
+    private final Kind kind;
+    private final String name;
+    private final String other;
+    private final int tax;
+
+    Edit(Kind kind, String name, String other, int tax) {
+      this.kind = kind;
+      this.name = Utils.capitalizeFirstLetterOfEachWord(name);
+      this.other =
+          kind == Kind.ADD_COUNTRY ? other : Utils.capitalizeFirstLetterOfEachWord(other);
+      this.tax = tax;
+    }
+  }
+
+  private final List<Edit> edits = new ArrayList<>();
+
+  /**
+   * Adds a country, without any borders.
+   *
+   * @param name the name of the country
+   * @param continent the continent it is on, which may be a new one
+   * @param tax the tax paid when crossing into it
+   * @return this update
+   */
+  public MapUpdate addCountry(String name, String continent, int tax) {
+    edits.add(new Edit(Kind.ADD_COUNTRY, name, continent, tax));
+    return this;
+  }
+
+  /**
+   * Removes a country and all of its borders.
+   *
+   * @param name the name of the country
+   * @return this update
+   */
+  public MapUpdate removeCountry(String name) {
+    edits.add(new Edit(Kind.REMOVE_COUNTRY, name, null, 0));
+    return this;
+  }
+
+  /**
+   * Changes the tax paid when crossing into a country.
+   *
+   * @param name the name of the country
+   * @param tax the new tax
+   * @return this update
+   */
+  public MapUpdate setTax(String name, int tax) {
+    edits.add(new Edit(Kind.SET_TAX, name, null, tax));
+    return this;
+  }
+
+  /**
+   * Adds a border between two countries.
+   *
+   * @param country the name of one country
+   * @param neighbour the name of the other
+   * @return this update
+   */
+  public MapUpdate addBorder(String country, String neighbour) {
+    edits.add(new Edit(Kind.ADD_BORDER, country, neighbour, 0));
+    return this;
+  }
+
+  /**
+   * Removes the border between two countries.
+   *
+   * @param country the name of one country
+   * @param neighbour the name of the other
+   * @return this update
+   */
+  public MapUpdate removeBorder(String country, String neighbour) {
+    edits.add(new Edit(Kind.REMOVE_BORDER, country, neighbour, 0));
+    return this;
+  }
+
+  /**
+   * Returns the number of edits in the batch.
+   *
+   * @return the number of edits
+   */
+  public int size() {
+    return edits.size();
+  }
+
+  /**
+   * Applies every edit, in order, to a copy of a graph.
+   *
+   * @param graph the graph to edit, which is not changed
+   * @return the edited graph and a summary of what changed
+   * @throws CountryNotFoundException if an edit names a country that does not exist at that point
+   * @throws MapFormatException if an edit adds a country that exists, sets a negative tax or puts
+   *     a border between a country and itself
+   */
+  Result applyTo(CountryGraph graph) {
+    Editor editor = new Editor(graph, countAdded());
+    for (Edit edit : edits) {
+      editor.apply(edit);
+    }
+    return editor.finish();
+  }
+
+  private int countAdded() {
+    int added = 0;
+    for (Edit edit : edits) {
+      if (edit.kind == Kind.ADD_COUNTRY) {
+        added++;
+      }
+    }
+    return added;
+  }
+
+  /** The edited graph, and what changed, so that precomputed routes can be kept where possible. */
+  static final class Result {
+    final CountryGraph graph;
+
+    // True if countries were removed, so IDs of the old graph mean nothing in the new one and
+    // none of the fields below are filled in.
+    final boolean renumbered;
+
+    // The countries whose tax changed, and whether any tax went down.
+    final int[] taxChanged;
+    final boolean taxLowered;
+
+    // The borders that were added and removed, as (from, to) ID pairs one after the other. A
+    // border that was removed and added again in the same update, which moves it to the end of the
+    // search order, is in both.
+    final int[] addedBorders;
+    final int[] removedBorders;
+
+    Result(
+        CountryGraph graph,
+        boolean renumbered,
+        int[] taxChanged,
+        boolean taxLowered,
+        int[] addedBorders,
+        int[] removedBorders) {
+      this.graph = graph;
+      this.renumbered = renumbered;
+      this.taxChanged = taxChanged;
+      this.taxLowered = taxLowered;
+      this.addedBorders = addedBorders;
+      this.removedBorders = removedBorders;
+    }
+  }
+
+  /** Applies edits one by one to working copies of the parts of the graph they touch. */
+  private static final class Editor {
+    private final CountryGraph graph;
+    private final int originalSize;
+    private final int capacity;
+    private int size;
+
+    // These start out as the graph's own arrays and are copied on the first write.
+    private String[] names;
+    private int[] continentIds;
+    private int[] taxes;
+    private List<String> continentNames;
+    private Map<String, Integer> continentIndex;
+
+    // Countries whose tax was set, in case it was set back to what it was.
+    private final List<Integer> taxEdits = new ArrayList<>();
+
+    // Countries added by this batch, and which countries have been removed.
+    private final Map<String, Integer> addedIds = new HashMap<>();
+    private boolean[] removed;
+
+    // The neighbours of every country whose borders were edited, in order, sorted by country so
+    // that the result does not depend on hashing.
+    private final TreeMap<Integer, List<Integer>> editedBorders = new TreeMap<>();
+
+    Editor(CountryGraph graph, int added) {
+      this.graph = graph;
+      this.originalSize = graph.size();
+      this.capacity = originalSize + added;
+      this.size = originalSize;
+      this.names = graph.names;
+      this.continentIds = graph.continentIds;
+      this.taxes = graph.taxes;
+    }
+
+    void apply(Edit edit) {
+      switch (edit.kind) {
+        case ADD_COUNTRY:
+          addCountry(edit.name, edit.other, edit.tax);
+          break;
+        case REMOVE_COUNTRY:
+          removeCountry(edit.name);
+          break;
+        case SET_TAX:
+          setTax(require(edit.name), edit.tax);
+          break;
+        case ADD_BORDER:
+        case REMOVE_BORDER:
+        default:
+          int country = require(edit.name);
+          int neighbour = require(edit.other);
+          if (country == neighbour) {
+            throw new MapFormatException("A country cannot border itself: " + edit.name);
+          }
+          if (edit.kind == Kind.ADD_BORDER) {
+            addNeighbour(country, neighbour);
+            addNeighbour(neighbour, country);
+          } else {
+            // A map file may list a border twice; every copy goes.
+            borders(country).removeIf(id -> id == neighbour);
+            borders(neighbour).removeIf(id -> id == country);
+          }
+          break;
+      }
+    }
+
+    private void addCountry(String name, String continent, int tax) {
+      if (tax < 0) {
+        throw new MapFormatException("Negative tax for country: " + name);
+      }
+      if (find(name) >= 0) {
+        throw new MapFormatException("Duplicate country: " + name);
+      }
+      if (names == graph.names) {
+        names = Arrays.copyOf(names, capacity);
+        continentIds = Arrays.copyOf(continentIds, capacity);
+      }
+      if (taxes.length < capacity) {
+        taxes = Arrays.copyOf(taxes, capacity);
+      }
+      int id = size++;
+      names[id] = name;
+      continentIds[id] = continent(continent);
+      taxes[id] = tax;
+      addedIds.put(name, id);
+    }
+
+    private void removeCountry(String name) {
+      int id = require(name);
+      if (removed == null) {
+        removed = new boolean[capacity];
+      }
+      removed[id] = true;
+      addedIds.remove(name);
+      // Borders into the country are dropped when the graph is rebuilt.
+      editedBorders.remove(id);
+    }
+
+    private void setTax(int id, int tax) {
+      if (tax < 0) {
+        throw new MapFormatException("Negative tax for country: " + names[id]);
+      }
+      if (taxes == graph.taxes) {
+        taxes = taxes.clone();
+      }
+      taxes[id] = tax;
+      if (id < originalSize) {
+        taxEdits.add(id);
+      }
+    }
+
+    private void addNeighbour(int country, int neighbour) {
+      List<Integer> borders = borders(country);
+      if (!borders.contains(neighbour)) {
+        // New borders go last, so every existing border keeps its place in the search order.
+        borders.add(neighbour);
+      }
+    }
+
+    private List<Integer> borders(int country) {
+      return editedBorders.computeIfAbsent(
+          country,
+          id -> {
+            List<Integer> borders = new ArrayList<>();
+            if (id < originalSize) {
+              for (int i = graph.offsets[id]; i < graph.offsets[id + 1]; i++) {
+                borders.add(graph.neighbours[i]);
+              }
+            }
+            return borders;
+          });
+    }
+
+    private int continent(String name) {
+      if (continentIndex == null) {
+        continentNames = new ArrayList<>(Arrays.asList(graph.continentNames));
+        continentIndex = new HashMap<>();
+        for (int i = 0; i < continentNames.size(); i++) {
+          continentIndex.put(continentNames.get(i), i);
+        }
+      }
+      Integer id = continentIndex.get(name);
+      if (id == null) {
+        id = continentNames.size();
+        continentNames.add(name);
+        continentIndex.put(name, id);
+      }
+      return id;
+    }
+
+    /** Looks a country up as it is at this point in the batch, or returns -1. */
+    private int find(String name) {
+      Integer added = addedIds.get(name);
+      if (added != null) {
+        return added;
+      }
+      int id = graph.idOf(name);
+      return id < 0 || isRemoved(id) ? -1 : id;
+    }
+
+    private int require(String name) {
+      int id = find(name);
+      if (id < 0) {
+        throw new CountryNotFoundException(
+            MessageCli.INVALID_COUNTRY.getMessage(Matcher.quoteReplacement(name)));
+      }
+      return id;
+    }
+
+    private boolean isRemoved(int id) {
+      return removed != null && removed[id];
+    }
+
+    Result finish() {
+      if (removed != null) {
+        return new Result(rebuild(), true, new int[0], false, new int[0], new int[0]);
+      }
+      // Without removals, every array that was copied has exactly one slot per country.
+
+      // Which countries of the old graph changed tax, and whether any got cheaper.
+      boolean taxLowered = false;
+      int[] taxChanged =
+          taxEdits.stream()
+              .mapToInt(Integer::intValue)
+              .distinct()
+              .filter(id -> taxes[id] != graph.taxes[id])
+              .toArray();
+      for (int id : taxChanged) {
+        taxLowered |= taxes[id] < graph.taxes[id];
+      }
+
+      String[] editedContinents =
+          continentNames == null ? graph.continentNames : continentNames.toArray(new String[0]);
+      if (editedBorders.isEmpty() && size == originalSize) {
+        CountryGraph edited =
+            graph.edited(
+                names,
+                continentIds,
+                editedContinents,
+                taxes,
+                graph.offsets,
+                graph.neighbours,
+                graph.reverseOffsets,
+                graph.reverseNeighbours);
+        return new Result(edited, false, taxChanged, taxLowered, new int[0], new int[0]);
+      }
+
+      int[] addedBorders = borderDifference(true);
+      int[] removedBorders = borderDifference(false);
+
+      // The borders into a country change exactly where borders out of it were added or removed.
+      TreeMap<Integer, List<Integer>> editedReverse = new TreeMap<>();
+      for (int i = 0; i < removedBorders.length; i += 2) {
+        reverse(editedReverse, removedBorders[i + 1]).remove(Integer.valueOf(removedBorders[i]));
+      }
+      for (int i = 0; i < addedBorders.length; i += 2) {
+        reverse(editedReverse, addedBorders[i + 1]).add(addedBorders[i]);
+      }
+
+      int[][] forward = relayout(graph.offsets, graph.neighbours, size, editedBorders);
+      int[][] backward =
+          relayout(graph.reverseOffsets, graph.reverseNeighbours, size, editedReverse);
+      CountryGraph edited =
+          graph.edited(
+              names,
+              continentIds,
+              editedContinents,
+              taxes,
+              forward[0],
+              forward[1],
+              backward[0],
+              backward[1]);
+      return new Result(edited, false, taxChanged, taxLowered, addedBorders, removedBorders);
+    }
+
+    private List<Integer> reverse(TreeMap<Integer, List<Integer>> editedReverse, int country) {
+      return editedReverse.computeIfAbsent(
+          country,
+          id -> {
+            List<Integer> borders = new ArrayList<>();
+            if (id < originalSize) {
+              for (int i = graph.reverseOffsets[id]; i < graph.reverseOffsets[id + 1]; i++) {
+                borders.add(graph.reverseNeighbours[i]);
+              }
+            }
+            return borders;
+          });
+    }
+
+    /**
+     * Lays out lists of neighbours in compressed sparse row form again, with some of them changed.
+     *
+     * <p>The lists that did not change are copied over in runs, one array copy per run, so the cost
+     * is little more than copying the arrays.
+     *
+     * @param offsets the old offsets
+     * @param neighbours the old neighbours
+     * @param size the number of countries after the edits
+     * @param edited the new list of every country whose list changed; countries added by the
+     *     batch that are not in it get an empty list
+     * @return the new offsets and the new neighbours
+     */
+    private int[][] relayout(
+        int[] offsets, int[] neighbours, int size, TreeMap<Integer, List<Integer>> edited) {
+      int[] editedIds = new int[edited.size()];
+      int[] editedDegrees = new int[edited.size()];
+      int count = 0;
+      for (Map.Entry<Integer, List<Integer>> entry : edited.entrySet()) {
+        editedIds[count] = entry.getKey();
+        editedDegrees[count++] = entry.getValue().size();
+      }
+
+      int[] newOffsets = new int[size + 1];
+      int next = 0;
+      for (int id = 0; id < size; id++) {
+        int degree;
+        if (next < count && editedIds[next] == id) {
+          degree = editedDegrees[next++];
+        } else {
+          degree = id < originalSize ? offsets[id + 1] - offsets[id] : 0;
+        }
+        newOffsets[id + 1] = newOffsets[id] + degree;
+      }
+
+      int[] newNeighbours = new int[newOffsets[size]];
+      int runStart = 0;
+      for (int i = 0; i <= count; i++) {
+        int runEnd = i < count ? editedIds[i] : size;
+        int copyEnd = Math.min(runEnd, originalSize);
+        if (runStart < copyEnd) {
+          System.arraycopy(
+              neighbours,
+              offsets[runStart],
+              newNeighbours,
+              newOffsets[runStart],
+              offsets[copyEnd] - offsets[runStart]);
+        }
+        if (i < count) {
+          List<Integer> list = edited.get(runEnd);
+          for (int j = 0; j < list.size(); j++) {
+            newNeighbours[newOffsets[runEnd] + j] = list.get(j);
+          }
+          runStart = runEnd + 1;
+        }
+      }
+      return new int[][] {newOffsets, newNeighbours};
+    }
+
+    /**
+     * Compares each edited country's borders with its borders in the old graph. A border that is
+     * in both but in a different place among the borders that were kept, because it was removed
+     * and added again, counts as both removed and added, since a search may now follow it in a
+     * different order. So does a border the old graph listed more than once.
+     *
+     * @param added true for the borders that are new, false for the ones that are gone
+     * @return the borders, as (from, to) pairs one after the other
+     */
+    private int[] borderDifference(boolean added) {
+      List<Integer> pairs = new ArrayList<>();
+      for (Map.Entry<Integer, List<Integer>> entry : editedBorders.entrySet()) {
+        int country = entry.getKey();
+        List<Integer> before = new ArrayList<>();
+        if (country < originalSize) {
+          for (int i = graph.offsets[country]; i < graph.offsets[country + 1]; i++) {
+            before.add(graph.neighbours[i]);
+          }
+        }
+        List<Integer> after = entry.getValue();
+        Map<Integer, Integer> beforeCounts = counts(before);
+        Map<Integer, Integer> afterCounts = counts(after);
+
+        Set<Integer> moved = new HashSet<>();
+        for (Map.Entry<Integer, Integer> count : beforeCounts.entrySet()) {
+          Integer afterCount = afterCounts.get(count.getKey());
+          if (afterCount != null && !afterCount.equals(count.getValue())) {
+            moved.add(count.getKey());
+          }
+        }
+        List<Integer> keptBefore = new ArrayList<>(before);
+        keptBefore.removeIf(id -> !afterCounts.containsKey(id) || moved.contains(id));
+        List<Integer> keptAfter = new ArrayList<>(after);
+        keptAfter.removeIf(id -> !beforeCounts.containsKey(id) || moved.contains(id));
+        for (int i = 0; i < keptAfter.size(); i++) {
+          if (!keptAfter.get(i).equals(keptBefore.get(i))) {
+            moved.add(keptAfter.get(i));
+          }
+        }
+
+        Map<Integer, Integer> otherCounts = added ? beforeCounts : afterCounts;
+        for (int neighbour : added ? after : before) {
+          if (!otherCounts.containsKey(neighbour) || moved.contains(neighbour)) {
+            pairs.add(country);
+            pairs.add(neighbour);
+          }
+        }
+      }
+      return pairs.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static Map<Integer, Integer> counts(List<Integer> borders) {
+      Map<Integer, Integer> counts = new HashMap<>();
+      for (int neighbour : borders) {
+        counts.merge(neighbour, 1, Integer::sum);
+      }
+      return counts;
+    }
+
+    /** Builds the graph from scratch without the removed countries, which renumbers the rest. */
+    private CountryGraph rebuild() {
+      GraphBuilder builder = new GraphBuilder();
+      String[] continents =
+          continentNames == null ? graph.continentNames : continentNames.toArray(new String[0]);
+      int[] newIds = new int[size];
+      for (int id = 0; id < size; id++) {
+        if (!removed[id]) {
+          newIds[id] = builder.addCountry(names[id], continents[continentIds[id]], taxes[id]);
+        }
+      }
+      for (int id = 0; id < size; id++) {
+        if (removed[id]) {
+          continue;
+        }
+        List<Integer> borders = editedBorders.get(id);
+        if (borders != null) {
+          for (int neighbour : borders) {
+            addBorder(builder, newIds, id, neighbour);
+          }
+        } else if (id < originalSize) {
+          for (int i = graph.offsets[id]; i < graph.offsets[id + 1]; i++) {
+            addBorder(builder, newIds, id, graph.neighbours[i]);
+          }
+        }
+      }
+      return builder.build();
+    }
+
+    private void addBorder(GraphBuilder builder, int[] newIds, int country, int neighbour) {
+      if (!removed[neighbour]) {
+        builder.addBorder(newIds[country], newIds[neighbour]);
+      }
+    }
+  }
+}
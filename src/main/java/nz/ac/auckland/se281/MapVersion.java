@@ -0,0 +1,263 @@
+package nz.ac.auckland.se281;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The version of an edited map that a {@link MapQueries} answers from, and which countries each
+ * edit changed.
+ *
+ * <p>Cached routes are tagged with the version they were found on. Instead of going through the
+ * whole cache on every edit, a route from an earlier version is checked the next time it is asked
+ * for: it still holds unless a country on it changed after it was cached, or an edit since then
+ * could have made some other route shorter or cheaper.
+ *
+ * <p>An added border from u to v can only make a fewest-borders route from s to t shorter, or as
+ * short and found first, if the borders from s to u, plus one, plus those from v to t are no more
+ * than the route has. So for the last few borders added, the borders to u from every country and
+ * from v to every country are counted when they are added, and such routes are checked against
+ * them. Any other added border, and any added border for a cheapest route, drops every route
+ * cached before it.
+ *
+ * <p>The array of per-country versions is shared by consecutive versions and written only by
+ * {@link MapEngine#update}, before the new version is published. A query on an older version may
+ * see marks from newer edits, which can only make it drop a route that was still fine.
+ */
+final class MapVersion implements RouteCache.Validity {
+  // Most added borders whose distances are kept, counting those of every version. Each takes two
+  // ints per country.
+  private static final int TRACKED_BORDERS = 8;
+  private static final int UNREACHABLE = Integer.MAX_VALUE;
+  private static final AddedBorder[] NONE = new AddedBorder[0];
+
+  private final CountryGraph graph;
+  private final int number;
+
+  // changedIn[country] is the last version that changed the country's tax or removed one of its
+  // borders.
+  private final int[] changedIn;
+
+  // The borders added since bordersAddedIn whose distances are kept, oldest first.
+  private final AddedBorder[] trackedBorders;
+
+  // The last version, up to this one, that added a border whose distances are not kept, lowered a
+  // tax or renumbered the map.
+  private final int bordersAddedIn;
+  private final int taxLoweredIn;
+  private final int renumberedIn;
+
+  /**
+   * Creates the first version of a map.
+   *
+   * @param graph the map as loaded
+   */
+  MapVersion(CountryGraph graph) {
+    this(graph, 0, new int[graph.size()], NONE, 0, 0, 0);
+  }
+
+  private MapVersion(
+      CountryGraph graph,
+      int number,
+      int[] changedIn,
+      AddedBorder[] trackedBorders,
+      int bordersAddedIn,
+      int taxLoweredIn,
+      int renumberedIn) {
+    this.graph = graph;
+    this.number = number;
+    this.changedIn = changedIn;
+    this.trackedBorders = trackedBorders;
+    this.bordersAddedIn = bordersAddedIn;
+    this.taxLoweredIn = taxLoweredIn;
+    this.renumberedIn = renumberedIn;
+  }
+
+  /**
+   * Returns the version number, which goes up by one with every update.
+   *
+   * @return the version number
+   */
+  int number() {
+    return number;
+  }
+
+  /**
+   * Records an update and returns the version after it.
+   *
+   * @param result what the update changed
+   * @return the next version
+   */
+  MapVersion next(MapUpdate.Result result) {
+    if (result.renumbered) {
+      return replaced(result.graph);
+    }
+
+    int next = number + 1;
+    CountryGraph edited = result.graph;
+    int[] changed =
+        edited.size() == changedIn.length ? changedIn : Arrays.copyOf(changedIn, edited.size());
+    for (int country : result.taxChanged) {
+      changed[country] = next;
+    }
+    for (int country : result.removedBorders) {
+      changed[country] = next;
+    }
+
+    AddedBorder[] tracked = trackedBorders;
+    int untrackedIn = bordersAddedIn;
+    int added = result.addedBorders.length / 2;
+    if (added > TRACKED_BORDERS) {
+      tracked = NONE;
+      untrackedIn = next;
+    } else if (added > 0) {
+      // The oldest borders make room for the new ones, and routes from before them are dropped.
+      int kept = Math.min(tracked.length, TRACKED_BORDERS - added);
+      int dropped = tracked.length - kept;
+      if (dropped > 0) {
+        untrackedIn = Math.max(untrackedIn, tracked[dropped - 1].version);
+      }
+      tracked = Arrays.copyOfRange(tracked, dropped, dropped + kept + added);
+      int[] queue = new int[edited.size()];
+      for (int i = 0; i < added; i++) {
+        int from = result.addedBorders[2 * i];
+        int to = result.addedBorders[2 * i + 1];
+        tracked[kept + i] =
+            new AddedBorder(
+                next,
+                countBorders(edited, from, true, queue),
+                countBorders(edited, to, false, queue));
+      }
+    }
+    return new MapVersion(
+        edited,
+        next,
+        changed,
+        tracked,
+        untrackedIn,
+        result.taxLowered ? next : taxLoweredIn,
+        renumberedIn);
+  }
+
+  /**
+   * Returns the version after the whole map was replaced, e.g. reloaded from its files.
+   *
+   * @param graph the new map
+   * @return the next version, under which no route cached before it holds
+   */
+  MapVersion replaced(CountryGraph graph) {
+    // Every route cached so far is keyed on the old IDs, so the counts start again.
+    int next = number + 1;
+    return new MapVersion(graph, next, new int[graph.size()], NONE, next, next, next);
+  }
+
+  /**
+   * Checks whether a route cached for an earlier version is still the answer in this one.
+   *
+   * <p>The start country is skipped, since its tax is never paid and any removed border of it
+   * that the route used also marks the next country. A cheapest route that is kept is still a
+   * cheapest route, though a fresh search could pick a different one with the same tax.
+   */
+  @Override
+  public boolean holds(long key, Route route, int version) {
+    if (version < renumberedIn || version < bordersAddedIn) {
+      return false;
+    }
+    RouteMode mode = RouteCache.mode(key);
+    if (mode == RouteMode.CHEAPEST || mode == RouteMode.CHEAPEST_A_STAR) {
+      if (version < taxLoweredIn
+          || (trackedBorders.length > 0
+              && version < trackedBorders[trackedBorders.length - 1].version)) {
+        return false;
+      }
+    } else if (shortenedByAddedBorder(key, route, version)) {
+      return false;
+    }
+    if (route.isEmpty()) {
+      // Removing borders and changing taxes never connects two countries.
+      return true;
+    }
+
+    List<String> countries = route.getCountries();
+    for (int i = 1; i < countries.size(); i++) {
+      if (changedIn[graph.idOf(countries.get(i))] > version) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Checks whether a border added after a fewest-borders route was cached gives a route that is
+   * as short, or connects the countries of an empty route.
+   *
+   * @param key the cache key of the route
+   * @param route the cached route
+   * @param version the version of the map the route was found on
+   * @return true if some added border could change the route
+   */
+  private boolean shortenedByAddedBorder(long key, Route route, int version) {
+    int start = RouteCache.start(key);
+    int destination = RouteCache.destination(key);
+    long borders = route.isEmpty() ? Long.MAX_VALUE : route.getCountries().size() - 1;
+    for (int i = trackedBorders.length - 1; i >= 0 && trackedBorders[i].version > version; i--) {
+      AddedBorder added = trackedBorders[i];
+      int toBorder = added.toStart[start];
+      int fromBorder = added.fromEnd[destination];
+      if (toBorder != UNREACHABLE
+          && fromBorder != UNREACHABLE
+          && (long) toBorder + 1 + fromBorder <= borders) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Counts the borders between a country and every other with a breadth-first search.
+   *
+   * @param graph the graph to search
+   * @param country the ID of the country
+   * @param backward whether to count the borders to the country rather than from it
+   * @param queue scratch space with room for every country
+   * @return the number of borders for each country, or UNREACHABLE
+   */
+  private static int[] countBorders(
+      CountryGraph graph, int country, boolean backward, int[] queue) {
+    int[] offsets = backward ? graph.reverseOffsets : graph.offsets;
+    int[] neighbours = backward ? graph.reverseNeighbours : graph.neighbours;
+    int[] borders = new int[graph.size()];
+    Arrays.fill(borders, UNREACHABLE);
+    int head = 0;
+    int tail = 0;
+    queue[tail++] = country;
+    borders[country] = 0;
+
+    while (head < tail) {
+      int current = queue[head++];
+      int next = borders[current] + 1;
+      for (int i = offsets[current]; i < offsets[current + 1]; i++) {
+        int neighbour = neighbours[i];
+        if (borders[neighbour] == UNREACHABLE) {
+          borders[neighbour] = next;
+          queue[tail++] = neighbour;
+        }
+      }
+    }
+    return borders;
+  }
+
+  /** A border added by an update, with the borders to its start and from its end. */
+  private static final class AddedBorder {
+    final int version;
+    // toStart[country] is the number of borders from the country to the start of this border.
+    final int[] toStart;
+    // fromEnd[country] is the number of borders from the end of this border to the country.
+    final int[] fromEnd;
+
+    AddedBorder(int version, int[] toStart, int[] fromEnd) {
+      this.version = version;
+      this.toStart = toStart;
+      this.fromEnd = fromEnd;
+    }
+  }
+}
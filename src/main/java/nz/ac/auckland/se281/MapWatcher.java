@@ -0,0 +1,152 @@
+package nz.ac.auckland.se281;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reloads an engine's map whenever the countries, adjacencies or aliases file changes on disk.
+ *
+ * <p>The directories holding the files are watched with a {@link WatchService} on a background
+ * thread. A job regenerating the map usually writes both files, one after the other and maybe in
+ * several writes, so the reload waits until the files have been quiet for a moment and then reads
+ * them once. {@link MapEngine#reload} parses them off to the side and swaps the new map in, so
+ * queries are never paused. How long each reload took is printed to standard error and recorded
+ * in the engine's metrics. If the new files are malformed or the reload fails in any other way,
+ * the current map is kept, the rejection is reported and counted, and the next change to the
+ * files is tried again.
+ */
+public final class MapWatcher implements AutoCloseable {
+  // How long the files must stay unchanged before they are read.
+  private static final long QUIET_MILLIS = 250;
+
+  private final MapEngine engine;
+  private final WatchService watchService;
+  private final Set<Path> watchedFiles = new HashSet<>();
+  private final Thread thread;
+  private final LongAdder rejected;
+  private volatile boolean closed;
+
+  /**
+   * Starts watching the engine's map files.
+   *
+   * @param engine the engine to reload
+   * @throws IOException if the directories cannot be watched
+   */
+  public MapWatcher(MapEngine engine) throws IOException {
+    this.engine = engine;
+    this.rejected = engine.getMetrics().counter("reload.rejected");
+
+    Path countries = Utils.countriesFile().toAbsolutePath();
+    Path adjacencies = Utils.adjacenciesFile().toAbsolutePath();
+    Path aliases = Utils.aliasesFile().toAbsolutePath();
+    watchedFiles.add(countries);
+    watchedFiles.add(adjacencies);
+    watchedFiles.add(aliases);
+
+    watchService = countries.getFileSystem().newWatchService();
+    // Files are often replaced by renaming a new one over them, which shows up as a create.
+    Set<Path> directories = new HashSet<>();
+    directories.add(countries.getParent());
+    directories.add(adjacencies.getParent());
+    if (Files.isDirectory(aliases.getParent())) {
+      // The aliases file is optional, and so is the directory it would be in.
+      directories.add(aliases.getParent());
+    }
+    for (Path directory : directories) {
+      directory.register(
+          watchService,
+          StandardWatchEventKinds.ENTRY_CREATE,
+          StandardWatchEventKinds.ENTRY_MODIFY);
+    }
+
+    thread = new Thread(this::run, "map-watcher");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /** Stops watching. A reload that has already started is finished first. */
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    watchService.close();
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void run() {
+    try {
+      while (!closed) {
+        if (takeChanges(watchService.take())) {
+          // Wait for the writer to finish: every further change restarts the quiet period.
+          WatchKey key;
+          while ((key = watchService.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+            takeChanges(key);
+          }
+          reload();
+        }
+      }
+    } catch (ClosedWatchServiceException e) {
+      // Closed; stop watching.
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Takes the events from a watch key and makes it ready for the next ones.
+   *
+   * @param key the key that was signalled
+   * @return true if one of the map files changed
+   */
+  private boolean takeChanges(WatchKey key) {
+    boolean changed = false;
+    Path directory = (Path) key.watchable();
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+        // Events were lost, so one of them may have been ours.
+        changed = true;
+      } else {
+        changed |= watchedFiles.contains(directory.resolve((Path) event.context()));
+      }
+    }
+    key.reset();
+    return changed;
+  }
+
+  private void reload() {
+    long startNanos = System.nanoTime();
+    try {
+      engine.reload();
+      System.err.printf(
+          "Reloaded the map in %d ms: %d countries%n",
+          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos),
+          engine.queries().countryCount());
+    } catch (IOException | MapFormatException e) {
+      rejected.increment();
+      System.err.println("Map files rejected, keeping the current map: " + e.getMessage());
+    } catch (RuntimeException e) {
+      // Anything else is a bug, but it must not stop the watching for good.
+      rejected.increment();
+      System.err.println("Map reload failed, keeping the current map: " + e);
+      e.printStackTrace();
+    } catch (InternalError e) {
+      // A memory-mapped file was cut short while it was being read; the change that did it will
+      // trigger another reload.
+      rejected.increment();
+      System.err.println("Map files changed while being read, keeping the current map");
+    }
+  }
+}
@@ -0,0 +1,349 @@
+package nz.ac.auckland.se281;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntFunction;
+
+/**
+ * Loads the countries and adjacencies files straight from memory-mapped bytes.
+ *
+ * <p>Both files are mapped with {@link FileChannel#map} and scanned byte by byte for commas and
+ * line breaks. Taxes are parsed from the digits in place, and neighbour names are resolved
+ * through a {@link ByteNameTable} without being decoded, so the only Strings created are one per
+ * country and one per continent.
+ *
+ * <p>Each file is split into chunks that start and end on a line break, and the chunks are parsed
+ * in parallel on a {@link ForkJoinPool}. The parsed chunks are then merged in file order, so
+ * country IDs and neighbour order are exactly the same as when the files are read on one thread.
+ * The countries file has to be merged before the adjacencies file can be parsed, because borders
+ * are resolved against the finished name table.
+ *
+ * <p>A single mapping is limited to 2 GB, so larger files are rejected.
+ */
+class MappedMapLoader {
+  // Files smaller than this per chunk are not worth splitting any further.
+  private static final int MIN_CHUNK_BYTES = 1 << 20;
+
+  private MappedMapLoader() {}
+
+  /**
+   * Loads a map from a countries file and an adjacencies file on the calling thread.
+   *
+   * @param countriesFile lines in the format "Country,Continent,Tax"
+   * @param adjacenciesFile lines of a country followed by the names of its neighbours
+   * @return the graph
+   * @throws IOException if a file cannot be read
+   * @throws MapFormatException if a line is malformed or refers to an unknown country
+   */
+  static CountryGraph load(Path countriesFile, Path adjacenciesFile) throws IOException {
+    return load(countriesFile, adjacenciesFile, null);
+  }
+
+  /**
+   * Loads a map from a countries file and an adjacencies file, parsing chunks in parallel.
+   *
+   * @param countriesFile lines in the format "Country,Continent,Tax"
+   * @param adjacenciesFile lines of a country followed by the names of its neighbours
+   * @param pool the pool to parse chunks on, or null to parse everything on the calling thread
+   * @return the graph
+   * @throws IOException if a file cannot be read
+   * @throws MapFormatException if a line is malformed or refers to an unknown country
+   */
+  static CountryGraph load(Path countriesFile, Path adjacenciesFile, ForkJoinPool pool)
+      throws IOException {
+    ByteBuffer countries = map(countriesFile);
+    ByteBuffer adjacencies = map(adjacenciesFile);
+
+    GraphBuilder builder = new GraphBuilder();
+    ByteNameTable countryNames = new ByteNameTable();
+
+    int[] countryChunks = split(countries, pool);
+    List<CountryChunk> parsedCountries =
+        parseChunks(
+            pool,
+            countryChunks.length - 1,
+            i -> parseCountries(countries, countryChunks[i], countryChunks[i + 1]));
+    for (CountryChunk chunk : parsedCountries) {
+      chunk.addTo(builder, countryNames);
+    }
+
+    int[] borderChunks = split(adjacencies, pool);
+    List<BorderChunk> parsedBorders =
+        parseChunks(
+            pool,
+            borderChunks.length - 1,
+            i -> parseBorders(adjacencies, borderChunks[i], borderChunks[i + 1], countryNames));
+    for (BorderChunk chunk : parsedBorders) {
+      chunk.addTo(builder);
+    }
+
+    return builder.build();
+  }
+
+  /**
+   * Maps a whole file into memory.
+   *
+   * @param file the file to map
+   * @return the read-only contents of the file
+   * @throws IOException if the file cannot be read
+   */
+  private static ByteBuffer map(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new MapFormatException("File too large to map: " + file);
+      }
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+  }
+
+  /**
+   * Splits a file into chunks that each start at the beginning of a line.
+   *
+   * @param buffer the contents of the file
+   * @param pool the pool the chunks will be parsed on, or null for a single chunk
+   * @return the chunk boundaries: chunk i is {@code [bounds[i], bounds[i + 1])}
+   */
+  private static int[] split(ByteBuffer buffer, ForkJoinPool pool) {
+    int size = buffer.limit();
+    int chunks = 1;
+    if (pool != null) {
+      chunks = Math.max(1, Math.min(pool.getParallelism() * 4, size / MIN_CHUNK_BYTES));
+    }
+
+    int[] bounds = new int[chunks + 1];
+    int count = 1;
+    for (int i = 1; i < chunks; i++) {
+      int boundary = lineEnd(buffer, (int) ((long) size * i / chunks) - 1, size);
+      if (boundary > bounds[count - 1] && boundary < size) {
+        bounds[count++] = boundary;
+      }
+    }
+    bounds[count++] = size;
+    return Arrays.copyOf(bounds, count);
+  }
+
+  /**
+   * Parses chunks on the pool, or on the calling thread if there is no pool.
+   *
+   * @param pool the pool to parse on, or null
+   * @param count the number of chunks
+   * @param parser parses the chunk with the given index
+   * @return the parsed chunks, in file order
+   */
+  private static <T> List<T> parseChunks(ForkJoinPool pool, int count, IntFunction<T> parser) {
+    List<T> results = new ArrayList<>(count);
+    if (pool == null || count == 1) {
+      for (int i = 0; i < count; i++) {
+        results.add(parser.apply(i));
+      }
+      return results;
+    }
+
+    List<ForkJoinTask<T>> tasks = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      int chunk = i;
+      tasks.add(pool.submit(() -> parser.apply(chunk)));
+    }
+    for (ForkJoinTask<T> task : tasks) {
+      results.add(task.join());
+    }
+    return results;
+  }
+
+  /**
+   * Parses the countries in {@code buffer[start, end)}.
+   *
+   * @param buffer the contents of the countries file
+   * @param start the index of the first byte of the first line
+   * @param end the index after the last line
+   * @return the parsed countries
+   */
+  private static CountryChunk parseCountries(ByteBuffer buffer, int start, int end) {
+    CountryChunk chunk = new CountryChunk();
+    ByteNameTable continentNames = new ByteNameTable();
+
+    int lineStart = start;
+    while (lineStart < end) {
+      int lineEnd = lineEnd(buffer, lineStart, end);
+      int contentEnd = trimLineBreak(buffer, lineStart, lineEnd);
+
+      if (contentEnd > lineStart) {
+        int firstComma = indexOf(buffer, (byte) ',', lineStart, contentEnd);
+        int secondComma = indexOf(buffer, (byte) ',', firstComma + 1, contentEnd);
+        if (firstComma == contentEnd
+            || secondComma == contentEnd
+            || indexOf(buffer, (byte) ',', secondComma + 1, contentEnd) != contentEnd) {
+          throw new MapFormatException(
+              "Malformed country line: " + decode(buffer, lineStart, contentEnd));
+        }
+
+        int continent = continentNames.get(buffer, firstComma + 1, secondComma);
+        if (continent < 0) {
+          byte[] continentName = copy(buffer, firstComma + 1, secondComma);
+          continent = chunk.continents.size();
+          chunk.continents.add(new String(continentName, StandardCharsets.UTF_8));
+          continentNames.put(continentName, continent);
+        }
+
+        int tax = parseTax(buffer, secondComma + 1, contentEnd);
+        chunk.add(copy(buffer, lineStart, firstComma), continent, tax);
+      }
+      lineStart = lineEnd;
+    }
+    return chunk;
+  }
+
+  /**
+   * Parses the borders in {@code buffer[start, end)}.
+   *
+   * @param buffer the contents of the adjacencies file
+   * @param start the index of the first byte of the first line
+   * @param end the index after the last line
+   * @param countryNames the encoded name of every country, which is only read
+   * @return the parsed borders
+   */
+  private static BorderChunk parseBorders(
+      ByteBuffer buffer, int start, int end, ByteNameTable countryNames) {
+    BorderChunk chunk = new BorderChunk();
+
+    int lineStart = start;
+    while (lineStart < end) {
+      int lineEnd = lineEnd(buffer, lineStart, end);
+      int contentEnd = trimLineBreak(buffer, lineStart, lineEnd);
+
+      int country = -1;
+      int fieldStart = lineStart;
+      while (fieldStart < contentEnd) {
+        int fieldEnd = indexOf(buffer, (byte) ',', fieldStart, contentEnd);
+        if (fieldEnd > fieldStart) {
+          int id = countryNames.get(buffer, fieldStart, fieldEnd);
+          if (id < 0) {
+            throw new MapFormatException(
+                "Unknown country: " + decode(buffer, fieldStart, fieldEnd));
+          }
+          if (country < 0) {
+            country = id;
+          } else {
+            chunk.add(country, id);
+          }
+        }
+        fieldStart = fieldEnd + 1;
+      }
+      lineStart = lineEnd;
+    }
+    return chunk;
+  }
+
+  private static int lineEnd(ByteBuffer buffer, int start, int end) {
+    int newline = indexOf(buffer, (byte) '\n', Math.max(start, 0), end);
+    return newline == end ? end : newline + 1;
+  }
+
+  private static int trimLineBreak(ByteBuffer buffer, int start, int end) {
+    while (end > start && (buffer.get(end - 1) == '\n' || buffer.get(end - 1) == '\r')) {
+      end--;
+    }
+    return end;
+  }
+
+  private static int indexOf(ByteBuffer buffer, byte target, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (buffer.get(i) == target) {
+        return i;
+      }
+    }
+    return end;
+  }
+
+  private static int parseTax(ByteBuffer buffer, int start, int end) {
+    boolean negative = start < end && buffer.get(start) == '-';
+    int i = negative ? start + 1 : start;
+    if (i == end) {
+      throw new MapFormatException("Missing tax: " + decode(buffer, start, end));
+    }
+    int tax = 0;
+    for (; i < end; i++) {
+      int digit = buffer.get(i) - '0';
+      if (digit < 0 || digit > 9 || tax > (Integer.MAX_VALUE - digit) / 10) {
+        throw new MapFormatException("Malformed tax: " + decode(buffer, start, end));
+      }
+      tax = tax * 10 + digit;
+    }
+    return negative ? -tax : tax;
+  }
+
+  private static byte[] copy(ByteBuffer buffer, int start, int end) {
+    byte[] bytes = new byte[end - start];
+    buffer.get(start, bytes);
+    return bytes;
+  }
+
+  private static String decode(ByteBuffer buffer, int start, int end) {
+    return new String(copy(buffer, start, end), StandardCharsets.UTF_8);
+  }
+
+  /** The countries parsed from one chunk, with continents numbered locally to the chunk. */
+  private static class CountryChunk {
+    private final List<String> continents = new ArrayList<>();
+    private byte[][] names = new byte[64][];
+    private int[] localContinents = new int[64];
+    private int[] taxes = new int[64];
+    private int count;
+
+    private void add(byte[] name, int continent, int tax) {
+      if (count == names.length) {
+        names = Arrays.copyOf(names, count * 2);
+        localContinents = Arrays.copyOf(localContinents, count * 2);
+        taxes = Arrays.copyOf(taxes, count * 2);
+      }
+      names[count] = name;
+      localContinents[count] = continent;
+      taxes[count] = tax;
+      count++;
+    }
+
+    /** Adds the countries to the builder, translating the local continent numbers. */
+    private void addTo(GraphBuilder builder, ByteNameTable countryNames) {
+      int[] continentIds = new int[continents.size()];
+      for (int i = 0; i < continentIds.length; i++) {
+        continentIds[i] = builder.addContinent(continents.get(i));
+      }
+      for (int i = 0; i < count; i++) {
+        String name = new String(names[i], StandardCharsets.UTF_8);
+        int id = builder.addCountry(name, continentIds[localContinents[i]], taxes[i]);
+        countryNames.put(names[i], id);
+      }
+    }
+  }
+
+  /** The borders parsed from one chunk, in file order. */
+  private static class BorderChunk {
+    private int[] from = new int[256];
+    private int[] to = new int[256];
+    private int count;
+
+    private void add(int country, int neighbour) {
+      if (count == from.length) {
+        from = Arrays.copyOf(from, count * 2);
+        to = Arrays.copyOf(to, count * 2);
+      }
+      from[count] = country;
+      to[count] = neighbour;
+      count++;
+    }
+
+    private void addTo(GraphBuilder builder) {
+      builder.addBorders(from, to, count);
+    }
+  }
+}
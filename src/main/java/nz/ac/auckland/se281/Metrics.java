@@ -0,0 +1,136 @@
+package nz.ac.auckland.se281;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Named counters, gauges and histograms describing what a {@link MapEngine} has been doing.
+ *
+ * <p>Metrics are created on first use and live as long as the registry. Looking one up by name
+ * goes through a map, so code on a hot path looks its metrics up once and keeps the reference.
+ * Durations are recorded in nanoseconds, and their names end in {@code _ns}.
+ */
+class Metrics {
+  private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+  private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+  private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+  private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+  /**
+   * Returns the counter with the given name, creating it if needed.
+   *
+   * @param name the name of the counter
+   * @return the counter
+   */
+  LongAdder counter(String name) {
+    return counters.computeIfAbsent(name, key -> new LongAdder());
+  }
+
+  /**
+   * Registers a value that is read when the metrics are shown, replacing any gauge with the name.
+   *
+   * @param name the name of the gauge
+   * @param value reads the current value
+   */
+  void gauge(String name, LongSupplier value) {
+    gauges.put(name, value);
+  }
+
+  /**
+   * Returns the histogram with the given name, creating it if needed.
+   *
+   * @param name the name of the histogram
+   * @return the histogram
+   */
+  Histogram histogram(String name) {
+    return histograms.computeIfAbsent(name, key -> new Histogram());
+  }
+
+  /**
+   * Formats every metric for people to read, one per line and sorted by name.
+   *
+   * @return the metrics
+   */
+  String format() {
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<String, Long> entry : values().entrySet()) {
+      sb.append(entry.getKey()).append(" = ").append(entry.getValue());
+      sb.append(System.lineSeparator());
+    }
+    for (Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet()) {
+      Histogram histogram = entry.getValue();
+      sb.append(entry.getKey())
+          .append(": count=")
+          .append(histogram.count())
+          .append(String.format(Locale.ROOT, " mean=%.1f", histogram.mean()));
+      for (double percentile : PERCENTILES) {
+        sb.append(" p").append(label(percentile).replace('_', '.')).append('=');
+        sb.append(histogram.percentile(percentile));
+      }
+      sb.append(" max=").append(histogram.max()).append(System.lineSeparator());
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Formats every metric as a JSON object, for other programs to read.
+   *
+   * <p>Counters and gauges are numbers. Histograms are objects with their count, mean, max and
+   * percentiles, where "p99_9" is the 99.9th percentile.
+   *
+   * @return the metrics
+   */
+  String toJson() {
+    StringBuilder sb = new StringBuilder("{");
+    for (Map.Entry<String, Long> entry : values().entrySet()) {
+      appendName(sb, entry.getKey()).append(entry.getValue());
+    }
+    for (Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet()) {
+      Histogram histogram = entry.getValue();
+      appendName(sb, entry.getKey())
+          .append("{\"count\":")
+          .append(histogram.count())
+          .append(",\"mean\":")
+          .append(String.format(Locale.ROOT, "%.1f", histogram.mean()))
+          .append(",\"max\":")
+          .append(histogram.max());
+      for (double percentile : PERCENTILES) {
+        sb.append(",\"p").append(label(percentile)).append("\":");
+        sb.append(histogram.percentile(percentile));
+      }
+      sb.append('}');
+    }
+    return sb.append('}').toString();
+  }
+
+  /**
+   * Reads every counter and gauge.
+   *
+   * @return the current values, sorted by name
+   */
+  private Map<String, Long> values() {
+    Map<String, Long> values = new TreeMap<>();
+    counters.forEach((name, counter) -> values.put(name, counter.sum()));
+    gauges.forEach((name, gauge) -> values.put(name, gauge.getAsLong()));
+    return values;
+  }
+
+  private static StringBuilder appendName(StringBuilder sb, String name) {
+    // Names are plain identifiers chosen in the code, so they never need escaping.
+    if (sb.length() > 1) {
+      sb.append(',');
+    }
+    return sb.append('"').append(name).append("\":");
+  }
+
+  private static String label(double percentile) {
+    return percentile == Math.rint(percentile)
+        ? Integer.toString((int) percentile)
+        : Double.toString(percentile).replace('.', '_');
+  }
+}
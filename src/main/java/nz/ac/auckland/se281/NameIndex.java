@@ -0,0 +1,205 @@
+package nz.ac.auckland.se281;
+
+import java.util.Map;
+
+/**
+ * Resolves country names as typed by a user to country IDs, without building any strings.
+ *
+ * <p>Input is read the way the prompt has always read it: leading, trailing and repeated
+ * whitespace is ignored, and the first letter of each word may be in either case. The other
+ * letters must match, so "irkuTsK" is not Irkutsk. Every name is stored in that normal form in an
+ * open-addressing table. A lookup hashes the input while normalising it on the fly and then
+ * compares it with the names in its slots the same way, so nothing is allocated per query.
+ *
+ * <p>Aliases are extra names for a country, e.g. "Nz" for New Zealand, and are matched the same
+ * way. A real country name always wins over an alias that reads the same.
+ */
+final class NameIndex {
+  private static final int FNV_OFFSET = 0x811c9dc5;
+  private static final int FNV_PRIME = 0x01000193;
+
+  // The names the index was built from, so that edits that keep them can keep the index too.
+  private final String[] names;
+  private final Map<String, String> aliases;
+
+  private final String[] keys;
+  private final int[] hashes;
+  private final int[] ids;
+
+  // Built the first time a name is not found, then kept while the names stay the same.
+  private volatile NameSuggester suggester;
+
+  /**
+   * Builds the index of a map's country names.
+   *
+   * @param names the country names, indexed by ID
+   * @param aliases the country each alias stands for; aliases of countries that are not on the
+   *     map are left out
+   */
+  NameIndex(String[] names, Map<String, String> aliases) {
+    this.names = names;
+    this.aliases = aliases;
+
+    int capacity = Integer.highestOneBit(Math.max(8, (names.length + aliases.size()) * 2)) * 2;
+    keys = new String[capacity];
+    hashes = new int[capacity];
+    ids = new int[capacity];
+
+    for (int id = 0; id < names.length; id++) {
+      insert(normalise(names[id]), id);
+    }
+    for (Map.Entry<String, String> alias : aliases.entrySet()) {
+      int id = find(alias.getValue());
+      if (id >= 0) {
+        insert(normalise(alias.getKey()), id);
+      }
+    }
+  }
+
+  /**
+   * Returns the index for another version of the map, with the same aliases.
+   *
+   * @param names the country names of the other version
+   * @return this index if the names are the same array, otherwise a new index
+   */
+  NameIndex forNames(String[] names) {
+    return names == this.names ? this : new NameIndex(names, aliases);
+  }
+
+  /**
+   * Looks up a country by a name as typed.
+   *
+   * @param input the name as typed
+   * @return the ID of the country, or -1 if no country or alias has that name
+   */
+  int find(CharSequence input) {
+    int hash = hash(input);
+    int mask = keys.length - 1;
+    for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+      String key = keys[slot];
+      if (key == null) {
+        return -1;
+      }
+      if (hashes[slot] == hash && matches(key, input)) {
+        return ids[slot];
+      }
+    }
+  }
+
+  /**
+   * Returns the suggester for names that were not found, building it if this is the first time.
+   *
+   * @return the suggester over the country names
+   */
+  NameSuggester suggester() {
+    NameSuggester built = suggester;
+    if (built == null) {
+      synchronized (this) {
+        built = suggester;
+        if (built == null) {
+          built = new NameSuggester(names);
+          suggester = built;
+        }
+      }
+    }
+    return built;
+  }
+
+  /** Adds a normalised name unless it is already there, which keeps the first ID given for it. */
+  private void insert(String key, int id) {
+    int hash = hash(key);
+    int mask = keys.length - 1;
+    int slot = hash & mask;
+    while (keys[slot] != null) {
+      if (hashes[slot] == hash && keys[slot].equals(key)) {
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+    keys[slot] = key;
+    hashes[slot] = hash;
+    ids[slot] = id;
+  }
+
+  /**
+   * Puts a name in the form it is stored in, the same as {@link
+   * Utils#capitalizeFirstLetterOfEachWord}.
+   */
+  private static String normalise(String name) {
+    StringBuilder key = new StringBuilder(name.length());
+    boolean wordStart = true;
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (isSpace(c)) {
+        wordStart = true;
+        continue;
+      }
+      if (wordStart) {
+        if (key.length() > 0) {
+          key.append(' ');
+        }
+        c = Character.toUpperCase(c);
+        wordStart = false;
+      }
+      key.append(c);
+    }
+    return key.toString();
+  }
+
+  /** Hashes the normal form of the input, without building it. */
+  private static int hash(CharSequence input) {
+    int hash = FNV_OFFSET;
+    boolean wordStart = true;
+    boolean first = true;
+    for (int i = 0; i < input.length(); i++) {
+      char c = input.charAt(i);
+      if (isSpace(c)) {
+        wordStart = true;
+        continue;
+      }
+      if (wordStart) {
+        if (!first) {
+          hash = (hash ^ ' ') * FNV_PRIME;
+        }
+        c = Character.toUpperCase(c);
+        wordStart = false;
+        first = false;
+      }
+      hash = (hash ^ c) * FNV_PRIME;
+    }
+    return hash;
+  }
+
+  /** Compares a stored name with the normal form of the input, without building it. */
+  private static boolean matches(String key, CharSequence input) {
+    int k = 0;
+    boolean wordStart = true;
+    for (int i = 0; i < input.length(); i++) {
+      char c = input.charAt(i);
+      if (isSpace(c)) {
+        wordStart = true;
+        continue;
+      }
+      if (wordStart) {
+        if (k > 0) {
+          if (k == key.length() || key.charAt(k) != ' ') {
+            return false;
+          }
+          k++;
+        }
+        c = Character.toUpperCase(c);
+        wordStart = false;
+      }
+      if (k == key.length() || key.charAt(k) != c) {
+        return false;
+      }
+      k++;
+    }
+    return k == key.length();
+  }
+
+  /** Whether a character separates words, which are the characters {@code \s} matches. */
+  private static boolean isSpace(char c) {
+    return c == ' ' || (c >= '\t' && c <= '\r');
+  }
+}
@@ -0,0 +1,425 @@
+package nz.ac.auckland.se281;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Suggests the country names closest to a name that was not found, for "did you mean" hints.
+ *
+ * <p>Names are compared in lower case with their spacing collapsed. Every name is split into
+ * overlapping trigrams, padded at both ends, and the index lists the names that contain each
+ * trigram. A name only a few edits away from the input must contain some of the input's rarest
+ * trigrams, so a query measures the edit distance to just the names listed under those, which
+ * for real place names are a handful. Trigrams found in a large part of the map, like the "cou"
+ * of "Country 123", would make a query check most of the map, so a query gives up on allowing
+ * more edits once it would check more than a few thousand names.
+ *
+ * <p>The suggester is immutable once built. Each thread queries with its own scratch space.
+ */
+final class NameSuggester {
+  // Most names a query checks, so that an input made of common trigrams does not check most of
+  // the map.
+  private static final int POSTING_BUDGET = 4096;
+  // Shortest input that gets suggestions.
+  private static final int MIN_LENGTH = 3;
+  // Marks the ends of a name, so that its first and last letters get trigrams of their own.
+  private static final char PAD = '\0';
+
+  private final String[] names;
+  // Every name in lower case with its spacing collapsed, one after the other, so that checking a
+  // name reads one short run of memory. Name ID i is folded[foldedOffsets[i], [i + 1]).
+  private final char[] folded;
+  private final int[] foldedOffsets;
+
+  // Open-addressing table from a trigram, packed into a long, to its index in the postings.
+  private final long[] gramKeys;
+  private final int[] gramIndices;
+
+  // The IDs of the names containing trigram g are postings[postingOffsets[g], [g + 1]).
+  private final int[] postingOffsets;
+  private final int[] postings;
+
+  private final ThreadLocal<Scratch> scratch;
+
+  /**
+   * Builds the trigram index of a map's country names.
+   *
+   * @param names the country names, indexed by ID
+   */
+  NameSuggester(String[] names) {
+    this.names = names;
+
+    // The first pass finds the distinct trigrams and counts the names containing each, the
+    // second fills in the postings, which come out sorted by ID.
+    int capacity = Integer.highestOneBit(Math.max(16, names.length * 4)) * 2;
+    long[] keys = new long[capacity];
+    int[] indices = new int[capacity];
+    Arrays.fill(indices, -1);
+    int[] counts = new int[16];
+    int gramCount = 0;
+
+    Scratch buffers = new Scratch(0);
+    foldedOffsets = new int[names.length + 1];
+    for (int id = 0; id < names.length; id++) {
+      int grams = buffers.grams(names[id]);
+      foldedOffsets[id + 1] = foldedOffsets[id] + buffers.inputLength;
+      for (int i = 0; i < grams; i++) {
+        int slot = slot(keys, indices, buffers.grams[i]);
+        if (indices[slot] < 0) {
+          if (gramCount * 2 >= capacity) {
+            capacity *= 2;
+            long[] oldKeys = keys;
+            int[] oldIndices = indices;
+            keys = new long[capacity];
+            indices = new int[capacity];
+            Arrays.fill(indices, -1);
+            for (int j = 0; j < oldKeys.length; j++) {
+              if (oldIndices[j] >= 0) {
+                int moved = slot(keys, indices, oldKeys[j]);
+                keys[moved] = oldKeys[j];
+                indices[moved] = oldIndices[j];
+              }
+            }
+            slot = slot(keys, indices, buffers.grams[i]);
+          }
+          if (gramCount == counts.length) {
+            counts = Arrays.copyOf(counts, gramCount * 2);
+          }
+          keys[slot] = buffers.grams[i];
+          indices[slot] = gramCount++;
+        }
+        counts[indices[slot]]++;
+      }
+    }
+
+    postingOffsets = new int[gramCount + 1];
+    for (int g = 0; g < gramCount; g++) {
+      postingOffsets[g + 1] = postingOffsets[g] + counts[g];
+    }
+    postings = new int[postingOffsets[gramCount]];
+    int[] next = Arrays.copyOf(postingOffsets, gramCount);
+    folded = new char[foldedOffsets[names.length]];
+    for (int id = 0; id < names.length; id++) {
+      int grams = buffers.grams(names[id]);
+      System.arraycopy(buffers.input, 0, folded, foldedOffsets[id], buffers.inputLength);
+      for (int i = 0; i < grams; i++) {
+        postings[next[indices[slot(keys, indices, buffers.grams[i])]]++] = id;
+      }
+    }
+
+    gramKeys = keys;
+    gramIndices = indices;
+    scratch = ThreadLocal.withInitial(() -> new Scratch(names.length));
+  }
+
+  /**
+   * Returns the names closest to a name that was not found.
+   *
+   * <p>The names suggested are those the fewest edits away from the input, in alphabetical order.
+   * An edit adds, removes or changes a letter, or swaps two neighbouring letters. A name is only
+   * suggested if it is within a few edits: one for inputs of up to seven letters and one more for
+   * every four letters after that. Inputs shorter than three letters get no suggestions, since
+   * nearly every short name would be as close as any other.
+   *
+   * @param input the name as typed
+   * @param limit the most names to return
+   * @return the suggested names, which may be empty
+   */
+  List<String> suggest(CharSequence input, int limit) {
+    Scratch s = scratch.get();
+    int grams = s.grams(input);
+    int length = s.inputLength;
+    if (length < MIN_LENGTH || limit <= 0) {
+      return List.of();
+    }
+
+    // Look up how many names contain each trigram, and put the rarest first. Trigrams that no
+    // name contains, which typos tend to make, come first of all.
+    for (int i = 0; i < grams; i++) {
+      int slot = slot(gramKeys, gramIndices, s.grams[i]);
+      s.gramOrder[i] = gramIndices[slot];
+    }
+    for (int i = 1; i < grams; i++) {
+      int gram = s.gramOrder[i];
+      int size = postingCount(gram);
+      int j = i;
+      while (j > 0 && postingCount(s.gramOrder[j - 1]) > size) {
+        s.gramOrder[j] = s.gramOrder[j - 1];
+        j--;
+      }
+      s.gramOrder[j] = gram;
+    }
+
+    // Each edit changes at most four trigrams (a swap of two letters changes four), so a name
+    // within d edits still has all but 4d of the input's trigrams, and so contains at least one
+    // of any 4d + 1 of them. Checking the names that contain one of the 4d + 1 rarest therefore
+    // finds every name within d edits; a short input with fewer trigrams checks all of them.
+    // Start with exact matches and allow one more edit per round until some name is found, or
+    // until a round would check too many names.
+    int maxDistance = 1 + Math.max(0, length - 4) / 4;
+    int found = 0;
+    for (int distance = 0; distance <= maxDistance && found == 0; distance++) {
+      int end = Math.min(grams, 4 * distance + 1);
+      int checked = 0;
+      for (int i = 0; i < end; i++) {
+        checked += postingCount(s.gramOrder[i]);
+      }
+      if (checked > POSTING_BUDGET) {
+        break;
+      }
+
+      // Every name closer than this round's bound would have been found by an earlier round, so
+      // all the names found are the same distance away. Names are checked again in each round,
+      // against the round's bound, which rules most of them out before the edit distance is
+      // measured.
+      int generation = s.nextGeneration();
+      for (int i = 0; i < end; i++) {
+        int gram = s.gramOrder[i];
+        if (gram < 0) {
+          continue;
+        }
+        for (int p = postingOffsets[gram]; p < postingOffsets[gram + 1]; p++) {
+          int id = postings[p];
+          if (s.stamps[id] == generation) {
+            continue;
+          }
+          s.stamps[id] = generation;
+          int start = foldedOffsets[id];
+          int nameLength = foldedOffsets[id + 1] - start;
+          if (Math.abs(nameLength - length) <= distance
+              && s.distance(folded, start, nameLength, distance) <= distance) {
+            found = s.offer(names, id, found, limit);
+          }
+        }
+      }
+    }
+
+    List<String> suggestions = new ArrayList<>(found);
+    for (int f = 0; f < found; f++) {
+      suggestions.add(names[s.found[f]]);
+    }
+    return suggestions;
+  }
+
+  private int postingCount(int gram) {
+    return gram < 0 ? 0 : postingOffsets[gram + 1] - postingOffsets[gram];
+  }
+
+  /** Finds the slot of a trigram in the table, or the empty slot where it would go. */
+  private static int slot(long[] keys, int[] indices, long gram) {
+    int mask = keys.length - 1;
+    int slot = (int) ((gram * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+    while (indices[slot] >= 0 && keys[slot] != gram) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  /** Per-thread buffers for one query. */
+  private static final class Scratch {
+    // stamps[id] is the generation of the last round that checked the name.
+    final int[] stamps;
+    int generation;
+
+    // The first names found by this round, alphabetically.
+    int[] found = new int[4];
+
+    long[] grams = new long[32];
+    int[] gramOrder = new int[32];
+    // The input's trigrams again, in a small open-addressing set with -1 for empty slots.
+    long[] gramSet = new long[64];
+    // The input in lower case with its spacing collapsed.
+    char[] input = new char[32];
+    int inputLength;
+    // Three rows of the edit distance table.
+    int[] before = new int[34];
+    int[] previous = new int[34];
+    int[] current = new int[34];
+
+    Scratch(int nameCount) {
+      stamps = new int[nameCount];
+    }
+
+    int nextGeneration() {
+      if (++generation == 0) {
+        // Wrapped around after four billion rounds; stale stamps could now match.
+        Arrays.fill(stamps, 0);
+        generation = 1;
+      }
+      return generation;
+    }
+
+    /**
+     * Adds a name to the names found, if it comes alphabetically before one of them or there is
+     * still room.
+     *
+     * @return the number of names now held
+     */
+    int offer(String[] names, int id, int count, int limit) {
+      if (found.length < limit) {
+        found = Arrays.copyOf(found, limit);
+      }
+      int i = count;
+      while (i > 0 && names[found[i - 1]].compareTo(names[id]) > 0) {
+        i--;
+      }
+      if (i == limit) {
+        return count;
+      }
+      int kept = Math.min(count, limit - 1);
+      System.arraycopy(found, i, found, i + 1, kept - i);
+      found[i] = id;
+      return kept + 1;
+    }
+
+    /** Writes text in lower case with its spacing collapsed, and returns the folded length. */
+    private static int fold(CharSequence text, char[] buffer) {
+      int length = 0;
+      boolean space = false;
+      for (int i = 0; i < text.length(); i++) {
+        char c = text.charAt(i);
+        if (c == ' ' || (c >= '\t' && c <= '\r')) {
+          space = length > 0;
+          continue;
+        }
+        if (space) {
+          buffer[length++] = ' ';
+          space = false;
+        }
+        buffer[length++] = Character.toLowerCase(c);
+      }
+      return length;
+    }
+
+    /**
+     * Folds text into {@link #input} and puts its distinct trigrams, padded at both ends, in
+     * {@link #grams}.
+     *
+     * @return the number of trigrams
+     */
+    int grams(CharSequence text) {
+      if (input.length < text.length()) {
+        input = new char[text.length() * 2];
+      }
+      int length = fold(text, input);
+      inputLength = length;
+      if (grams.length < length) {
+        grams = new long[length * 2];
+        gramOrder = new int[length * 2];
+      }
+      int count = 0;
+      for (int i = 0; i < length; i++) {
+        char a = i == 0 ? PAD : input[i - 1];
+        char b = input[i];
+        char c = i + 1 == length ? PAD : input[i + 1];
+        long gram = ((long) a << 32) | ((long) b << 16) | c;
+        boolean seen = false;
+        for (int j = 0; j < count && !seen; j++) {
+          seen = grams[j] == gram;
+        }
+        if (!seen) {
+          grams[count++] = gram;
+        }
+      }
+
+      if (gramSet.length < count * 2) {
+        gramSet = new long[Integer.highestOneBit(count) * 4];
+      }
+      Arrays.fill(gramSet, -1);
+      for (int i = 0; i < count; i++) {
+        int slot = gramSlot(grams[i]);
+        gramSet[slot] = grams[i];
+      }
+      return count;
+    }
+
+    private int gramSlot(long gram) {
+      int mask = gramSet.length - 1;
+      int slot = (int) ((gram * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+      while (gramSet[slot] != -1 && gramSet[slot] != gram) {
+        slot = (slot + 1) & mask;
+      }
+      return slot;
+    }
+
+    /**
+     * Checks that the folded name has enough trigrams in common with the input to be within the
+     * bound. The d edits that turn the name into the input change at most 4d of its trigrams, and
+     * the rest must be trigrams of the input. This is cheaper than the edit distance and rules
+     * out most names that merely share a rare trigram with the input.
+     */
+    private boolean sharesEnoughGrams(char[] name, int start, int nameLength, int bound) {
+      int misses = 0;
+      int end = start + nameLength;
+      for (int i = start; i < end; i++) {
+        char a = i == start ? PAD : name[i - 1];
+        char c = i + 1 == end ? PAD : name[i + 1];
+        long gram = ((long) a << 32) | ((long) name[i] << 16) | c;
+        if (gramSet[gramSlot(gram)] != gram && ++misses > 4 * bound) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Measures the edit distance between the folded input and a folded name, counting a swap of
+     * two neighbouring letters as one edit. Only the band of the table within the bound of the
+     * diagonal is filled in.
+     *
+     * @param name the array holding the name
+     * @param start the index of the name's first letter
+     * @param nameLength the length of the name
+     * @param bound the largest distance of interest
+     * @return the distance, or anything above the bound once it is known to be above it
+     */
+    int distance(char[] name, int start, int nameLength, int bound) {
+      int outside = bound + 1;
+      if (!sharesEnoughGrams(name, start, nameLength, bound)) {
+        return outside;
+      }
+      if (current.length < nameLength + 2) {
+        before = new int[nameLength + 2];
+        previous = new int[nameLength + 2];
+        current = new int[nameLength + 2];
+      }
+
+      for (int j = 0; j <= Math.min(nameLength, bound); j++) {
+        previous[j] = j;
+      }
+      if (bound + 1 <= nameLength) {
+        previous[bound + 1] = outside;
+      }
+      for (int i = 1; i <= inputLength; i++) {
+        int from = Math.max(1, i - bound);
+        int to = Math.min(nameLength, i + bound);
+        current[from - 1] = from == 1 ? i : outside;
+        int rowMin = current[from - 1];
+        for (int j = from; j <= to; j++) {
+          int cost = input[i - 1] == name[start + j - 1] ? 0 : 1;
+          int d = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+          if (i > 1
+              && j > 1
+              && input[i - 1] == name[start + j - 2]
+              && input[i - 2] == name[start + j - 1]) {
+            d = Math.min(d, before[j - 2] + 1);
+          }
+          current[j] = Math.min(d, outside);
+          rowMin = Math.min(rowMin, current[j]);
+        }
+        if (to + 1 <= nameLength) {
+          current[to + 1] = outside;
+        }
+        if (rowMin > bound) {
+          return outside;
+        }
+        int[] oldest = before;
+        before = previous;
+        previous = current;
+        current = oldest;
+      }
+      return previous[nameLength];
+    }
+  }
+}
@@ -0,0 +1,425 @@
+package nz.ac.auckland.se281;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Serves map queries over TCP with a simple line protocol, so other programs can share one loaded
+ * map.
+ *
+ * <p>Every request is one line of UTF-8 text and gets exactly one line back:
+ *
+ * <pre>
+ * INFO name              -&gt; OK name,continent,tax
+ * ROUTE start,dest       -&gt; OK countries|continents|tax   (with the engine's route mode)
+ * CHEAPEST start,dest    -&gt; OK countries|continents|tax   (lowest total tax)
+ * STATS                  -&gt; OK {metrics as JSON}
+ * QUIT                   -&gt; OK, then the server closes the connection
+ * </pre>
+ *
+ * <p>Lists in an answer are comma separated. A route that does not exist is answered with {@code
+ * NONE}, and a request that cannot be answered with {@code ERR} and a message, e.g. {@code ERR
+ * Empty request} for a blank line; the connection stays open either way. A route from a country
+ * to itself is that country alone, e.g. {@code OK India|Asia|0}, where the command line says that
+ * no travel is needed. Commands are case insensitive, and country names are capitalised like at
+ * the prompt. A line may end with CRLF as well as LF.
+ *
+ * <p>Connections stay open until the client closes them or sends QUIT, and a client may send many
+ * requests without waiting for the answers; the answers come back in the order the requests were
+ * sent. The server runs one selector thread per core. Each thread owns its connections and
+ * answers their requests itself, since a query takes microseconds and the map needs no locks.
+ */
+public final class QueryServer implements AutoCloseable {
+  // Longest request line accepted; a longer one gets an error and the connection is closed.
+  private static final int MAX_LINE_BYTES = 64 * 1024;
+  // Stop reading from a client that is not reading its answers once this much is waiting.
+  private static final int MAX_PENDING_OUTPUT = 1 << 20;
+  private static final byte[] QUIT = "OK\n".getBytes(StandardCharsets.UTF_8);
+
+  private final MapEngine engine;
+  private final ServerSocketChannel serverChannel;
+  private final Reactor[] reactors;
+  private final AtomicInteger openConnections = new AtomicInteger();
+  private final LongAdder requests;
+  private final Histogram requestTimes;
+  private final long startNanos = System.nanoTime();
+  private volatile boolean closed;
+  private int nextReactor;
+
+  /**
+   * Opens the server socket and starts the selector threads.
+   *
+   * @param engine the engine whose map is queried
+   * @param address the address to listen on, usually a loopback address
+   * @param threads the number of selector threads
+   * @throws IOException if the socket cannot be opened
+   */
+  public QueryServer(MapEngine engine, InetSocketAddress address, int threads)
+      throws IOException {
+    this.engine = engine;
+    Metrics metrics = engine.getMetrics();
+    requests = metrics.counter("server.requests");
+    requestTimes = metrics.histogram("server.request_ns");
+    metrics.gauge("server.open_connections", openConnections::get);
+    metrics.gauge(
+        "server.requests_per_second",
+        () -> requests.sum() * 1_000_000_000L / Math.max(1, System.nanoTime() - startNanos));
+
+    serverChannel = ServerSocketChannel.open();
+    serverChannel.bind(address);
+    serverChannel.configureBlocking(false);
+
+    reactors = new Reactor[threads];
+    for (int i = 0; i < threads; i++) {
+      reactors[i] = new Reactor(i);
+    }
+    // The first reactor also accepts connections and hands them out in turn.
+    serverChannel.register(reactors[0].selector, SelectionKey.OP_ACCEPT);
+    for (Reactor reactor : reactors) {
+      reactor.thread.start();
+    }
+  }
+
+  /**
+   * Returns the port the server listens on, which is useful when it was started on port 0.
+   *
+   * @return the port
+   */
+  public int getPort() {
+    return serverChannel.socket().getLocalPort();
+  }
+
+  /** Stops accepting connections, closes every open connection and stops the threads. */
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    serverChannel.close();
+    for (Reactor reactor : reactors) {
+      reactor.selector.wakeup();
+    }
+    for (Reactor reactor : reactors) {
+      try {
+        reactor.thread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Answers one request line.
+   *
+   * @param queries the map to answer from
+   * @param mode the search used by ROUTE
+   * @param line the request, without its line break
+   * @return the answer, without a line break
+   */
+  static String answer(MapQueries queries, RouteMode mode, String line) {
+    line = line.trim();
+    if (line.isEmpty()) {
+      return "ERR Empty request";
+    }
+    int space = line.indexOf(' ');
+    String command = (space < 0 ? line : line.substring(0, space)).toUpperCase();
+    String argument = space < 0 ? "" : line.substring(space + 1).trim();
+
+    try {
+      switch (command) {
+        case "INFO":
+          Country country = queries.info(argument);
+          return "OK " + country.getName() + "," + country.getContinent() + "," + country.getTax();
+        case "ROUTE":
+          return answerRoute(queries, mode, argument);
+        case "CHEAPEST":
+          return answerRoute(queries, RouteMode.CHEAPEST_A_STAR, argument);
+        default:
+          return "ERR Unknown command " + command;
+      }
+    } catch (CountryNotFoundException e) {
+      return "ERR " + e.getMessage();
+    }
+  }
+
+  private static String answerRoute(MapQueries queries, RouteMode mode, String argument) {
+    int comma = argument.indexOf(',');
+    if (comma < 0) {
+      return "ERR Expected start,destination but got " + argument;
+    }
+
+    Route route =
+        queries.route(mode, argument.substring(0, comma), argument.substring(comma + 1));
+    if (route.isEmpty()) {
+      return "NONE";
+    }
+    return "OK "
+        + String.join(",", route.getCountries())
+        + "|"
+        + String.join(",", route.getContinents())
+        + "|"
+        + route.getTax();
+  }
+
+  private static void closeQuietly(SocketChannel channel) {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      // Closing anyway.
+    }
+  }
+
+  /** One selector thread and the connections it owns. */
+  private class Reactor implements Runnable {
+    private final Selector selector;
+    private final Thread thread;
+    // Connections accepted by the first reactor for this one, registered by this one's thread.
+    private final Queue<SocketChannel> handedOver = new ConcurrentLinkedQueue<>();
+
+    Reactor(int index) throws IOException {
+      selector = Selector.open();
+      thread = new Thread(this, "map-server-" + index);
+      thread.setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (!closed) {
+          selector.select();
+          if (closed) {
+            break;
+          }
+          registerHandedOver();
+          Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+          while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            handle(key);
+          }
+        }
+      } catch (IOException e) {
+        e.printStackTrace();
+      } finally {
+        closeAll();
+      }
+    }
+
+    private void handle(SelectionKey key) {
+      if (!key.isValid()) {
+        return;
+      }
+      if (key.isAcceptable()) {
+        accept();
+        return;
+      }
+
+      Connection connection = (Connection) key.attachment();
+      try {
+        if (key.isReadable()) {
+          connection.read();
+        }
+        if (key.isValid() && key.isWritable()) {
+          connection.write();
+        }
+      } catch (IOException e) {
+        // The client went away mid-request; nothing to answer.
+        connection.close();
+      }
+    }
+
+    private void accept() {
+      try {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+          channel.configureBlocking(false);
+          channel.socket().setTcpNoDelay(true);
+          Reactor reactor = reactors[nextReactor];
+          nextReactor = (nextReactor + 1) % reactors.length;
+          if (reactor == this) {
+            register(channel);
+          } else {
+            reactor.handedOver.add(channel);
+            reactor.selector.wakeup();
+          }
+        }
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+
+    private void registerHandedOver() {
+      SocketChannel channel;
+      while ((channel = handedOver.poll()) != null) {
+        register(channel);
+      }
+    }
+
+    private void register(SocketChannel channel) {
+      try {
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        key.attach(new Connection(channel, key));
+        openConnections.incrementAndGet();
+      } catch (IOException e) {
+        // The client closed the connection before it could be registered.
+        closeQuietly(channel);
+      }
+    }
+
+    private void closeAll() {
+      for (SelectionKey key : new ArrayList<>(selector.keys())) {
+        if (key.attachment() instanceof Connection) {
+          ((Connection) key.attachment()).close();
+        }
+      }
+      SocketChannel channel;
+      while ((channel = handedOver.poll()) != null) {
+        closeQuietly(channel);
+      }
+      try {
+        selector.close();
+      } catch (IOException e) {
+        // Closing anyway.
+      }
+    }
+  }
+
+  /** A client connection, with the bytes read but not yet answered and the answers not sent. */
+  private class Connection {
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private ByteBuffer input = ByteBuffer.allocate(8 * 1024);
+    private ByteBuffer output = ByteBuffer.allocate(8 * 1024);
+    private boolean quitting;
+
+    Connection(SocketChannel channel, SelectionKey key) {
+      this.channel = channel;
+      this.key = key;
+    }
+
+    /**
+     * Reads what the client sent and answers every complete line in it, in order.
+     *
+     * @throws IOException if reading fails
+     */
+    void read() throws IOException {
+      int read = channel.read(input);
+      if (read < 0) {
+        close();
+        return;
+      }
+
+      // Answer every complete line; a partial line stays in the buffer for the next read.
+      input.flip();
+      MapQueries queries = engine.queries();
+      RouteMode mode = engine.getRouteMode();
+      int lineStart = input.position();
+      for (int i = lineStart; i < input.limit() && !quitting; i++) {
+        if (input.get(i) == '\n') {
+          int lineEnd = i > lineStart && input.get(i - 1) == '\r' ? i - 1 : i;
+          String line =
+              new String(
+                  input.array(), lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+          respond(queries, mode, line);
+          lineStart = i + 1;
+        }
+      }
+      input.position(quitting ? input.limit() : lineStart);
+      input.compact();
+
+      if (!input.hasRemaining()) {
+        if (input.capacity() >= MAX_LINE_BYTES) {
+          append(("ERR Request line too long\n").getBytes(StandardCharsets.UTF_8));
+          quitting = true;
+        } else {
+          input = grow(input, input.capacity() * 2);
+        }
+      }
+      write();
+    }
+
+    private void respond(MapQueries queries, RouteMode mode, String line) {
+      long startNanos = System.nanoTime();
+      String command = line.trim();
+      if (command.equalsIgnoreCase("QUIT")) {
+        append(QUIT);
+        quitting = true;
+        return;
+      }
+      String answer;
+      try {
+        answer =
+            command.equalsIgnoreCase("STATS")
+                ? "OK " + engine.getMetrics().toJson()
+                : answer(queries, mode, line);
+      } catch (RuntimeException e) {
+        // A bug in one query must not take down the thread and every connection it owns.
+        e.printStackTrace();
+        answer = "ERR Internal error: " + e.getClass().getSimpleName();
+      }
+      append((answer + "\n").getBytes(StandardCharsets.UTF_8));
+      requests.increment();
+      requestTimes.recordSince(startNanos);
+    }
+
+    private void append(byte[] bytes) {
+      if (output.remaining() < bytes.length) {
+        output = grow(output, Math.max(output.capacity() * 2, output.position() + bytes.length));
+      }
+      output.put(bytes);
+    }
+
+    /**
+     * Sends as much of the pending output as the socket takes, and waits for the socket to become
+     * writable again if some is left.
+     *
+     * @throws IOException if writing fails
+     */
+    void write() throws IOException {
+      output.flip();
+      channel.write(output);
+      output.compact();
+
+      boolean pending = output.position() > 0;
+      if (!pending && quitting) {
+        close();
+        return;
+      }
+      int interest = 0;
+      if (!quitting && output.position() < MAX_PENDING_OUTPUT) {
+        interest |= SelectionKey.OP_READ;
+      }
+      if (pending) {
+        interest |= SelectionKey.OP_WRITE;
+      }
+      key.interestOps(interest);
+    }
+
+    void close() {
+      if (!channel.isOpen()) {
+        return;
+      }
+      openConnections.decrementAndGet();
+      key.cancel();
+      closeQuietly(channel);
+    }
+
+    private ByteBuffer grow(ByteBuffer buffer, int capacity) {
+      ByteBuffer bigger = ByteBuffer.allocate(capacity);
+      buffer.flip();
+      bigger.put(buffer);
+      return bigger;
+    }
+  }
+}
@@ -0,0 +1,63 @@
+package nz.ac.auckland.se281;
+
+import java.util.Collections;
+import java.util.List;
+
+/** A route between two countries, with the continents it visits and the taxes it costs. */
+public final class Route {
+  // Result for a destination that cannot be reached from the start.
+  static final Route NONE = new Route(Collections.emptyList(), Collections.emptyList(), 0);
+
+  private final List<String> countries;
+  private final List<String> continents;
+  private final int tax;
+
+  /**
+   * Constructor for the Route class.
+   *
+   * @param countries the names of the countries on the route, from start to destination
+   * @param continents the continents visited, in the order they are first entered
+   * @param tax the total tax paid, not counting the start country
+   */
+  Route(List<String> countries, List<String> continents, int tax) {
+    this.countries = Collections.unmodifiableList(countries);
+    this.continents = Collections.unmodifiableList(continents);
+    this.tax = tax;
+  }
+
+  /**
+   * Checks whether there is no route at all between the two countries.
+   *
+   * @return true if the destination cannot be reached
+   */
+  public boolean isEmpty() {
+    return countries.isEmpty();
+  }
+
+  /**
+   * Returns the names of the countries on the route.
+   *
+   * @return the countries, from start to destination
+   */
+  public List<String> getCountries() {
+    return countries;
+  }
+
+  /**
+   * Returns the continents the route visits.
+   *
+   * @return the continents, in the order they are first entered
+   */
+  public List<String> getContinents() {
+    return continents;
+  }
+
+  /**
+   * Returns the total tax paid along the route.
+   *
+   * @return the total tax, not counting the start country
+   */
+  public int getTax() {
+    return tax;
+  }
+}
@@ -0,0 +1,371 @@
+package nz.ac.auckland.se281;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, thread-safe cache of routes keyed on the (start, destination, mode) triple.
+ *
+ * <p>The cache is split into independently locked segments so that concurrent queries rarely
+ * wait for each other. Each segment evicts with the chosen policy:
+ *
+ * <ul>
+ *   <li>{@link Policy#LRU} drops the least recently used route.
+ *   <li>{@link Policy#TINY_LFU} is W-TinyLFU: new routes enter a small LRU window, and a route
+ *       leaving the window only replaces the main area's LRU victim if it has been asked for more
+ *       often recently. This keeps one-off queries from flushing the popular pairs.
+ * </ul>
+ *
+ * <p>Every route is stored with the version of the map it was found on. When the map has been
+ * edited since, a lookup asks the caller whether the route still holds, so an edit costs nothing
+ * here however big the cache is, and routes the edit did not affect are kept.
+ *
+ * <p>Hits, misses and evictions are counted across all segments and can be polled at any time.
+ */
+public final class RouteCache {
+  /** How the cache chooses which route to drop when it is full. */
+  public enum Policy {
+    LRU,
+    TINY_LFU
+  }
+
+  /** Checks whether a route cached for an earlier version of an edited map still holds. */
+  @FunctionalInterface
+  interface Validity {
+    /**
+     * Checks a cached route against the edits made since it was cached.
+     *
+     * @param key the key from {@link #key}
+     * @param route the cached route
+     * @param version the version of the map the route was found on
+     * @return true if the route is still the answer
+     */
+    boolean holds(long key, Route route, int version);
+  }
+
+  private static final int SEGMENTS = 16;
+
+  // Keys hold the mode in the top bits and the start and destination IDs below it.
+  private static final int MODE_BITS = 4;
+  private static final int ID_BITS = (Long.SIZE - MODE_BITS) / 2;
+
+  static {
+    if (RouteMode.values().length > 1 << MODE_BITS) {
+      throw new IllegalStateException("Too many route modes for the cache keys");
+    }
+  }
+
+  private final Segment[] segments;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder invalidated = new LongAdder();
+
+  /**
+   * Creates an empty cache.
+   *
+   * @param capacity the maximum number of routes to keep, which is shared out between the
+   *     segments, so a route may be dropped before the whole cache is full
+   * @param policy how to choose which route to drop when full
+   */
+  public RouteCache(int capacity, Policy policy) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Cache capacity must be positive: " + capacity);
+    }
+    // A power of two, so that a segment can be picked with a mask, and no more than the capacity,
+    // so that every segment holds at least one route.
+    segments = new Segment[Integer.highestOneBit(Math.min(SEGMENTS, capacity))];
+    for (int i = 0; i < segments.length; i++) {
+      int segmentCapacity = capacity / segments.length + (i < capacity % segments.length ? 1 : 0);
+      segments[i] =
+          policy == Policy.LRU
+              ? new LruSegment(segmentCapacity)
+              : new TinyLfuSegment(segmentCapacity);
+    }
+  }
+
+  /**
+   * Packs a route query into a cache key.
+   *
+   * @param start the ID of the start country, below 2^30
+   * @param destination the ID of the destination country, below 2^30
+   * @param mode the search used
+   * @return the key
+   */
+  static long key(int start, int destination, RouteMode mode) {
+    return ((long) mode.ordinal() << (2 * ID_BITS)) | ((long) start << ID_BITS) | destination;
+  }
+
+  /**
+   * Returns the mode a cache key was made for.
+   *
+   * @param key the key from {@link #key}
+   * @return the search used
+   */
+  static RouteMode mode(long key) {
+    return RouteMode.values()[(int) (key >>> (2 * ID_BITS))];
+  }
+
+  /**
+   * Returns the start country a cache key was made for.
+   *
+   * @param key the key from {@link #key}
+   * @return the ID of the start country
+   */
+  static int start(long key) {
+    return (int) (key >>> ID_BITS) & ((1 << ID_BITS) - 1);
+  }
+
+  /**
+   * Returns the destination country a cache key was made for.
+   *
+   * @param key the key from {@link #key}
+   * @return the ID of the destination country
+   */
+  static int destination(long key) {
+    return (int) key & ((1 << ID_BITS) - 1);
+  }
+
+  /**
+   * Looks up a cached route.
+   *
+   * @param key the key from {@link #key}
+   * @param version the version of the map being queried
+   * @param validity checks routes cached for an earlier version of the map
+   * @return the route, or null if it is not cached or no longer holds
+   */
+  Route get(long key, int version, Validity validity) {
+    Segment segment = segment(key);
+    Entry entry = segment.get(key);
+    if (entry != null && entry.version != version) {
+      if (entry.version < version && validity.holds(key, entry.route, entry.version)) {
+        // Still right, so mark it as checked for this version and skip the check next time.
+        evictions.add(segment.put(key, new Entry(entry.route, version)));
+      } else {
+        // Outdated, or cached by a query on a newer map than this one. A fresh route replaces it.
+        invalidated.increment();
+        entry = null;
+      }
+    }
+    if (entry == null) {
+      misses.increment();
+      return null;
+    }
+    hits.increment();
+    return entry.route;
+  }
+
+  /**
+   * Adds a route to the cache, possibly evicting another one.
+   *
+   * @param key the key from {@link #key}
+   * @param route the route to cache
+   * @param version the version of the map the route was found on
+   */
+  void put(long key, Route route, int version) {
+    evictions.add(segment(key).put(key, new Entry(route, version)));
+  }
+
+  /** Removes every cached route. The counters are kept. */
+  public void clear() {
+    for (Segment segment : segments) {
+      segment.clear();
+    }
+  }
+
+  /**
+   * Returns the number of lookups that found a cached route.
+   *
+   * @return the number of hits
+   */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * Returns the number of lookups that did not find a cached route.
+   *
+   * @return the number of misses
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   * Returns the number of routes dropped to make room for others.
+   *
+   * @return the number of evictions
+   */
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  /**
+   * Returns the number of lookups that found a route that no longer holds after an edit of the
+   * map. These are also counted as misses.
+   *
+   * @return the number of outdated routes found
+   */
+  public long getInvalidated() {
+    return invalidated.sum();
+  }
+
+  /**
+   * Returns the number of routes currently cached.
+   *
+   * @return the number of routes
+   */
+  public int size() {
+    int size = 0;
+    for (Segment segment : segments) {
+      size += segment.size();
+    }
+    return size;
+  }
+
+  private Segment segment(long key) {
+    long hash = key * 0x9E3779B97F4A7C15L;
+    return segments[(int) (hash >>> 60) & (segments.length - 1)];
+  }
+
+  /** A cached route and the version of the map it holds for. */
+  private static final class Entry {
+    private final Route route;
+    private final int version;
+
+    Entry(Route route, int version) {
+      this.route = route;
+      this.version = version;
+    }
+  }
+
+  /** One independently locked part of the cache. */
+  private abstract static class Segment {
+    abstract Entry get(long key);
+
+    /**
+     * Adds a route to the segment.
+     *
+     * @return the number of routes evicted to make room
+     */
+    abstract int put(long key, Entry entry);
+
+    abstract void clear();
+
+    abstract int size();
+  }
+
+  /** Segment that evicts the least recently used route. */
+  private static class LruSegment extends Segment {
+    private final LinkedHashMap<Long, Entry> routes;
+    private final int capacity;
+
+    LruSegment(int capacity) {
+      this.capacity = capacity;
+      this.routes = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    @Override
+    synchronized Entry get(long key) {
+      return routes.get(key);
+    }
+
+    @Override
+    synchronized int put(long key, Entry entry) {
+      routes.put(key, entry);
+      return evictEldest(routes, capacity);
+    }
+
+    @Override
+    synchronized void clear() {
+      routes.clear();
+    }
+
+    @Override
+    synchronized int size() {
+      return routes.size();
+    }
+  }
+
+  /** Segment that admits routes into its main area with W-TinyLFU. */
+  private static class TinyLfuSegment extends Segment {
+    private final LinkedHashMap<Long, Entry> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Long, Entry> main = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch;
+    private final int windowCapacity;
+    private final int mainCapacity;
+
+    TinyLfuSegment(int capacity) {
+      // About 1% of the space is the window, the rest is the frequency-guarded main area, which
+      // a segment of one route does not have.
+      windowCapacity = Math.max(1, capacity / 100);
+      mainCapacity = capacity - windowCapacity;
+      sketch = new FrequencySketch(capacity);
+    }
+
+    @Override
+    synchronized Entry get(long key) {
+      sketch.increment(key);
+      Entry entry = window.get(key);
+      return entry != null ? entry : main.get(key);
+    }
+
+    @Override
+    synchronized int put(long key, Entry entry) {
+      if (main.containsKey(key)) {
+        main.put(key, entry);
+        return 0;
+      }
+      window.put(key, entry);
+      if (window.size() <= windowCapacity) {
+        return 0;
+      }
+
+      // The window is full: its oldest route competes with the main area's oldest for a place.
+      Map.Entry<Long, Entry> candidate = window.entrySet().iterator().next();
+      window.remove(candidate.getKey());
+      if (main.size() < mainCapacity) {
+        main.put(candidate.getKey(), candidate.getValue());
+        return 0;
+      }
+      if (main.isEmpty()) {
+        return 1;
+      }
+      Long victim = main.keySet().iterator().next();
+      if (sketch.frequency(candidate.getKey()) > sketch.frequency(victim)) {
+        main.remove(victim);
+        main.put(candidate.getKey(), candidate.getValue());
+      }
+      return 1;
+    }
+
+    @Override
+    synchronized void clear() {
+      window.clear();
+      main.clear();
+    }
+
+    @Override
+    synchronized int size() {
+      return window.size() + main.size();
+    }
+  }
+
+  /**
+   * Removes the oldest entries of an access-ordered map until it is within capacity.
+   *
+   * @return the number of entries removed
+   */
+  private static int evictEldest(LinkedHashMap<Long, Entry> routes, int capacity) {
+    int evicted = 0;
+    Iterator<Long> keys = routes.keySet().iterator();
+    while (routes.size() > capacity) {
+      keys.next();
+      keys.remove();
+      evicted++;
+    }
+    return evicted;
+  }
+}
@@ -0,0 +1,147 @@
+package nz.ac.auckland.se281;
+
+import java.util.regex.Matcher;
+
+/**
+ * Countries and continents a route must not go through, and the most borders it may cross and
+ * tax it may cost.
+ *
+ * <p>Constraints are made by {@link MapQueries#constraints} for one version of the map and filled
+ * in with the chainable methods below, e.g. {@code
+ * queries.constraints().avoid("Egypt").avoid("Europe").maxTax(20)}. The avoided countries are kept
+ * as a bitset over their IDs, with an avoided continent's countries added to it, so a search tests
+ * each country it reaches with one read from an array of one bit per country.
+ */
+public final class RouteConstraints {
+  private final CountryGraph graph;
+  private final NameIndex names;
+  // Avoided countries, including every country of an avoided continent.
+  private final long[] countries;
+  private int maxBorders = Integer.MAX_VALUE;
+  private int maxTax = Integer.MAX_VALUE;
+
+  /**
+   * Creates constraints that allow every route on a map.
+   *
+   * @param graph the map the routes are on
+   * @param names the index to look up avoided countries in
+   */
+  RouteConstraints(CountryGraph graph, NameIndex names) {
+    this.graph = graph;
+    this.names = names;
+    this.countries = new long[(graph.size() + 63) >>> 6];
+  }
+
+  /**
+   * Avoids a country or, if there is no country by that name, a whole continent.
+   *
+   * @param name the name of the country or continent, read like at the prompt
+   * @return these constraints
+   * @throws CountryNotFoundException if there is no country or continent by that name
+   */
+  public RouteConstraints avoid(String name) {
+    int country = names.find(name);
+    if (country >= 0) {
+      return avoidCountry(country);
+    }
+    String continent = Utils.capitalizeFirstLetterOfEachWord(name);
+    for (int id = 0; id < graph.continentNames.length; id++) {
+      if (graph.continentNames[id].equals(continent)) {
+        return avoidContinent(id);
+      }
+    }
+    throw new CountryNotFoundException(
+        MessageCli.INVALID_COUNTRY.getMessage(Matcher.quoteReplacement(continent)));
+  }
+
+  /**
+   * Limits the number of borders a route may cross.
+   *
+   * @param borders the most borders
+   * @return these constraints
+   */
+  public RouteConstraints maxBorders(int borders) {
+    this.maxBorders = borders;
+    return this;
+  }
+
+  /**
+   * Limits the total tax of a route.
+   *
+   * @param tax the most tax
+   * @return these constraints
+   */
+  public RouteConstraints maxTax(int tax) {
+    this.maxTax = tax;
+    return this;
+  }
+
+  /**
+   * Avoids a country.
+   *
+   * @param country the ID of the country
+   * @return these constraints
+   */
+  RouteConstraints avoidCountry(int country) {
+    countries[country >>> 6] |= 1L << country;
+    return this;
+  }
+
+  /**
+   * Avoids every country on a continent.
+   *
+   * <p>The continent's countries are added to the avoided countries here, once, so that a search
+   * does not have to look up the continent of every country it reaches.
+   *
+   * @param continent the ID of the continent
+   * @return these constraints
+   */
+  RouteConstraints avoidContinent(int continent) {
+    int[] continentIds = graph.continentIds;
+    for (int country = 0; country < continentIds.length; country++) {
+      if (continentIds[country] == continent) {
+        avoidCountry(country);
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Checks whether a route may go through a country.
+   *
+   * @param country the ID of the country
+   * @return true if neither the country nor its continent is avoided
+   */
+  boolean allows(int country) {
+    return (countries[country >>> 6] & (1L << country)) == 0;
+  }
+
+  /**
+   * Returns the avoided countries, for searches to test without going through this object.
+   *
+   * @return a bitset over country IDs, which must not be changed
+   */
+  long[] avoidedCountries() {
+    return countries;
+  }
+
+  int maxBorders() {
+    return maxBorders;
+  }
+
+  int maxTax() {
+    return maxTax;
+  }
+
+  /**
+   * Checks that these constraints were made for a map, since the IDs mean nothing on another.
+   *
+   * @param graph the map being searched
+   * @throws IllegalArgumentException if the constraints were made for a different map
+   */
+  void checkMap(CountryGraph graph) {
+    if (graph != this.graph) {
+      throw new IllegalArgumentException("Route constraints were made for another map");
+    }
+  }
+}
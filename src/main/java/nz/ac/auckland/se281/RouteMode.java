@@ -0,0 +1,18 @@
+package nz.ac.auckland.se281;
+
+/**
+ * The search strategies MapEngine can use to find a route.
+ *
+ * <p>The breadth-first modes find the route with the fewest borders and always agree with each
+ * other. The cheapest modes find the route with the lowest total tax.
+ */
+public enum RouteMode {
+  /** Breadth-first search from the start country until the destination is reached. */
+  BREADTH_FIRST,
+  /** Breadth-first search from both ends at once, meeting in the middle. */
+  BIDIRECTIONAL,
+  /** Dijkstra's algorithm on the tax of each country entered, for the cheapest route. */
+  CHEAPEST,
+  /** A* on the tax of each country entered, for the cheapest route. */
+  CHEAPEST_A_STAR
+}
@@ -0,0 +1,202 @@
+package nz.ac.auckland.se281;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Precomputed fewest-borders routes between every pair of countries.
+ *
+ * <p>For each source country the table stores the breadth-first search tree rooted at it, as the
+ * previous country on the route to every other country. A route is read back by following the
+ * previous-country links from the destination, so a query costs O(path length) and returns
+ * exactly the route {@link BreadthFirstSearch} would. Storing the previous country rather than
+ * the next one is what keeps ties identical: the next hop from an intermediate country would
+ * follow that country's own search tree instead. Taxes are not stored, since routes do not depend
+ * on them and summing them along the path costs no more than reading the path.
+ *
+ * <p>Each source has its own row array and a table is never changed once built, so {@link
+ * #update} can share every row that an edit of the map does not affect.
+ *
+ * <p>Country IDs are stored as shorts, so the table is only available for maps with fewer than
+ * {@value Short#MAX_VALUE} countries, and {@link #fits} also checks a memory budget.
+ */
+class RouteTable {
+  // Marks a destination that cannot be reached from the source.
+  private static final short UNREACHABLE = -1;
+
+  // previous[source][destination] is the country before 'destination' on the route. A row can be
+  // shorter than the number of countries if countries were added after it was built; the missing
+  // destinations were added without borders into them, so they are unreachable.
+  private final short[][] previous;
+
+  /**
+   * Checks whether a table for the given graph fits in a memory budget.
+   *
+   * @param graph the graph to precompute
+   * @param budgetBytes the number of bytes the table may use
+   * @return true if the table can be built
+   */
+  static boolean fits(CountryGraph graph, long budgetBytes) {
+    long cells = (long) graph.size() * graph.size();
+    return graph.size() < Short.MAX_VALUE
+        && cells <= Integer.MAX_VALUE
+        && cells * Short.BYTES <= budgetBytes;
+  }
+
+  /**
+   * Builds the table by running one breadth-first search per source country, in parallel.
+   *
+   * @param graph the graph to precompute, which must pass {@link #fits}
+   */
+  RouteTable(CountryGraph graph) {
+    previous = new short[graph.size()][];
+    fillRows(graph, IntStream.range(0, graph.size()));
+  }
+
+  private RouteTable(short[][] previous) {
+    this.previous = previous;
+  }
+
+  /**
+   * Builds the table for an edited map, reusing the rows of this table that the edits cannot
+   * change.
+   *
+   * <p>Countries may only have been added, at the end, so that existing IDs are unchanged. The
+   * search tree rooted at a source stays the same when no removed border is in it, and every added
+   * border u-v has v at most as far from the source as u: by the time u is expanded, v has already
+   * been found, so the new border is never followed. Every other row is searched again.
+   *
+   * @param graph the edited map, which must pass {@link #fits}
+   * @param addedBorders the borders added, as from and to IDs one after the other
+   * @param removedBorders the borders removed, in the same form
+   * @return the table for the edited map
+   */
+  RouteTable update(CountryGraph graph, int[] addedBorders, int[] removedBorders) {
+    short[][] rows = Arrays.copyOf(previous, graph.size());
+    RouteTable updated = new RouteTable(rows);
+    updated.fillRows(
+        graph,
+        IntStream.range(0, graph.size())
+            .filter(
+                source ->
+                    source >= previous.length
+                        || isAffected(previous[source], source, addedBorders, removedBorders)));
+    return updated;
+  }
+
+  /**
+   * Counts how many rows {@link #update} would have to search again.
+   *
+   * @param other a table built by {@link #update} from this one
+   * @return the number of rows that are not shared
+   */
+  int rowsDifferentFrom(RouteTable other) {
+    int different = 0;
+    for (int i = 0; i < other.previous.length; i++) {
+      if (i >= previous.length || other.previous[i] != previous[i]) {
+        different++;
+      }
+    }
+    return different;
+  }
+
+  private static boolean isAffected(
+      short[] row, int source, int[] addedBorders, int[] removedBorders) {
+    for (int i = 0; i < removedBorders.length; i += 2) {
+      int to = removedBorders[i + 1];
+      if (to < row.length && to != source && row[to] == removedBorders[i]) {
+        return true;
+      }
+    }
+    for (int i = 0; i < addedBorders.length; i += 2) {
+      int fromDistance = distance(row, source, addedBorders[i]);
+      if (fromDistance != Integer.MAX_VALUE
+          && fromDistance + 1 <= distance(row, source, addedBorders[i + 1])) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Measures the number of borders between a source and a destination in a row.
+   *
+   * @return the distance, or Integer.MAX_VALUE if the destination cannot be reached
+   */
+  private static int distance(short[] row, int source, int destination) {
+    if (destination >= row.length || row[destination] == UNREACHABLE) {
+      return Integer.MAX_VALUE;
+    }
+    int distance = 0;
+    for (int country = destination; country != source; country = row[country]) {
+      distance++;
+    }
+    return distance;
+  }
+
+  private void fillRows(CountryGraph graph, IntStream sources) {
+    ThreadLocal<SearchContext> contexts =
+        ThreadLocal.withInitial(() -> new SearchContext(graph.size(), graph.continentCount()));
+    sources.parallel().forEach(source -> fillRow(graph, contexts.get(), source));
+  }
+
+  /**
+   * Fills one row of the table with the breadth-first search tree rooted at a source.
+   *
+   * @param graph the graph to search
+   * @param context scratch space for this thread
+   * @param source the ID of the source country
+   */
+  private void fillRow(CountryGraph graph, SearchContext context, int source) {
+    int[] offsets = graph.offsets;
+    int[] neighbours = graph.neighbours;
+    short[] row = new short[graph.size()];
+    Arrays.fill(row, UNREACHABLE);
+
+    context.reset();
+    int[] queue = context.queue;
+    int head = 0;
+    int tail = 0;
+    queue[tail++] = source;
+    context.visit(source);
+    row[source] = (short) source;
+
+    while (head < tail) {
+      int country = queue[head++];
+      for (int i = offsets[country]; i < offsets[country + 1]; i++) {
+        int neighbour = neighbours[i];
+        if (context.visit(neighbour)) {
+          queue[tail++] = neighbour;
+          row[neighbour] = (short) country;
+        }
+      }
+    }
+    previous[source] = row;
+  }
+
+  /**
+   * Reads the route between two countries out of the table.
+   *
+   * @param start the ID of the start country
+   * @param destination the ID of the destination country
+   * @return the IDs of the countries on the route, or an empty array if there is no route
+   */
+  int[] path(int start, int destination) {
+    short[] row = previous[start];
+    if (destination >= row.length || row[destination] == UNREACHABLE) {
+      return BreadthFirstSearch.NO_PATH;
+    }
+
+    int length = 1;
+    for (int country = destination; country != start; country = row[country]) {
+      length++;
+    }
+    int[] path = new int[length];
+    int country = destination;
+    for (int i = length - 1; i >= 0; i--) {
+      path[i] = country;
+      country = row[country];
+    }
+    return path;
+  }
+}
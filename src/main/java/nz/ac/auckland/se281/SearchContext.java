@@ -0,0 +1,352 @@
+package nz.ac.auckland.se281;
+
+import java.util.Arrays;
+
+/**
+ * Preallocated scratch space for searching a {@link CountryGraph}.
+ *
+ * <p>A context is created once per thread and reused for every query, so a search does not
+ * allocate anything apart from its result. Instead of clearing the visited arrays between
+ * searches, each search gets a new generation number and a country counts as visited only if its
+ * stamp matches the current generation.
+ *
+ * <p>The arrays only needed by {@link BidirectionalSearch}, {@link WeightedSearch}, {@link
+ * AlternativeRouteSearch}, {@link ConstrainedSearch}, {@link ContinentOverlay} and {@link
+ * ContractionHierarchy} are allocated the first time one of those searches runs on this context.
+ */
+class SearchContext {
+  final int[] queue;
+  final int[] parent;
+
+  // Distance from the start, for the bidirectional and weighted searches.
+  int[] distance;
+  // Bidirectional search only: the backward queue and the distance to the destination.
+  int[] backQueue;
+  int[] backDistance;
+  // Alternative routes and contraction hierarchies only: the next country on the way to the
+  // destination.
+  int[] backParent;
+  // Constrained search only: the country, previous label and tax of every route reached so far.
+  int[] labelCountry;
+  int[] labelParent;
+  int[] labelTax;
+  // Continent overlay only: border countries on a shortest route, with their distances from the
+  // start and to the destination, and space to sort them. overlayStart and overlayDestination
+  // hold the distances from the start and to the destination of the border countries of their
+  // continents, inside them, by slot.
+  int[] overlayCountry;
+  int[] overlayForward;
+  int[] overlayBackward;
+  long[] overlayOrder;
+  int[] overlayStart;
+  int[] overlayDestination;
+  // Weighted search only.
+  IndexedMinHeap heap;
+  // Contraction hierarchy only: the heap of the backward half of the query.
+  IndexedMinHeap backHeap;
+
+  private final int[] visited;
+  private final int[] seenContinents;
+  private int[] backVisited;
+  private int[] marked;
+  private int generation;
+  // Marks have their own generation, so that they can outlast a restart.
+  private int markGeneration;
+  private int visitedCount;
+  private int queuePeak;
+
+  /**
+   * Creates a context big enough for a graph of the given size.
+   *
+   * @param countryCount the number of countries in the graph
+   * @param continentCount the number of continents in the graph
+   */
+  SearchContext(int countryCount, int continentCount) {
+    queue = new int[countryCount];
+    parent = new int[countryCount];
+    visited = new int[countryCount];
+    seenContinents = new int[continentCount];
+  }
+
+  /**
+   * Checks whether this context can be used to search the given graph.
+   *
+   * @param graph the graph to search
+   * @return true if the arrays are big enough for the graph
+   */
+  boolean fits(CountryGraph graph) {
+    return visited.length >= graph.size() && seenContinents.length >= graph.continentCount();
+  }
+
+  /** Allocates the extra arrays used by the bidirectional search, if not done already. */
+  void ensureBidirectional() {
+    ensureDistances();
+    if (backVisited == null) {
+      int size = visited.length;
+      backQueue = new int[size];
+      backDistance = new int[size];
+      backVisited = new int[size];
+      marked = new int[size];
+    }
+  }
+
+  /** Allocates the heap and distances used by the weighted search, if not done already. */
+  void ensureHeap() {
+    ensureDistances();
+    if (heap == null) {
+      heap = new IndexedMinHeap(visited.length);
+    }
+  }
+
+  /** Allocates the arrays used by the alternative route search, if not done already. */
+  void ensureAlternatives() {
+    ensureBidirectional();
+    ensureHeap();
+    if (backParent == null) {
+      backParent = new int[visited.length];
+    }
+  }
+
+  /** Allocates the arrays used by a contraction hierarchy query, if not done already. */
+  void ensureHierarchy() {
+    ensureAlternatives();
+    if (backHeap == null) {
+      backHeap = new IndexedMinHeap(visited.length);
+    }
+  }
+
+  /** Allocates the labels and distances used by the constrained search, if not done already. */
+  void ensureLabels() {
+    ensureDistances();
+    if (labelCountry == null) {
+      int size = visited.length;
+      labelCountry = new int[size];
+      labelParent = new int[size];
+      labelTax = new int[size];
+    }
+  }
+
+  /**
+   * Allocates the arrays used by the continent overlay, if not done already or too small.
+   *
+   * @param size the number of border countries the overlay arrays must hold
+   */
+  void ensureOverlay(int size) {
+    ensureBidirectional();
+    ensureHeap();
+    if (overlayCountry == null || overlayCountry.length < size) {
+      overlayCountry = new int[size];
+      overlayForward = new int[size];
+      overlayBackward = new int[size];
+      overlayOrder = new long[size];
+      overlayStart = new int[size];
+      overlayDestination = new int[size];
+    }
+  }
+
+  /** Doubles the number of labels the constrained search can hold, keeping the ones it has. */
+  void growLabels() {
+    int size = Math.max(16, labelCountry.length * 2);
+    labelCountry = Arrays.copyOf(labelCountry, size);
+    labelParent = Arrays.copyOf(labelParent, size);
+    labelTax = Arrays.copyOf(labelTax, size);
+  }
+
+  private void ensureDistances() {
+    if (distance == null) {
+      distance = new int[visited.length];
+    }
+  }
+
+  /** Forgets every country and continent marked so far, ready for a new search. */
+  void reset() {
+    visitedCount = 0;
+    queuePeak = 0;
+    if (heap != null) {
+      heap.clear();
+    }
+    if (backHeap != null) {
+      backHeap.clear();
+    }
+    markGeneration++;
+    if (markGeneration == 0) {
+      // The stamp wrapped around, so old stamps could collide with new ones.
+      if (marked != null) {
+        Arrays.fill(marked, 0);
+      }
+      markGeneration = 1;
+    }
+    restart();
+  }
+
+  /**
+   * Forgets every country and continent visited so far but keeps the general-purpose marks and
+   * the counts, for a search that goes on in a new phase.
+   */
+  void restart() {
+    generation++;
+    if (generation == 0) {
+      // The stamp wrapped around, so old stamps could collide with new ones.
+      Arrays.fill(visited, 0);
+      Arrays.fill(seenContinents, 0);
+      if (backVisited != null) {
+        Arrays.fill(backVisited, 0);
+      }
+      generation = 1;
+    }
+  }
+
+  /**
+   * Returns the number of the current search, which goes up with every reset and starts again
+   * from 1 when it wraps around.
+   *
+   * @return the generation
+   */
+  int generation() {
+    return generation;
+  }
+
+  /**
+   * Returns the number of countries visited since the last reset, in either direction.
+   *
+   * @return the number of visited countries
+   */
+  int visitedCount() {
+    return visitedCount;
+  }
+
+  /**
+   * Returns the most countries that were waiting in the search's queues at once since the last
+   * reset.
+   *
+   * @return the queue high-water mark
+   */
+  int queuePeak() {
+    return queuePeak;
+  }
+
+  /**
+   * Records how many countries are waiting in the search's queues, keeping the highest count.
+   *
+   * @param queued the number of queued countries
+   */
+  void noteQueued(int queued) {
+    if (queued > queuePeak) {
+      queuePeak = queued;
+    }
+  }
+
+  /**
+   * Marks a country as visited.
+   *
+   * @param country the ID of the country
+   * @return true if the country had not been visited yet in this search
+   */
+  boolean visit(int country) {
+    if (visited[country] == generation) {
+      return false;
+    }
+    visited[country] = generation;
+    visitedCount++;
+    return true;
+  }
+
+  /**
+   * Checks whether a country has been visited in this search.
+   *
+   * @param country the ID of the country
+   * @return true if the country was visited
+   */
+  boolean isVisited(int country) {
+    return visited[country] == generation;
+  }
+
+  /**
+   * Marks a country as visited by the backward half of a bidirectional search.
+   *
+   * @param country the ID of the country
+   * @return true if the country had not been visited backwards yet in this search
+   */
+  boolean visitBackward(int country) {
+    if (backVisited[country] == generation) {
+      return false;
+    }
+    backVisited[country] = generation;
+    visitedCount++;
+    return true;
+  }
+
+  /**
+   * Checks whether a country has been visited by the backward half of a bidirectional search.
+   *
+   * @param country the ID of the country
+   * @return true if the country was visited backwards
+   */
+  boolean isVisitedBackward(int country) {
+    return backVisited[country] == generation;
+  }
+
+  /**
+   * Checks whether a country was visited by the backward half of an earlier search. Its stamps
+   * last until another search visits backwards or the generation wraps around.
+   *
+   * @param country the ID of the country
+   * @param generation the generation of the earlier search
+   * @return true if the country was visited backwards in that search
+   */
+  boolean wasVisitedBackward(int country, int generation) {
+    return backVisited[country] == generation;
+  }
+
+  /**
+   * Puts a general-purpose mark on a country.
+   *
+   * @param country the ID of the country
+   * @return true if the country was not marked yet in this search
+   */
+  boolean mark(int country) {
+    if (marked[country] == markGeneration) {
+      return false;
+    }
+    marked[country] = markGeneration;
+    return true;
+  }
+
+  /**
+   * Checks whether a country has the general-purpose mark in this search.
+   *
+   * @param country the ID of the country
+   * @return true if the country is marked
+   */
+  boolean isMarked(int country) {
+    return marked[country] == markGeneration;
+  }
+
+  /**
+   * Removes the general-purpose mark from a country.
+   *
+   * @param country the ID of the country
+   * @return true if the country was marked
+   */
+  boolean unmark(int country) {
+    if (marked[country] != markGeneration) {
+      return false;
+    }
+    marked[country] = 0;
+    return true;
+  }
+
+  /**
+   * Marks a continent as seen.
+   *
+   * @param continent the ID of the continent
+   * @return true if the continent had not been seen yet in this search
+   */
+  boolean seeContinent(int continent) {
+    if (seenContinents[continent] == generation) {
+      return false;
+    }
+    seenContinents[continent] = generation;
+    return true;
+  }
+}
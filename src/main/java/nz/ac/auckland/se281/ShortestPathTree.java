@@ -0,0 +1,139 @@
+package nz.ac.auckland.se281;
+
+import java.util.Arrays;
+
+/**
+ * Every route out of one source country, found with a single search.
+ *
+ * <p>The tree keeps the previous country and the total tax of the route to every country, so the
+ * route to any destination is read back in O(path length) without searching again. A
+ * breadth-first tree gives the same routes as {@link BreadthFirstSearch}; a cheapest tree gives
+ * routes with the lowest total tax.
+ */
+class ShortestPathTree {
+  private final int source;
+  // previous[id] is the country before 'id' on the route, or -1 if 'id' cannot be reached.
+  private final int[] previous;
+  private final int[] taxes;
+
+  private ShortestPathTree(int source, int[] previous, int[] taxes) {
+    this.source = source;
+    this.previous = previous;
+    this.taxes = taxes;
+  }
+
+  /**
+   * Builds the tree of fewest-borders routes with a breadth-first search that visits every
+   * reachable country.
+   *
+   * @param graph the graph to search
+   * @param context reset scratch space big enough for the graph
+   * @param source the ID of the source country
+   * @return the tree
+   */
+  static ShortestPathTree breadthFirst(CountryGraph graph, SearchContext context, int source) {
+    int[] offsets = graph.offsets;
+    int[] neighbours = graph.neighbours;
+    int[] previous = new int[graph.size()];
+    int[] taxes = new int[graph.size()];
+    Arrays.fill(previous, -1);
+
+    int[] queue = context.queue;
+    int head = 0;
+    int tail = 0;
+    queue[tail++] = source;
+    context.visit(source);
+    previous[source] = source;
+
+    while (head < tail) {
+      int country = queue[head++];
+      for (int i = offsets[country]; i < offsets[country + 1]; i++) {
+        int neighbour = neighbours[i];
+        if (context.visit(neighbour)) {
+          queue[tail++] = neighbour;
+          previous[neighbour] = country;
+          taxes[neighbour] = taxes[country] + graph.taxes[neighbour];
+        }
+      }
+    }
+    return new ShortestPathTree(source, previous, taxes);
+  }
+
+  /**
+   * Builds the tree of lowest-tax routes with Dijkstra's algorithm run to completion.
+   *
+   * @param graph the graph to search
+   * @param context reset scratch space big enough for the graph
+   * @param source the ID of the source country
+   * @return the tree
+   */
+  static ShortestPathTree cheapest(CountryGraph graph, SearchContext context, int source) {
+    context.ensureHeap();
+    int[] offsets = graph.offsets;
+    int[] neighbours = graph.neighbours;
+    int[] previous = new int[graph.size()];
+    int[] taxes = new int[graph.size()];
+    Arrays.fill(previous, -1);
+
+    IndexedMinHeap heap = context.heap;
+    context.visit(source);
+    previous[source] = source;
+    heap.pushOrDecrease(source, 0);
+
+    while (!heap.isEmpty()) {
+      int country = heap.poll();
+      for (int i = offsets[country]; i < offsets[country + 1]; i++) {
+        int next = neighbours[i];
+        int nextTax = taxes[country] + graph.taxes[next];
+        if (context.visit(next) || nextTax < taxes[next]) {
+          taxes[next] = nextTax;
+          previous[next] = country;
+          heap.pushOrDecrease(next, nextTax);
+        }
+      }
+    }
+    return new ShortestPathTree(source, previous, taxes);
+  }
+
+  /**
+   * Returns the ID of the country the routes start from.
+   *
+   * @return the source country
+   */
+  int source() {
+    return source;
+  }
+
+  /**
+   * Checks whether a destination can be reached from the source.
+   *
+   * @param destination the ID of the destination country
+   * @return true if there is a route
+   */
+  boolean reaches(int destination) {
+    return previous[destination] >= 0;
+  }
+
+  /**
+   * Reads the route to a destination out of the tree.
+   *
+   * @param destination the ID of the destination country
+   * @return the IDs of the countries on the route, or an empty array if there is no route
+   */
+  int[] path(int destination) {
+    if (!reaches(destination)) {
+      return BreadthFirstSearch.NO_PATH;
+    }
+    return BreadthFirstSearch.buildPath(previous, source, destination);
+  }
+
+  /**
+   * Returns the total tax of the route to a destination.
+   *
+   * @param destination the ID of the destination country
+   * @return the total tax, not counting the source country
+   */
+  int tax(int destination) {
+    return taxes[destination];
+  }
+}
@@ -0,0 +1,40 @@
+package nz.ac.auckland.se281;
+
+/**
+ * Lower bound on the tax still to pay to reach a destination, used to direct {@link
+ * WeightedSearch}.
+ *
+ * <p>An estimate must never be more than the real cheapest cost, otherwise the search may return
+ * a route that is not the cheapest.
+ */
+@FunctionalInterface
+interface TaxHeuristic {
+  /** Heuristic that estimates nothing, which turns the search into plain Dijkstra. */
+  TaxHeuristic NONE = (country, destination) -> 0;
+
+  /**
+   * Estimates the cheapest tax from a country to the destination.
+   *
+   * @param country the ID of the country the search has reached
+   * @param destination the ID of the destination country
+   * @return a lower bound on the tax from the country to the destination
+   */
+  int estimate(int country, int destination);
+
+  /**
+   * Returns the heuristic that only counts the destination's own tax.
+   *
+   * <p>Every route into the destination has to pay its tax on the last border, so this is always
+   * a valid lower bound. It adds the same amount to every country but the destination, though, so
+   * it does not change the order in which {@link WeightedSearch} settles them and the search
+   * expands as many countries as Dijkstra. Only a bound that varies between countries, such as
+   * {@link LandmarkOracle#taxHeuristic}, lets A* skip the ones that lead away from the destination.
+   *
+   * @param graph the graph being searched
+   * @return the heuristic
+   */
+  static TaxHeuristic destinationTax(CountryGraph graph) {
+    int[] taxes = graph.taxes;
+    return (country, destination) -> country == destination ? 0 : taxes[destination];
+  }
+}
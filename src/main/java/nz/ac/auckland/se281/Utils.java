@@ -3,6 +3,8 @@ package nz.ac.auckland.se281;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Scanner;
@@ -16,12 +18,71 @@ public class Utils {
 
   public static Scanner scanner = new Scanner(System.in);
 
+  private static final String COUNTRIES_FILE = "./src/main/resources/countries.csv";
+  private static final String ADJACENCIES_FILE = "./src/main/resources/adjacencies.csv";
+  private static final String ALIASES_FILE = "./src/main/resources/aliases.csv";
+  private static final String SNAPSHOT_FILE = "./target/map.%08x.snapshot";
+  private static final String HIERARCHY_FILE = "./target/map.%s.hierarchy";
+
   public static List<String> readCountries() {
-    return readCsv("./src/main/resources/countries.csv");
+    return readCsv(COUNTRIES_FILE);
   }
 
   public static List<String> readAdjacencies() {
-    return readCsv("./src/main/resources/adjacencies.csv");
+    return readCsv(ADJACENCIES_FILE);
+  }
+
+  /**
+   * Returns the countries file, which the {@code map.countries} system property can override.
+   *
+   * @return the path of the countries file
+   */
+  public static Path countriesFile() {
+    return Paths.get(System.getProperty("map.countries", COUNTRIES_FILE));
+  }
+
+  /**
+   * Returns the adjacencies file, which the {@code map.adjacencies} system property can override.
+   *
+   * @return the path of the adjacencies file
+   */
+  public static Path adjacenciesFile() {
+    return Paths.get(System.getProperty("map.adjacencies", ADJACENCIES_FILE));
+  }
+
+  /**
+   * Returns the file of other names for countries, which the {@code map.aliases} system property
+   * can override. The file does not have to exist.
+   *
+   * @return the path of the aliases file
+   */
+  public static Path aliasesFile() {
+    return Paths.get(System.getProperty("map.aliases", ALIASES_FILE));
+  }
+
+  /**
+   * Returns the file a snapshot of the map is kept in. It is named after the countries and
+   * adjacencies files, so that maps loaded from different files do not overwrite each other's
+   * snapshot.
+   *
+   * @return the path of the snapshot file
+   */
+  public static Path snapshotFile() {
+    String sources =
+        countriesFile().toAbsolutePath().normalize()
+            + "\n"
+            + adjacenciesFile().toAbsolutePath().normalize();
+    return Paths.get(String.format(SNAPSHOT_FILE, sources.hashCode()));
+  }
+
+  /**
+   * Returns the file a contraction hierarchy of the map is kept in.
+   *
+   * @param weight what the routes of the hierarchy cost, e.g. "borders" or "tax"
+   * @return the path of the hierarchy file
+   */
+  public static Path hierarchyFile(String weight) {
+    return Paths.get(String.format(HIERARCHY_FILE, weight));
   }
 
   /**
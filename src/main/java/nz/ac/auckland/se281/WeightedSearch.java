@@ -0,0 +1,74 @@
+package nz.ac.auckland.se281;
+
+/**
+ * Cheapest-route search over a {@link CountryGraph}, where crossing a border costs the tax of the
+ * country it leads into.
+ *
+ * <p>With {@link TaxHeuristic#NONE} this is Dijkstra's algorithm. With any other admissible
+ * heuristic it is A*, which settles countries in order of cost so far plus estimated cost to go.
+ * That only saves work when the estimate differs between countries: a bound that is the same
+ * everywhere, such as {@link TaxHeuristic#destinationTax}, settles the same countries as Dijkstra,
+ * while the landmark bound of {@link LandmarkOracle#taxHeuristic} steers the search towards the
+ * destination. Priorities are kept in an {@link IndexedMinHeap}, so a search does not box or
+ * allocate anything apart from its result.
+ *
+ * <p>Among routes with the same total tax, the one found first wins. Dijkstra and A* may pick
+ * different routes in that case, but always with the same cost.
+ */
+class WeightedSearch {
+
+  private WeightedSearch() {}
+
+  /**
+   * Finds the route with the lowest total tax between two countries.
+   *
+   * @param graph the graph to search
+   * @param context reset scratch space big enough for the graph
+   * @param start the ID of the start country
+   * @param destination the ID of the destination country
+   * @param heuristic lower bound on the remaining tax, or {@link TaxHeuristic#NONE}
+   * @return the IDs of the countries on the route, or an empty array if there is no route
+   */
+  static int[] findPath(
+      CountryGraph graph,
+      SearchContext context,
+      int start,
+      int destination,
+      TaxHeuristic heuristic) {
+    context.ensureHeap();
+    int[] offsets = graph.offsets;
+    int[] neighbours = graph.neighbours;
+    int[] taxes = graph.taxes;
+
+    int[] cost = context.distance;
+    int[] parent = context.parent;
+    IndexedMinHeap heap = context.heap;
+
+    context.visit(start);
+    cost[start] = 0;
+    parent[start] = start;
+    heap.pushOrDecrease(start, heuristic.estimate(start, destination));
+
+    while (!heap.isEmpty()) {
+      int country = heap.poll();
+      if (country == destination) {
+        heap.clear();
+        return BreadthFirstSearch.buildPath(parent, start, destination);
+      }
+
+      for (int i = offsets[country]; i < offsets[country + 1]; i++) {
+        int next = neighbours[i];
+        int nextCost = cost[country] + taxes[next];
+        // A country is only queued again if this route into it is strictly cheaper. With a
+        // consistent heuristic that never happens once a country has been polled.
+        if (context.visit(next) || nextCost < cost[next]) {
+          cost[next] = nextCost;
+          parent[next] = country;
+          heap.pushOrDecrease(next, nextCost + heuristic.estimate(next, destination));
+        }
+      }
+      context.noteQueued(heap.size());
+    }
+    return BreadthFirstSearch.NO_PATH;
+  }
+}
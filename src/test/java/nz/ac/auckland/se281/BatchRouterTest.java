@@ -0,0 +1,95 @@
+package nz.ac.auckland.se281;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import org.junit.Test;
+
+public class BatchRouterTest {
+  private static final String NEW_LINE = System.lineSeparator();
+
+  private static BatchRouter router() {
+    GraphBuilder builder = new GraphBuilder();
+    int india = builder.addCountry("India", "Asia", 1);
+    int china = builder.addCountry("China", "Asia", 2);
+    int russia = builder.addCountry("Russia", "Europe", 3);
+    builder.addCountry("Iceland", "Europe", 4);
+    builder.addBorder(india, china);
+    builder.addBorder(china, india);
+    builder.addBorder(china, russia);
+    builder.addBorder(russia, china);
+    return new BatchRouter(new MapEngine(builder.build()).queries(), RouteMode.BREADTH_FIRST);
+  }
+
+  @Test
+  public void route_is_answered_like_the_route_command() {
+    assertEquals(
+        MessageCli.ROUTE_INFO.getMessage("[India, China, Russia]")
+            + NEW_LINE
+            + MessageCli.CONTINENT_INFO.getMessage("[Asia, Europe]")
+            + NEW_LINE
+            + MessageCli.TAX_INFO.getMessage("5")
+            + NEW_LINE,
+        router().answer("india,russia"));
+  }
+
+  @Test
+  public void unknown_country_is_named_in_the_error() {
+    BatchRouter router = router();
+    assertEquals(
+        MessageCli.INVALID_COUNTRY.getMessage("Atlantis") + NEW_LINE,
+        router.answer("atlantis,India"));
+    assertEquals(
+        MessageCli.INVALID_COUNTRY.getMessage("New Atlantis") + NEW_LINE,
+        router.answer("India,new atlantis"));
+    // Written out as is, not read as a regular expression replacement.
+    assertEquals(
+        "ERROR! This country was not found: $1 \\, try again!" + NEW_LINE,
+        router.answer("India,$1 \\"));
+  }
+
+  @Test
+  public void same_country_twice_needs_no_travel() {
+    assertEquals(
+        MessageCli.NO_CROSSBORDER_TRAVEL.getMessage() + NEW_LINE, router().answer("India,india"));
+  }
+
+  @Test
+  public void unreachable_country_has_no_path() {
+    assertEquals(
+        "No path found from India to Iceland" + NEW_LINE, router().answer("India,Iceland"));
+  }
+
+  @Test
+  public void missing_comma_is_a_wrong_argument_count() {
+    assertEquals(
+        MessageCli.WRONG_ARGUMENT_COUNT.getMessage("2", "s", Main.Command.ROUTE.toString())
+            + NEW_LINE,
+        router().answer("India Russia"));
+  }
+
+  @Test
+  public void answers_keep_input_order_across_blocks() throws IOException {
+    String[] queries = {"India,Russia", "Russia,India", "China,China", "India,Atlantis", "Iceland"};
+    BatchRouter router = router();
+    StringBuilder input = new StringBuilder();
+    StringBuilder expected = new StringBuilder();
+    // Over two blocks of queries, with blank lines that are skipped in between.
+    int count = 40_000;
+    for (int i = 0; i < count; i++) {
+      String query = queries[i % queries.length];
+      input.append(query).append('\n');
+      if (i % 7 == 0) {
+        input.append("\n");
+      }
+      expected.append(router.answer(query));
+    }
+
+    StringWriter out = new StringWriter();
+    assertEquals(count, router.run(new BufferedReader(new StringReader(input.toString())), out));
+    assertEquals(expected.toString(), out.toString());
+  }
+}
@@ -0,0 +1,43 @@
+package nz.ac.auckland.se281;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Test;
+
+public class BidirectionalSearchTest {
+  private static final int SIZE = 150;
+
+  private static void assertSameRoutes(CountryGraph graph) {
+    SearchContext context = new SearchContext(graph.size(), graph.continentCount());
+    for (int start = 0; start < graph.size(); start++) {
+      for (int destination = 0; destination < graph.size(); destination++) {
+        context.reset();
+        int[] expected = BreadthFirstSearch.findPath(graph, context, start, destination);
+        context.reset();
+        assertArrayEquals(
+            "from " + start + " to " + destination,
+            expected,
+            BidirectionalSearch.findPath(graph, context, start, destination));
+      }
+    }
+  }
+
+  @Test
+  public void finds_the_breadth_first_route_between_every_pair() {
+    for (long seed = 0; seed < 3; seed++) {
+      assertSameRoutes(RandomMaps.generate(SIZE, 2 * SIZE, seed));
+    }
+  }
+
+  @Test
+  public void finds_the_breadth_first_route_on_sparse_maps_with_long_routes() {
+    for (long seed = 0; seed < 3; seed++) {
+      assertSameRoutes(RandomMaps.generate(SIZE, SIZE, seed));
+    }
+  }
+
+  @Test
+  public void finds_the_breadth_first_route_on_dense_maps_with_many_ties() {
+    assertSameRoutes(RandomMaps.generate(SIZE, 8 * SIZE, 281));
+  }
+}
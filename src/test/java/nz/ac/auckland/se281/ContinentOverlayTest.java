@@ -0,0 +1,88 @@
+package nz.ac.auckland.se281;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class ContinentOverlayTest {
+  private static final int CONTINENTS = 6;
+  private static final int CONTINENT_SIZE = 40;
+
+  /**
+   * Builds continents that are each a connected cluster of countries, joined to each other by a
+   * couple of random borders. The last continent has no borders out, so it cannot be reached.
+   */
+  private static CountryGraph continents(long seed) {
+    Random random = new Random(seed);
+    GraphBuilder builder = new GraphBuilder();
+    for (int i = 0; i < CONTINENTS * CONTINENT_SIZE; i++) {
+      builder.addCountry("C" + i, "Continent " + i / CONTINENT_SIZE, 1);
+    }
+    for (int continent = 0; continent < CONTINENTS; continent++) {
+      int first = continent * CONTINENT_SIZE;
+      for (int i = 1; i < CONTINENT_SIZE; i++) {
+        addBorder(builder, first + i, first + random.nextInt(i));
+      }
+      for (int i = 0; i < CONTINENT_SIZE; i++) {
+        addBorder(builder, first + random.nextInt(CONTINENT_SIZE), first + random.nextInt(i + 1));
+      }
+    }
+    for (int continent = 0; continent < CONTINENTS - 1; continent++) {
+      for (int i = 0; i < 2; i++) {
+        int other = (continent + 1 + random.nextInt(CONTINENTS - 2)) % (CONTINENTS - 1);
+        addBorder(
+            builder,
+            continent * CONTINENT_SIZE + random.nextInt(CONTINENT_SIZE),
+            other * CONTINENT_SIZE + random.nextInt(CONTINENT_SIZE));
+      }
+    }
+    return builder.build();
+  }
+
+  private static void addBorder(GraphBuilder builder, int from, int to) {
+    if (from != to) {
+      builder.addBorder(from, to);
+      builder.addBorder(to, from);
+    }
+  }
+
+  private static void assertSameRoutes(CountryGraph graph, ContinentOverlay overlay) {
+    SearchContext context = new SearchContext(graph.size(), graph.continentCount());
+    for (int start = 0; start < graph.size(); start++) {
+      for (int destination = 0; destination < graph.size(); destination++) {
+        context.reset();
+        int[] expected = BreadthFirstSearch.findPath(graph, context, start, destination);
+        context.reset();
+        assertArrayEquals(expected, overlay.findPath(context, start, destination));
+      }
+    }
+  }
+
+  @Test
+  public void overlay_finds_the_breadth_first_route_between_every_pair() {
+    for (long seed = 0; seed < 3; seed++) {
+      CountryGraph graph = continents(seed);
+      assertTrue(ContinentOverlay.fits(graph));
+      assertSameRoutes(graph, new ContinentOverlay(graph));
+    }
+  }
+
+  @Test
+  public void overlay_is_kept_for_tax_edits_only() {
+    CountryGraph graph = continents(281);
+    ContinentOverlay overlay = new ContinentOverlay(graph);
+
+    MapUpdate.Result taxes = new MapUpdate().setTax(graph.names[0], 7).applyTo(graph);
+    ContinentOverlay updated = overlay.forUpdate(taxes.graph, taxes);
+    assertNotNull(updated);
+    assertSameRoutes(taxes.graph, updated);
+
+    MapUpdate.Result border =
+        new MapUpdate().addBorder(graph.names[0], graph.names[graph.size() - 1]).applyTo(graph);
+    assertNull(overlay.forUpdate(border.graph, border));
+  }
+}
@@ -0,0 +1,147 @@
+package nz.ac.auckland.se281;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.Test;
+
+public class ContractionHierarchyTest {
+  private static final int SIZE = 120;
+
+  private static int cost(CountryGraph graph, ContractionHierarchy.Weight weight, int[] path) {
+    if (weight == ContractionHierarchy.Weight.BORDERS) {
+      return path.length - 1;
+    }
+    int total = 0;
+    for (int i = 1; i < path.length; i++) {
+      total += graph.taxes[path[i]];
+    }
+    return total;
+  }
+
+  private static boolean borders(CountryGraph graph, int from, int to) {
+    for (int i = graph.offsets[from]; i < graph.offsets[from + 1]; i++) {
+      if (graph.neighbours[i] == to) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Checks that the hierarchy finds a route of borders between every pair that a plain search
+   * connects, as short as breadth-first search finds or as cheap as Dijkstra finds.
+   */
+  private static void assertShortest(CountryGraph graph, ContractionHierarchy hierarchy) {
+    ContractionHierarchy.Weight weight = hierarchy.weight();
+    SearchContext context = new SearchContext(graph.size(), graph.continentCount());
+    for (int from = 0; from < graph.size(); from++) {
+      for (int to = 0; to < graph.size(); to++) {
+        context.reset();
+        int[] expected =
+            weight == ContractionHierarchy.Weight.TAX
+                ? WeightedSearch.findPath(graph, context, from, to, TaxHeuristic.NONE)
+                : BreadthFirstSearch.findPath(graph, context, from, to);
+        context.reset();
+        int[] path = hierarchy.findPath(context, from, to);
+        String pair = weight + " from " + from + " to " + to;
+        assertEquals(pair, expected.length == 0, path.length == 0);
+        if (path.length == 0) {
+          continue;
+        }
+        assertEquals(pair, from, path[0]);
+        assertEquals(pair, to, path[path.length - 1]);
+        for (int i = 1; i < path.length; i++) {
+          assertTrue(pair, borders(graph, path[i - 1], path[i]));
+        }
+        assertEquals(pair, cost(graph, weight, expected), cost(graph, weight, path));
+      }
+    }
+  }
+
+  @Test
+  public void hierarchy_finds_the_shortest_route_between_every_pair() {
+    for (long seed = 0; seed < 3; seed++) {
+      CountryGraph graph = RandomMaps.generate(SIZE, 2 * SIZE, seed);
+      for (ContractionHierarchy.Weight weight : ContractionHierarchy.Weight.values()) {
+        assertShortest(graph, new HierarchyBuilder(graph, weight).build());
+      }
+    }
+  }
+
+  @Test
+  public void dense_core_is_left_uncontracted_and_searched_directly() {
+    CountryGraph graph = RandomMaps.generate(SIZE, 8 * SIZE, 281);
+    for (ContractionHierarchy.Weight weight : ContractionHierarchy.Weight.values()) {
+      ContractionHierarchy withCore = new HierarchyBuilder(graph, weight).build();
+      assertTrue(withCore.coreSize() > 0);
+      assertShortest(graph, withCore);
+
+      ContractionHierarchy allCore = new HierarchyBuilder(graph, weight, 0).build();
+      assertEquals(SIZE, allCore.coreSize());
+      assertShortest(graph, allCore);
+
+      ContractionHierarchy noCore =
+          new HierarchyBuilder(graph, weight, Integer.MAX_VALUE).build();
+      assertEquals(0, noCore.coreSize());
+      assertShortest(graph, noCore);
+    }
+  }
+
+  @Test
+  public void hierarchy_read_back_is_the_one_written() throws Exception {
+    CountryGraph graph = RandomMaps.generate(SIZE, 8 * SIZE, 281);
+    ContractionHierarchy.Weight tax = ContractionHierarchy.Weight.TAX;
+    ContractionHierarchy hierarchy = new HierarchyBuilder(graph, tax).build();
+    Path file = Files.createTempFile("map", ".hierarchy");
+    try {
+      hierarchy.write(file);
+      ContractionHierarchy read = ContractionHierarchy.read(file, graph, tax);
+      assertNotNull(read);
+      assertEquals(hierarchy.shortcutCount(), read.shortcutCount());
+      assertEquals(hierarchy.coreSize(), read.coreSize());
+      assertShortest(graph, read);
+
+      // A hierarchy by tax is only read back for a map with the same taxes.
+      CountryGraph edited = new MapUpdate().setTax("C0", 7).applyTo(graph).graph;
+      assertNull(ContractionHierarchy.read(file, edited, tax));
+      assertNull(ContractionHierarchy.read(file, graph, ContractionHierarchy.Weight.BORDERS));
+
+      // Flip a byte in the middle, among the shortcuts.
+      try (FileChannel channel =
+          FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        ByteBuffer middle = ByteBuffer.allocate(1);
+        long position = channel.size() / 2;
+        channel.read(middle, position);
+        middle.put(0, (byte) ~middle.get(0));
+        channel.write(middle.rewind(), position);
+      }
+      assertNull(ContractionHierarchy.read(file, graph, tax));
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  @Test
+  public void engine_builds_dropped_hierarchies_again_in_the_background() throws Exception {
+    MapEngine engine = new MapEngine(RandomMaps.generate(SIZE, 2 * SIZE, 281));
+    engine.useContractionHierarchies();
+
+    engine.update(new MapUpdate().addBorder("C0", "C1"));
+    engine.awaitIndexes();
+    CountryGraph graph = engine.queries().graph();
+    ContractionHierarchy[] hierarchies = engine.queries().hierarchies();
+    for (ContractionHierarchy.Weight weight : ContractionHierarchy.Weight.values()) {
+      ContractionHierarchy hierarchy = hierarchies[weight.ordinal()];
+      assertNotNull(hierarchy);
+      assertShortest(graph, hierarchy);
+    }
+  }
+}
@@ -0,0 +1,26 @@
+package nz.ac.auckland.se281;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/** Compares maps loaded in different ways, e.g. from a snapshot and from the CSV files. */
+final class GraphAsserts {
+  private GraphAsserts() {}
+
+  /**
+   * Checks that two maps have the same countries, continents, taxes and borders, in the same
+   * order.
+   *
+   * @param expected the map as it should be
+   * @param actual the map to check
+   */
+  static void assertSameGraph(CountryGraph expected, CountryGraph actual) {
+    assertArrayEquals("names", expected.names, actual.names);
+    assertArrayEquals("continent names", expected.continentNames, actual.continentNames);
+    assertArrayEquals("continents", expected.continentIds, actual.continentIds);
+    assertArrayEquals("taxes", expected.taxes, actual.taxes);
+    assertArrayEquals("offsets", expected.offsets, actual.offsets);
+    assertArrayEquals("neighbours", expected.neighbours, actual.neighbours);
+    assertArrayEquals("reverse offsets", expected.reverseOffsets, actual.reverseOffsets);
+    assertArrayEquals("reverse neighbours", expected.reverseNeighbours, actual.reverseNeighbours);
+  }
+}
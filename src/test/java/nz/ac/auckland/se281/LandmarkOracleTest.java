@@ -0,0 +1,137 @@
+package nz.ac.auckland.se281;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LandmarkOracleTest {
+  private static final int SIZE = 120;
+  private static final int LANDMARKS = 6;
+
+  /** The borders or tax of every shortest route, or -1 where there is none. */
+  private static int[][] distances(CountryGraph graph, ContractionHierarchy.Weight weight) {
+    SearchContext context = new SearchContext(graph.size(), graph.continentCount());
+    int[][] distances = new int[graph.size()][graph.size()];
+    for (int from = 0; from < graph.size(); from++) {
+      context.reset();
+      ShortestPathTree tree =
+          weight == ContractionHierarchy.Weight.TAX
+              ? ShortestPathTree.cheapest(graph, context, from)
+              : ShortestPathTree.breadthFirst(graph, context, from);
+      for (int to = 0; to < graph.size(); to++) {
+        if (!tree.reaches(to)) {
+          distances[from][to] = -1;
+        } else if (weight == ContractionHierarchy.Weight.TAX) {
+          distances[from][to] = tree.tax(to);
+        } else {
+          distances[from][to] = tree.path(to).length - 1;
+        }
+      }
+    }
+    return distances;
+  }
+
+  private static void assertBounds(CountryGraph graph, LandmarkOracle landmarks) {
+    for (ContractionHierarchy.Weight weight : ContractionHierarchy.Weight.values()) {
+      int[][] distances = distances(graph, weight);
+      for (int from = 0; from < graph.size(); from++) {
+        for (int to = 0; to < graph.size(); to++) {
+          int lower = landmarks.lowerBound(weight, from, to);
+          int upper = landmarks.upperBound(weight, from, to);
+          int distance = distances[from][to];
+          if (distance < 0) {
+            assertEquals(Integer.MAX_VALUE, upper);
+          } else {
+            assertTrue(weight + " lower bound " + from + " to " + to, lower <= distance);
+            assertTrue(weight + " upper bound " + from + " to " + to, distance <= upper);
+          }
+        }
+      }
+    }
+  }
+
+  private static int tax(CountryGraph graph, int[] path) {
+    int total = 0;
+    for (int i = 1; i < path.length; i++) {
+      total += graph.taxes[path[i]];
+    }
+    return total;
+  }
+
+  private static void assertCheapest(CountryGraph graph, TaxHeuristic heuristic) {
+    SearchContext context = new SearchContext(graph.size(), graph.continentCount());
+    for (int from = 0; from < graph.size(); from++) {
+      for (int to = 0; to < graph.size(); to++) {
+        context.reset();
+        int[] dijkstra = WeightedSearch.findPath(graph, context, from, to, TaxHeuristic.NONE);
+        context.reset();
+        int[] path = WeightedSearch.findPath(graph, context, from, to, heuristic);
+        assertEquals(dijkstra.length == 0, path.length == 0);
+        assertEquals("tax from " + from + " to " + to, tax(graph, dijkstra), tax(graph, path));
+      }
+    }
+  }
+
+  @Test
+  public void bounds_hold_between_every_pair() {
+    for (long seed = 0; seed < 3; seed++) {
+      CountryGraph graph = RandomMaps.generate(SIZE, 2 * SIZE, seed);
+      assertBounds(graph, new LandmarkOracle(graph, LANDMARKS));
+    }
+  }
+
+  @Test
+  public void a_star_with_landmarks_finds_the_cheapest_tax() {
+    for (long seed = 0; seed < 3; seed++) {
+      CountryGraph graph = RandomMaps.generate(SIZE, 2 * SIZE, seed);
+      assertCheapest(graph, new LandmarkOracle(graph, LANDMARKS).taxHeuristic());
+    }
+  }
+
+  @Test
+  public void raised_taxes_keep_the_landmarks_as_lower_bounds() {
+    CountryGraph graph = RandomMaps.generate(SIZE, 2 * SIZE, 281);
+    LandmarkOracle landmarks = new LandmarkOracle(graph, LANDMARKS);
+    MapUpdate update = new MapUpdate();
+    for (int id = 0; id < graph.size(); id += 7) {
+      update.setTax(graph.names[id], graph.taxes[id] + 5);
+    }
+    MapUpdate.Result result = update.applyTo(graph);
+
+    LandmarkOracle kept = landmarks.forUpdate(result.graph, result);
+    assertNotNull(kept);
+    assertArrayEquals(landmarks.landmarks(), kept.landmarks());
+    assertBounds(result.graph, kept);
+    assertCheapest(result.graph, kept.taxHeuristic());
+  }
+
+  @Test
+  public void lowered_tax_or_border_edit_drops_the_landmarks() {
+    CountryGraph graph = RandomMaps.generate(SIZE, 2 * SIZE, 281);
+    LandmarkOracle landmarks = new LandmarkOracle(graph, LANDMARKS);
+    int country = graph.taxes[0] > 1 ? 0 : 1;
+
+    MapUpdate.Result lowered =
+        new MapUpdate().setTax(graph.names[country], 0).applyTo(graph);
+    assertNull(landmarks.forUpdate(lowered.graph, lowered));
+    MapUpdate.Result border = new MapUpdate().addBorder("C0", "C1").applyTo(graph);
+    assertNull(landmarks.forUpdate(border.graph, border));
+  }
+
+  @Test
+  public void engine_picks_dropped_landmarks_again_in_the_background() throws Exception {
+    MapEngine engine = new MapEngine(RandomMaps.generate(SIZE, 2 * SIZE, 281));
+    engine.useLandmarks(LANDMARKS);
+    assertNotNull(engine.queries().landmarks());
+
+    engine.update(new MapUpdate().addBorder("C0", "C1"));
+    engine.awaitIndexes();
+    LandmarkOracle landmarks = engine.queries().landmarks();
+    assertNotNull(landmarks);
+    assertBounds(engine.queries().graph(), landmarks);
+  }
+}
@@ -1,5 +1,6 @@
 package nz.ac.auckland.se281;
 
+import static nz.ac.auckland.se281.ExtraMessageCli.*;
 import static nz.ac.auckland.se281.Main.Command.*;
 import static nz.ac.auckland.se281.MessageCli.*;
 
@@ -11,7 +12,15 @@ import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
-@SuiteClasses({MainTest.Task1.class, MainTest.Task2.class})
+@SuiteClasses({
+  MainTest.Task1.class,
+  MainTest.Task2.class,
+  MainTest.Task3.class,
+  MainTest.Task4.class,
+  MainTest.Task5.class,
+  MainTest.Task6.class,
+  MainTest.Task7.class
+})
 public class MainTest {
 
   @FixMethodOrder(MethodSorters.NAME_ASCENDING)
@@ -65,6 +74,31 @@ public class MainTest {
       assertContains(COUNTRY_INFO.getMessage("Siam", "Asia", "9"));
       assertContains(COUNTRY_INFO.getMessage("Madagascar", "Africa", "4"));
     }
+
+    @Test
+    public void T1_07_info_wrong_input_suggests_close_names() throws Exception {
+      runCommands(INFO_COUNTRY, "Indai", "brazli", "India");
+      assertContains(INVALID_COUNTRY.getMessage("Indai"));
+      assertContains(SUGGESTED_COUNTRIES.getMessage("India"));
+      assertContains(INVALID_COUNTRY.getMessage("Brazli"));
+      assertContains(SUGGESTED_COUNTRIES.getMessage("Brazil"));
+      assertContains(COUNTRY_INFO.getMessage("India", "Asia", "3"));
+    }
+
+    @Test
+    public void T1_08_info_wrong_input_far_from_every_name() throws Exception {
+      runCommands(INFO_COUNTRY, "Atlantis", "India");
+      assertContains(INVALID_COUNTRY.getMessage("Atlantis"));
+      assertDoesNotContain("Did you mean");
+      assertContains(COUNTRY_INFO.getMessage("India", "Asia", "3"));
+    }
+
+    @Test
+    public void T1_09_info_wrong_input_with_dollar_sign() throws Exception {
+      runCommands(INFO_COUNTRY, "Atlantis $1", "India");
+      assertContains("ERROR! This country was not found: Atlantis $1, try again!");
+      assertContains(COUNTRY_INFO.getMessage("India", "Asia", "3"));
+    }
   }
 
   @FixMethodOrder(MethodSorters.NAME_ASCENDING)
@@ -180,4 +214,180 @@ public class MainTest {
       assertDoesNotContain("You will spend this amount ");
     }
   }
+
+  @FixMethodOrder(MethodSorters.NAME_ASCENDING)
+  public static class Task3 extends CliTest {
+
+    public Task3() {
+      super(Main.class);
+    }
+
+    @Test
+    public void T3_01_cheapest_same_as_fastest() throws Exception {
+      runCommands(ROUTE_CHEAPEST, "Japan", "Mongolia");
+      assertContains(CHEAPEST_ROUTE_INFO.getMessage("[Japan, Mongolia]"));
+      assertContains(TAX_INFO.getMessage("8"));
+    }
+
+    @Test
+    public void T3_02_cheapest_longer_than_fastest() throws Exception {
+      runCommands(ROUTE_CHEAPEST, "Ural", "Venezuela");
+      assertContains(
+          CHEAPEST_ROUTE_INFO.getMessage(
+              "[Ural, Afghanistan, Middle East, East Africa, North Africa, Brazil, Venezuela]"));
+      assertContains(CONTINENT_INFO.getMessage("[Asia, Africa, South America]"));
+      assertContains(TAX_INFO.getMessage("20"));
+    }
+
+    @Test
+    public void T3_03_cheapest_incorrect_input() throws Exception {
+      runCommands(ROUTE_CHEAPEST, "inDiA", "India", "Siam");
+      assertContains(INVALID_COUNTRY.getMessage("InDiA"));
+      assertContains(CHEAPEST_ROUTE_INFO.getMessage("[India, Siam]"));
+    }
+
+    @Test
+    public void T3_04_cheapest_no_crossborder() throws Exception {
+      runCommands(ROUTE_CHEAPEST, "Egypt", "Egypt");
+      assertContains(NO_CROSSBORDER_TRAVEL.getMessage());
+      assertDoesNotContain("The cheapest route is: ");
+    }
+  }
+
+  @FixMethodOrder(MethodSorters.NAME_ASCENDING)
+  public static class Task4 extends CliTest {
+
+    public Task4() {
+      super(Main.class);
+    }
+
+    @Test
+    public void T4_01_route_from_many() throws Exception {
+      runCommands(ROUTE_FROM, "India", "Siam, China, Egypt");
+      assertContains(ROUTE_INFO.getMessage("[India, Siam]"));
+      assertContains(ROUTE_INFO.getMessage("[India, China]"));
+      assertContains(ROUTE_INFO.getMessage("[India, Middle East, Egypt]"));
+      assertContains(CONTINENT_INFO.getMessage("[Asia, Africa]"));
+      assertContains(TAX_INFO.getMessage("10"));
+    }
+
+    @Test
+    public void T4_02_route_from_same_as_route() throws Exception {
+      runCommands(ROUTE_FROM, "ural", "venezuela,eastern australia");
+      assertContains(
+          ROUTE_INFO.getMessage(
+              "[Ural, Ukraine, Southern Europe, North Africa, Brazil, Venezuela]"));
+      assertContains(TAX_INFO.getMessage("21"));
+      assertContains(
+          ROUTE_INFO.getMessage("[Ural, China, Siam, Indonesia, New Guinea, Eastern Australia]"));
+    }
+
+    @Test
+    public void T4_03_route_from_skips_invalid() throws Exception {
+      runCommands(ROUTE_FROM, "hello", "Japan", "world, Mongolia, Japan");
+      assertContains(INVALID_COUNTRY.getMessage("Hello"));
+      assertContains(INVALID_COUNTRY.getMessage("World"));
+      assertContains(ROUTE_INFO.getMessage("[Japan, Mongolia]"));
+      assertContains(NO_CROSSBORDER_TRAVEL.getMessage());
+    }
+  }
+
+  @FixMethodOrder(MethodSorters.NAME_ASCENDING)
+  public static class Task5 extends CliTest {
+
+    public Task5() {
+      super(Main.class);
+    }
+
+    @Test
+    public void T5_01_stats_after_route() throws Exception {
+      runCommands(ROUTE, "Japan", "Mongolia", STATS);
+      assertContains("command.route_ns: count=1");
+      assertContains("search.breadth_first.visited: count=1");
+      assertContains("load.total_ns: count=1");
+      assertContains("map.countries = 42");
+    }
+
+    @Test
+    public void T5_02_stats_count_every_search() throws Exception {
+      runCommands(ROUTE_CHEAPEST, "Ural", "Venezuela", ROUTE_CHEAPEST, "Japan", "Alaska", STATS);
+      assertContains("command.route_cheapest_ns: count=2");
+      assertContains("search.cheapest_a_star.time_ns: count=2");
+      assertContains("search.breadth_first.visited: count=0");
+    }
+  }
+
+  @FixMethodOrder(MethodSorters.NAME_ASCENDING)
+  public static class Task6 extends CliTest {
+
+    public Task6() {
+      super(Main.class);
+    }
+
+    @Test
+    public void T6_01_alternatives_fewest_borders_first() throws Exception {
+      runCommands(ROUTE_ALTERNATIVES, "India", "Egypt", "4");
+      assertContains(ALTERNATIVE_ROUTE_INFO.getMessage("1", "[India, Middle East, Egypt]"));
+      assertContains(
+          ALTERNATIVE_ROUTE_INFO.getMessage("2", "[India, Afghanistan, Middle East, Egypt]"));
+      assertContains(
+          ALTERNATIVE_ROUTE_INFO.getMessage("3", "[India, Middle East, East Africa, Egypt]"));
+      assertContains(
+          ALTERNATIVE_ROUTE_INFO.getMessage("4", "[India, Middle East, Southern Europe, Egypt]"));
+      assertContains(CONTINENT_INFO.getMessage("[Asia, Europe, Africa]"));
+      assertContains(TAX_INFO.getMessage("15"));
+      assertDoesNotContain(ALTERNATIVE_ROUTE_INFO.getMessage("5", ""));
+    }
+
+    @Test
+    public void T6_02_alternatives_cheapest_first() throws Exception {
+      runCommands(ROUTE_CHEAPEST_ALTERNATIVES, "ural", "venezuela", "lots", "2");
+      assertContains(INVALID_ROUTE_COUNT.getMessage("lots"));
+      assertContains(
+          ALTERNATIVE_ROUTE_INFO.getMessage(
+              "1",
+              "[Ural, Afghanistan, Middle East, East Africa, North Africa, Brazil, Venezuela]"));
+      assertContains(TAX_INFO.getMessage("20"));
+      assertContains(TAX_INFO.getMessage("21"));
+      assertDoesNotContain(ALTERNATIVE_ROUTE_INFO.getMessage("3", ""));
+    }
+
+    @Test
+    public void T6_03_alternatives_no_crossborder() throws Exception {
+      runCommands(ROUTE_ALTERNATIVES, "Japan", "Japan", "3");
+      assertContains(NO_CROSSBORDER_TRAVEL.getMessage());
+      assertDoesNotContain(ALTERNATIVE_ROUTE_INFO.getMessage("1", ""));
+    }
+  }
+
+  @FixMethodOrder(MethodSorters.NAME_ASCENDING)
+  public static class Task7 extends CliTest {
+
+    public Task7() {
+      super(Main.class);
+    }
+
+    @Test
+    public void T7_01_avoiding_a_country() throws Exception {
+      runCommands(ROUTE_AVOIDING, "India", "Egypt", "Middle East", "", "");
+      assertContains(
+          ROUTE_INFO.getMessage("[India, Afghanistan, Ukraine, Southern Europe, Egypt]"));
+      assertContains(TAX_INFO.getMessage("15"));
+    }
+
+    @Test
+    public void T7_02_avoiding_a_continent_and_an_invalid_name() throws Exception {
+      runCommands(ROUTE_AVOIDING, "India", "Egypt", "middle east, europe, Atlantis", "", "");
+      assertContains(INVALID_COUNTRY.getMessage("Atlantis"));
+      assertContains(CONTINENT_INFO.getMessage("[Asia, North America, South America, Africa]"));
+      assertContains(TAX_INFO.getMessage("44"));
+    }
+
+    @Test
+    public void T7_03_avoiding_over_budget() throws Exception {
+      runCommands(ROUTE_AVOIDING, "India", "Egypt", "Middle East", "3", "lots", "");
+      assertContains(INVALID_LIMIT.getMessage("lots"));
+      assertContains("No path found from India to Egypt");
+    }
+  }
 }
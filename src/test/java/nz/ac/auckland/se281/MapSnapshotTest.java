@@ -0,0 +1,133 @@
+package nz.ac.auckland.se281;
+
+import static nz.ac.auckland.se281.GraphAsserts.assertSameGraph;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MapSnapshotTest {
+  private static final String COUNTRIES = "India,Asia,1\nChina,Asia,2\nRussia,Europe,3\n";
+  private static final String ADJACENCIES = "India,China\nChina,India,Russia\nRussia,China\n";
+
+  private Path directory;
+  private Path countries;
+  private Path adjacencies;
+  private Path snapshot;
+
+  @Before
+  public void writeFiles() throws IOException {
+    directory = Files.createTempDirectory("map-snapshot");
+    countries = directory.resolve("countries.csv");
+    adjacencies = directory.resolve("adjacencies.csv");
+    snapshot = directory.resolve("map.snapshot");
+    Files.writeString(countries, COUNTRIES);
+    Files.writeString(adjacencies, ADJACENCIES);
+  }
+
+  @After
+  public void deleteFiles() throws IOException {
+    for (Path file : List.of(countries, adjacencies, snapshot, directory)) {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  private CountryGraph load(Metrics metrics) throws IOException {
+    return MapSnapshot.load(countries, adjacencies, snapshot, null, metrics);
+  }
+
+  private CountryGraph parse() throws IOException {
+    return CountryGraph.fromCsv(Files.readAllLines(countries), Files.readAllLines(adjacencies));
+  }
+
+  private long[] stamp() throws IOException {
+    return MapSnapshot.sourceStamp(countries, adjacencies);
+  }
+
+  /** Overwrites bytes of the snapshot in place. */
+  private void overwrite(long position, byte[] bytes) throws IOException {
+    try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(bytes), position);
+    }
+  }
+
+  private static long parses(Metrics metrics) {
+    return metrics.histogram("load.parse_ns").count();
+  }
+
+  @Test
+  public void snapshot_is_written_and_read_back() throws IOException {
+    Metrics metrics = new Metrics();
+    assertSameGraph(parse(), load(metrics));
+    assertEquals(1, parses(metrics));
+
+    CountryGraph read = MapSnapshot.read(snapshot, stamp());
+    assertNotNull(read);
+    assertSameGraph(parse(), read);
+    assertSameGraph(parse(), load(metrics));
+    assertEquals(1, parses(metrics));
+  }
+
+  @Test
+  public void snapshot_is_stale_once_a_csv_file_changes() throws IOException {
+    Metrics metrics = new Metrics();
+    load(metrics);
+
+    // The same size, so only the checksum tells the files apart.
+    Files.writeString(countries, COUNTRIES.replace("China,Asia,2", "China,Asia,7"));
+    assertNull(MapSnapshot.read(snapshot, stamp()));
+    CountryGraph graph = load(metrics);
+    assertEquals(2, parses(metrics));
+    assertEquals(7, graph.taxes[1]);
+    assertSameGraph(parse(), graph);
+
+    Files.writeString(adjacencies, ADJACENCIES.replace(",Russia\n", "\n"));
+    assertNull(MapSnapshot.read(snapshot, stamp()));
+    assertSameGraph(parse(), load(metrics));
+    assertEquals(3, parses(metrics));
+  }
+
+  @Test
+  public void corrupt_snapshot_falls_back_to_the_csv_files() throws IOException {
+    Metrics metrics = new Metrics();
+    load(metrics);
+    long size = Files.size(snapshot);
+    overwrite(size / 2, new byte[] {(byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff});
+    assertNull(MapSnapshot.read(snapshot, stamp()));
+    assertSameGraph(parse(), load(metrics));
+    assertEquals(2, parses(metrics));
+
+    // The load wrote a good snapshot again.
+    assertNotNull(MapSnapshot.read(snapshot, stamp()));
+
+    try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.WRITE)) {
+      channel.truncate(size - 1);
+    }
+    assertNull(MapSnapshot.read(snapshot, stamp()));
+    Files.writeString(snapshot, "");
+    assertNull(MapSnapshot.read(snapshot, stamp()));
+    assertSameGraph(parse(), load(metrics));
+    assertEquals(3, parses(metrics));
+  }
+
+  @Test
+  public void snapshot_of_another_version_is_ignored() throws IOException {
+    Metrics metrics = new Metrics();
+    load(metrics);
+    // The version follows the eight-byte magic number.
+    overwrite(8, ByteBuffer.allocate(4).putInt(1).array());
+    assertNull(MapSnapshot.read(snapshot, stamp()));
+    assertSameGraph(parse(), load(metrics));
+    assertEquals(2, parses(metrics));
+  }
+}
@@ -0,0 +1,229 @@
+package nz.ac.auckland.se281;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public class MapUpdateTest {
+
+  /** S borders A then B, and both border D, so the fewest-borders route S to D goes through A. */
+  private static CountryGraph diamond() {
+    GraphBuilder builder = new GraphBuilder();
+    int s = builder.addCountry("S", "Here", 1);
+    int a = builder.addCountry("A", "Here", 1);
+    int b = builder.addCountry("B", "Here", 1);
+    int d = builder.addCountry("D", "Here", 1);
+    builder.addBorder(s, a);
+    builder.addBorder(a, s);
+    builder.addBorder(s, b);
+    builder.addBorder(b, s);
+    builder.addBorder(a, d);
+    builder.addBorder(d, a);
+    builder.addBorder(b, d);
+    builder.addBorder(d, b);
+    return builder.build();
+  }
+
+  private static MapUpdate readdBorder() {
+    return new MapUpdate().removeBorder("S", "A").addBorder("S", "A");
+  }
+
+  private static Route search(CountryGraph graph, String from, String to) {
+    return new MapQueries(graph, new Metrics()).route(RouteMode.BREADTH_FIRST, from, to);
+  }
+
+  private static boolean hasBorder(int[] pairs, int from, int to) {
+    for (int i = 0; i < pairs.length; i += 2) {
+      if (pairs[i] == from && pairs[i + 1] == to) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Test
+  public void readded_border_is_reported_as_removed_and_added() {
+    MapUpdate.Result result = readdBorder().applyTo(diamond());
+    // S is 0 and A is 1; the border goes both ways and is now last in both countries' borders.
+    assertTrue(hasBorder(result.removedBorders, 0, 1));
+    assertTrue(hasBorder(result.addedBorders, 0, 1));
+    assertTrue(hasBorder(result.removedBorders, 1, 0));
+    assertTrue(hasBorder(result.addedBorders, 1, 0));
+  }
+
+  @Test
+  public void removed_border_is_not_reported_as_added() {
+    MapUpdate.Result result = new MapUpdate().removeBorder("S", "A").applyTo(diamond());
+    assertEquals(4, result.removedBorders.length);
+    assertTrue(hasBorder(result.removedBorders, 0, 1));
+    assertTrue(hasBorder(result.removedBorders, 1, 0));
+    assertArrayEquals(new int[0], result.addedBorders);
+  }
+
+  @Test
+  public void route_table_follows_readded_border() {
+    CountryGraph graph = diamond();
+    MapQueries queries =
+        new MapQueries(graph, new Metrics()).withRouteTable(new RouteTable(graph));
+    assertEquals(
+        Arrays.asList("S", "A", "D"),
+        queries.route(RouteMode.BREADTH_FIRST, "S", "D").getCountries());
+
+    MapQueries edited = queries.withUpdate(readdBorder(), Long.MAX_VALUE);
+    Route expected = search(edited.graph(), "S", "D");
+    assertEquals(Arrays.asList("S", "B", "D"), expected.getCountries());
+    assertEquals(
+        expected.getCountries(),
+        edited.route(RouteMode.BREADTH_FIRST, "S", "D").getCountries());
+  }
+
+  @Test
+  public void cache_drops_route_through_readded_border() {
+    MapQueries queries =
+        new MapQueries(diamond(), new Metrics())
+            .withRouteCache(new RouteCache(16, RouteCache.Policy.LRU));
+    queries.route(RouteMode.BREADTH_FIRST, "S", "D");
+
+    MapQueries edited = queries.withUpdate(readdBorder(), Long.MAX_VALUE);
+    assertEquals(
+        search(edited.graph(), "S", "D").getCountries(),
+        edited.route(RouteMode.BREADTH_FIRST, "S", "D").getCountries());
+  }
+
+  @Test
+  public void cache_keeps_route_an_added_border_cannot_shorten() {
+    RouteCache cache = new RouteCache(16, RouteCache.Policy.LRU);
+    MapQueries queries =
+        new MapQueries(diamond(), new Metrics())
+            .withRouteCache(cache)
+            .withUpdate(new MapUpdate().addCountry("E", "There", 2), Long.MAX_VALUE);
+    queries.route(RouteMode.BREADTH_FIRST, "S", "A");
+    queries.route(RouteMode.BREADTH_FIRST, "S", "D");
+    queries.route(RouteMode.BREADTH_FIRST, "S", "E");
+
+    // Nothing reaches D or E any quicker, but S now reaches E.
+    MapQueries edited = queries.withUpdate(new MapUpdate().addBorder("D", "E"), Long.MAX_VALUE);
+    assertEquals(
+        Arrays.asList("S", "A"), edited.route(RouteMode.BREADTH_FIRST, "S", "A").getCountries());
+    assertEquals(
+        Arrays.asList("S", "A", "D"),
+        edited.route(RouteMode.BREADTH_FIRST, "S", "D").getCountries());
+    assertEquals(
+        Arrays.asList("S", "A", "D", "E"),
+        edited.route(RouteMode.BREADTH_FIRST, "S", "E").getCountries());
+    assertEquals(2, cache.getHits());
+    assertEquals(1, cache.getInvalidated());
+  }
+
+  @Test
+  public void cached_routes_match_a_search_after_borders_are_added() {
+    int size = 60;
+    Random random = new Random(281);
+    RouteCache cache = new RouteCache(4 * size * size, RouteCache.Policy.LRU);
+    MapQueries queries =
+        new MapQueries(RandomMaps.generate(size, 2 * size, 281), new Metrics())
+            .withRouteCache(cache);
+    for (RouteMode mode : RouteMode.values()) {
+      for (int from = 0; from < size; from++) {
+        for (int to = 0; to < size; to++) {
+          queries.route(mode, from, to);
+        }
+      }
+    }
+
+    // More borders than are tracked, one to four at a time, and now and then a border removed.
+    // Each pair is asked for after every fifth update, so routes stay cached over several.
+    long kept = 0;
+    for (int update = 0; update < 15; update++) {
+      MapUpdate edits = new MapUpdate();
+      int added = 1 + random.nextInt(4);
+      for (int i = 0; i < added; i++) {
+        int from = random.nextInt(size);
+        int to = (from + 1 + random.nextInt(size - 1)) % size;
+        edits.addBorder("C" + from, "C" + to);
+      }
+      if (update % 3 == 2) {
+        int from = random.nextInt(size);
+        CountryGraph graph = queries.graph();
+        if (graph.offsets[from] < graph.offsets[from + 1]) {
+          edits.removeBorder("C" + from, "C" + graph.neighbours[graph.offsets[from]]);
+        }
+      }
+      queries = queries.withUpdate(edits, Long.MAX_VALUE);
+
+      MapQueries plain = new MapQueries(queries.graph(), new Metrics());
+      long hits = cache.getHits();
+      for (RouteMode mode : RouteMode.values()) {
+        for (int from = 0; from < size; from++) {
+          for (int to = (from + update) % 5; to < size; to += 5) {
+            Route expected = plain.route(mode, from, to);
+            Route route = queries.route(mode, from, to);
+            String pair = mode + " from C" + from + " to C" + to + " after update " + update;
+            if (mode == RouteMode.CHEAPEST || mode == RouteMode.CHEAPEST_A_STAR) {
+              assertEquals(pair, expected.isEmpty(), route.isEmpty());
+              assertEquals(pair, expected.getTax(), route.getTax());
+            } else {
+              assertEquals(pair, expected.getCountries(), route.getCountries());
+            }
+          }
+        }
+      }
+      kept += cache.getHits() - hits;
+    }
+    // Routes cached before an added border were checked and kept, not all dropped.
+    assertTrue(kept > 0);
+  }
+
+  @Test
+  public void tax_change_moves_cheapest_route() {
+    MapQueries queries = new MapQueries(diamond(), new Metrics());
+    MapQueries edited = queries.withUpdate(new MapUpdate().setTax("A", 5), Long.MAX_VALUE);
+    assertEquals(
+        Arrays.asList("S", "A", "D"), queries.route(RouteMode.CHEAPEST, "S", "D").getCountries());
+    assertEquals(
+        Arrays.asList("S", "B", "D"), edited.route(RouteMode.CHEAPEST, "S", "D").getCountries());
+    assertEquals(2, edited.route(RouteMode.CHEAPEST, "S", "D").getTax());
+  }
+
+  @Test
+  public void added_country_and_borders_are_routable() {
+    MapQueries queries = new MapQueries(diamond(), new Metrics());
+    MapQueries edited =
+        queries.withUpdate(
+            new MapUpdate().addCountry("E", "There", 2).addBorder("D", "E"), Long.MAX_VALUE);
+    assertEquals(5, edited.countryCount());
+    assertEquals(
+        Arrays.asList("S", "A", "D", "E"),
+        edited.route(RouteMode.BREADTH_FIRST, "S", "E").getCountries());
+    assertEquals(Arrays.asList("Here", "There"), edited.continents());
+  }
+
+  @Test
+  public void removed_country_renumbers_the_map() {
+    MapUpdate.Result result = new MapUpdate().removeCountry("A").applyTo(diamond());
+    assertTrue(result.renumbered);
+    assertEquals(3, result.graph.size());
+    assertEquals(Arrays.asList("S", "B", "D"), search(result.graph, "S", "D").getCountries());
+  }
+
+  @Test
+  public void border_listed_twice_is_removed_both_ways() {
+    GraphBuilder builder = new GraphBuilder();
+    int a = builder.addCountry("A", "Here", 1);
+    int b = builder.addCountry("B", "Here", 1);
+    builder.addBorder(a, b);
+    builder.addBorder(a, b);
+    builder.addBorder(b, a);
+    MapQueries edited =
+        new MapQueries(builder.build(), new Metrics())
+            .withUpdate(new MapUpdate().removeBorder("A", "B"), Long.MAX_VALUE);
+    CountryGraph graph = edited.graph();
+    assertEquals(0, graph.borderCount());
+    assertEquals(0, graph.reverseOffsets[graph.size()]);
+    assertTrue(edited.route(RouteMode.BIDIRECTIONAL, "A", "B").isEmpty());
+  }
+}
@@ -0,0 +1,95 @@
+package nz.ac.auckland.se281;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MapWatcherTest {
+  private static final String[] PROPERTIES = {"map.countries", "map.adjacencies", "map.aliases"};
+
+  private final String[] saved = new String[PROPERTIES.length];
+  private Path directory;
+  private Path countries;
+  private Path adjacencies;
+
+  @Before
+  public void pointAtTemporaryFiles() throws Exception {
+    directory = Files.createTempDirectory("map-watcher");
+    countries = directory.resolve("countries.csv");
+    adjacencies = directory.resolve("adjacencies.csv");
+    Files.writeString(countries, "India,Asia,1\nChina,Asia,2\n");
+    Files.writeString(adjacencies, "India,China\nChina,India\n");
+    for (int i = 0; i < PROPERTIES.length; i++) {
+      saved[i] = System.getProperty(PROPERTIES[i]);
+    }
+    System.setProperty("map.countries", countries.toString());
+    System.setProperty("map.adjacencies", adjacencies.toString());
+    // There is no aliases file, so none are read.
+    System.setProperty("map.aliases", directory.resolve("aliases.csv").toString());
+  }
+
+  @After
+  public void restoreProperties() throws Exception {
+    Files.deleteIfExists(Utils.snapshotFile());
+    for (int i = 0; i < PROPERTIES.length; i++) {
+      if (saved[i] == null) {
+        System.clearProperty(PROPERTIES[i]);
+      } else {
+        System.setProperty(PROPERTIES[i], saved[i]);
+      }
+    }
+    Files.deleteIfExists(countries);
+    Files.deleteIfExists(adjacencies);
+    Files.deleteIfExists(directory);
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (!condition.getAsBoolean()) {
+      assertTrue("timed out waiting for a reload", System.nanoTime() < deadline);
+      Thread.sleep(20);
+    }
+  }
+
+  private static Route route(MapEngine engine) {
+    return engine.queries().route(RouteMode.BREADTH_FIRST, "India", "Russia");
+  }
+
+  @Test
+  public void rewritten_files_are_swapped_in() throws Exception {
+    MapEngine engine = new MapEngine();
+    try (MapWatcher watcher = new MapWatcher(engine)) {
+      assertEquals(2, engine.queries().countryCount());
+
+      Files.writeString(countries, "India,Asia,1\nChina,Asia,2\nRussia,Europe,3\n");
+      Files.writeString(adjacencies, "India,China\nChina,India,Russia\nRussia,China\n");
+      // The two files may be picked up in one reload or one after the other.
+      await(() -> engine.queries().countryCount() == 3 && !route(engine).isEmpty());
+      assertEquals(List.of("India", "China", "Russia"), route(engine).getCountries());
+    }
+  }
+
+  @Test
+  public void malformed_files_keep_the_old_map_and_watching_goes_on() throws Exception {
+    MapEngine engine = new MapEngine();
+    try (MapWatcher watcher = new MapWatcher(engine)) {
+      Files.writeString(countries, "India,Asia,1\nChina,Asia,lots\nRussia,Europe,3\n");
+      await(() -> engine.getMetrics().counter("reload.rejected").sum() == 1);
+      assertEquals(2, engine.queries().countryCount());
+      assertEquals("China", engine.queries().info("china").getName());
+
+      Files.writeString(countries, "India,Asia,1\nChina,Asia,2\nRussia,Europe,3\n");
+      Files.writeString(adjacencies, "India,China\nChina,India,Russia\nRussia,China\n");
+      await(() -> engine.queries().countryCount() == 3 && !route(engine).isEmpty());
+      assertEquals(1, engine.getMetrics().counter("reload.rejected").sum());
+    }
+  }
+}
@@ -0,0 +1,190 @@
+package nz.ac.auckland.se281;
+
+import static nz.ac.auckland.se281.GraphAsserts.assertSameGraph;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedMapLoaderTest {
+  private static final String COUNTRIES = "India,Asia,1\nChina,Asia,2\nRussia,Europe,3\n";
+  private static final String ADJACENCIES = "India,China\nChina,India,Russia\nRussia,China\n";
+
+  private Path directory;
+  private Path countries;
+  private Path adjacencies;
+
+  @Before
+  public void createDirectory() throws IOException {
+    directory = Files.createTempDirectory("map-loader");
+    countries = directory.resolve("countries.csv");
+    adjacencies = directory.resolve("adjacencies.csv");
+  }
+
+  @After
+  public void deleteFiles() throws IOException {
+    for (Path file : List.of(countries, adjacencies, directory)) {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  private void write(String countriesText, String adjacenciesText) throws IOException {
+    Files.writeString(countries, countriesText);
+    Files.writeString(adjacencies, adjacenciesText);
+  }
+
+  /** Parses the files line by line the way the original loader did, leaving out blank lines. */
+  private CountryGraph fromCsv() throws IOException {
+    return CountryGraph.fromCsv(lines(countries), lines(adjacencies));
+  }
+
+  private static List<String> lines(Path file) throws IOException {
+    return Files.readAllLines(file).stream()
+        .filter(line -> !line.isBlank())
+        .collect(Collectors.toList());
+  }
+
+  private void assertLoadsLikeFromCsv() throws IOException {
+    CountryGraph expected = fromCsv();
+    assertSameGraph(expected, MappedMapLoader.load(countries, adjacencies));
+  }
+
+  /** Checks that both loaders reject the files, and returns the message of the mapped one. */
+  private String assertRejectedLikeFromCsv() throws IOException {
+    try {
+      fromCsv();
+      fail("fromCsv accepted the files");
+    } catch (MapFormatException e) {
+      // Expected.
+    }
+    try {
+      MappedMapLoader.load(countries, adjacencies);
+      fail("MappedMapLoader accepted the files");
+      return null;
+    } catch (MapFormatException e) {
+      return e.getMessage();
+    }
+  }
+
+  /**
+   * Writes a map of several megabytes, so that a parallel load splits both files into chunks
+   * whose nominal boundaries fall inside lines. Names and lines vary in length, and one line of
+   * the adjacencies file is longer than a whole chunk.
+   */
+  private void writeLargeMap(String lineBreak) throws IOException {
+    int size = 60_000;
+    String[] names = new String[size];
+    StringBuilder countriesText = new StringBuilder();
+    for (int i = 0; i < size; i++) {
+      names[i] = "Country " + i + " " + "x".repeat(i % 61);
+      countriesText
+          .append(names[i])
+          .append(",Continent ")
+          .append(i % 7)
+          .append(',')
+          .append(i % 10)
+          .append(lineBreak);
+    }
+    StringBuilder adjacenciesText = new StringBuilder();
+    for (int i = 0; i < size; i++) {
+      adjacenciesText.append(names[i]);
+      adjacenciesText.append(',').append(names[(i + 1) % size]);
+      adjacenciesText.append(',').append(names[(int) ((i * 31L) % size)]);
+      adjacenciesText.append(lineBreak);
+      if (i == size / 2) {
+        adjacenciesText.append(names[i]);
+        for (int j = 0; j < size; j += 2) {
+          adjacenciesText.append(',').append(names[j]);
+        }
+        adjacenciesText.append(lineBreak);
+      }
+    }
+    write(countriesText.toString(), adjacenciesText.toString());
+  }
+
+  @Test
+  public void parallel_load_splits_lines_like_a_single_thread() throws IOException {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      for (String lineBreak : List.of("\n", "\r\n")) {
+        writeLargeMap(lineBreak);
+        CountryGraph expected = fromCsv();
+        assertSameGraph(expected, MappedMapLoader.load(countries, adjacencies));
+        assertSameGraph(expected, MappedMapLoader.load(countries, adjacencies, pool));
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void plain_files_load_like_from_csv() throws IOException {
+    write(COUNTRIES, ADJACENCIES);
+    assertLoadsLikeFromCsv();
+  }
+
+  @Test
+  public void crlf_line_endings_load_like_lf() throws IOException {
+    write(COUNTRIES.replace("\n", "\r\n"), ADJACENCIES.replace("\n", "\r\n"));
+    CountryGraph graph = MappedMapLoader.load(countries, adjacencies);
+    assertEquals(List.of("India", "China", "Russia"), List.of(graph.names));
+    assertEquals(List.of("Asia", "Europe"), List.of(graph.continentNames));
+    assertEquals(3, graph.taxes[2]);
+    assertLoadsLikeFromCsv();
+  }
+
+  @Test
+  public void blank_lines_are_skipped() throws IOException {
+    write(
+        "\nIndia,Asia,1\n\nChina,Asia,2\r\n\r\nRussia,Europe,3\n\n",
+        "\r\nIndia,China\n\n\nChina,India,Russia\nRussia,China\n\n");
+    assertLoadsLikeFromCsv();
+    assertEquals(3, MappedMapLoader.load(countries, adjacencies).size());
+  }
+
+  @Test
+  public void last_line_may_have_no_line_break() throws IOException {
+    write(COUNTRIES.trim(), ADJACENCIES.trim());
+    assertLoadsLikeFromCsv();
+    write(COUNTRIES.trim().replace("\n", "\r\n"), ADJACENCIES.trim().replace("\n", "\r\n"));
+    assertLoadsLikeFromCsv();
+  }
+
+  @Test
+  public void largest_tax_is_read() throws IOException {
+    write(COUNTRIES.replace("Russia,Europe,3", "Russia,Europe,2147483647"), ADJACENCIES);
+    assertLoadsLikeFromCsv();
+  }
+
+  @Test
+  public void malformed_or_overflowing_tax_is_rejected() throws IOException {
+    for (String tax : List.of("lots", "1.5", "", "-", "-2", "2147483648", "99999999999")) {
+      write(COUNTRIES.replace("Russia,Europe,3", "Russia,Europe," + tax), ADJACENCIES);
+      assertRejectedLikeFromCsv();
+    }
+  }
+
+  @Test
+  public void malformed_country_line_is_rejected() throws IOException {
+    for (String line : List.of("Russia,Europe", "Russia,Europe,3,4", "Russia")) {
+      write(COUNTRIES.replace("Russia,Europe,3", line), ADJACENCIES);
+      assertRejectedLikeFromCsv();
+    }
+  }
+
+  @Test
+  public void unknown_neighbour_is_rejected() throws IOException {
+    write(COUNTRIES, ADJACENCIES.replace("China,India,Russia", "China,India,Atlantis"));
+    assertEquals("Unknown country: Atlantis", assertRejectedLikeFromCsv());
+    write(COUNTRIES, ADJACENCIES + "Atlantis,India\n");
+    assertEquals("Unknown country: Atlantis", assertRejectedLikeFromCsv());
+  }
+}
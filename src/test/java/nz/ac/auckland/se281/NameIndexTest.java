@@ -0,0 +1,76 @@
+package nz.ac.auckland.se281;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class NameIndexTest {
+  private static final String[] NAMES = {"India", "New Zealand", "Siam", "Congo", "Middle East"};
+
+  private static NameIndex index() {
+    Map<String, String> aliases = new LinkedHashMap<>();
+    aliases.put("Nz", "New Zealand");
+    aliases.put("Aotearoa", "New Zealand");
+    aliases.put("Thailand", "Siam");
+    // Reads the same as a real name, which wins.
+    aliases.put("Siam", "India");
+    // Stands for a country that is not on the map, so it is left out.
+    aliases.put("Atlantis", "Lost Continent");
+    return new NameIndex(NAMES, aliases);
+  }
+
+  private static int id(String name) {
+    return Arrays.asList(NAMES).indexOf(name);
+  }
+
+  @Test
+  public void aliases_find_their_country() {
+    NameIndex index = index();
+    assertEquals(id("New Zealand"), index.find("Nz"));
+    assertEquals(id("New Zealand"), index.find("nz"));
+    assertEquals(id("New Zealand"), index.find(" aotearoa "));
+    assertEquals(id("Siam"), index.find("thailand"));
+    assertEquals(-1, index.find("Atlantis"));
+    assertEquals(-1, index.find("Lost Continent"));
+  }
+
+  @Test
+  public void real_name_wins_over_an_alias_that_reads_the_same() {
+    NameIndex index = index();
+    assertEquals(id("Siam"), index.find("Siam"));
+    assertEquals(id("Siam"), index.find("siam"));
+    assertEquals(id("India"), index.find("India"));
+  }
+
+  @Test
+  public void input_is_read_like_the_prompt_reads_it() {
+    NameIndex index = index();
+    String[] inputs = {
+      "india",
+      "India",
+      "  india  ",
+      "inDia",
+      "INDIA",
+      "new zealand",
+      "new   zealand",
+      "new\tzealand",
+      "\tnew zealand\n",
+      "New\r\nZealand",
+      "newzealand",
+      "new zealand x",
+      "middle  east",
+      "middle-east",
+      "congo ",
+      "c ongo",
+      "",
+      " \t "
+    };
+    for (String input : inputs) {
+      String expected = Utils.capitalizeFirstLetterOfEachWord(input);
+      assertEquals("\"" + input + "\"", id(expected), index.find(input));
+    }
+  }
+}
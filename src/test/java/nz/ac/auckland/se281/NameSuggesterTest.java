@@ -0,0 +1,68 @@
+package nz.ac.auckland.se281;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import org.junit.Test;
+
+public class NameSuggesterTest {
+  private static final NameSuggester SUGGESTER =
+      new NameSuggester(
+          new String[] {
+            "India",
+            "Indonesia",
+            "China",
+            "Chad",
+            "Irkutsk",
+            "Iceland",
+            "New Zealand",
+            "Oz",
+            "Tar",
+            "Far",
+            "Bar",
+            "Jar",
+            "Car",
+            "Tarn"
+          });
+
+  @Test
+  public void one_letter_typo_suggests_the_name() {
+    assertEquals(List.of("India"), SUGGESTER.suggest("Indla", 3));
+    assertEquals(List.of("India"), SUGGESTER.suggest("Indi", 3));
+    assertEquals(List.of("Indonesia"), SUGGESTER.suggest("Indonessia", 3));
+  }
+
+  @Test
+  public void swapped_letters_count_as_one_edit() {
+    assertEquals(List.of("India"), SUGGESTER.suggest("Inida", 3));
+    assertEquals(List.of("Iceland"), SUGGESTER.suggest("Icelnad", 3));
+  }
+
+  @Test
+  public void case_and_spacing_only_misses_suggest_the_name() {
+    assertEquals(List.of("Irkutsk"), SUGGESTER.suggest("irkuTsK", 3));
+    assertEquals(List.of("New Zealand"), SUGGESTER.suggest(" new \t zEALAND ", 3));
+  }
+
+  @Test
+  public void inputs_shorter_than_three_letters_get_no_suggestions() {
+    assertEquals(List.of(), SUGGESTER.suggest("Oz", 3));
+    assertEquals(List.of(), SUGGESTER.suggest(" o z ", 3));
+    assertEquals(List.of("Chad"), SUGGESTER.suggest("Cha", 3));
+  }
+
+  @Test
+  public void ties_come_in_alphabetical_order_up_to_the_limit() {
+    assertEquals(List.of("Bar", "Car", "Far"), SUGGESTER.suggest("Xar", 3));
+    assertEquals(List.of("Bar", "Car", "Far", "Jar", "Tar"), SUGGESTER.suggest("Xar", 10));
+    assertEquals(List.of("Bar"), SUGGESTER.suggest("Xar", 1));
+    assertEquals(List.of(), SUGGESTER.suggest("Xar", 0));
+  }
+
+  @Test
+  public void only_the_closest_names_are_suggested() {
+    // "Tar" and "Tarn" are one edit from "Tarr", the other names ending in "ar" two.
+    assertEquals(List.of("Tar", "Tarn"), SUGGESTER.suggest("Tarr", 3));
+    assertEquals(List.of(), SUGGESTER.suggest("Atlantis", 3));
+  }
+}
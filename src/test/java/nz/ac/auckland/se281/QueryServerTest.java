@@ -0,0 +1,135 @@
+package nz.ac.auckland.se281;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class QueryServerTest {
+  private static MapEngine engine() {
+    GraphBuilder builder = new GraphBuilder();
+    int india = builder.addCountry("India", "Asia", 1);
+    int china = builder.addCountry("China", "Asia", 2);
+    int russia = builder.addCountry("Russia", "Europe", 3);
+    builder.addCountry("Iceland", "Europe", 4);
+    builder.addBorder(india, china);
+    builder.addBorder(china, india);
+    builder.addBorder(china, russia);
+    builder.addBorder(russia, china);
+    return new MapEngine(builder.build());
+  }
+
+  private static QueryServer start() throws IOException {
+    return new QueryServer(
+        engine(), new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2);
+  }
+
+  private static Socket connect(QueryServer server) throws IOException {
+    Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+    socket.setSoTimeout(10_000);
+    return socket;
+  }
+
+  private static BufferedReader reader(Socket socket) throws IOException {
+    return new BufferedReader(
+        new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+  }
+
+  private static void send(Socket socket, String text) throws IOException {
+    OutputStream out = socket.getOutputStream();
+    out.write(text.getBytes(StandardCharsets.UTF_8));
+    out.flush();
+  }
+
+  @Test
+  public void pipelined_requests_are_answered_in_order() throws IOException {
+    try (QueryServer server = start();
+        Socket socket = connect(server)) {
+      send(
+          socket,
+          "INFO india\n"
+              + "ROUTE India,Russia\r\n"
+              + "cheapest india , russia\n"
+              + "ROUTE India,Iceland\n"
+              + "INFO Atlantis\n"
+              + "ROUTE India\n"
+              + "FLY India,Russia\n"
+              + "\n"
+              + "ROUTE India,India\n");
+      BufferedReader in = reader(socket);
+      assertEquals("OK India,Asia,1", in.readLine());
+      assertEquals("OK India,China,Russia|Asia,Europe|5", in.readLine());
+      assertEquals("OK India,China,Russia|Asia,Europe|5", in.readLine());
+      assertEquals("NONE", in.readLine());
+      assertEquals("ERR ERROR! This country was not found: Atlantis, try again!", in.readLine());
+      assertEquals("ERR Expected start,destination but got India", in.readLine());
+      assertEquals("ERR Unknown command FLY", in.readLine());
+      assertEquals("ERR Empty request", in.readLine());
+      assertEquals("OK India|Asia|0", in.readLine());
+    }
+  }
+
+  @Test
+  public void request_split_across_writes_is_answered_once_complete() throws Exception {
+    try (QueryServer server = start();
+        Socket socket = connect(server)) {
+      send(socket, "INFO In");
+      Thread.sleep(50);
+      send(socket, "dia\r");
+      Thread.sleep(50);
+      send(socket, "\n");
+      assertEquals("OK India,Asia,1", reader(socket).readLine());
+    }
+  }
+
+  @Test
+  public void quit_answers_and_closes_the_connection() throws IOException {
+    try (QueryServer server = start();
+        Socket socket = connect(server)) {
+      send(socket, "INFO India\nquit\r\nINFO China\n");
+      BufferedReader in = reader(socket);
+      assertEquals("OK India,Asia,1", in.readLine());
+      assertEquals("OK", in.readLine());
+      assertNull(in.readLine());
+    }
+  }
+
+  @Test
+  public void line_over_the_limit_gets_an_error_and_closes_the_connection() throws IOException {
+    try (QueryServer server = start();
+        Socket socket = connect(server)) {
+      // Exactly the limit with no line break, so the server reads it all before it closes.
+      byte[] line = new byte[64 * 1024];
+      Arrays.fill(line, (byte) 'x');
+      send(socket, "INFO India\n");
+      socket.getOutputStream().write(line);
+      BufferedReader in = reader(socket);
+      assertEquals("OK India,Asia,1", in.readLine());
+      assertEquals("ERR Request line too long", in.readLine());
+      assertNull(in.readLine());
+    }
+  }
+
+  @Test
+  public void other_connections_are_served_after_one_quits() throws IOException {
+    try (QueryServer server = start()) {
+      for (int i = 0; i < 4; i++) {
+        try (Socket socket = connect(server)) {
+          send(socket, "INFO Russia\nQUIT\n");
+          BufferedReader in = reader(socket);
+          assertEquals("OK Russia,Europe,3", in.readLine());
+          assertEquals("OK", in.readLine());
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,38 @@
+package nz.ac.auckland.se281;
+
+import java.util.Random;
+
+/** Small seeded random maps, for comparing the indexes and searches with plain searches. */
+final class RandomMaps {
+  private RandomMaps() {}
+
+  /**
+   * Builds a map of countries named "C0", "C1" and so on, on three continents. Most borders go
+   * both ways but some only one way, and taxes run from 1 to 3, so there are many ties, countries
+   * that can be left but not reached or the other way round, and now and then one on its own.
+   *
+   * @param size the number of countries
+   * @param borders the number of borders to add
+   * @param seed the seed for the random choices
+   * @return the map
+   */
+  static CountryGraph generate(int size, int borders, long seed) {
+    Random random = new Random(seed);
+    GraphBuilder builder = new GraphBuilder();
+    for (int i = 0; i < size; i++) {
+      builder.addCountry("C" + i, "Continent " + i * 3 / size, 1 + random.nextInt(3));
+    }
+    for (int i = 0; i < borders; i++) {
+      int from = random.nextInt(size);
+      int to = random.nextInt(size);
+      if (from == to) {
+        continue;
+      }
+      builder.addBorder(from, to);
+      if (random.nextInt(5) > 0) {
+        builder.addBorder(to, from);
+      }
+    }
+    return builder.build();
+  }
+}
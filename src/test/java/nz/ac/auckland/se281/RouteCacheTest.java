@@ -0,0 +1,147 @@
+package nz.ac.auckland.se281;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class RouteCacheTest {
+
+  private static final RouteCache.Validity NEVER_CHECKED =
+      (key, route, version) -> {
+        throw new AssertionError("Route of the current version was checked");
+      };
+
+  private static Route route(String... countries) {
+    return new Route(Arrays.asList(countries), List.of("Here"), countries.length - 1);
+  }
+
+  private static long key(int start, int destination) {
+    return RouteCache.key(start, destination, RouteMode.BREADTH_FIRST);
+  }
+
+  @Test
+  public void keys_keep_every_mode_apart() {
+    int largest = (1 << 30) - 1;
+    for (RouteMode mode : RouteMode.values()) {
+      assertEquals(mode, RouteCache.mode(RouteCache.key(largest, largest, mode)));
+      assertEquals(mode, RouteCache.mode(RouteCache.key(0, 0, mode)));
+    }
+    assertNotEquals(key(1, 2), key(2, 1));
+  }
+
+  @Test
+  public void keys_give_back_their_countries() {
+    int largest = (1 << 30) - 1;
+    int[][] pairs = {{0, 0}, {1, 2}, {largest, 0}, {0, largest}, {largest, largest}};
+    for (RouteMode mode : RouteMode.values()) {
+      for (int[] pair : pairs) {
+        long key = RouteCache.key(pair[0], pair[1], mode);
+        assertEquals(pair[0], RouteCache.start(key));
+        assertEquals(pair[1], RouteCache.destination(key));
+      }
+    }
+  }
+
+  @Test
+  public void hits_and_misses_are_counted() {
+    RouteCache cache = new RouteCache(16, RouteCache.Policy.LRU);
+    Route route = route("A", "B");
+    assertNull(cache.get(key(0, 1), 0, NEVER_CHECKED));
+    cache.put(key(0, 1), route, 0);
+    assertSame(route, cache.get(key(0, 1), 0, NEVER_CHECKED));
+    assertSame(route, cache.get(key(0, 1), 0, NEVER_CHECKED));
+    assertNull(cache.get(key(1, 0), 0, NEVER_CHECKED));
+    assertEquals(2, cache.getHits());
+    assertEquals(2, cache.getMisses());
+    assertEquals(0, cache.getEvictions());
+  }
+
+  @Test
+  public void capacity_of_one_keeps_one_route() {
+    for (RouteCache.Policy policy : RouteCache.Policy.values()) {
+      RouteCache cache = new RouteCache(1, policy);
+      cache.put(key(0, 1), route("A", "B"), 0);
+      cache.put(key(0, 2), route("A", "C"), 0);
+      assertEquals(policy.name(), 1, cache.size());
+      assertEquals(policy.name(), 1, cache.getEvictions());
+    }
+  }
+
+  @Test
+  public void least_recently_used_route_is_evicted() {
+    RouteCache cache = new RouteCache(1, RouteCache.Policy.LRU);
+    Route newer = route("A", "C");
+    cache.put(key(0, 1), route("A", "B"), 0);
+    cache.put(key(0, 2), newer, 0);
+    assertNull(cache.get(key(0, 1), 0, NEVER_CHECKED));
+    assertSame(newer, cache.get(key(0, 2), 0, NEVER_CHECKED));
+  }
+
+  @Test
+  public void size_never_exceeds_capacity() {
+    for (RouteCache.Policy policy : RouteCache.Policy.values()) {
+      for (int capacity : new int[] {1, 3, 17, 100}) {
+        RouteCache cache = new RouteCache(capacity, policy);
+        for (int i = 0; i < 1000; i++) {
+          cache.put(key(i, i + 1), route("A", "B"), 0);
+          assertTrue(policy + " " + capacity, cache.size() <= capacity);
+        }
+        assertEquals(1000 - cache.size(), cache.getEvictions());
+      }
+    }
+  }
+
+  @Test
+  public void route_of_an_older_version_is_checked_once() {
+    RouteCache cache = new RouteCache(16, RouteCache.Policy.TINY_LFU);
+    Route route = route("A", "B");
+    cache.put(key(0, 1), route, 0);
+    int[] checks = {0};
+    RouteCache.Validity holds =
+        (key, cached, version) -> {
+          checks[0]++;
+          assertEquals(0, version);
+          return true;
+        };
+    assertSame(route, cache.get(key(0, 1), 1, holds));
+    assertSame(route, cache.get(key(0, 1), 1, holds));
+    assertEquals(1, checks[0]);
+    assertEquals(2, cache.getHits());
+  }
+
+  @Test
+  public void route_that_no_longer_holds_is_a_miss() {
+    RouteCache cache = new RouteCache(16, RouteCache.Policy.LRU);
+    cache.put(key(0, 1), route("A", "B"), 0);
+    assertNull(cache.get(key(0, 1), 1, (key, route, version) -> false));
+    assertEquals(1, cache.getInvalidated());
+    assertEquals(1, cache.getMisses());
+    assertEquals(0, cache.getHits());
+  }
+
+  @Test
+  public void route_of_a_newer_version_is_a_miss() {
+    RouteCache cache = new RouteCache(16, RouteCache.Policy.LRU);
+    cache.put(key(0, 1), route("A", "B"), 2);
+    assertNull(cache.get(key(0, 1), 1, NEVER_CHECKED));
+    assertEquals(1, cache.getInvalidated());
+  }
+
+  @Test
+  public void clear_keeps_the_counters() {
+    RouteCache cache = new RouteCache(16, RouteCache.Policy.LRU);
+    cache.put(key(0, 1), route("A", "B"), 0);
+    cache.get(key(0, 1), 0, NEVER_CHECKED);
+    cache.clear();
+    assertEquals(0, cache.size());
+    assertNull(cache.get(key(0, 1), 0, NEVER_CHECKED));
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+  }
+}
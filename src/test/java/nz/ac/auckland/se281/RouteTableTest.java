@@ -0,0 +1,51 @@
+package nz.ac.auckland.se281;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Test;
+
+public class RouteTableTest {
+  private static final int SIZE = 150;
+
+  private static void assertSameRoutes(CountryGraph graph, RouteTable table) {
+    SearchContext context = new SearchContext(graph.size(), graph.continentCount());
+    for (int start = 0; start < graph.size(); start++) {
+      for (int destination = 0; destination < graph.size(); destination++) {
+        context.reset();
+        assertArrayEquals(
+            "from " + start + " to " + destination,
+            BreadthFirstSearch.findPath(graph, context, start, destination),
+            table.path(start, destination));
+      }
+    }
+  }
+
+  @Test
+  public void table_holds_the_breadth_first_route_between_every_pair() {
+    for (long seed = 0; seed < 3; seed++) {
+      CountryGraph graph = RandomMaps.generate(SIZE, 2 * SIZE, seed);
+      assertSameRoutes(graph, new RouteTable(graph));
+    }
+    CountryGraph sparse = RandomMaps.generate(SIZE, SIZE, 281);
+    assertSameRoutes(sparse, new RouteTable(sparse));
+  }
+
+  @Test
+  public void updated_table_holds_the_breadth_first_routes_of_the_edited_map() {
+    CountryGraph graph = RandomMaps.generate(SIZE, 2 * SIZE, 281);
+    RouteTable table = new RouteTable(graph);
+    MapUpdate update = new MapUpdate();
+    for (int i = 0; i < 10; i++) {
+      update.addBorder("C" + i, "C" + (SIZE - 1 - i));
+    }
+    for (int id = 0; id < SIZE; id += 15) {
+      int first = graph.offsets[id];
+      if (first < graph.offsets[id + 1]) {
+        update.removeBorder(graph.names[id], graph.names[graph.neighbours[first]]);
+      }
+    }
+    MapUpdate.Result result = update.applyTo(graph);
+    assertSameRoutes(
+        result.graph, table.update(result.graph, result.addedBorders, result.removedBorders));
+  }
+}